@@ -0,0 +1,359 @@
+package edu.sysu.pmglab.gbc;
+
+import edu.sysu.pmglab.compressor.ICompressor;
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.gbc.coder.decoder.MBEGDecoder;
+import edu.sysu.pmglab.gbc.coder.encoder.BEGEncoder;
+import edu.sysu.pmglab.gbc.constant.ChromosomeTags;
+import edu.sysu.pmglab.gbc.core.calculation.ld.ILDModel;
+import edu.sysu.pmglab.gbc.core.common.combiner.ICodeCombiner;
+import edu.sysu.pmglab.gbc.core.common.switcher.AMDOFeature;
+import edu.sysu.pmglab.gbc.core.common.switcher.ISwitcher;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.BlockSizeParameter;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBRootCache;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBToolkit;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.GTBReader;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter.*;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOutputParam;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @Description :热点路径基准测试 (BEG 编码、MBEG 解码、AC/AN/AF 统计、编码组合、AMDO 重排、块压缩、LD 计算、GTBReader 读取、VCF 导出).
+ * 模拟数据按 VCFGenerator 的 Prop 配置以固定种子生成, 每组参数的结果附带数据校验和, 结果可重复, 可随版本一同提交
+ * (位于 benchmark 测试源目录, 不打包进 gbc.jar)
+ */
+
+public class Benchmark {
+    /**
+     * 随机种子及迭代次数
+     */
+    static final long SEED = 0;
+    static final int WARMUP_ITERATIONS = 3;
+    static final int MEASUREMENT_ITERATIONS = 5;
+
+    /**
+     * 参数空间
+     */
+    static final Prop[] PROPS = Prop.values();
+    static final int[] SUBJECT_NUMS = {1000, 10000};
+    static final int[] BLOCK_SIZE_TYPES = {2, 5};
+    static final boolean[] PHASED = {false, true};
+    static final String[] COMPRESSORS = ICompressor.getCompressorNames();
+
+    /**
+     * GTBReader 测试文件的最大基因型个数
+     */
+    static final int MAX_GENOTYPES_OF_FILE = 20000000;
+
+    final PrintStream out;
+    long blackHole = 0;
+
+    Benchmark(PrintStream out) {
+        this.out = out;
+    }
+
+    interface Operation {
+        /**
+         * 执行一次操作
+         *
+         * @return 操作结果, 防止被 JIT 优化消除
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * 测量操作的耗时, 输出每个单位操作的平均耗时及标准差 (ns)
+     *
+     * @param name        测试项目名
+     * @param params      参数描述
+     * @param unitsPerRun 每次操作包含的单位操作数
+     */
+    void measure(String name, String params, long unitsPerRun, Operation operation) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            this.blackHole += operation.run();
+        }
+
+        double[] costs = new double[MEASUREMENT_ITERATIONS];
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            this.blackHole += operation.run();
+            costs[i] = (double) (System.nanoTime() - start) / unitsPerRun;
+        }
+
+        double mean = 0;
+        for (double cost : costs) {
+            mean += cost;
+        }
+        mean /= costs.length;
+
+        double variance = 0;
+        for (double cost : costs) {
+            variance += (cost - mean) * (cost - mean);
+        }
+
+        this.out.printf("%s\t%s\t%.2f\t%.2f%n", name, params, mean, Math.sqrt(variance / costs.length));
+        this.out.flush();
+    }
+
+    /**
+     * 按照 Prop 配置生成一个块的模拟位点 (与 VCFGenerator 的基因型分布一致)
+     */
+    static Variant<AMDOFeature>[] simulate(Prop prop, Random random, int variantNum, int subjectNum, boolean phased) {
+        BEGEncoder encoder = BEGEncoder.getEncoder(phased);
+        int windowSize = ISwitcher.getRealWindowSize(ISwitcher.DEFAULT_SIZE, subjectNum);
+        int featureLength = ISwitcher.getFeatureLength(subjectNum, windowSize);
+
+        Variant<AMDOFeature>[] variants = new Variant[variantNum];
+        for (int i = 0; i < variantNum; i++) {
+            int major = random.nextFloat() < prop.majorAlleleFreq ? 0 : 1;
+            byte[] BEGs = new byte[subjectNum];
+            for (int j = 0; j < subjectNum; j++) {
+                if (random.nextFloat() < prop.missFreq) {
+                    BEGs[j] = encoder.encodeMiss();
+                } else {
+                    int left = random.nextFloat() < prop.alleleFreq ? major : 1 - major;
+                    int right = random.nextFloat() < prop.alleleFreq ? 1 - major : major;
+                    BEGs[j] = encoder.encode(left, right);
+                }
+            }
+
+            variants[i] = new Variant<>("1", 10 * (i + 1), new byte[]{'A'}, new byte[]{'C'}, BEGs, phased);
+            variants[i].property = new AMDOFeature(windowSize, featureLength);
+            variants[i].property.encoderIndex = 0;
+        }
+        return variants;
+    }
+
+    static long checksum(Variant[] variants) {
+        long checksum = 0;
+        for (Variant variant : variants) {
+            checksum = 31 * checksum + Arrays.hashCode(variant.BEGs);
+        }
+        return checksum;
+    }
+
+    /**
+     * 内存中的编解码、组合、重排、压缩及 LD 计算
+     */
+    void runKernels(Prop prop, int subjectNum, int blockSizeType, boolean phased) throws IOException {
+        int blockSize = BlockSizeParameter.getBlockSize(blockSizeType);
+        Variant<AMDOFeature>[] block = simulate(prop, new Random(SEED), blockSize, subjectNum, phased);
+        String params = prop + "\t" + subjectNum + "\t" + blockSizeType + "\t" + phased;
+        this.out.printf("# data\t%s\tchecksum=%d%n", params, checksum(block));
+
+        // BEG 编码
+        BEGEncoder encoder = BEGEncoder.getEncoder(phased);
+        Random random = new Random(SEED);
+        int[][] alleles = new int[2][subjectNum];
+        for (int j = 0; j < subjectNum; j++) {
+            alleles[0][j] = random.nextInt(2);
+            alleles[1][j] = random.nextInt(2);
+        }
+        byte[] BEGs = new byte[subjectNum];
+        measure("BEGEncoder.encode", params + "\t-", (long) blockSize * subjectNum, () -> {
+            long sum = 0;
+            for (int i = 0; i < blockSize; i++) {
+                for (int j = 0; j < subjectNum; j++) {
+                    BEGs[j] = encoder.encode(alleles[0][j], alleles[1][j]);
+                }
+                sum += BEGs[i % subjectNum];
+            }
+            return sum;
+        });
+
+        // MBEG 组合编码
+        ICodeCombiner combiner = ICodeCombiner.getInstance(phased, subjectNum);
+        VolumeByteStream combined = new VolumeByteStream(blockSize * subjectNum);
+        measure("ICodeCombiner.combine", params + "\t-", blockSize, () -> {
+            combined.reset();
+            for (Variant<AMDOFeature> variant : block) {
+                combiner.combine(variant, combined);
+            }
+            return combined.size();
+        });
+
+        // MBEG 解码
+        MBEGDecoder decoder = MBEGDecoder.getDecoder(phased);
+        int groupSize = phased ? 3 : 4;
+        int lineSize = (subjectNum + groupSize - 1) / groupSize;
+        byte[] codes = combined.getCache();
+        measure("MBEGDecoder.decode", params + "\t-", (long) blockSize * subjectNum, () -> {
+            long sum = 0;
+            for (int i = 0; i < blockSize; i++) {
+                int start = i * lineSize;
+                for (int j = 0; j < subjectNum; j++) {
+                    BEGs[j] = decoder.decode(codes[start + j / groupSize] & 0xFF, j % groupSize);
+                }
+                sum += BEGs[i % subjectNum];
+            }
+            return sum;
+        });
+
+        // AC/AN/AF 统计: 解码后逐样本统计 (VariantFormatter) 与编码域直方图统计 (BEGCounter), 使用相同的 MBEG 编码行
+        int ploidy = ChromosomeTags.getPloidy("1");
+        Variant<AMDOFeature> decoded = new Variant<>("1", 0, new byte[]{'A'}, new byte[]{'C'}, new byte[subjectNum], phased);
+        measure("VariantFormatter(AC/AN/AF)", params + "\t-", (long) blockSize * subjectNum, () -> {
+            long sum = 0;
+            for (int i = 0; i < blockSize; i++) {
+                int start = i * lineSize;
+                for (int j = 0; j < subjectNum; j++) {
+                    decoded.BEGs[j] = decoder.decode(codes[start + j / groupSize] & 0xFF, j % groupSize);
+                }
+                sum += ACValueFormatter.INSTANCE.apply(decoded) + ANValueFormatter.INSTANCE.apply(decoded) + (long) (AFValueFormatter.INSTANCE.apply(decoded) * subjectNum);
+            }
+            return sum;
+        });
+        int[] counts = new int[256];
+        measure("BEGCounter(AC/AN/AF)", params + "\t-", (long) blockSize * subjectNum, () -> {
+            long sum = 0;
+            for (int i = 0; i < blockSize; i++) {
+                Arrays.fill(counts, 0);
+                BEGCounter.countMBEGs(decoder, codes, i * lineSize, subjectNum, counts);
+                sum += ACValueFormatter.fromCounts(counts, ploidy) + ANValueFormatter.fromCounts(counts, ploidy) + (long) (AFValueFormatter.fromCounts(counts, ploidy) * subjectNum);
+            }
+            return sum;
+        });
+
+        // AMDO 重排 (每次都从原始顺序开始)
+        Variant<AMDOFeature>[] ordered = block.clone();
+        measure("AMDOSwitcher.switchingRow", params + "\t-", 1, () -> {
+            System.arraycopy(block, 0, ordered, 0, blockSize);
+            ISwitcher.getInstance(true).switchingRow(encoder, ordered, blockSize);
+            return ordered[0].position;
+        });
+        ISwitcher adaptiveSwitcher = ISwitcher.getInstance(true, true, subjectNum, null);
+        measure("AdaptiveAMDOSwitcher.switchingRow", params + "\t-", 1, () -> {
+            System.arraycopy(block, 0, ordered, 0, blockSize);
+            adaptiveSwitcher.switchingRow(encoder, ordered, blockSize);
+            return ordered[0].position;
+        });
+
+        // 块压缩
+        for (String compressorName : COMPRESSORS) {
+            int compressorIndex = ICompressor.getCompressorIndex(compressorName);
+            try (ICompressor compressor = ICompressor.getInstance(compressorIndex, ICompressor.getDefaultCompressionLevel(compressorIndex), combined.size())) {
+                measure("ICompressor.compress", params + "\t" + compressorName, 1, () -> {
+                    int size = compressor.compress(combined);
+                    compressor.reset();
+                    return size;
+                });
+            }
+        }
+
+        // LD 计算 (相邻位点)
+        ILDModel model = ILDModel.GENOTYPE_LD;
+        measure("GenotypeLD.calculateLDR2", params + "\t-", blockSize - 1, () -> {
+            double sum = 0;
+            for (int i = 1; i < blockSize; i++) {
+                double r2 = model.calculateLDR2(block[i - 1], block[i]);
+                sum += Double.isNaN(r2) ? 0 : r2;
+            }
+            return (long) sum;
+        });
+
+        // 长字位平面 LD 计算 (使用独立的位点, 避免与上面的位点属性互相覆盖)
+        Variant<AMDOFeature>[] planes = simulate(prop, new Random(SEED), blockSize, subjectNum, phased);
+        ILDModel bitPlaneModel = ILDModel.GENOTYPE_BITPLANE_LD;
+        measure("GenotypeBitPlaneLD.calculateLDR2", params + "\t-", blockSize - 1, () -> {
+            double sum = 0;
+            for (int i = 1; i < blockSize; i++) {
+                double r2 = bitPlaneModel.calculateLDR2(planes[i - 1], planes[i]);
+                sum += Double.isNaN(r2) ? 0 : r2;
+            }
+            return (long) sum;
+        });
+
+        combined.close();
+    }
+
+    /**
+     * 构建模拟 GTB 文件, 测试 GTBReader.readVariant 的顺序读取
+     */
+    void runReader(Prop prop, int subjectNum, int blockSizeType, boolean phased, java.io.File workDir) throws IOException {
+        int blockSize = BlockSizeParameter.getBlockSize(blockSizeType);
+        int variantNum = Math.max(1, Math.min(blockSize * 4, MAX_GENOTYPES_OF_FILE / subjectNum));
+        String params = prop + "\t" + subjectNum + "\t" + blockSizeType + "\t" + phased;
+
+        File vcf = new File(new java.io.File(workDir, prop + "_" + subjectNum + ".vcf.gz").getPath());
+        if (!vcf.isExists()) {
+            VCFGenerator.generate(prop, "1", variantNum, subjectNum, true, new Random(SEED), vcf.toString());
+        }
+
+        for (String compressorName : COMPRESSORS) {
+            File gtb = new File(new java.io.File(workDir, params.replace('\t', '_') + "_" + compressorName + ".gtb").getPath());
+            GTBOutputParam outputParam = new GTBOutputParam().setPhased(phased).setBlockSizeType(blockSizeType).setCompressor(compressorName);
+            GTBToolkit.Build.instance(vcf, gtb).setOutputParam(outputParam).submit();
+
+            measure("GTBReader.readVariant", params + "\t" + compressorName, variantNum, () -> {
+                long sum = 0;
+                try (GTBReader reader = new GTBReader(gtb, phased)) {
+                    Variant variant = new Variant();
+                    while (reader.readVariant(variant)) {
+                        sum += variant.BEGs[0];
+                    }
+                }
+                return sum;
+            });
+
+            // gbc extract 导出 VCF 的吞吐量, 单位操作为输出的 1 个字节 (MB/s = 1000 / (ns/op))
+            File vcfOutput = new File(new java.io.File(workDir, "extract.vcf").getPath());
+            GTBToolkit.Formatter.instance(gtb, vcfOutput).setPhased(phased).setThreads(1).submit();
+            measure("GTBToolkit.Formatter(VCF)", params + "\t" + compressorName, new java.io.File(vcfOutput.toString()).length(), () -> {
+                GTBToolkit.Formatter.instance(gtb, vcfOutput).setPhased(phased).setThreads(1).submit();
+                return new java.io.File(vcfOutput.toString()).length();
+            });
+            vcfOutput.delete();
+            GTBRootCache.clear(gtb);
+        }
+    }
+
+    /**
+     * 运行所有基准测试, 结果以制表符分隔输出
+     *
+     * @param args 可选参数: 结果输出文件
+     */
+    public static void main(String[] args) throws IOException {
+        PrintStream out = args.length > 0 ? new PrintStream(new FileOutputStream(args[0])) : System.out;
+        Benchmark benchmark = new Benchmark(out);
+        java.io.File workDir = Files.createTempDirectory("gbc-benchmark").toFile();
+
+        out.println("# java=" + System.getProperty("java.version") + "\tseed=" + SEED + "\twarmup=" + WARMUP_ITERATIONS + "\tmeasurement=" + MEASUREMENT_ITERATIONS);
+        out.println("benchmark\tprop\tsubjectNum\tblockSizeType\tphased\tcompressor\tns/op\tstdev");
+        for (Prop prop : PROPS) {
+            for (int subjectNum : SUBJECT_NUMS) {
+                for (int blockSizeType : BLOCK_SIZE_TYPES) {
+                    if (subjectNum > BlockSizeParameter.getMaxSubjectNum(blockSizeType)) {
+                        continue;
+                    }
+
+                    for (boolean phased : PHASED) {
+                        benchmark.runKernels(prop, subjectNum, blockSizeType, phased);
+                        benchmark.runReader(prop, subjectNum, blockSizeType, phased, workDir);
+                    }
+                }
+            }
+        }
+        out.println("# blackHole=" + benchmark.blackHole);
+
+        // 清除模拟文件
+        java.io.File[] files = workDir.listFiles();
+        if (files != null) {
+            for (java.io.File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+
+        if (out != System.out) {
+            out.close();
+        }
+    }
+}
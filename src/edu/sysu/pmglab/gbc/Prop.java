@@ -0,0 +1,35 @@
+package edu.sysu.pmglab.gbc;
+
+/**
+ * @Description :模拟 VCF 文件的概率配置, 供 VCFGenerator 与 Benchmark 使用
+ */
+
+enum Prop {
+    /**
+     * 概率配置
+     */
+    RANDOM(0.5f, 0.5f, 0.2f),
+    DEFAULT(0.8f, 0.05f, 0.001f),
+    ZERO(1.f, 1.0f, 0);
+
+    /**
+     * 位点以 0 作为高频突变的概率
+     */
+    final float majorAlleleFreq;
+
+    /**
+     * 等位基因概率 (假定相等)
+     */
+    final float alleleFreq;
+
+    /**
+     * 缺失基因型概率
+     */
+    final float missFreq;
+
+    Prop(float majorAlleleFreq, float alleleFreq, float missFreq) {
+        this.majorAlleleFreq = majorAlleleFreq;
+        this.alleleFreq = alleleFreq;
+        this.missFreq = missFreq;
+    }
+}
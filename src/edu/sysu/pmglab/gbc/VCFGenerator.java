@@ -13,36 +13,6 @@ import java.util.Random;
  * @Description :VCF 文件生成器
  */
 
-enum Prop {
-    /**
-     * 概率配置
-     */
-    RANDOM(0.5f, 0.5f, 0.2f),
-    DEFAULT(0.8f, 0.05f, 0.001f),
-    ZERO(1.f, 1.0f, 0);
-
-    /**
-     * 位点以 0 作为高频突变的概率
-     */
-    final float majorAlleleFreq;
-
-    /**
-     * 等位基因概率 (假定相等)
-     */
-    final float alleleFreq;
-
-    /**
-     * 缺失基因型概率
-     */
-    final float missFreq;
-
-    Prop(float majorAlleleFreq, float alleleFreq, float missFreq) {
-        this.majorAlleleFreq = majorAlleleFreq;
-        this.alleleFreq = alleleFreq;
-        this.missFreq = missFreq;
-    }
-}
-
 public class VCFGenerator {
     static final String outputDir = "./resource/simulate_vcf/";
 
@@ -53,9 +23,18 @@ public class VCFGenerator {
 
     static void generate(Prop prop, String chromosome, int variantNum, int subjectNum, boolean order) throws IOException {
         new File("./resource/simulate_vcf/").mkdir();
+        generate(prop, chromosome, variantNum, subjectNum, order, random, outputDir + prop.name().toLowerCase() + "simu" + +variantNum + "V_" + subjectNum + "S.chr" + chromosome + ".vcf.gz");
+    }
 
+    /**
+     * 生成模拟 VCF 文件
+     *
+     * @param random     随机数发生器, 固定种子时生成的文件可重复
+     * @param outputFile 输出文件名
+     */
+    static void generate(Prop prop, String chromosome, int variantNum, int subjectNum, boolean order, Random random, String outputFile) throws IOException {
         // 4 线程 bgzip 压缩
-        FileStream vcf = new FileStream(outputDir + prop.name().toLowerCase() + "simu" + +variantNum + "V_" + subjectNum + "S.chr" + chromosome + ".vcf.gz", FileStream.PARALLEL_BGZIP_WRITER_4);
+        FileStream vcf = new FileStream(outputFile, FileStream.PARALLEL_BGZIP_WRITER_4);
 
         // 写入头文件信息
         vcf.write("##fileformat=VCFv4.2\n" +
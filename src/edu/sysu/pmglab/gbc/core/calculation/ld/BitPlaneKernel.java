@@ -0,0 +1,65 @@
+package edu.sysu.pmglab.gbc.core.calculation.ld;
+
+/**
+ * @Description :64 位长字位平面的 popcount 核心方法, 4 路展开以便 JIT 生成 POPCNT 指令并隐藏数据依赖
+ */
+
+final class BitPlaneKernel {
+    /**
+     * 使用长字位平面内核的最小样本数 (样本较少时 int 字位集已足够快)
+     */
+    static final int MIN_SUBJECT_NUM = 1024;
+
+    private BitPlaneKernel() {
+    }
+
+    /**
+     * 长字个数
+     *
+     * @param bitNum 位个数
+     */
+    static int wordNumOf(int bitNum) {
+        return (bitNum + 63) >>> 6;
+    }
+
+    /**
+     * 统计 a & b 中置位的个数
+     *
+     * @param a      位平面 a
+     * @param b      位平面 b
+     * @param length 长字个数
+     */
+    static int andCount(long[] a, long[] b, int length) {
+        int count0 = 0;
+        int count1 = 0;
+        int count2 = 0;
+        int count3 = 0;
+        int i = 0;
+        for (int end = length & ~3; i < end; i += 4) {
+            count0 += Long.bitCount(a[i] & b[i]);
+            count1 += Long.bitCount(a[i + 1] & b[i + 1]);
+            count2 += Long.bitCount(a[i + 2] & b[i + 2]);
+            count3 += Long.bitCount(a[i + 3] & b[i + 3]);
+        }
+
+        for (; i < length; i++) {
+            count0 += Long.bitCount(a[i] & b[i]);
+        }
+
+        return count0 + count1 + count2 + count3;
+    }
+
+    /**
+     * 统计位平面中置位的个数
+     *
+     * @param a      位平面
+     * @param length 长字个数
+     */
+    static int count(long[] a, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            count += Long.bitCount(a[i]);
+        }
+        return count;
+    }
+}
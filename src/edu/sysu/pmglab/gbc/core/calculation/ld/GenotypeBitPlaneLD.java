@@ -0,0 +1,294 @@
+package edu.sysu.pmglab.gbc.core.calculation.ld;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.gbc.coder.decoder.BEGDecoder;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+
+/**
+ * @Description :长字位平面 Pearson LD 模型, 每个 long 保存 64 个样本, 计算结果与 GenotypeLD 完全一致
+ */
+
+enum GenotypeBitPlaneLD implements ILDModel, ILDContext {
+    /**
+     * 长字位平面 Pearson LD 模型
+     */
+    INSTANCE;
+
+    @Override
+    public int calculateLDR2(VolumeByteStream lineCache, Variant variant1, Variant variant2, double minR2) {
+        VariantProperty propertyA = (VariantProperty) variant1.property;
+        VariantProperty propertyB = (VariantProperty) variant2.property;
+
+        int[] sums = new int[5];
+        int validSampleNum = count(propertyA, propertyB, variant1.BEGs.length, sums);
+        if (validSampleNum == 0) {
+            return 0;
+        }
+
+        double r_denominator_square = denominatorSquare(sums, validSampleNum);
+        if (r_denominator_square == 0) {
+            return 0;
+        }
+
+        double r_numerator = numerator(sums, validSampleNum);
+        double r2 = r_numerator * r_numerator / r_denominator_square;
+
+        if (r2 < minR2) {
+            return 0;
+        }
+
+        lineCache.reset();
+        formatterOut(lineCache, variant1.chromosome, variant1.position, variant2.position, validSampleNum, (float) r2);
+        return lineCache.size();
+    }
+
+    @Override
+    public double calculateLDR2(Variant variant1, Variant variant2) {
+        int[] sums = new int[5];
+        int validSampleNum = prepare(variant1, variant2, sums);
+        if (validSampleNum == 0) {
+            return Double.NaN;
+        }
+
+        double r_denominator_square = denominatorSquare(sums, validSampleNum);
+        if (r_denominator_square == 0) {
+            return Double.NaN;
+        }
+
+        double r_numerator = numerator(sums, validSampleNum);
+        return r_numerator * r_numerator / r_denominator_square;
+    }
+
+    @Override
+    public double calculateLD(Variant variant1, Variant variant2) {
+        int[] sums = new int[5];
+        int validSampleNum = prepare(variant1, variant2, sums);
+        if (validSampleNum == 0) {
+            return Double.NaN;
+        }
+
+        double r_denominator_square = denominatorSquare(sums, validSampleNum);
+        if (r_denominator_square == 0) {
+            return Double.NaN;
+        }
+
+        return numerator(sums, validSampleNum) / Math.sqrt(r_denominator_square);
+    }
+
+    /**
+     * 检查位点并填充位平面
+     *
+     * @param sums 两位点的统计量
+     * @return 有效样本个数
+     */
+    private int prepare(Variant variant1, Variant variant2, int[] sums) {
+        if (variant1.BEGs.length != variant2.BEGs.length) {
+            throw new UnsupportedOperationException("LD coefficients are calculated between sites with different sample sizes");
+        }
+
+        if (variant1.getAlternativeAlleleNum() > 2 || variant2.getAlternativeAlleleNum() > 2) {
+            throw new UnsupportedOperationException("LD coefficients are calculated between sites with number of alternative allele > 2");
+        }
+
+        if (!(variant1.property instanceof VariantProperty)) {
+            variant1.property = getProperty(variant1.BEGs.length).fillBitCodes(variant1);
+        }
+
+        if (!(variant2.property instanceof VariantProperty)) {
+            variant2.property = getProperty(variant2.BEGs.length).fillBitCodes(variant2);
+        }
+
+        return count(((VariantProperty) variant1.property), (VariantProperty) variant2.property, variant1.BEGs.length, sums);
+    }
+
+    /**
+     * 统计两位点的 sumA, sumB, sumAB, sumA^2, sumB^2. 位点属性只保存位平面, 统计量由调用方的局部数组接收, 多个线程可共享同一位点
+     *
+     * @param sums 统计量 (长度为 5)
+     * @return 有效样本个数
+     */
+    private static int count(VariantProperty propertyA, VariantProperty propertyB, int subjectNum, int[] sums) {
+        long[] A1 = propertyA.N_ALLELE_NUM_EQ_1;
+        long[] A2 = propertyA.N_ALLELE_NUM_EQ_2;
+        long[] B1 = propertyB.N_ALLELE_NUM_EQ_1;
+        long[] B2 = propertyB.N_ALLELE_NUM_EQ_2;
+        int wordNum = propertyA.wordNum;
+
+        int countAB_ALLELE_NUM_EQ_1_1 = 0;
+        int countAB_ALLELE_NUM_EQ_1_2 = 0;
+        int countAB_ALLELE_NUM_EQ_2_2 = 0;
+
+        if (propertyA.hasMiss || propertyB.hasMiss) {
+            // 至少有一个位点包含 miss 基因型时，需要在相交的有效样本上重新计算
+            long[] validA = propertyA.validSampleFlags;
+            long[] validB = propertyB.validSampleFlags;
+            int validSampleNum = 0;
+            int countA_N_ALLELE_NUM_EQ_1 = 0;
+            int countA_N_ALLELE_NUM_EQ_2 = 0;
+            int countB_N_ALLELE_NUM_EQ_1 = 0;
+            int countB_N_ALLELE_NUM_EQ_2 = 0;
+
+            for (int i = 0; i < wordNum; i++) {
+                long validSampleStatus = validA[i] & validB[i];
+                if (validSampleStatus != 0) {
+                    long a1 = A1[i] & validSampleStatus;
+                    long a2 = A2[i] & validSampleStatus;
+                    long b1 = B1[i] & validSampleStatus;
+                    long b2 = B2[i] & validSampleStatus;
+
+                    validSampleNum += Long.bitCount(validSampleStatus);
+                    countA_N_ALLELE_NUM_EQ_1 += Long.bitCount(a1);
+                    countA_N_ALLELE_NUM_EQ_2 += Long.bitCount(a2);
+                    countB_N_ALLELE_NUM_EQ_1 += Long.bitCount(b1);
+                    countB_N_ALLELE_NUM_EQ_2 += Long.bitCount(b2);
+                    countAB_ALLELE_NUM_EQ_1_1 += Long.bitCount(a1 & b1);
+                    countAB_ALLELE_NUM_EQ_1_2 += Long.bitCount(a1 & b2) + Long.bitCount(a2 & b1);
+                    countAB_ALLELE_NUM_EQ_2_2 += Long.bitCount(a2 & b2);
+                }
+            }
+
+            sums[0] = countA_N_ALLELE_NUM_EQ_1 + (countA_N_ALLELE_NUM_EQ_2 << 1);
+            sums[1] = countB_N_ALLELE_NUM_EQ_1 + (countB_N_ALLELE_NUM_EQ_2 << 1);
+            sums[3] = countA_N_ALLELE_NUM_EQ_1 + (countA_N_ALLELE_NUM_EQ_2 << 2);
+            sums[4] = countB_N_ALLELE_NUM_EQ_1 + (countB_N_ALLELE_NUM_EQ_2 << 2);
+            sums[2] = countAB_ALLELE_NUM_EQ_1_1 + (countAB_ALLELE_NUM_EQ_1_2 << 1) + (countAB_ALLELE_NUM_EQ_2_2 << 2);
+            return validSampleNum;
+        }
+
+        // 没有任何缺失，此时借助缓冲数据提升速度
+        for (int i = 0; i < wordNum; i++) {
+            long a1 = A1[i];
+            long a2 = A2[i];
+            long b1 = B1[i];
+            long b2 = B2[i];
+            countAB_ALLELE_NUM_EQ_1_1 += Long.bitCount(a1 & b1);
+            countAB_ALLELE_NUM_EQ_1_2 += Long.bitCount(a1 & b2) + Long.bitCount(a2 & b1);
+            countAB_ALLELE_NUM_EQ_2_2 += Long.bitCount(a2 & b2);
+        }
+
+        sums[0] = propertyA.N_ALT;
+        sums[1] = propertyB.N_ALT;
+        sums[2] = countAB_ALLELE_NUM_EQ_1_1 + (countAB_ALLELE_NUM_EQ_1_2 << 1) + (countAB_ALLELE_NUM_EQ_2_2 << 2);
+        sums[3] = propertyA.N_ALLELE_I_SQUARE;
+        sums[4] = propertyB.N_ALLELE_I_SQUARE;
+        return subjectNum;
+    }
+
+    /**
+     * 分子, 与 GenotypeLD 的计算顺序保持一致以得到相同的浮点结果
+     */
+    private static double numerator(int[] sums, int validSampleNum) {
+        return sums[2] - (double) sums[0] * sums[1] / validSampleNum;
+    }
+
+    /**
+     * 分母的平方
+     */
+    private static double denominatorSquare(int[] sums, int validSampleNum) {
+        return (sums[3] - (double) sums[0] * sums[0] / validSampleNum) * (sums[4] - (double) sums[1] * sums[1] / validSampleNum);
+    }
+
+    @Override
+    public String getHeader() {
+        return GenotypeLD.INSTANCE.getHeader();
+    }
+
+    @Override
+    public void formatterOut(VolumeByteStream lineCache, String chromosome, int pos1, int pos2, int validSampleNum, float... score) {
+        GenotypeLD.INSTANCE.formatterOut(lineCache, chromosome, pos1, pos2, validSampleNum, score);
+    }
+
+    @Override
+    public String getExtension() {
+        return GenotypeLD.INSTANCE.getExtension();
+    }
+
+    @Override
+    public String toString() {
+        return "Genotype LD (Pearson genotypic correlation of variants, 64-bit bit-plane kernel)";
+    }
+
+    @Override
+    public int getGroupNum(int BEGSize) {
+        return BitPlaneKernel.wordNumOf(BEGSize);
+    }
+
+    @Override
+    public int getResNum(int BEGSize) {
+        return BEGSize & 63;
+    }
+
+    @Override
+    public IVariantProperty getProperty(int groupNum, int resNum) {
+        return new VariantProperty(groupNum);
+    }
+
+    static class VariantProperty implements IVariantProperty {
+        /**
+         * 位点扩展属性方法
+         */
+        public boolean hasMiss;
+        public float P_REF;
+        public float P_ALT;
+        public int N_ALT;
+        public int N_ALLELE_I_SQUARE;
+        public final long[] N_ALLELE_NUM_EQ_1;
+        public final long[] N_ALLELE_NUM_EQ_2;
+        public final long[] validSampleFlags;
+        public final int wordNum;
+
+        public VariantProperty(int wordNum) {
+            this.N_ALLELE_NUM_EQ_1 = new long[wordNum];
+            this.N_ALLELE_NUM_EQ_2 = new long[wordNum];
+            this.validSampleFlags = new long[wordNum];
+            this.wordNum = wordNum;
+        }
+
+        @Override
+        public VariantProperty fillBitCodes(Variant variant) {
+            byte[] BEGs = variant.BEGs;
+
+            for (int i = 0; i < this.wordNum; i++) {
+                long eq1 = 0;
+                long eq2 = 0;
+                long valid = 0;
+
+                // 末尾不足 64 个样本的位保持为 0, 即标记为缺失
+                for (int j = i << 6, end = Math.min(j + 64, BEGs.length), bit = 0; j < end; j++, bit++) {
+                    byte begCode = BEGs[j];
+                    eq1 |= (long) GenotypeLD.VariantProperty.ALLELE_COUNT[begCode][0] << bit;
+                    eq2 |= (long) GenotypeLD.VariantProperty.ALLELE_COUNT[begCode][1] << bit;
+                    if (!BEGDecoder.isMiss(begCode)) {
+                        valid |= 1L << bit;
+                    }
+                }
+
+                this.N_ALLELE_NUM_EQ_1[i] = eq1;
+                this.N_ALLELE_NUM_EQ_2[i] = eq2;
+                this.validSampleFlags[i] = valid;
+            }
+
+            int validSampleNum = BitPlaneKernel.count(this.validSampleFlags, this.wordNum);
+            int count_ALLELE_NUM_EQ_1 = BitPlaneKernel.count(this.N_ALLELE_NUM_EQ_1, this.wordNum);
+            int count_ALLELE_NUM_EQ_2 = BitPlaneKernel.count(this.N_ALLELE_NUM_EQ_2, this.wordNum);
+            N_ALLELE_I_SQUARE = count_ALLELE_NUM_EQ_1 + (count_ALLELE_NUM_EQ_2 << 2);
+            N_ALT = count_ALLELE_NUM_EQ_1 + (count_ALLELE_NUM_EQ_2 << 1);
+
+            // 标记为无缺失基因型
+            hasMiss = validSampleNum != BEGs.length;
+
+            P_ALT = (float) (N_ALT) / (validSampleNum << 1);
+            P_REF = 1 - P_ALT;
+
+            return this;
+        }
+
+        /**
+         * 检查 MAF 是否满足要求
+         */
+        @Override
+        public boolean checkMaf(double maf) {
+            return P_ALT >= maf && P_REF >= maf;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package edu.sysu.pmglab.gbc.core.calculation.ld;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.gbc.coder.decoder.BEGDecoder;
+import edu.sysu.pmglab.gbc.constant.ChromosomeTags;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+
+/**
+ * @Description :长字位平面单倍型 LD 模型, 每个 long 保存 32 个样本 (64 个等位基因), 计算结果与 HaplotypeLD 完全一致
+ */
+
+enum HaplotypeBitPlaneLD implements ILDModel, ILDContext {
+    /**
+     * 长字位平面单倍型 LD 模型
+     */
+    INSTANCE;
+
+    @Override
+    public int calculateLDR2(VolumeByteStream lineCache, Variant variant1, Variant variant2, double minR2) {
+        VariantProperty propertyA = (VariantProperty) variant1.property;
+        VariantProperty propertyB = (VariantProperty) variant2.property;
+
+        int[] sums = new int[3];
+        int validAlleleNum = count(propertyA, propertyB, variant1.BEGs.length, sums);
+        if (validAlleleNum == 0) {
+            return 0;
+        }
+
+        float PA_ALT = (float) sums[0] / validAlleleNum;
+        float PB_ALT = (float) sums[1] / validAlleleNum;
+        float PA_REF = 1 - PA_ALT;
+        float PB_REF = 1 - PB_ALT;
+        float PAB_ALT = (float) sums[2] / validAlleleNum;
+
+        if (PA_ALT == 0 || PB_ALT == 0 || PA_REF == 0 || PB_REF == 0) {
+            return 0;
+        }
+
+        float D = (PAB_ALT - PA_ALT * PB_ALT);
+        float r2 = D * D / (PA_ALT * PB_ALT * PA_REF * PB_REF);
+
+        if (r2 < minR2) {
+            return 0;
+        }
+
+        float Dprime = D < 0 ? D / Math.min(PA_REF * PB_REF, PA_ALT * PB_ALT) : D / Math.min(PA_REF * PB_ALT, PA_ALT * PB_REF);
+        lineCache.reset();
+        formatterOut(lineCache, variant1.chromosome, variant1.position, variant2.position, validAlleleNum >> (2 - ChromosomeTags.getPloidy(variant1.chromosome)), D, Dprime, r2);
+        return lineCache.size();
+    }
+
+    @Override
+    public double calculateLDR2(Variant variant1, Variant variant2) {
+        int[] sums = new int[3];
+        int validAlleleNum = prepare(variant1, variant2, sums);
+        if (validAlleleNum == 0) {
+            return Double.NaN;
+        }
+
+        float PA_ALT = (float) sums[0] / validAlleleNum;
+        float PB_ALT = (float) sums[1] / validAlleleNum;
+        float PA_REF = 1 - PA_ALT;
+        float PB_REF = 1 - PB_ALT;
+        float PAB_ALT = (float) sums[2] / validAlleleNum;
+
+        if (PA_ALT == 0 || PB_ALT == 0 || PA_REF == 0 || PB_REF == 0) {
+            return Double.NaN;
+        }
+
+        float D = (PAB_ALT - PA_ALT * PB_ALT);
+        float r2 = D * D / (PA_ALT * PB_ALT * PA_REF * PB_REF);
+        return r2;
+    }
+
+    @Override
+    public double calculateLD(Variant variant1, Variant variant2) {
+        int[] sums = new int[3];
+        int validAlleleNum = prepare(variant1, variant2, sums);
+        if (validAlleleNum == 0) {
+            return Double.NaN;
+        }
+
+        float PA_ALT = (float) sums[0] / validAlleleNum;
+        float PB_ALT = (float) sums[1] / validAlleleNum;
+        float PA_REF = 1 - PA_ALT;
+        float PB_REF = 1 - PB_ALT;
+        float PAB_ALT = (float) sums[2] / validAlleleNum;
+
+        if (PA_ALT == 0 || PB_ALT == 0 || PA_REF == 0 || PB_REF == 0) {
+            return Double.NaN;
+        }
+
+        float D = (PAB_ALT - PA_ALT * PB_ALT);
+        return D / Math.sqrt(PA_ALT * PB_ALT * PA_REF * PB_REF);
+    }
+
+    /**
+     * 填充位平面并统计
+     *
+     * @param sums 两位点的统计量
+     * @return 有效等位基因个数
+     */
+    private int prepare(Variant variant1, Variant variant2, int[] sums) {
+        if (!(variant1.property instanceof VariantProperty)) {
+            variant1.property = getProperty(variant1.BEGs.length).fillBitCodes(variant1);
+        }
+
+        if (!(variant2.property instanceof VariantProperty)) {
+            variant2.property = getProperty(variant2.BEGs.length).fillBitCodes(variant2);
+        }
+
+        return count((VariantProperty) variant1.property, (VariantProperty) variant2.property, variant1.BEGs.length, sums);
+    }
+
+    /**
+     * 统计两位点的 countA_ALT, countB_ALT, countAB_ALT, 统计量由调用方的局部数组接收.
+     * 无缺失时 countA_ALT / validAlleleNum 与 HaplotypeLD 缓存的 P_ALT 相同
+     *
+     * @param sums 统计量 (长度为 3)
+     * @return 有效等位基因个数
+     */
+    private static int count(VariantProperty propertyA, VariantProperty propertyB, int subjectNum, int[] sums) {
+
+        if (propertyA.hasMiss || propertyB.hasMiss) {
+            // 至少有一个位点包含 miss 基因型时，需要在相交的有效等位基因上重新计算
+            long[] codesA = propertyA.bitCodes;
+            long[] codesB = propertyB.bitCodes;
+            long[] validA = propertyA.validAlleleFlags;
+            long[] validB = propertyB.validAlleleFlags;
+            int validAlleleNum = 0;
+            int countA_ALT = 0;
+            int countB_ALT = 0;
+            int countAB_ALT = 0;
+
+            for (int i = 0; i < propertyA.wordNum; i++) {
+                long validAlleleStatus = validA[i] & validB[i];
+                if (validAlleleStatus != 0) {
+                    validAlleleNum += Long.bitCount(validAlleleStatus);
+                    countA_ALT += Long.bitCount(codesA[i] & validAlleleStatus);
+                    countB_ALT += Long.bitCount(codesB[i] & validAlleleStatus);
+                    countAB_ALT += Long.bitCount(codesA[i] & codesB[i]);
+                }
+            }
+
+            sums[0] = countA_ALT;
+            sums[1] = countB_ALT;
+            sums[2] = countAB_ALT;
+            return validAlleleNum;
+        }
+
+        // 没有任何缺失，此时借助缓冲数据提升速度
+        sums[0] = propertyA.N_ALT;
+        sums[1] = propertyB.N_ALT;
+        sums[2] = BitPlaneKernel.andCount(propertyA.bitCodes, propertyB.bitCodes, propertyA.wordNum);
+        return subjectNum << 1;
+    }
+
+    @Override
+    public String getHeader() {
+        return HaplotypeLD.INSTANCE.getHeader();
+    }
+
+    @Override
+    public void formatterOut(VolumeByteStream lineCache, String chromosome, int pos1, int pos2, int validSampleNum, float... score) {
+        HaplotypeLD.INSTANCE.formatterOut(lineCache, chromosome, pos1, pos2, validSampleNum, score);
+    }
+
+    @Override
+    public String getExtension() {
+        return HaplotypeLD.INSTANCE.getExtension();
+    }
+
+    @Override
+    public String toString() {
+        return "Haplotype LD (Linkage disequilibrium coefficient r-square, 64-bit bit-plane kernel)";
+    }
+
+    @Override
+    public int getGroupNum(int BEGSize) {
+        return BitPlaneKernel.wordNumOf(BEGSize << 1);
+    }
+
+    @Override
+    public int getResNum(int BEGSize) {
+        return BEGSize & 31;
+    }
+
+    @Override
+    public IVariantProperty getProperty(int groupNum, int resNum) {
+        return new VariantProperty(groupNum);
+    }
+
+    static class VariantProperty implements IVariantProperty {
+        /**
+         * 位点扩展属性方法
+         */
+        public boolean hasMiss;
+        public float P_REF;
+        public float P_ALT;
+        public int N_ALT;
+        public final long[] bitCodes;
+        public final long[] validAlleleFlags;
+        public final int wordNum;
+
+        public VariantProperty(int wordNum) {
+            this.bitCodes = new long[wordNum];
+            this.validAlleleFlags = new long[wordNum];
+            this.wordNum = wordNum;
+        }
+
+        @Override
+        public VariantProperty fillBitCodes(Variant variant) {
+            byte[] BEGs = variant.BEGs;
+
+            for (int i = 0; i < this.wordNum; i++) {
+                long codes = 0;
+                long valid = 0;
+
+                // 末尾不足 32 个样本的位保持为 0, 即标记为缺失
+                for (int j = i << 5, end = Math.min(j + 32, BEGs.length), bit = 0; j < end; j++, bit += 2) {
+                    byte begCode = BEGs[j];
+                    codes |= (long) HaplotypeLD.VariantProperty.BIT_ENCODER[begCode] << bit;
+                    if (!BEGDecoder.isMiss(begCode)) {
+                        valid |= 3L << bit;
+                    }
+                }
+
+                this.bitCodes[i] = codes;
+                this.validAlleleFlags[i] = valid;
+            }
+
+            int validAllelesNum = BitPlaneKernel.count(this.validAlleleFlags, this.wordNum);
+            N_ALT = BitPlaneKernel.count(this.bitCodes, this.wordNum);
+
+            // 标记为无缺失基因型
+            hasMiss = validAllelesNum != (BEGs.length << 1);
+            P_ALT = (float) N_ALT / validAllelesNum;
+            P_REF = 1 - P_ALT;
+
+            return this;
+        }
+
+        /**
+         * 检查 MAF 是否满足要求
+         */
+        @Override
+        public boolean checkMaf(double maf) {
+            return P_ALT >= maf && P_REF >= maf;
+        }
+    }
+}
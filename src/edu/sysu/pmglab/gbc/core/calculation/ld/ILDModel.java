@@ -10,6 +10,12 @@ public interface ILDModel {
     HaplotypeLD HAPLOTYPE_LD = HaplotypeLD.INSTANCE;
     GenotypeLD GENOTYPE_LD = GenotypeLD.INSTANCE;
 
+    /**
+     * 64 位长字位平面实现, 结果与 HAPLOTYPE_LD / GENOTYPE_LD 完全一致; 样本数较大时 LDTask 会自动切换到该实现
+     */
+    HaplotypeBitPlaneLD HAPLOTYPE_BITPLANE_LD = HaplotypeBitPlaneLD.INSTANCE;
+    GenotypeBitPlaneLD GENOTYPE_BITPLANE_LD = GenotypeBitPlaneLD.INSTANCE;
+
     /**
      * 计算两位点的 LD 系数 R2
      *
@@ -0,0 +1,314 @@
+package edu.sysu.pmglab.gbc.core.calculation.ld;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.container.array.Array;
+import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNode;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNodes;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.GTBReader;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @Description :LD 任务调度器. 按位点密度将染色体切分为 tile, 每个 tile 的位点只解码一次, 并作为边界窗口与前面的 tile 共享;
+ * 解码与计算在 ForkJoinPool 上运行 (工作窃取), 输出按 tile 顺序由 LDKernel 写出
+ */
+
+class LDScheduler implements AutoCloseable {
+    /**
+     * 每个线程平均分配的 tile 个数
+     */
+    static final int TILES_PER_THREAD = 4;
+
+    final LDKernel kernel;
+    final Array<TaskNode> tiles;
+
+    /**
+     * 计算 tile 需要用到的最后一个 tile 的索引 (边界窗口所在的 tile)
+     */
+    final int[] lastTileIndexes;
+
+    final ForkJoinPool pool;
+    final CompletableFuture<Array<Variant>>[] decodedTiles;
+    final CompletableFuture<VolumeByteStream>[] computedTiles;
+
+    /**
+     * 已提交解码的 tile 个数, 已提交计算的 tile 个数
+     */
+    int submittedNum = 0;
+    int scheduledNum = 0;
+    final int lookahead;
+
+    /**
+     * 可复用的读取器及位点
+     */
+    final ConcurrentLinkedQueue<GTBReader> readers = new ConcurrentLinkedQueue<>();
+    final ConcurrentLinkedQueue<Variant> freeVariants = new ConcurrentLinkedQueue<>();
+
+    @SuppressWarnings("unchecked")
+    LDScheduler(LDKernel kernel, Map<String, int[]> ranges) {
+        this.kernel = kernel;
+        this.tiles = plan(kernel, ranges);
+
+        int tileNum = this.tiles.size();
+        int windowSizeBp = kernel.task.getWindowSizeBp();
+        this.lastTileIndexes = new int[tileNum];
+        for (int i = 0, last = 0; i < tileNum; i++) {
+            TaskNode tile = this.tiles.get(i);
+            last = Math.max(last, i);
+            while (last + 1 < tileNum && this.tiles.get(last + 1).chromosome.equals(tile.chromosome)
+                    && (long) this.tiles.get(last + 1).minPos - tile.maxPos <= windowSizeBp) {
+                last++;
+            }
+            this.lastTileIndexes[i] = last;
+        }
+
+        this.pool = new ForkJoinPool(kernel.task.getThreads());
+        this.decodedTiles = new CompletableFuture[tileNum];
+        this.computedTiles = new CompletableFuture[tileNum];
+        this.lookahead = kernel.task.getThreads() << 1;
+    }
+
+    /**
+     * 按照位点密度切分 tile, tile 的边界与节点对齐, 相邻 tile 的位置范围不重叠
+     */
+    static Array<TaskNode> plan(LDKernel kernel, Map<String, int[]> ranges) {
+        Array<TaskNode> tiles = new Array<>(true);
+        int threads = kernel.task.getThreads();
+
+        for (String chromosome : kernel.manager.getChromosomeList()) {
+            if (!ranges.containsKey(chromosome)) {
+                continue;
+            }
+
+            // 染色体节点
+            GTBNodes nodes = kernel.manager.getGTBNodes(chromosome);
+            int finalStartPos;
+            int finalEndPos;
+
+            if (ranges.get(chromosome) != null) {
+                finalStartPos = Math.max(ranges.get(chromosome)[0], nodes.get(0).minPos);
+                finalEndPos = Math.min(ranges.get(chromosome)[1], nodes.get(-1).maxPos);
+            } else {
+                finalStartPos = nodes.get(0).minPos;
+                finalEndPos = nodes.get(-1).maxPos;
+            }
+
+            if (finalStartPos > finalEndPos) {
+                continue;
+            }
+
+            // 起止节点索引及范围内的位点总数
+            int startNodeIndex = nodes.lowerBound(finalStartPos, 0, nodes.numOfNodes() - 1);
+            if (startNodeIndex >= nodes.numOfNodes()) {
+                continue;
+            }
+
+            int endNodeIndex = startNodeIndex;
+            long variantNum = 0;
+            for (int i = startNodeIndex; i < nodes.numOfNodes() && nodes.get(i).minPos <= finalEndPos; i++) {
+                endNodeIndex = i;
+                variantNum += nodes.get(i).numOfVariants();
+            }
+
+            // 每个 tile 的目标位点数
+            int tileSize = (int) Math.max(1, Math.min(kernel.maxTileSize, (variantNum + (long) threads * TILES_PER_THREAD - 1) / ((long) threads * TILES_PER_THREAD)));
+
+            int tileStartPos = finalStartPos;
+            int accumulated = 0;
+            for (int i = startNodeIndex; i <= endNodeIndex; i++) {
+                GTBNode node = nodes.get(i);
+                accumulated += node.numOfVariants();
+
+                if ((accumulated >= tileSize || i == endNodeIndex) && node.maxPos >= tileStartPos) {
+                    int tileEndPos = i == endNodeIndex ? finalEndPos : Math.min(node.maxPos, finalEndPos);
+                    tiles.add(TaskNode.of(chromosome, tileStartPos, tileEndPos, finalEndPos));
+                    accumulated = 0;
+
+                    if (tileEndPos >= finalEndPos) {
+                        break;
+                    }
+                    tileStartPos = tileEndPos + 1;
+                }
+            }
+        }
+
+        return tiles;
+    }
+
+    /**
+     * tile 个数
+     */
+    int numOfTiles() {
+        return this.tiles.size();
+    }
+
+    /**
+     * 等待 tile 计算完成, 获取其输出数据
+     *
+     * @param tileIndex tile 索引
+     */
+    VolumeByteStream get(int tileIndex) {
+        CompletableFuture<VolumeByteStream> future;
+        synchronized (this) {
+            submitUntil(Math.max(this.lastTileIndexes[tileIndex], tileIndex + this.lookahead));
+            future = this.computedTiles[tileIndex];
+        }
+        return future.join();
+    }
+
+    /**
+     * 释放已写出的 tile. tile 按顺序写出, 此时前面的 tile 均已计算完成, 不再引用该 tile 的位点
+     *
+     * @param tileIndex tile 索引
+     */
+    void release(int tileIndex) {
+        VolumeByteStream output;
+        Array<Variant> variants;
+        synchronized (this) {
+            output = this.computedTiles[tileIndex].join();
+            variants = this.decodedTiles[tileIndex].join();
+            this.computedTiles[tileIndex] = null;
+            this.decodedTiles[tileIndex] = null;
+        }
+
+        output.close();
+        for (Variant variant : variants) {
+            this.freeVariants.add(variant);
+        }
+    }
+
+    /**
+     * 提交 [0, tileIndex] 范围内的 tile 解码任务, 并为边界窗口已就绪的 tile 提交计算任务
+     */
+    private void submitUntil(int tileIndex) {
+        while (this.submittedNum <= tileIndex && this.submittedNum < this.decodedTiles.length) {
+            TaskNode tile = this.tiles.get(this.submittedNum);
+            this.decodedTiles[this.submittedNum] = CompletableFuture.supplyAsync(() -> decode(tile), this.pool);
+            this.submittedNum++;
+        }
+
+        while (this.scheduledNum < this.submittedNum && this.lastTileIndexes[this.scheduledNum] < this.submittedNum) {
+            int index = this.scheduledNum;
+            CompletableFuture<Array<Variant>>[] window = Arrays.copyOfRange(this.decodedTiles, index, this.lastTileIndexes[index] + 1);
+            this.computedTiles[index] = CompletableFuture.allOf(window).thenApplyAsync(ignored -> compute(window), this.pool);
+            this.scheduledNum++;
+        }
+    }
+
+    /**
+     * 解码 tile 范围内通过过滤的二等位基因位点, 并填充位编码
+     */
+    private Array<Variant> decode(TaskNode tile) {
+        GTBReader reader = this.readers.poll();
+        try {
+            if (reader == null) {
+                reader = new GTBReader(this.kernel.manager);
+                if (this.kernel.task.getSubjects() != null) {
+                    reader.selectSubjects(this.kernel.task.getSubjects());
+                }
+            }
+
+            reader.limit(tile.chromosome);
+            reader.search(tile.chromosome, tile.minPos);
+
+            Array<Variant> variants = new Array<>(true);
+            Variant variant = newVariant();
+            while (reader.readVariant(variant) && variant.position <= tile.maxPos) {
+                if (variant.position < tile.minPos || variant.getAlternativeAlleleNum() != 2) {
+                    continue;
+                }
+
+                // 确保所有的 input 位点都是二等位基因位点，并进行编码转换
+                IVariantProperty property = (IVariantProperty) variant.property;
+                property.fillBitCodes(variant);
+
+                if (property.checkMaf(this.kernel.task.getMAF())) {
+                    variants.add(variant);
+                    variant = newVariant();
+                }
+            }
+
+            this.freeVariants.add(variant);
+            return variants;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (reader != null) {
+                this.readers.add(reader);
+            }
+        }
+    }
+
+    /**
+     * 计算 tile 内位点与其窗口内位点 (可能位于后续 tile) 的 LD 系数
+     *
+     * @param window 该 tile 及其边界窗口所在的后续 tile 的解码结果 (均已完成)
+     */
+    private VolumeByteStream compute(CompletableFuture<Array<Variant>>[] window) {
+        ILDContext ldModel = this.kernel.ldModel;
+        int windowSizeBp = this.kernel.task.getWindowSizeBp();
+        double minR2 = this.kernel.task.getMinR2();
+
+        Array<Variant> variants = window[0].join();
+        VolumeByteStream output = new VolumeByteStream(1 << 16);
+        VolumeByteStream lineCache = new VolumeByteStream(128);
+
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant1 = variants.get(i);
+            int from = i + 1;
+            out:
+            for (int j = 0; j < window.length; j++) {
+                Array<Variant> candidates = window[j].join();
+                for (int k = j == 0 ? from : 0; k < candidates.size(); k++) {
+                    Variant variant2 = candidates.get(k);
+                    if (variant1.position < variant2.position) {
+                        if (variant2.position - variant1.position > windowSizeBp) {
+                            break out;
+                        }
+
+                        if (ldModel.calculateLDR2(lineCache, variant1, variant2, minR2) != 0) {
+                            if (output.remaining() <= lineCache.size()) {
+                                output.expansionTo(Math.max(output.getCapacity() << 1, output.size() + lineCache.size() + 1));
+                            }
+                            output.write(ByteCode.NEWLINE);
+                            output.write(lineCache);
+                        }
+                    }
+                }
+            }
+        }
+
+        lineCache.close();
+        return output;
+    }
+
+    private Variant newVariant() {
+        Variant variant = this.freeVariants.poll();
+        if (variant == null) {
+            variant = new Variant();
+            variant.property = this.kernel.ldModel.getProperty(this.kernel.validSampleNum);
+        }
+        return variant;
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+        GTBReader reader;
+        while ((reader = this.readers.poll()) != null) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+        this.freeVariants.clear();
+    }
+}
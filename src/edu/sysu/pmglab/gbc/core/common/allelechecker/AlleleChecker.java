@@ -5,6 +5,7 @@ import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.Set;
 
 /**
  * @author suranyi
@@ -34,6 +35,15 @@ public interface AlleleChecker extends AutoCloseable, Cloneable {
      */
     void setPosition(HashSet<Integer> position);
 
+    /**
+     * 设置比对位置条件 (任意集合实现, 如 PositionSet). 默认复制为 HashSet, 实现类可直接使用传入的集合以避免复制
+     *
+     * @param position 位置值
+     */
+    default void setPosition(Set<Integer> position) {
+        setPosition(position == null || position instanceof HashSet ? (HashSet<Integer>) position : new HashSet<>(position));
+    }
+
     /**
      * 克隆自身
      */
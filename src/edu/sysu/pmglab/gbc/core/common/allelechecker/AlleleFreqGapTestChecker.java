@@ -5,6 +5,7 @@ import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBManager;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 
 import java.util.HashSet;
+import java.util.Set;
 
 /**
  * @author suranyi
@@ -55,6 +56,11 @@ public class AlleleFreqGapTestChecker implements AlleleChecker {
 
     }
 
+    @Override
+    public void setPosition(Set<Integer> position) {
+
+    }
+
     @Override
     public String toString() {
         if (this.maf == 1) {
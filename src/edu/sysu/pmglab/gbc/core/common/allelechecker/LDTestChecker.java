@@ -58,7 +58,7 @@ public class LDTestChecker implements AlleleChecker {
      */
     GTBReader reader1;
     GTBReader reader2;
-    HashSet<Integer> position;
+    Set<Integer> position;
 
     public LDTestChecker() {
     }
@@ -228,9 +228,18 @@ public class LDTestChecker implements AlleleChecker {
         this.position = position;
     }
 
+    /**
+     * 设置比对位置条件, 直接使用传入的集合 (如 PositionSet)
+     *
+     * @param position 位置值
+     */
+    @Override
+    public void setPosition(Set<Integer> position) {
+        this.position = position;
+    }
+
     @Override
     public void close() throws Exception {
-        this.position.clear();
         this.position = null;
         if (this.reader1 != null) {
             this.reader1.close();
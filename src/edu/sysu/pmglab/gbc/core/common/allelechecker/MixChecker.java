@@ -5,6 +5,7 @@ import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.Set;
 
 
 /**
@@ -52,6 +53,18 @@ public class MixChecker implements AlleleChecker {
         }
     }
 
+    /**
+     * 设置比对位置条件, 传入的集合原样交给各检查器
+     *
+     * @param position 位置值
+     */
+    @Override
+    public void setPosition(Set<Integer> position) {
+        for (AlleleChecker checker : checkers) {
+            checker.setPosition(position);
+        }
+    }
+
 
     @Override
     public String toString() {
@@ -0,0 +1,94 @@
+package edu.sysu.pmglab.gbc.core.common.switcher;
+
+import edu.sysu.pmglab.container.array.Array;
+
+/**
+ * @Description :自适应 AMDO 的统计信息, 记录每个块在重排列前后的相邻位点差异数 (采样样本上) 及重排列耗时
+ */
+
+public class AMDOStatistics {
+    final Array<BlockRecord> records = new Array<>(1024, true);
+    long originalCost;
+    long reorderedCost;
+    long finalCost;
+    long elapsedNanos;
+    int reorderedBlockNum;
+
+    synchronized void add(String chromosome, int position, int variantsNum, long originalCost, long reorderedCost, boolean reordered, long elapsedNanos) {
+        this.records.add(new BlockRecord(chromosome, position, variantsNum, originalCost, reorderedCost, reordered, elapsedNanos));
+        this.originalCost += originalCost;
+        this.reorderedCost += reorderedCost;
+        this.finalCost += reordered ? reorderedCost : originalCost;
+        this.elapsedNanos += elapsedNanos;
+        if (reordered) {
+            this.reorderedBlockNum++;
+        }
+    }
+
+    /**
+     * 获取块的个数
+     */
+    public synchronized int numOfBlocks() {
+        return this.records.size();
+    }
+
+    /**
+     * 获取进行了重排列的块的个数
+     */
+    public synchronized int numOfReorderedBlocks() {
+        return this.reorderedBlockNum;
+    }
+
+    /**
+     * 获取每个块的统计信息 (按块完成压缩的顺序)
+     */
+    public synchronized BlockRecord[] getRecords() {
+        return this.records.toArray(new BlockRecord[0]);
+    }
+
+    /**
+     * 清除统计信息
+     */
+    public synchronized void clear() {
+        this.records.clear();
+        this.originalCost = 0;
+        this.reorderedCost = 0;
+        this.finalCost = 0;
+        this.elapsedNanos = 0;
+        this.reorderedBlockNum = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int blockNum = this.records.size();
+        return String.format("Adaptive AMDO: %d blocks, %d reordered, %d skipped; sampled discrepancy %d -> %d (%.2f%%); reordering time: %.3f s",
+                blockNum, this.reorderedBlockNum, blockNum - this.reorderedBlockNum, this.originalCost, this.finalCost,
+                this.originalCost == 0 ? 0 : 100.0 * (this.finalCost - this.originalCost) / this.originalCost, this.elapsedNanos / 1e9);
+    }
+
+    public static class BlockRecord {
+        public final String chromosome;
+        public final int position;
+        public final int variantsNum;
+        public final long originalCost;
+        public final long reorderedCost;
+        public final boolean reordered;
+        public final long elapsedNanos;
+
+        BlockRecord(String chromosome, int position, int variantsNum, long originalCost, long reorderedCost, boolean reordered, long elapsedNanos) {
+            this.chromosome = chromosome;
+            this.position = position;
+            this.variantsNum = variantsNum;
+            this.originalCost = originalCost;
+            this.reorderedCost = reorderedCost;
+            this.reordered = reordered;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("chr%s:%d\tvariants=%d\tdiscrepancy=%d -> %d\t%s\ttime=%.3f ms", this.chromosome, this.position, this.variantsNum,
+                    this.originalCost, this.reorderedCost, this.reordered ? "reordered" : "skipped", this.elapsedNanos / 1e6);
+        }
+    }
+}
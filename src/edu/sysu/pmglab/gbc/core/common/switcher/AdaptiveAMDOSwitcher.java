@@ -0,0 +1,206 @@
+package edu.sysu.pmglab.gbc.core.common.switcher;
+
+import edu.sysu.pmglab.gbc.coder.encoder.BEGEncoder;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+
+import java.util.Arrays;
+
+/**
+ * @Description :自适应特征交换器. 在确定性的样本子集上计算 AMDO 特征, 特征量化后与位点索引打包为 long 键并进行基数排序;
+ * 以相邻位点的基因型差异数估计重排列的收益, 收益不足时只按编码器索引分组. 每个压缩线程使用一个实例
+ */
+
+class AdaptiveAMDOSwitcher implements ISwitcher {
+    /**
+     * 最大采样样本数
+     */
+    static final int MAX_SAMPLE_SIZE = 4096;
+
+    /**
+     * 打包键的结构: [61] 编码器索引, [16, 61) 3 个 15 位的窗口特征, [0, 16) 位点索引
+     */
+    static final int FEATURE_WINDOWS = 3;
+    static final int FEATURE_BITS = 15;
+    static final int FEATURE_MAX = (1 << FEATURE_BITS) - 1;
+    static final int INDEX_BITS = 16;
+    static final int ENCODER_INDEX_SHIFT = INDEX_BITS + FEATURE_WINDOWS * FEATURE_BITS;
+
+    /**
+     * 重排列后的差异数至少降低该比例时才进行重排列
+     */
+    static final double MIN_GAIN = 0.02;
+
+    static final long LOW_BITS = 0x0101010101010101L;
+
+    final int sampleSize;
+    final int[] sampleIndexes;
+    final int windowLength;
+    final int rowLength;
+    final AMDOStatistics statistics;
+
+    /**
+     * 缓冲区: 采样基因型 (每个位点 rowLength 个 long), 排序键, 排序顺序
+     */
+    long[] samples = new long[0];
+    long[] keys = new long[0];
+    long[] buffer = new long[0];
+    int[] order = new int[0];
+    int[] partitionOrder = new int[0];
+    Variant<AMDOFeature>[] cache = new Variant[0];
+
+    AdaptiveAMDOSwitcher(int validSubjectNum, AMDOStatistics statistics) {
+        this.sampleSize = Math.min(validSubjectNum, MAX_SAMPLE_SIZE);
+        this.sampleIndexes = new int[this.sampleSize];
+        for (int i = 0; i < this.sampleSize; i++) {
+            // 等距采样, 与样本内容无关
+            this.sampleIndexes[i] = (int) ((long) i * validSubjectNum / this.sampleSize);
+        }
+        this.windowLength = Math.max(1, (this.sampleSize + FEATURE_WINDOWS - 1) / FEATURE_WINDOWS);
+        this.rowLength = (this.sampleSize + 7) >>> 3;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void switchingRow(BEGEncoder encoder, Variant<AMDOFeature>[] variants, int variantsNum) {
+        if (variantsNum > (1 << INDEX_BITS)) {
+            throw new IllegalArgumentException("block size " + variantsNum + " is out of range [1, " + (1 << INDEX_BITS) + "]");
+        }
+
+        long start = System.nanoTime();
+        ensureCapacity(variantsNum);
+
+        // 采样并计算打包键
+        long maxFeature = Math.max(1, 2L * this.windowLength * (this.windowLength + 1) / 2);
+        for (int i = 0; i < variantsNum; i++) {
+            byte[] BEGs = variants[i].BEGs;
+            int encoderIndex = variants[i].property.encoderIndex;
+            long key = ((long) encoderIndex << ENCODER_INDEX_SHIFT) | i;
+
+            int rowStart = i * this.rowLength;
+            long word = 0;
+            for (int w = 0; w < FEATURE_WINDOWS; w++) {
+                long feature = 0;
+                int upBound = Math.min(this.windowLength * (w + 1), this.sampleSize);
+                for (int j = this.windowLength * w; j < upBound; j++) {
+                    byte code = BEGs[this.sampleIndexes[j]];
+                    feature += encoder.scoreOf(code & 0xFF) * (upBound - j);
+                    word |= (long) (code & 0xFF) << ((j & 7) << 3);
+                    if ((j & 7) == 7) {
+                        this.samples[rowStart + (j >>> 3)] = word;
+                        word = 0;
+                    }
+                }
+
+                // 二等位基因位点按特征降序排列, 多等位基因位点按特征升序排列
+                int quantized = (int) Math.min(FEATURE_MAX, feature * FEATURE_MAX / maxFeature);
+                if (encoderIndex == 0) {
+                    quantized = FEATURE_MAX - quantized;
+                }
+                key |= (long) quantized << (INDEX_BITS + (FEATURE_WINDOWS - 1 - w) * FEATURE_BITS);
+            }
+            if ((this.sampleSize & 7) != 0) {
+                this.samples[rowStart + this.rowLength - 1] = word;
+            }
+            this.keys[i] = key;
+        }
+
+        // 按编码器索引稳定分组的顺序 (不重排列时的顺序)
+        int partitionSize = 0;
+        for (int encoderIndex = 0; encoderIndex < 2; encoderIndex++) {
+            for (int i = 0; i < variantsNum; i++) {
+                if ((this.keys[i] >>> ENCODER_INDEX_SHIFT) == encoderIndex) {
+                    this.partitionOrder[partitionSize++] = i;
+                }
+            }
+        }
+
+        // 基数排序 (键的低位为位点索引, 稳定排序特征位即可)
+        radixSort(this.keys, this.buffer, variantsNum);
+        for (int i = 0; i < variantsNum; i++) {
+            this.order[i] = (int) (this.keys[i] & ((1 << INDEX_BITS) - 1));
+        }
+
+        // 估计重排列的收益
+        long originalCost = discrepancy(this.partitionOrder, variantsNum);
+        long reorderedCost = discrepancy(this.order, variantsNum);
+        boolean reordered = reorderedCost < originalCost * (1 - MIN_GAIN);
+        int[] finalOrder = reordered ? this.order : this.partitionOrder;
+
+        System.arraycopy(variants, 0, this.cache, 0, variantsNum);
+        for (int i = 0; i < variantsNum; i++) {
+            variants[i] = this.cache[finalOrder[i]];
+        }
+
+        if (this.statistics != null) {
+            this.statistics.add(variants[0].chromosome, variants[0].position, variantsNum, originalCost, reorderedCost, reordered, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 相邻位点在采样样本上的基因型差异总数, 作为块熵的快速估计
+     */
+    private long discrepancy(int[] order, int variantsNum) {
+        long count = 0;
+        for (int i = 1; i < variantsNum; i++) {
+            int row1 = order[i - 1] * this.rowLength;
+            int row2 = order[i] * this.rowLength;
+            for (int j = 0; j < this.rowLength; j++) {
+                long diff = this.samples[row1 + j] ^ this.samples[row2 + j];
+                diff |= diff >>> 4;
+                diff |= diff >>> 2;
+                diff |= diff >>> 1;
+                count += Long.bitCount(diff & LOW_BITS);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * LSD 基数排序 (8 位一趟), 只处理索引位以上的位, 所有键在某一趟取值相同时跳过该趟
+     */
+    static void radixSort(long[] keys, long[] buffer, int length) {
+        int[] counts = new int[256];
+        long[] src = keys;
+        long[] dst = buffer;
+
+        for (int shift = INDEX_BITS; shift < ENCODER_INDEX_SHIFT + 1; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) {
+                counts[(int) (src[i] >>> shift) & 0xFF]++;
+            }
+
+            if (counts[(int) (src[0] >>> shift) & 0xFF] == length) {
+                continue;
+            }
+
+            for (int i = 0, sum = 0; i < 256; i++) {
+                int count = counts[i];
+                counts[i] = sum;
+                sum += count;
+            }
+
+            for (int i = 0; i < length; i++) {
+                dst[counts[(int) (src[i] >>> shift) & 0xFF]++] = src[i];
+            }
+
+            long[] temp = src;
+            src = dst;
+            dst = temp;
+        }
+
+        if (src != keys) {
+            System.arraycopy(src, 0, keys, 0, length);
+        }
+    }
+
+    private void ensureCapacity(int variantsNum) {
+        if (this.keys.length < variantsNum) {
+            this.samples = new long[variantsNum * this.rowLength];
+            this.keys = new long[variantsNum];
+            this.buffer = new long[variantsNum];
+            this.order = new int[variantsNum];
+            this.partitionOrder = new int[variantsNum];
+            this.cache = new Variant[variantsNum];
+        }
+    }
+}
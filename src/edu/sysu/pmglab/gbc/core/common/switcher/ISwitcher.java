@@ -27,6 +27,22 @@ public interface ISwitcher {
         return permutation ? AMDOSwitcher.INSTANCE : EmptySwitcher.INSTANCE;
     }
 
+    /**
+     * 构造器，初始化交换器
+     * @param permutation 是否进行重排列
+     * @param adaptive 是否使用自适应重排列 (采样特征, 收益不足时跳过重排列)
+     * @param validSubjectNum 有效样本个数
+     * @param statistics 自适应重排列的统计信息, 可以为 null
+     * @return 根据是否重排列信息获取对应的交换器
+     */
+    static ISwitcher getInstance(boolean permutation, boolean adaptive, int validSubjectNum, AMDOStatistics statistics) {
+        if (permutation && adaptive) {
+            return new AdaptiveAMDOSwitcher(validSubjectNum, statistics);
+        }
+
+        return getInstance(permutation);
+    }
+
     /**
      * 交换，获得新的索引
      * @param encoder 编码器
@@ -0,0 +1,136 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import edu.sysu.pmglab.compressor.ICompressor;
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOutputParam;
+import edu.sysu.pmglab.unifyIO.FileStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @Description :allele 字典训练器. 读取 VCF 文件开头的位点, 按 allele 数据段的格式 (REF\tALT/) 组织为训练样本, 前一半位点用于训练 ZSTD 字典,
+ * 后一半位点按实际块大小评估字典的收益, 收益不足以抵消字典本身的大小时返回 null (所有 allele 数据段使用通用压缩器)
+ */
+
+class AlleleDictionaryTrainer {
+    /**
+     * 字典大小, 最大采样位点数, 每个训练样本包含的位点数
+     */
+    static final int DICTIONARY_SIZE = 16 << 10;
+    static final int MAX_SAMPLE_VARIANTS = 1 << 16;
+    static final int VARIANTS_PER_SAMPLE = 256;
+
+    /**
+     * 训练字典所需的最少样本个数
+     */
+    static final int MIN_SAMPLE_NUM = 16;
+
+    /**
+     * 采样未覆盖整个文件时, 字典压缩的数据量至少降低该比例才使用字典
+     */
+    static final double MIN_GAIN = 0.02;
+
+    /**
+     * 从 VCF 文件中训练 allele 字典
+     *
+     * @param file        VCF 文件 (可以是 gz 或 bgz 压缩格式)
+     * @param blockSize   块大小, 用于评估字典的收益
+     * @param outputParam 输出参数 (压缩器及压缩级别)
+     * @return 字典, 无法训练或收益不足时返回 null
+     */
+    static byte[] train(File file, int blockSize, GTBOutputParam outputParam) throws IOException {
+        VolumeByteStream lineCache = new VolumeByteStream(2 << 20);
+        VolumeByteStream alleles = new VolumeByteStream(MAX_SAMPLE_VARIANTS << 3);
+        int[] ends = new int[MAX_SAMPLE_VARIANTS];
+        int variantNum = 0;
+        boolean finished = true;
+
+        try (FileStream fileStream = new FileStream(file, file.withExtension(".gz") ? FileStream.GZIP_READER : FileStream.DEFAULT_READER)) {
+            while (fileStream.readLine(lineCache) != -1) {
+                if (lineCache.size() == 0 || lineCache.cacheOf(0) == ByteCode.NUMBER_SIGN) {
+                    lineCache.reset();
+                    continue;
+                }
+
+                if (variantNum == MAX_SAMPLE_VARIANTS) {
+                    finished = false;
+                    break;
+                }
+
+                // REF, ALT 分别为第 4, 5 列
+                int refStart = lineCache.indexOfN(ByteCode.TAB, 0, 3) + 1;
+                int altStart = refStart > 0 ? lineCache.indexOf(ByteCode.TAB, refStart) + 1 : 0;
+                int altEnd = altStart > 0 ? lineCache.indexOf(ByteCode.TAB, altStart) : -1;
+                if (altEnd != -1) {
+                    alleles.writeSafety(lineCache.cacheOf(refStart, altEnd));
+                    alleles.writeSafety(ByteCode.SLASH);
+                    ends[variantNum++] = alleles.size();
+                }
+                lineCache.reset();
+            }
+        } finally {
+            lineCache.close();
+        }
+
+        try {
+            int sampleNum = (variantNum + VARIANTS_PER_SAMPLE - 1) / VARIANTS_PER_SAMPLE;
+            if (sampleNum < MIN_SAMPLE_NUM) {
+                return null;
+            }
+
+            // 使用前一半位点训练字典
+            int trainSampleNum = sampleNum >> 1;
+            int trainVariantNum = trainSampleNum * VARIANTS_PER_SAMPLE;
+            byte[][] samples = new byte[trainSampleNum][];
+            for (int i = 0; i < trainSampleNum; i++) {
+                samples[i] = slice(alleles, ends, i * VARIANTS_PER_SAMPLE, (i + 1) * VARIANTS_PER_SAMPLE);
+            }
+
+            byte[] dictionary = new byte[DICTIONARY_SIZE];
+            long size = Zstd.trainFromBuffer(samples, dictionary);
+            if (Zstd.isError(size) || size <= 0) {
+                // 样本过于单一等原因导致训练失败
+                return null;
+            }
+            dictionary = size == DICTIONARY_SIZE ? dictionary : Arrays.copyOf(dictionary, (int) size);
+
+            // 使用后一半位点, 按块大小评估字典的收益 (与 GTBCompressionContext 一致, 每个数据段选择较小的压缩结果)
+            long plainSize = 0;
+            long selectedSize = 0;
+            int zstdIndex = ICompressor.getCompressorIndex("ZSTD");
+            try (ICompressor compressor = ICompressor.getInstance(outputParam.getCompressor(), outputParam.getCompressionLevel(), alleles.size());
+                 ZstdCompressCtx compressCtx = new ZstdCompressCtx()) {
+                compressCtx.setLevel(outputParam.getCompressor() == zstdIndex ? outputParam.getCompressionLevel() : ICompressor.getDefaultCompressionLevel(zstdIndex));
+                compressCtx.loadDict(dictionary);
+                for (int start = trainVariantNum; start < variantNum; start += blockSize) {
+                    byte[] segment = slice(alleles, ends, start, Math.min(variantNum, start + blockSize));
+                    int compressedSize = compressor.compress(segment, 0, segment.length);
+                    compressor.reset();
+                    plainSize += compressedSize;
+                    selectedSize += Math.min(compressedSize, compressCtx.compress(segment).length);
+                }
+            }
+
+            // 估计整个采样范围内的收益
+            long saved = (plainSize - selectedSize) * variantNum / (variantNum - trainVariantNum);
+            if (saved > dictionary.length || (!finished && plainSize - selectedSize >= plainSize * MIN_GAIN)) {
+                return dictionary;
+            }
+            return null;
+        } finally {
+            alleles.close();
+        }
+    }
+
+    /**
+     * 截取 [start, end) 位点的 allele 数据
+     */
+    private static byte[] slice(VolumeByteStream alleles, int[] ends, int start, int end) {
+        return alleles.cacheOf(start == 0 ? 0 : ends[start - 1], ends[end - 1]);
+    }
+}
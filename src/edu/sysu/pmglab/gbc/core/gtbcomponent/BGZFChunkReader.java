@@ -0,0 +1,309 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.unifyIO.FileStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * @Description :BGZF 分块读取器. 按 BGZF 成员边界将文件切分为与线程数相同的区间, 每个区间由一个读取器按成员边界切分为 chunk,
+ * chunk 的解压在线程池中进行; 跨越 chunk 边界的行通过 carry 链拼接. 区间内的数据读取完毕后, 读取器继续逐个成员地读取区间之后的数据
+ * (用于补全跨越区间边界的行), 直至文件结束
+ */
+
+class BGZFChunkReader implements Closeable {
+    /**
+     * chunk 的压缩数据大小范围
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+    static final int MAX_CHUNK_SIZE = 1 << 22;
+
+    /**
+     * 区间的最小压缩数据大小, 较小的文件不切分 (每个区间需要一个编码线程及其写出器)
+     */
+    static final int MIN_RANGE_SIZE = 1 << 21;
+
+    /**
+     * BGZF 成员头部长度 (含 BC 扩展字段) 及最大成员长度
+     */
+    static final int HEADER_SIZE = 18;
+    static final int MAX_MEMBER_SIZE = 1 << 16;
+
+    static final byte[] EMPTY = new byte[0];
+
+    final FileStream input;
+    final int chunkSize;
+    final long end;
+    final Executor executor;
+    final byte[] header = new byte[HEADER_SIZE];
+
+    /**
+     * 下一个 chunk 的序号及其在文件中的偏移量, 上一个 chunk (用于 carry 链)
+     */
+    long index = 0;
+    long position;
+    Chunk previous;
+    boolean finished = false;
+
+    /**
+     * @param file      BGZF 文件
+     * @param start     区间的起始位置 (成员的起始偏移量)
+     * @param end       区间的终止位置 (不包含)
+     * @param chunkSize chunk 的压缩数据大小
+     * @param executor  解压线程池
+     */
+    BGZFChunkReader(File file, long start, long end, int chunkSize, Executor executor) throws IOException {
+        this.input = file.open(FileStream.CHANNEL_READER);
+        this.input.seek(start);
+        this.position = start;
+        this.end = end;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    /**
+     * 根据文件大小及并行线程数确定 chunk 大小
+     */
+    static int getChunkSize(File file, int nThreads) throws IOException {
+        return (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, file.size() / ((long) nThreads << 2)));
+    }
+
+    /**
+     * 按 BGZF 成员边界将文件切分为若干个区间 (每个区间不小于 MIN_RANGE_SIZE, 文件较小时区间数少于线程数)
+     *
+     * @param file     BGZF 文件
+     * @param nThreads 并行线程数
+     * @return 区间边界, 第 i 个区间为 [bounds[i], bounds[i + 1])
+     */
+    static long[] split(File file, int nThreads) throws IOException {
+        long fileSize = file.size();
+        nThreads = (int) Math.max(1, Math.min(nThreads, fileSize / MIN_RANGE_SIZE));
+        long[] bounds = new long[nThreads + 1];
+        int count = 1;
+        byte[] window = new byte[(MAX_MEMBER_SIZE << 1) + HEADER_SIZE];
+
+        try (FileStream fileStream = file.open(FileStream.CHANNEL_READER)) {
+            for (int i = 1; i < nThreads; i++) {
+                long bound = seekMember(fileStream, Math.max(fileSize / nThreads * i, bounds[count - 1] + 1), fileSize, window);
+                if (bound < fileSize) {
+                    bounds[count++] = bound;
+                }
+            }
+        }
+
+        bounds[count++] = fileSize;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * 查找不早于 target 的第一个成员起始位置 (该位置及下一个成员均具有 BGZF 头部), 找不到时返回文件大小
+     */
+    static long seekMember(FileStream fileStream, long target, long fileSize, byte[] window) throws IOException {
+        if (target >= fileSize) {
+            return fileSize;
+        }
+
+        fileStream.seek(target);
+        int length = readFully(fileStream, window, 0, (int) Math.min(window.length, fileSize - target));
+        for (int i = 0; i <= MAX_MEMBER_SIZE && i + HEADER_SIZE <= length; i++) {
+            if (checkHeader(window, i)) {
+                int next = i + ((window[i + 16] & 0xFF) | (window[i + 17] & 0xFF) << 8) + 1;
+                if (target + next == fileSize || (next + HEADER_SIZE <= length && checkHeader(window, next))) {
+                    return target + i;
+                }
+            }
+        }
+        return fileSize;
+    }
+
+    /**
+     * 检查文件是否为 BGZF 格式
+     */
+    static boolean isBGZF(File file) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try (FileStream fileStream = file.open(FileStream.CHANNEL_READER)) {
+            return readFully(fileStream, header, 0, HEADER_SIZE) == HEADER_SIZE && checkHeader(header);
+        }
+    }
+
+    /**
+     * 检查 gzip 头部是否为 BGZF 成员头部 (FEXTRA 标志, 第一个扩展子字段为 BC)
+     */
+    static boolean checkHeader(byte[] header) {
+        return checkHeader(header, 0);
+    }
+
+    static boolean checkHeader(byte[] data, int offset) {
+        return (data[offset] & 0xFF) == 0x1f && (data[offset + 1] & 0xFF) == 0x8b && data[offset + 2] == 8 && (data[offset + 3] & 4) != 0
+                && ((data[offset + 10] & 0xFF) | (data[offset + 11] & 0xFF) << 8) >= 6
+                && data[offset + 12] == 66 && data[offset + 13] == 67 && data[offset + 14] == 2 && data[offset + 15] == 0;
+    }
+
+    /**
+     * 读取下一个 chunk 并提交解压任务, 文件结束时返回一个空的结束 chunk (用于输出最后一行未以换行符结尾的数据), 之后返回 null.
+     * 区间内的 chunk 不跨越区间终止位置; 区间之后的 chunk 只包含一个成员
+     */
+    Chunk next() throws IOException {
+        if (this.finished) {
+            return null;
+        }
+
+        boolean overflow = this.position >= this.end;
+        byte[] data = new byte[overflow ? MAX_MEMBER_SIZE : this.chunkSize + MAX_MEMBER_SIZE];
+        int[] memberOffsets = new int[64];
+        int memberNum = 0;
+        int length = 0;
+        int inflatedSize = 0;
+
+        while (length < this.chunkSize && (overflow ? memberNum == 0 : this.position < this.end)) {
+            int headerLength = readFully(this.input, this.header, 0, HEADER_SIZE);
+            if (headerLength == 0) {
+                break;
+            }
+
+            if (headerLength != HEADER_SIZE || !checkHeader(this.header)) {
+                throw new IOException(this.input.getFileName() + " is not a valid BGZF file");
+            }
+
+            int memberSize = ((this.header[16] & 0xFF) | (this.header[17] & 0xFF) << 8) + 1;
+            System.arraycopy(this.header, 0, data, length, HEADER_SIZE);
+            if (readFully(this.input, data, length + HEADER_SIZE, memberSize - HEADER_SIZE) != memberSize - HEADER_SIZE) {
+                throw new IOException(this.input.getFileName() + " is truncated");
+            }
+
+            if (memberNum + 1 >= memberOffsets.length) {
+                memberOffsets = Arrays.copyOf(memberOffsets, memberOffsets.length << 1);
+            }
+            memberOffsets[memberNum++] = length;
+            length += memberSize;
+            this.position += memberSize;
+            inflatedSize += (data[length - 4] & 0xFF) | (data[length - 3] & 0xFF) << 8 | (data[length - 2] & 0xFF) << 16 | (data[length - 1] & 0xFF) << 24;
+        }
+
+        Chunk chunk;
+        if (length == 0) {
+            // 文件结束
+            this.finished = true;
+            chunk = new Chunk(this.index++, EMPTY, new int[]{0}, 0, true, true);
+        } else {
+            memberOffsets[memberNum++] = length;
+            chunk = new Chunk(this.index++, data, Arrays.copyOf(memberOffsets, memberNum), inflatedSize, false, overflow);
+        }
+
+        final Chunk current = chunk;
+        chunk.text = CompletableFuture.supplyAsync(current::inflate, this.executor);
+        chunk.prefix = this.previous == null ? CompletableFuture.completedFuture(EMPTY) : this.previous.carry;
+        chunk.carry = chunk.text.thenCombine(chunk.prefix, Chunk::carryOf);
+        this.previous = chunk;
+        return chunk;
+    }
+
+    static int readFully(FileStream fileStream, byte[] dst, int offset, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int read = fileStream.read(dst, offset + count, length - count);
+            if (read <= 0) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+    static class Chunk {
+        /**
+         * chunk 在区间内的序号
+         */
+        final long index;
+        final byte[] data;
+        final int[] memberOffsets;
+        final int inflatedSize;
+        final boolean last;
+
+        /**
+         * chunk 是否位于区间终止位置之后
+         */
+        final boolean overflow;
+
+        /**
+         * 解压后的文本, 前一个 chunk 遗留的未结束行, 本 chunk 遗留给下一个 chunk 的未结束行
+         */
+        CompletableFuture<byte[]> text;
+        CompletableFuture<byte[]> prefix;
+        CompletableFuture<byte[]> carry;
+
+        Chunk(long index, byte[] data, int[] memberOffsets, int inflatedSize, boolean last, boolean overflow) {
+            this.index = index;
+            this.data = data;
+            this.memberOffsets = memberOffsets;
+            this.inflatedSize = inflatedSize;
+            this.last = last;
+            this.overflow = overflow;
+        }
+
+        /**
+         * 解压所有成员
+         */
+        byte[] inflate() {
+            byte[] text = new byte[this.inflatedSize];
+            Inflater inflater = new Inflater(true);
+            try {
+                int seek = 0;
+                for (int i = 0; i < this.memberOffsets.length - 1; i++) {
+                    int start = this.memberOffsets[i];
+                    int end = this.memberOffsets[i + 1];
+                    int extraLength = (this.data[start + 10] & 0xFF) | (this.data[start + 11] & 0xFF) << 8;
+                    int memberInflatedSize = (this.data[end - 4] & 0xFF) | (this.data[end - 3] & 0xFF) << 8 | (this.data[end - 2] & 0xFF) << 16 | (this.data[end - 1] & 0xFF) << 24;
+
+                    inflater.reset();
+                    inflater.setInput(this.data, start + 12 + extraLength, end - 8 - (start + 12 + extraLength));
+                    int count = 0;
+                    while (count < memberInflatedSize) {
+                        int inflated = inflater.inflate(text, seek + count, memberInflatedSize - count);
+                        if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                            throw new IOException("BGZF block is truncated or corrupted");
+                        }
+                        count += inflated;
+                    }
+                    seek += count;
+                }
+                return text;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (DataFormatException e) {
+                throw new UncheckedIOException(new IOException(e));
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /**
+         * 计算遗留给下一个 chunk 的未结束行
+         */
+        static byte[] carryOf(byte[] text, byte[] prefix) {
+            for (int i = text.length - 1; i >= 0; i--) {
+                if (text[i] == ByteCode.NEWLINE) {
+                    return Arrays.copyOfRange(text, i + 1, text.length);
+                }
+            }
+
+            // 本 chunk 内没有换行符, 整个 chunk 都属于跨边界的行
+            byte[] carry = Arrays.copyOf(prefix, prefix.length + text.length);
+            System.arraycopy(text, 0, carry, prefix.length, text.length);
+            return carry;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import java.util.zip.Deflater;
+
+/**
+ * @Description :BGZF 成员的 deflate 压缩后端, 将不超过 64 KiB 的原始数据压缩为不带 zlib/gzip 头的 deflate 数据流.
+ * 非线程安全, 每个压缩线程使用一个实例; 其他实现 (如基于 libdeflate 的本地实现) 可通过 GTBToolkit.Formatter.setDeflater 接入
+ */
+
+public interface BGZFDeflater extends AutoCloseable {
+    /**
+     * 压缩一个 BGZF 成员的数据
+     *
+     * @param src       原始数据
+     * @param offset    原始数据起始位置
+     * @param length    原始数据长度
+     * @param dst       输出数组
+     * @param dstOffset 输出起始位置
+     * @param maxLength 输出的最大长度
+     * @return 压缩后的数据长度, 超出 maxLength 时返回 -1
+     */
+    int deflate(byte[] src, int offset, int length, byte[] dst, int dstOffset, int maxLength);
+
+    @Override
+    void close();
+
+    /**
+     * 获取基于 java.util.zip.Deflater 的压缩后端
+     *
+     * @param level 压缩级别 (0~9), 1 为最快的压缩级别
+     */
+    static BGZFDeflater getInstance(int level) {
+        return new JDKDeflater(level);
+    }
+
+    final class JDKDeflater implements BGZFDeflater {
+        final Deflater deflater;
+
+        JDKDeflater(int level) {
+            if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("invalid compression level: " + level + " (should be in [0, 9])");
+            }
+
+            this.deflater = new Deflater(level, true);
+        }
+
+        @Override
+        public int deflate(byte[] src, int offset, int length, byte[] dst, int dstOffset, int maxLength) {
+            this.deflater.reset();
+            this.deflater.setInput(src, offset, length);
+            this.deflater.finish();
+            int size = this.deflater.deflate(dst, dstOffset, maxLength);
+            return this.deflater.finished() ? size : -1;
+        }
+
+        @Override
+        public void close() {
+            this.deflater.end();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.container.array.Array;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * @Description :BGZF 压缩 VCF 文件的索引构建器, 按行的写出顺序接收每一行的染色体、位置及虚拟偏移量, 流式构建分箱索引与线性索引,
+ * 输出与 tabix 兼容的 .tbi 索引; 存在超过 2^29 的位置时输出 .csi 索引. 行必须按染色体聚集且染色体内按位置升序排列
+ */
+
+class BGZFIndexBuilder {
+    /**
+     * 最小分箱 (线性索引窗口) 大小为 2^14, 构建时使用的分箱层数 (覆盖 2^32 的位置)
+     */
+    static final int MIN_SHIFT = 14;
+    static final int BUILD_DEPTH = 6;
+
+    /**
+     * tbi 索引的分箱层数及支持的最大位置
+     */
+    static final int TBI_DEPTH = 5;
+    static final long TBI_MAX_POSITION = 1L << 29;
+
+    /**
+     * tabix 配置: VCF 格式, 染色体、起始位置列, 注释行前缀
+     */
+    static final int FORMAT_VCF = 2;
+    static final int COLUMN_SEQUENCE = 1;
+    static final int COLUMN_BEGIN = 2;
+    static final int COLUMN_END = 0;
+    static final int META_CHAR = '#';
+
+    final boolean forceCSI;
+    final Array<Contig> contigs = new Array<>(24, true);
+    final HashSet<String> names = new HashSet<>();
+    Contig current;
+    long maxEnd = 0;
+
+    /**
+     * @param forceCSI 总是输出 .csi 索引
+     */
+    BGZFIndexBuilder(boolean forceCSI) {
+        this.forceCSI = forceCSI;
+    }
+
+    /**
+     * 添加一行
+     *
+     * @param chromosome 染色体
+     * @param begin      0-based 起始位置
+     * @param end        0-based 终止位置 (不包含)
+     * @param start      行首的虚拟偏移量
+     * @param stop       行尾的虚拟偏移量
+     */
+    void push(String chromosome, int begin, int end, long start, long stop) throws IOException {
+        if (this.current == null || !this.current.name.equals(chromosome)) {
+            if (!this.names.add(chromosome)) {
+                throw new IOException("variants of chromosome " + chromosome + " are not contiguous, the output file cannot be indexed");
+            }
+
+            if (this.current != null) {
+                this.current.finish();
+            }
+            this.current = new Contig(chromosome);
+            this.contigs.add(this.current);
+        } else if (begin < this.current.lastBegin) {
+            throw new IOException("variants are not sorted by position (" + chromosome + ":" + (begin + 1) + "), the output file cannot be indexed");
+        }
+
+        this.current.push(begin, Math.max(end, begin + 1), start, stop);
+        this.maxEnd = Math.max(this.maxEnd, end);
+    }
+
+    /**
+     * 是否输出 .csi 索引
+     */
+    boolean isCSI() {
+        return this.forceCSI || this.maxEnd > TBI_MAX_POSITION;
+    }
+
+    /**
+     * 写出索引文件 (BGZF 压缩)
+     *
+     * @param outputFile      被索引的文件, 索引文件名为其添加 .tbi 或 .csi 扩展名
+     * @param deflaterFactory 压缩后端
+     * @return 索引文件
+     */
+    File write(File outputFile, Supplier<BGZFDeflater> deflaterFactory) throws IOException {
+        if (this.current != null) {
+            this.current.finish();
+            this.current = null;
+        }
+
+        boolean csi = isCSI();
+        int depth = TBI_DEPTH;
+        if (csi) {
+            // 分箱层数使分箱覆盖所有位置
+            long maxLength = this.maxEnd + 256;
+            for (long size = 1L << (MIN_SHIFT + depth * 3); maxLength > size; size <<= 3) {
+                depth++;
+            }
+        }
+
+        // tabix 配置及染色体名
+        VolumeByteStream names = new VolumeByteStream();
+        for (Contig contig : this.contigs) {
+            names.writeSafety(contig.name.getBytes(StandardCharsets.UTF_8));
+            names.writeSafety((byte) 0);
+        }
+        VolumeByteStream meta = new VolumeByteStream();
+        writeInt(meta, FORMAT_VCF);
+        writeInt(meta, COLUMN_SEQUENCE);
+        writeInt(meta, COLUMN_BEGIN);
+        writeInt(meta, COLUMN_END);
+        writeInt(meta, META_CHAR);
+        writeInt(meta, 0);
+        writeInt(meta, names.size());
+        meta.writeSafety(names);
+
+        VolumeByteStream cache = new VolumeByteStream();
+        if (csi) {
+            cache.writeSafety(new byte[]{'C', 'S', 'I', 1});
+            writeInt(cache, MIN_SHIFT);
+            writeInt(cache, depth);
+            writeInt(cache, meta.size());
+            cache.writeSafety(meta);
+        } else {
+            cache.writeSafety(new byte[]{'T', 'B', 'I', 1});
+            writeInt(cache, this.contigs.size());
+            cache.writeSafety(meta);
+        }
+
+        if (csi) {
+            writeInt(cache, this.contigs.size());
+        }
+        int metaBin = binFirst(depth + 1) + 1;
+        for (Contig contig : this.contigs) {
+            writeInt(cache, contig.bins.size() + 1);
+            for (Map.Entry<Integer, Bin> entry : contig.bins.entrySet()) {
+                int bin = renumber(entry.getKey(), depth);
+                writeInt(cache, bin);
+                if (csi) {
+                    // 分箱覆盖的第一个线性索引窗口的偏移量
+                    int level = binLevel(bin);
+                    int window = (bin - binFirst(level)) << ((depth - level) * 3);
+                    writeLong(cache, window < contig.windowNum ? contig.windows[window] : 0);
+                }
+                Bin chunks = entry.getValue();
+                writeInt(cache, chunks.chunkNum);
+                for (int i = 0; i < chunks.chunkNum << 1; i++) {
+                    writeLong(cache, chunks.chunks[i]);
+                }
+            }
+
+            // 伪分箱: 染色体的起止偏移量, 位点数
+            writeInt(cache, metaBin);
+            if (csi) {
+                writeLong(cache, 0);
+            }
+            writeInt(cache, 2);
+            writeLong(cache, contig.firstStart);
+            writeLong(cache, contig.lastStop);
+            writeLong(cache, contig.recordNum);
+            writeLong(cache, 0);
+
+            if (!csi) {
+                writeInt(cache, contig.windowNum);
+                for (int i = 0; i < contig.windowNum; i++) {
+                    writeLong(cache, contig.windows[i]);
+                }
+            }
+        }
+        writeLong(cache, 0);
+
+        File indexFile = outputFile.addExtension(csi ? ".csi" : ".tbi");
+        try (BGZFOrderedWriter writer = new BGZFOrderedWriter(indexFile, deflaterFactory)) {
+            writer.write(cache.values());
+        }
+        names.close();
+        meta.close();
+        cache.close();
+        return indexFile;
+    }
+
+    /**
+     * 计算区间 [begin, end) 所在的最小分箱 (构建层数)
+     */
+    static int reg2bin(long begin, long end) {
+        end--;
+        for (int level = BUILD_DEPTH, shift = MIN_SHIFT; level > 0; level--, shift += 3) {
+            if (begin >> shift == end >> shift) {
+                return binFirst(level) + (int) (begin >> shift);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 第 level 层 (根节点为第 0 层) 的第一个分箱编号
+     */
+    static int binFirst(int level) {
+        return ((1 << (level * 3)) - 1) / 7;
+    }
+
+    /**
+     * 分箱所在的层
+     */
+    static int binLevel(int bin) {
+        int level = 0;
+        while (bin >= binFirst(level + 1)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 将构建层数下的分箱编号换算为 depth 层下的编号 (两者自底向上的层次相同)
+     */
+    static int renumber(int bin, int depth) {
+        int level = binLevel(bin);
+        int targetLevel = depth - (BUILD_DEPTH - level);
+        if (targetLevel <= 0) {
+            return 0;
+        }
+        return binFirst(targetLevel) + (bin - binFirst(level));
+    }
+
+    private static void writeInt(VolumeByteStream cache, int value) {
+        cache.writeSafety((byte) value);
+        cache.writeSafety((byte) (value >>> 8));
+        cache.writeSafety((byte) (value >>> 16));
+        cache.writeSafety((byte) (value >>> 24));
+    }
+
+    private static void writeLong(VolumeByteStream cache, long value) {
+        writeInt(cache, (int) value);
+        writeInt(cache, (int) (value >>> 32));
+    }
+
+    static class Bin {
+        /**
+         * 块列表, 每个块为 [起始虚拟偏移量, 终止虚拟偏移量)
+         */
+        long[] chunks = new long[4];
+        int chunkNum = 0;
+
+        void add(long start, long stop) {
+            // 与上一个块位于同一 BGZF 成员时合并
+            if (this.chunkNum > 0 && (this.chunks[(this.chunkNum << 1) - 1] >>> 16) >= (start >>> 16)) {
+                this.chunks[(this.chunkNum << 1) - 1] = Math.max(this.chunks[(this.chunkNum << 1) - 1], stop);
+                return;
+            }
+
+            if (this.chunkNum << 1 == this.chunks.length) {
+                this.chunks = Arrays.copyOf(this.chunks, this.chunks.length << 1);
+            }
+            this.chunks[this.chunkNum << 1] = start;
+            this.chunks[(this.chunkNum << 1) + 1] = stop;
+            this.chunkNum++;
+        }
+    }
+
+    static class Contig {
+        final String name;
+        final TreeMap<Integer, Bin> bins = new TreeMap<>();
+
+        /**
+         * 线性索引: 每个窗口中第一行的虚拟偏移量, 未覆盖的窗口为 -1
+         */
+        long[] windows = new long[64];
+        int windowNum = 0;
+
+        /**
+         * 当前块所属的分箱及起始偏移量, 上一行的起始位置及行尾偏移量
+         */
+        int chunkBin = -1;
+        long chunkStart;
+        int lastBegin = Integer.MIN_VALUE;
+        long lastStop;
+        long firstStart;
+        long recordNum = 0;
+
+        Contig(String name) {
+            this.name = name;
+            Arrays.fill(this.windows, -1);
+        }
+
+        void push(int begin, long end, long start, long stop) {
+            if (this.recordNum == 0) {
+                this.firstStart = start;
+            }
+
+            // 线性索引
+            int firstWindow = begin >> MIN_SHIFT;
+            int lastWindow = (int) ((end - 1) >> MIN_SHIFT);
+            if (lastWindow >= this.windows.length) {
+                int length = this.windows.length;
+                this.windows = Arrays.copyOf(this.windows, Math.max(lastWindow + 1, length << 1));
+                Arrays.fill(this.windows, length, this.windows.length, -1);
+            }
+            for (int window = firstWindow; window <= lastWindow; window++) {
+                if (this.windows[window] == -1) {
+                    this.windows[window] = start;
+                }
+            }
+            this.windowNum = Math.max(this.windowNum, lastWindow + 1);
+
+            // 分箱索引: 连续位于同一分箱的行合并为一个块
+            int bin = reg2bin(begin, end);
+            if (bin != this.chunkBin) {
+                if (this.chunkBin != -1) {
+                    this.bins.computeIfAbsent(this.chunkBin, key -> new Bin()).add(this.chunkStart, this.lastStop);
+                }
+                this.chunkBin = bin;
+                this.chunkStart = start;
+            }
+
+            this.lastBegin = begin;
+            this.lastStop = stop;
+            this.recordNum++;
+        }
+
+        void finish() {
+            if (this.chunkBin != -1) {
+                this.bins.computeIfAbsent(this.chunkBin, key -> new Bin()).add(this.chunkStart, this.lastStop);
+                this.chunkBin = -1;
+            }
+
+            // 填充未覆盖的窗口: 开头的窗口使用染色体的起始偏移量, 其余使用前一个窗口的偏移量
+            for (int i = 0; i < this.windowNum; i++) {
+                if (this.windows[i] == -1) {
+                    this.windows[i] = i == 0 ? this.firstStart : this.windows[i - 1];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.unifyIO.FileStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * @Description :BGZF 有序写出器. 每个线程持有一个 Compressor, 将格式化的文本按 BGZF 成员 (不超过 64 KiB) 并行压缩,
+ * 压缩后的数据段带序列号提交, 按序列号顺序追加到输出文件; 乱序到达的数据段暂存在内存中, 超出 SegmentSpillFile.MAX_PENDING_SIZE 时暂存至溢出文件.
+ * 关闭时写入 BGZF 结束标记.
+ * 设置索引构建器时, 数据段中记录的每一行在写出时换算为 BGZF 虚拟偏移量 (成员在文件中的偏移量 << 16 | 成员内偏移量) 并提交给索引构建器
+ */
+
+class BGZFOrderedWriter implements AutoCloseable, Closeable {
+    /**
+     * 每个 BGZF 成员的原始数据大小上限, 成员最大长度, 成员头部 (含 BC 扩展字段) 与尾部长度
+     */
+    static final int MAX_BLOCK_DATA_SIZE = 0xff00;
+    static final int MAX_MEMBER_SIZE = 1 << 16;
+    static final int HEADER_SIZE = 18;
+    static final int FOOTER_SIZE = 8;
+
+    /**
+     * BGZF 结束标记 (空成员)
+     */
+    static final byte[] EOF_MARKER = {0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00,
+            0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+    final FileStream outputFile;
+    final Supplier<BGZFDeflater> deflaterFactory;
+    final BGZFIndexBuilder index;
+
+    /**
+     * 等待写出的数据段 (序列号不连续时暂存), 已写出的数据量
+     */
+    final HashMap<Long, Segment> pendingSegments = new HashMap<>();
+    final SegmentSpillFile spillFile;
+    long nextSequence = 0;
+    long pointer = 0;
+
+    /**
+     * @param outputFile      输出文件
+     * @param deflaterFactory 压缩后端, 每个 Compressor 获取一个实例
+     */
+    BGZFOrderedWriter(File outputFile, Supplier<BGZFDeflater> deflaterFactory) throws IOException {
+        this(outputFile, deflaterFactory, null);
+    }
+
+    /**
+     * @param outputFile      输出文件
+     * @param deflaterFactory 压缩后端, 每个 Compressor 获取一个实例
+     * @param index           索引构建器, 为 null 时不记录行的虚拟偏移量
+     */
+    BGZFOrderedWriter(File outputFile, Supplier<BGZFDeflater> deflaterFactory, BGZFIndexBuilder index) throws IOException {
+        this.outputFile = outputFile.open(FileStream.CHANNEL_WRITER);
+        this.spillFile = new SegmentSpillFile(outputFile.addExtension(".~$spill"));
+        this.deflaterFactory = deflaterFactory;
+        this.index = index;
+    }
+
+    /**
+     * 创建绑定到该写出器的压缩器, 每个线程使用一个
+     */
+    Compressor newCompressor() {
+        return new Compressor(this.deflaterFactory.get());
+    }
+
+    /**
+     * 直接压缩并写出数据 (文件头、文件尾), 只能在所有数据段提交之前或之后调用
+     *
+     * @param data 原始数据
+     */
+    synchronized void write(byte[] data) throws IOException {
+        if (this.pendingSegments.size() > 0) {
+            throw new IOException("cannot write data while segment " + this.nextSequence + " is pending");
+        }
+
+        try (Compressor compressor = newCompressor()) {
+            compressor.text.writeSafety(data);
+            compressor.finish();
+            this.outputFile.write(compressor.segment.data);
+            this.pointer += compressor.segment.data.size();
+        }
+    }
+
+    /**
+     * 写入压缩器中的数据段, 序列号从 0 开始且不可重复. 写入后压缩器被重置
+     *
+     * @param sequence   序列号
+     * @param compressor 压缩器
+     */
+    synchronized void write(long sequence, Compressor compressor) throws IOException {
+        if (sequence < this.nextSequence || this.pendingSegments.containsKey(sequence)) {
+            throw new IOException("duplicate segment sequence " + sequence);
+        }
+
+        compressor.finish();
+        if (sequence != this.nextSequence) {
+            // 前面的数据段尚未到达, 暂存
+            VolumeByteStream data = compressor.segment.data;
+            if (this.spillFile.acquire(data.size())) {
+                this.pendingSegments.put(sequence, compressor.segment.copy(new VolumeByteStream(data.cacheOf(0, data.size())), -1));
+            } else {
+                this.pendingSegments.put(sequence, compressor.segment.copy(null, this.spillFile.spill(data.getCache(), 0, data.size())));
+            }
+            compressor.reset();
+            return;
+        }
+
+        writeSegment(compressor.segment);
+        compressor.reset();
+
+        // 写出已到达的后续数据段
+        Segment segment;
+        while ((segment = this.pendingSegments.remove(this.nextSequence)) != null) {
+            writeSegment(segment);
+            if (segment.data != null) {
+                this.spillFile.release(segment.length);
+                segment.data.close();
+            }
+        }
+    }
+
+    /**
+     * 写出数据段, 并将其中的行提交给索引构建器
+     */
+    private void writeSegment(Segment segment) throws IOException {
+        if (this.index != null) {
+            long base = this.pointer << 16;
+            for (int i = 0; i < segment.recordNum; i++) {
+                this.index.push(segment.chromosomes[i], segment.begins[i], segment.ends[i], base + segment.starts[i], base + segment.stops[i]);
+            }
+        }
+
+        if (segment.data != null) {
+            this.outputFile.write(segment.data);
+        } else {
+            this.spillFile.transferTo(segment.offset, segment.length, this.outputFile.getChannel());
+        }
+        this.pointer += segment.size();
+        this.nextSequence++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (this.pendingSegments.size() > 0) {
+                throw new IOException("segment " + this.nextSequence + " was never committed");
+            }
+
+            this.outputFile.write(EOF_MARKER);
+        } finally {
+            // 无论是否写出成功, 释放暂存的数据段, 关闭 (并删除) 溢出文件与输出文件
+            for (Segment segment : this.pendingSegments.values()) {
+                if (segment.data != null) {
+                    segment.data.close();
+                }
+            }
+            this.pendingSegments.clear();
+
+            try {
+                this.spillFile.close();
+            } finally {
+                this.outputFile.close();
+            }
+        }
+    }
+
+    static class Segment {
+        /**
+         * 压缩后的 BGZF 成员, 为 null 时数据位于溢出文件的 [offset, offset + length) 处
+         */
+        final VolumeByteStream data;
+        final long offset;
+        final int length;
+
+        /**
+         * 行记录: 染色体, 0-based 起止位置 [begin, end), 行首与行尾的偏移量. 压缩完成前偏移量为数据段原始数据中的偏移量,
+         * 压缩完成后为相对于数据段起点的虚拟偏移量
+         */
+        String[] chromosomes;
+        int[] begins;
+        int[] ends;
+        long[] starts;
+        long[] stops;
+        int recordNum = 0;
+
+        Segment(VolumeByteStream data, int capacity) {
+            this(data, -1, 0, capacity);
+        }
+
+        Segment(VolumeByteStream data, long offset, int length, int capacity) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.chromosomes = new String[capacity];
+            this.begins = new int[capacity];
+            this.ends = new int[capacity];
+            this.starts = new long[capacity];
+            this.stops = new long[capacity];
+        }
+
+        void add(String chromosome, int begin, int end, long start, long stop) {
+            if (this.recordNum == this.begins.length) {
+                int capacity = Math.max(16, this.recordNum << 1);
+                this.chromosomes = Arrays.copyOf(this.chromosomes, capacity);
+                this.begins = Arrays.copyOf(this.begins, capacity);
+                this.ends = Arrays.copyOf(this.ends, capacity);
+                this.starts = Arrays.copyOf(this.starts, capacity);
+                this.stops = Arrays.copyOf(this.stops, capacity);
+            }
+
+            this.chromosomes[this.recordNum] = chromosome;
+            this.begins[this.recordNum] = begin;
+            this.ends[this.recordNum] = end;
+            this.starts[this.recordNum] = start;
+            this.stops[this.recordNum] = stop;
+            this.recordNum++;
+        }
+
+        /**
+         * 数据段的大小
+         */
+        int size() {
+            return this.data == null ? this.length : this.data.size();
+        }
+
+        /**
+         * 复制数据段的行记录 (用于暂存)
+         *
+         * @param data   暂存在内存中的数据, 为 null 时数据已写入溢出文件
+         * @param offset 数据在溢出文件中的偏移量
+         */
+        Segment copy(VolumeByteStream data, long offset) {
+            Segment segment = new Segment(data, offset, this.data.size(), 0);
+            segment.chromosomes = Arrays.copyOf(this.chromosomes, this.recordNum);
+            segment.begins = Arrays.copyOf(this.begins, this.recordNum);
+            segment.ends = Arrays.copyOf(this.ends, this.recordNum);
+            segment.starts = Arrays.copyOf(this.starts, this.recordNum);
+            segment.stops = Arrays.copyOf(this.stops, this.recordNum);
+            segment.recordNum = this.recordNum;
+            return segment;
+        }
+    }
+
+    static class Compressor implements AutoCloseable {
+        final BGZFDeflater deflater;
+        final CRC32 crc = new CRC32();
+
+        /**
+         * 待压缩的文本 (不足一个成员的剩余数据), 压缩后的数据段
+         */
+        final VolumeByteStream text = new VolumeByteStream(MAX_BLOCK_DATA_SIZE << 1);
+        final Segment segment = new Segment(new VolumeByteStream(MAX_MEMBER_SIZE << 2), 0);
+        final VolumeByteStream output = this.segment.data;
+
+        /**
+         * 数据段中已压缩的原始数据量, 上一行的行尾偏移量, 各成员在数据段中的终止位置
+         */
+        long compressedSize = 0;
+        long lastStop = 0;
+        int[] memberEnds = new int[16];
+        int memberNum = 0;
+
+        Compressor(BGZFDeflater deflater) {
+            this.deflater = deflater;
+        }
+
+        /**
+         * 文本缓冲区, 格式化器直接向其中写入数据
+         */
+        VolumeByteStream text() {
+            return this.text;
+        }
+
+        /**
+         * 记录刚写入文本缓冲区的一行 (用于构建索引), 并压缩缓冲区中已满的成员. 行首的换行符不属于该行
+         *
+         * @param chromosome 染色体
+         * @param begin      0-based 起始位置
+         * @param end        0-based 终止位置 (不包含)
+         */
+        void flush(String chromosome, int begin, int end) {
+            long start = this.lastStop;
+            long stop = this.compressedSize + this.text.size();
+            if (start < stop && this.text.cacheOf((int) (start - this.compressedSize)) == ByteCode.NEWLINE) {
+                start++;
+            }
+
+            this.segment.add(chromosome, begin, end, start, stop);
+            this.lastStop = stop;
+            flush();
+        }
+
+        /**
+         * 压缩缓冲区中已满的成员, 剩余数据移至缓冲区首部
+         */
+        void flush() {
+            if (this.text.size() >= MAX_BLOCK_DATA_SIZE) {
+                compress(false);
+            }
+        }
+
+        /**
+         * 压缩缓冲区中的所有数据, 并将行记录的偏移量换算为相对于数据段起点的虚拟偏移量
+         */
+        void finish() {
+            compress(true);
+
+            Segment segment = this.segment;
+            for (int i = 0; i < segment.recordNum; i++) {
+                // 行首位于成员边界时指向下一个成员的起点, 行尾位于成员边界时指向上一个成员的终点
+                int startMember = (int) (segment.starts[i] / MAX_BLOCK_DATA_SIZE);
+                int stopMember = (int) ((segment.stops[i] - 1) / MAX_BLOCK_DATA_SIZE);
+                segment.starts[i] = ((long) memberOffset(startMember) << 16) | (segment.starts[i] - (long) startMember * MAX_BLOCK_DATA_SIZE);
+                segment.stops[i] = ((long) memberOffset(stopMember) << 16) | (segment.stops[i] - (long) stopMember * MAX_BLOCK_DATA_SIZE);
+            }
+        }
+
+        /**
+         * 重置压缩器, 开始新的数据段
+         */
+        void reset() {
+            this.segment.data.reset();
+            this.segment.recordNum = 0;
+            this.compressedSize = 0;
+            this.lastStop = 0;
+            this.memberNum = 0;
+        }
+
+        /**
+         * 第 index 个成员在数据段中的起始位置
+         */
+        private int memberOffset(int index) {
+            return index == 0 ? 0 : this.memberEnds[index - 1];
+        }
+
+        private void compress(boolean all) {
+            byte[] cache = this.text.getCache();
+            int size = this.text.size();
+            int seek = 0;
+            while (size - seek >= MAX_BLOCK_DATA_SIZE || (all && seek < size)) {
+                int length = Math.min(MAX_BLOCK_DATA_SIZE, size - seek);
+                compressMember(cache, seek, length);
+                seek += length;
+            }
+
+            if (seek > 0) {
+                System.arraycopy(cache, seek, cache, 0, size - seek);
+                this.text.reset(size - seek);
+                this.compressedSize += seek;
+            }
+        }
+
+        /**
+         * 压缩一个 BGZF 成员
+         */
+        private void compressMember(byte[] src, int offset, int length) {
+            this.output.makeSureCapacity(this.output.size() + MAX_MEMBER_SIZE);
+            byte[] dst = this.output.getCache();
+            int start = this.output.size();
+            int dataOffset = start + HEADER_SIZE;
+
+            int dataSize = this.deflater.deflate(src, offset, length, dst, dataOffset, MAX_MEMBER_SIZE - HEADER_SIZE - FOOTER_SIZE);
+            if (dataSize < 0) {
+                // 压缩后体积膨胀, 使用 deflate 的非压缩块储存
+                dst[dataOffset] = 0x01;
+                writeShort(dst, dataOffset + 1, length);
+                writeShort(dst, dataOffset + 3, ~length);
+                System.arraycopy(src, offset, dst, dataOffset + 5, length);
+                dataSize = length + 5;
+            }
+
+            // 成员头部: gzip 头 + BC 扩展字段 (成员长度 - 1)
+            int memberSize = HEADER_SIZE + dataSize + FOOTER_SIZE;
+            dst[start] = 0x1f;
+            dst[start + 1] = (byte) 0x8b;
+            dst[start + 2] = 0x08;
+            dst[start + 3] = 0x04;
+            dst[start + 4] = 0x00;
+            dst[start + 5] = 0x00;
+            dst[start + 6] = 0x00;
+            dst[start + 7] = 0x00;
+            dst[start + 8] = 0x00;
+            dst[start + 9] = (byte) 0xff;
+            writeShort(dst, start + 10, 6);
+            dst[start + 12] = 0x42;
+            dst[start + 13] = 0x43;
+            writeShort(dst, start + 14, 2);
+            writeShort(dst, start + 16, memberSize - 1);
+
+            // 成员尾部: CRC32 + 原始数据长度
+            this.crc.reset();
+            this.crc.update(src, offset, length);
+            writeInt(dst, dataOffset + dataSize, (int) this.crc.getValue());
+            writeInt(dst, dataOffset + dataSize + 4, length);
+
+            this.output.reset(start + memberSize);
+
+            if (this.memberNum == this.memberEnds.length) {
+                this.memberEnds = Arrays.copyOf(this.memberEnds, this.memberNum << 1);
+            }
+            this.memberEnds[this.memberNum++] = start + memberSize;
+        }
+
+        @Override
+        public void close() {
+            this.deflater.close();
+            this.text.close();
+            this.output.close();
+        }
+
+        private static void writeShort(byte[] dst, int offset, int value) {
+            dst[offset] = (byte) value;
+            dst[offset + 1] = (byte) (value >>> 8);
+        }
+
+        private static void writeInt(byte[] dst, int offset, int value) {
+            dst[offset] = (byte) value;
+            dst[offset + 1] = (byte) (value >>> 8);
+            dst[offset + 2] = (byte) (value >>> 16);
+            dst[offset + 3] = (byte) (value >>> 24);
+        }
+    }
+}
@@ -13,6 +13,7 @@ import edu.sysu.pmglab.gbc.core.common.qualitycontrol.variant.VariantQC;
 import edu.sysu.pmglab.gbc.core.common.switcher.AMDOFeature;
 import edu.sysu.pmglab.gbc.core.exception.GBCWorkFlowException;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOrderedWriter;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOutputParam;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBUncompressedBlock;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBWriter;
@@ -25,6 +26,9 @@ import edu.sysu.pmglab.unifyIO.partreader.IPartReader;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Data :2021/02/14
@@ -43,7 +47,7 @@ class BuildKernel {
     /**
      * IO 数据管道
      */
-    DynamicPipeline<FileStream> uncompressedPipLine;
+    DynamicPipeline<FilePart> uncompressedPipLine;
 
     /**
      * 文件基本信息
@@ -72,6 +76,7 @@ class BuildKernel {
      * 编码器, 将文本基因型编码为字节编码
      */
     final BEGEncoder begEncoder;
+    final GenotypeTokenizer tokenizer;
     final GTBWriter.Builder builder;
 
     int maxAlleleNums;
@@ -97,6 +102,7 @@ class BuildKernel {
 
         // 加载 BEG 编码表和 MBEG 编码表
         this.begEncoder = BEGEncoder.getEncoder(this.outputParam.isPhased());
+        this.tokenizer = new GenotypeTokenizer(this.begEncoder);
 
         // 设置任务
         this.task = task;
@@ -114,6 +120,12 @@ class BuildKernel {
     }
 
     void startWork() throws IOException {
+        File inputFile = this.task.inputFiles.get(0);
+        if (BGZFChunkReader.isBGZF(inputFile)) {
+            startBGZFWork(inputFile);
+            return;
+        }
+
         // 创建数据管道
         this.uncompressedPipLine = new DynamicPipeline<>(task.nThreads << 2);
 
@@ -126,11 +138,15 @@ class BuildKernel {
         // 创建线程池
         ThreadPool threadPool = new ThreadPool(this.task.nThreads + 1);
 
+        // 创建输出文件, 各线程压缩后的数据段按文件块顺序直接写入
+        GTBOrderedWriter orderedWriter = buildOrderedWriter();
+
         // 创建 Input 线程
         threadPool.submit(() -> {
             try {
+                long sequence = 0;
                 for (FileStream fileStream : partReader.part(this.task.nThreads)) {
-                    this.uncompressedPipLine.put(true, fileStream);
+                    this.uncompressedPipLine.put(true, new FilePart(sequence++, fileStream, null));
                 }
 
                 // 发送关闭信号
@@ -140,24 +156,12 @@ class BuildKernel {
             }
         });
 
-        Array<File> tempFiles = new Array<>(File[].class, this.task.nThreads);
-        File outputDir = this.task.outputFile.addExtension(".~$temp");
-        outputDir.mkdir();
-        outputDir.deleteOnExit();
         threadPool.submit(() -> {
             try {
-                File outputFile = outputDir.getSubFile("thread" + Thread.currentThread().getId() + ".gtb");
-                outputFile.deleteOnExit();
-
-                if (processFileStream(outputFile)) {
-                    synchronized (tempFiles) {
-                        tempFiles.add(outputFile);
-                    }
-                }
+                processFileStream(orderedWriter);
             } catch (Exception | Error e) {
                 throw new ThreadPoolRuntimeException(e);
             }
-
         }, this.task.nThreads);
 
         // 关闭线程池，等待任务完成
@@ -166,11 +170,42 @@ class BuildKernel {
         // 清除数据区
         this.uncompressedPipLine.clear();
 
-        // 合并数据文件
-        GTBToolkit.Concat.instance(tempFiles.toArray(), this.task.outputFile).submit();
+        // 写入节点表及文件头
+        orderedWriter.close();
+    }
+
+    /**
+     * BGZF 文件的构建流程: 按成员边界将文件切分为与线程数相同的区间 (与文本文件的分块方式相同), 每个编码线程读取一个区间,
+     * chunk 在解压线程池中提前解压; 压缩后的数据段按区间顺序直接写入最终文件
+     */
+    void startBGZFWork(File inputFile) throws IOException {
+        // 检验 VCF 文件的样本名序列是否合法
+        checkVcfSubject(IPartReader.getInstance(inputFile.getAbsoluteFilePath()));
+
+        // 切分区间并创建输出文件
+        long[] bounds = BGZFChunkReader.split(inputFile, this.task.nThreads);
+        int chunkSize = BGZFChunkReader.getChunkSize(inputFile, this.task.nThreads);
+        AtomicInteger rangeIndex = new AtomicInteger(0);
+        GTBOrderedWriter orderedWriter = buildOrderedWriter();
+
+        // 创建解压线程池及线程池
+        ForkJoinPool inflatePool = new ForkJoinPool(this.task.nThreads);
+        ThreadPool threadPool = new ThreadPool(this.task.nThreads);
+
+        threadPool.submit(() -> {
+            try {
+                processRanges(inputFile, bounds, chunkSize, rangeIndex, inflatePool, orderedWriter);
+            } catch (Exception | Error e) {
+                throw new ThreadPoolRuntimeException(e);
+            }
+        }, this.task.nThreads);
+
+        // 关闭线程池，等待任务完成
+        threadPool.close();
+        inflatePool.shutdown();
 
-        // 删除输出文件
-        outputDir.delete();
+        // 写入节点表及文件头
+        orderedWriter.close();
     }
 
     /**
@@ -223,17 +258,26 @@ class BuildKernel {
     }
 
     /**
-     * 读取基因组文件
+     * 创建有序写出器 (需要先完成样本名校验), 使用数据段编码扩展格式时, 创建前按最终的块大小训练 allele 字典
+     */
+    GTBOrderedWriter buildOrderedWriter() throws IOException {
+        if (this.outputParam.isSegmentCodec() && this.outputParam.getAlleleDictionary() == null) {
+            int blockSize = BlockSizeParameter.getBlockSize(BlockSizeParameter.getSuggestBlockSizeType(this.outputParam.getBlockSizeType(), this.validSubjectNum));
+            this.outputParam.setAlleleDictionary(AlleleDictionaryTrainer.train(this.task.inputFiles.get(0), blockSize, this.outputParam));
+        }
+
+        return this.builder.setOutputFile(this.task.outputFile).buildOrderedWriter();
+    }
+
+    /**
+     * 读取基因组文件, 每个文件块编码后的数据段以其序号提交至有序写出器
      */
-    boolean processFileStream(File outputFile) throws IOException {
-        Block<Boolean, FileStream> fileStreamBlock = this.uncompressedPipLine.get();
+    void processFileStream(GTBOrderedWriter orderedWriter) throws IOException {
+        Block<Boolean, FilePart> fileStreamBlock = this.uncompressedPipLine.get();
         // 确认为需要处理的任务块，只有需要这么一些线程的时候，才会创建容器
         if (fileStreamBlock.getStatus()) {
             // 实例化压缩器
-            GTBWriter writer;
-            synchronized (builder) {
-                writer = builder.setOutputFile(outputFile).build();
-            }
+            GTBWriter writer = orderedWriter.newWriter();
 
             // 创建本地 lineCache 缓冲区
             VolumeByteStream localLineCache = new VolumeByteStream(2 << 20);
@@ -243,32 +287,18 @@ class BuildKernel {
             VCFNonGenotypeMarker marker = new VCFNonGenotypeMarker(localLineCache);
             do {
                 // 提取要处理的文件块
-                FileStream fileReader = fileStreamBlock.getData();
+                FilePart part = fileStreamBlock.getData();
+                FileStream fileReader = part.fileStream;
 
                 while (fileReader.readLine(localLineCache) != -1) {
                     // 文件没读完就一直读
-                    String chromosome = new String(localLineCache.getNBy(ByteCode.TAB, 0));
-                    if (ChromosomeTags.contain(chromosome)) {
-                        // 获取其标准染色体名
-                        if (uncompressedBlock.full() || !Objects.equals(chromosome, uncompressedBlock.chromosome)) {
-                            writer.flush();
-                        }
-
-                        if (uncompressedBlock.seek == 0) {
-                            uncompressedBlock.chromosome = chromosome;
-                        }
-
-                        formatVariant(localLineCache, marker, writer, uncompressedBlock);
-                    }
+                    processLine(localLineCache, marker, writer, uncompressedBlock);
                     localLineCache.reset();
                 }
 
                 // 该文件已经被读取完毕
                 fileReader.close();
-
-                if (!uncompressedBlock.empty()) {
-                    writer.flush();
-                }
+                writer.commit(part.sequence);
 
                 // 继续读取下一个文件任务
                 fileStreamBlock = this.uncompressedPipLine.get();
@@ -276,10 +306,109 @@ class BuildKernel {
 
             localLineCache.close();
             writer.close();
-            return true;
         }
+    }
+
+    /**
+     * 处理 BGZF 文件的区间, 编码后的数据段以区间序号提交至有序写出器
+     */
+    void processRanges(File inputFile, long[] bounds, int chunkSize, AtomicInteger rangeIndex, Executor executor, GTBOrderedWriter orderedWriter) throws IOException {
+        int range = rangeIndex.getAndAdd(1);
+        if (range >= bounds.length - 1) {
+            return;
+        }
+
+        GTBWriter writer = orderedWriter.newWriter();
+        VolumeByteStream localLineCache = new VolumeByteStream(2 << 20);
+        GTBUncompressedBlock uncompressedBlock = writer.getActiveBlock();
+        VCFNonGenotypeMarker marker = new VCFNonGenotypeMarker(localLineCache);
+
+        do {
+            try (BGZFChunkReader reader = new BGZFChunkReader(inputFile, bounds[range], bounds[range + 1], chunkSize, executor)) {
+                processChunks(reader, range > 0, localLineCache, marker, writer, uncompressedBlock);
+            }
+
+            writer.commit(range);
+            range = rangeIndex.getAndAdd(1);
+        } while (range < bounds.length - 1);
+
+        localLineCache.close();
+        writer.close();
+    }
+
+    /**
+     * 处理一个区间的 chunk. 每一行归属于其起始位置所在的区间: 除第一个区间外, 丢弃区间中第一个换行符及之前的数据 (由前一个区间处理);
+     * 区间内的数据处理完毕后, 继续处理至区间之后的第一个换行符
+     *
+     * @param skipFirstLine 是否丢弃区间中第一个换行符及之前的数据
+     */
+    void processChunks(BGZFChunkReader reader, boolean skipFirstLine, VolumeByteStream localLineCache, VCFNonGenotypeMarker marker,
+                       GTBWriter writer, GTBUncompressedBlock uncompressedBlock) throws IOException {
+        BGZFChunkReader.Chunk chunk = reader.next();
+        while (chunk != null) {
+            // 区间内预读下一个 chunk, 使解压与编码重叠; 区间之后的 chunk 按需读取
+            BGZFChunkReader.Chunk following = chunk.overflow ? null : reader.next();
+            byte[] text = chunk.text.join();
+            byte[] prefix = chunk.prefix.join();
+
+            // 第一行需要拼接前面 chunk 遗留的数据
+            int lineStart = 0;
+            boolean firstLine = true;
+            while (true) {
+                int lineEnd = lineStart;
+                while (lineEnd < text.length && text[lineEnd] != ByteCode.NEWLINE) {
+                    lineEnd++;
+                }
+
+                if (lineEnd == text.length && (!chunk.last || (lineStart == lineEnd && (!firstLine || prefix.length == 0)))) {
+                    // 未结束的行留给下一个 chunk; 最后一个 chunk 输出不以换行符结尾的行
+                    break;
+                }
+
+                if (skipFirstLine) {
+                    skipFirstLine = false;
+                } else {
+                    if (firstLine) {
+                        localLineCache.writeSafety(prefix);
+                    }
+                    localLineCache.writeSafety(text, lineStart, lineEnd - lineStart);
+                    processLine(localLineCache, marker, writer, uncompressedBlock);
+                    localLineCache.reset();
+                }
+                firstLine = false;
 
-        return false;
+                if (chunk.overflow) {
+                    // 区间之后的第一行已处理
+                    return;
+                }
+
+                if (lineEnd == text.length) {
+                    break;
+                }
+                lineStart = lineEnd + 1;
+            }
+
+            chunk = following != null ? following : reader.next();
+        }
+    }
+
+    /**
+     * 处理一行 VCF 数据
+     */
+    void processLine(VolumeByteStream localLineCache, VCFNonGenotypeMarker marker, GTBWriter writer, GTBUncompressedBlock uncompressedBlock) throws IOException {
+        String chromosome = new String(localLineCache.getNBy(ByteCode.TAB, 0));
+        if (ChromosomeTags.contain(chromosome)) {
+            // 获取其标准染色体名
+            if (uncompressedBlock.full() || !Objects.equals(chromosome, uncompressedBlock.chromosome)) {
+                writer.flush();
+            }
+
+            if (uncompressedBlock.seek == 0) {
+                uncompressedBlock.chromosome = chromosome;
+            }
+
+            formatVariant(localLineCache, marker, writer, uncompressedBlock);
+        }
     }
 
     /**
@@ -337,72 +466,77 @@ class BuildKernel {
 
         /* 根据是否仅有 GT，决定是否需要进行过滤 */
         if (formatter == null) {
-            int length;
-            int seek = marker.getGenotypeStart();
+            // 优先按字长扫描分隔符并查表编码, 无法处理时回退到逐字节扫描
+            if (!this.tokenizer.tokenizeGT(localLineCache, marker.getGenotypeStart(), variant.BEGs, null, this.validSubjectNum)) {
+                int length;
+                int seek = marker.getGenotypeStart();
 
-            for (int i = 0; i < this.validSubjectNum - 1; i++) {
-                length = 1;
-                seek += 2;
+                for (int i = 0; i < this.validSubjectNum - 1; i++) {
+                    length = 1;
+                    seek += 2;
 
-                while (lineCache[seek] != ByteCode.TAB) {
-                    seek++;
-                    length++;
+                    while (lineCache[seek] != ByteCode.TAB) {
+                        seek++;
+                        length++;
+                    }
+
+                    variant.BEGs[i] = this.begEncoder.encode(lineCache, seek, length);
                 }
 
-                variant.BEGs[i] = this.begEncoder.encode(lineCache, seek, length);
+                length = validLength - seek - 1;
+                seek = validLength;
+                variant.BEGs[this.validSubjectNum - 1] = this.begEncoder.encode(lineCache, seek, length);
             }
-
-            length = validLength - seek - 1;
-            seek = validLength;
-            variant.BEGs[this.validSubjectNum - 1] = this.begEncoder.encode(lineCache, seek, length);
         } else if (genotypeQC.size() == 0) {
-            int length, mark, genotypeLength;
-            int seek = marker.getGenotypeStart();
+            if (!this.tokenizer.tokenizeFormattedGT(localLineCache, marker.getGenotypeStart(), variant.BEGs, null, this.validSubjectNum)) {
+                int length, mark, genotypeLength;
+                int seek = marker.getGenotypeStart();
+
+                for (int i = 0; i < this.validSubjectNum - 1; i++) {
+                    length = 1;
+                    seek += 2;
+
+                    // 当前基因型是否为 .
+                    if (lineCache[seek - length] == ByteCode.PERIOD) {
+                        variant.BEGs[i] = this.begEncoder.encodeMiss();
+                        seek = localLineCache.indexOf(ByteCode.TAB, seek);
+                    } else {
+                        // 检测 :
+                        while (lineCache[seek] != ByteCode.COLON) {
+                            seek++;
+                            length++;
+                        }
 
-            for (int i = 0; i < this.validSubjectNum - 1; i++) {
-                length = 1;
-                seek += 2;
+                        mark = seek;
+                        genotypeLength = length;
 
-                // 当前基因型是否为 .
-                if (lineCache[seek - length] == ByteCode.PERIOD) {
-                    variant.BEGs[i] = this.begEncoder.encodeMiss();
-                    seek = localLineCache.indexOf(ByteCode.TAB, seek);
-                } else {
-                    // 检测 :
-                    while (lineCache[seek] != ByteCode.COLON) {
-                        seek++;
-                        length++;
-                    }
-
-                    mark = seek;
-                    genotypeLength = length;
+                        // 检测 tab 分隔符
+                        while (lineCache[seek] != ByteCode.TAB) {
+                            seek++;
+                            length++;
+                        }
 
-                    // 检测 tab 分隔符
-                    while (lineCache[seek] != ByteCode.TAB) {
-                        seek++;
-                        length++;
+                        variant.BEGs[i] = this.begEncoder.encode(lineCache, mark, genotypeLength);
                     }
-
-                    variant.BEGs[i] = this.begEncoder.encode(lineCache, mark, genotypeLength);
                 }
-            }
 
-            // 最后一个基因型数据
-            genotypeLength = 1;
-            mark = seek + 2;
+                // 最后一个基因型数据
+                genotypeLength = 1;
+                mark = seek + 2;
 
-            // 当前基因型是否为 .
-            if (lineCache[mark - genotypeLength] == ByteCode.PERIOD) {
-                variant.BEGs[this.validSubjectNum - 1] = this.begEncoder.encodeMiss();
-            } else {
+                // 当前基因型是否为 .
+                if (lineCache[mark - genotypeLength] == ByteCode.PERIOD) {
+                    variant.BEGs[this.validSubjectNum - 1] = this.begEncoder.encodeMiss();
+                } else {
 
-                // 检测 :
-                while (lineCache[mark] != ByteCode.COLON) {
-                    mark++;
-                    genotypeLength++;
-                }
+                    // 检测 :
+                    while (lineCache[mark] != ByteCode.COLON) {
+                        mark++;
+                        genotypeLength++;
+                    }
 
-                variant.BEGs[this.validSubjectNum - 1] = this.begEncoder.encode(lineCache, mark, genotypeLength);
+                    variant.BEGs[this.validSubjectNum - 1] = this.begEncoder.encode(lineCache, mark, genotypeLength);
+                }
             }
         } else {
             int length, mark, genotypeLength;
@@ -481,7 +615,19 @@ class BuildKernel {
             }
         }
     }
-}
-
-
 
+    /**
+     * 待处理的文件块, sequence 为其在输出文件中的顺序
+     */
+    static class FilePart {
+        final long sequence;
+        final FileStream fileStream;
+        final int[] relativeIndexes;
+
+        FilePart(long sequence, FileStream fileStream, int[] relativeIndexes) {
+            this.sequence = sequence;
+            this.fileStream = fileStream;
+            this.relativeIndexes = relativeIndexes;
+        }
+    }
+}
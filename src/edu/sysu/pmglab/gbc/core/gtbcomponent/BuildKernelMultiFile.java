@@ -1,9 +1,6 @@
 package edu.sysu.pmglab.gbc.core.gtbcomponent;
 
-import edu.sysu.pmglab.container.File;
-import edu.sysu.pmglab.container.Pair;
 import edu.sysu.pmglab.container.VolumeByteStream;
-import edu.sysu.pmglab.container.array.Array;
 import edu.sysu.pmglab.easytools.ArrayUtils;
 import edu.sysu.pmglab.easytools.ByteCode;
 import edu.sysu.pmglab.easytools.ValueUtils;
@@ -12,6 +9,7 @@ import edu.sysu.pmglab.gbc.core.common.qualitycontrol.variant.VCFNonGenotypeMark
 import edu.sysu.pmglab.gbc.core.common.switcher.AMDOFeature;
 import edu.sysu.pmglab.gbc.core.exception.GBCWorkFlowException;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOrderedWriter;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBUncompressedBlock;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBWriter;
 import edu.sysu.pmglab.threadPool.Block;
@@ -33,11 +31,6 @@ import java.util.Objects;
  */
 
 class BuildKernelMultiFile extends BuildKernel {
-    /**
-     * IO 数据管道
-     */
-    DynamicPipeline<Pair<FileStream, int[]>> uncompressedPipLine;
-
     /**
      * 对外的提交方法，将任务提交至本类，进行压缩任务
      */
@@ -71,12 +64,16 @@ class BuildKernelMultiFile extends BuildKernel {
         // 创建线程池
         ThreadPool threadPool = new ThreadPool(this.task.nThreads + 1);
 
+        // 创建输出文件, 各线程压缩后的数据段按文件块顺序直接写入
+        GTBOrderedWriter orderedWriter = buildOrderedWriter();
+
         // 创建 Input 线程
         threadPool.submit(() -> {
             try {
+                long sequence = 0;
                 for (int i = 0; i < partReaders.length; i++) {
                     for (FileStream fileStream : partReaders[i].part(this.task.nThreads)) {
-                        this.uncompressedPipLine.put(true, new Pair<>(fileStream, relativeIndexes[i]));
+                        this.uncompressedPipLine.put(true, new FilePart(sequence++, fileStream, relativeIndexes[i]));
                     }
                 }
 
@@ -87,20 +84,8 @@ class BuildKernelMultiFile extends BuildKernel {
             }
         });
 
-        Array<File> tempFiles = new Array<>(File[].class, this.task.nThreads);
-        File outputDir = this.task.outputFile.addExtension(".~$temp");
-        outputDir.mkdir();
-        outputDir.deleteOnExit();
         threadPool.submit(() -> {
-            File outputFile = outputDir.getSubFile("thread" + Thread.currentThread().getId() + ".gtb");
-            outputFile.deleteOnExit();
-
-            if (processFileStream(outputFile)) {
-                synchronized (tempFiles) {
-                    tempFiles.add(outputFile);
-                }
-            }
-
+            processFileStream(orderedWriter);
             return false;
         }, this.task.nThreads);
 
@@ -110,11 +95,8 @@ class BuildKernelMultiFile extends BuildKernel {
         // 清除数据区
         this.uncompressedPipLine.clear();
 
-        // 合并数据文件
-        GTBToolkit.Concat.instance(tempFiles.toArray(), this.task.outputFile).submit();
-
-        // 删除输出的临时文件
-        outputDir.delete();
+        // 写入节点表及文件头
+        orderedWriter.close();
     }
 
     /**
@@ -212,18 +194,15 @@ class BuildKernelMultiFile extends BuildKernel {
     }
 
     /**
-     * 读取基因组文件
+     * 读取基因组文件, 每个文件块编码后的数据段以其序号提交至有序写出器
      */
     @Override
-    boolean processFileStream(File outputFile) throws IOException {
-        Block<Boolean, Pair<FileStream, int[]>> fileStreamBlock = this.uncompressedPipLine.get();
+    void processFileStream(GTBOrderedWriter orderedWriter) throws IOException {
+        Block<Boolean, FilePart> fileStreamBlock = this.uncompressedPipLine.get();
         // 确认为需要处理的任务块，只有需要这么一些线程的时候，才会创建容器
         if (fileStreamBlock.getStatus()) {
             // 实例化压缩器
-            GTBWriter writer;
-            synchronized (builder) {
-                writer = builder.setOutputFile(outputFile).build();
-            }
+            GTBWriter writer = orderedWriter.newWriter();
 
             // 创建本地 lineCache 缓冲区
             VolumeByteStream localLineCache = new VolumeByteStream(2 << 20);
@@ -234,8 +213,9 @@ class BuildKernelMultiFile extends BuildKernel {
 
             do {
                 // 提取要处理的文件块
-                FileStream fileReader = fileStreamBlock.getData().key;
-                int[] relativeIndexes = fileStreamBlock.getData().value;
+                FilePart part = fileStreamBlock.getData();
+                FileStream fileReader = part.fileStream;
+                int[] relativeIndexes = part.relativeIndexes;
                 while (fileReader.readLine(localLineCache) != -1) {
                     // 文件没读完就一直读
                     String chromosome = new String(localLineCache.getNBy(ByteCode.TAB, 0));
@@ -256,10 +236,7 @@ class BuildKernelMultiFile extends BuildKernel {
 
                 // 该文件已经被读取完毕
                 fileReader.close();
-
-                if (!uncompressedBlock.empty()) {
-                    writer.flush();
-                }
+                writer.commit(part.sequence);
 
                 // 继续读取下一个文件任务
                 fileStreamBlock = this.uncompressedPipLine.get();
@@ -267,10 +244,7 @@ class BuildKernelMultiFile extends BuildKernel {
 
             localLineCache.close();
             writer.close();
-            return true;
         }
-
-        return false;
     }
 
     /**
@@ -331,79 +305,84 @@ class BuildKernelMultiFile extends BuildKernel {
 
         /* 根据是否仅有 GT，决定是否需要进行过滤 */
         if (formatter == null) {
-            int length;
-            int seek = marker.getGenotypeStart();
-            int subjectIndex;
+            // 优先按字长扫描分隔符并查表编码, 无法处理时回退到逐字节扫描
+            if (!this.tokenizer.tokenizeGT(localLineCache, marker.getGenotypeStart(), variant.BEGs, relativeIndexes, relativeIndexes.length)) {
+                int length;
+                int seek = marker.getGenotypeStart();
+                int subjectIndex;
 
-            for (int i = 0; i < relativeIndexes.length - 1; i++) {
-                length = 1;
-                seek += 2;
-                subjectIndex = relativeIndexes[i];
+                for (int i = 0; i < relativeIndexes.length - 1; i++) {
+                    length = 1;
+                    seek += 2;
+                    subjectIndex = relativeIndexes[i];
 
-                while (lineCache[seek] != ByteCode.TAB) {
-                    seek++;
-                    length++;
+                    while (lineCache[seek] != ByteCode.TAB) {
+                        seek++;
+                        length++;
+                    }
+
+                    variant.BEGs[subjectIndex] = this.begEncoder.encode(lineCache, seek, length);
                 }
 
-                variant.BEGs[subjectIndex] = this.begEncoder.encode(lineCache, seek, length);
+                length = validLength - seek - 1;
+                seek = validLength;
+                variant.BEGs[relativeIndexes[relativeIndexes.length - 1]] = this.begEncoder.encode(lineCache, seek, length);
             }
-
-            length = validLength - seek - 1;
-            seek = validLength;
-            variant.BEGs[relativeIndexes[relativeIndexes.length - 1]] = this.begEncoder.encode(lineCache, seek, length);
         } else if (this.genotypeQC.size() == 0) {
-            int length, mark, genotypeLength;
-            int seek = marker.getGenotypeStart();
-            int subjectIndex;
-            for (int i = 0; i < relativeIndexes.length - 1; i++) {
-                length = 1;
-                seek += 2;
-                subjectIndex = relativeIndexes[i];
+            if (!this.tokenizer.tokenizeFormattedGT(localLineCache, marker.getGenotypeStart(), variant.BEGs, relativeIndexes, relativeIndexes.length)) {
+                int length, mark, genotypeLength;
+                int seek = marker.getGenotypeStart();
+                int subjectIndex;
+                for (int i = 0; i < relativeIndexes.length - 1; i++) {
+                    length = 1;
+                    seek += 2;
+                    subjectIndex = relativeIndexes[i];
+
+                    // 当前基因型是否为 .
+                    if (lineCache[seek - length] == ByteCode.PERIOD) {
+                        variant.BEGs[subjectIndex] = this.begEncoder.encodeMiss();
+                        seek = localLineCache.indexOf(ByteCode.TAB, seek);
+                    } else {
+                        // 检测 :
+                        while (lineCache[seek] != ByteCode.COLON) {
+                            seek++;
+                            length++;
+                        }
 
-                // 当前基因型是否为 .
-                if (lineCache[seek - length] == ByteCode.PERIOD) {
-                    variant.BEGs[subjectIndex] = this.begEncoder.encodeMiss();
-                    seek = localLineCache.indexOf(ByteCode.TAB, seek);
-                } else {
-                    // 检测 :
-                    while (lineCache[seek] != ByteCode.COLON) {
-                        seek++;
-                        length++;
-                    }
+                        mark = seek;
+                        genotypeLength = length;
+                        // 检测 tab 分隔符
+                        while (lineCache[seek] != ByteCode.TAB) {
+                            seek++;
+                            length++;
+                        }
 
-                    mark = seek;
-                    genotypeLength = length;
-                    // 检测 tab 分隔符
-                    while (lineCache[seek] != ByteCode.TAB) {
-                        seek++;
-                        length++;
+                        variant.BEGs[subjectIndex] = this.begEncoder.encode(lineCache, mark, genotypeLength);
                     }
-
-                    variant.BEGs[subjectIndex] = this.begEncoder.encode(lineCache, mark, genotypeLength);
                 }
-            }
 
-            // 最后一个基因型数据
-            genotypeLength = 1;
-            mark = seek + 2;
+                // 最后一个基因型数据
+                genotypeLength = 1;
+                mark = seek + 2;
 
-            // 获取样本索引
-            subjectIndex = relativeIndexes[relativeIndexes.length - 1];
+                // 获取样本索引
+                subjectIndex = relativeIndexes[relativeIndexes.length - 1];
 
-            // 当前基因型是否为 .
-            if (lineCache[mark - genotypeLength] == ByteCode.PERIOD) {
-                variant.BEGs[subjectIndex] = this.begEncoder.encodeMiss();
-            } else {
-                length = validLength - seek - 1;
-                seek = validLength;
+                // 当前基因型是否为 .
+                if (lineCache[mark - genotypeLength] == ByteCode.PERIOD) {
+                    variant.BEGs[subjectIndex] = this.begEncoder.encodeMiss();
+                } else {
+                    length = validLength - seek - 1;
+                    seek = validLength;
 
-                // 检测 :
-                while (lineCache[mark] != ByteCode.COLON) {
-                    mark++;
-                    genotypeLength++;
-                }
+                    // 检测 :
+                    while (lineCache[mark] != ByteCode.COLON) {
+                        mark++;
+                        genotypeLength++;
+                    }
 
-                variant.BEGs[subjectIndex] = this.begEncoder.encode(lineCache, mark, genotypeLength);
+                    variant.BEGs[subjectIndex] = this.begEncoder.encode(lineCache, mark, genotypeLength);
+                }
             }
         } else {
             int length, mark, genotypeLength;
@@ -1,6 +1,7 @@
 package edu.sysu.pmglab.gbc.core.gtbcomponent;
 
 import edu.sysu.pmglab.easytools.ValueUtils;
+import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOutputParam;
 
 import java.util.Arrays;
@@ -19,6 +20,13 @@ public class FileBaseInfoManager {
     private boolean phased; // 1 bit
     private int blockSizeType;  // 3 bit
     private int compressionLevel;  // 5 bit
+    private boolean segmentCodec; // 1 bit, 储存在节点个数的最高位
+
+    /**
+     * 节点个数字段占用 3 字节. 旧格式使用全部 24 位; 数据段编码扩展格式使用低 23 位, 最高位为扩展标志
+     */
+    public static final int MAX_NODE_NUM = (1 << 24) - 1;
+    public static final int MAX_SEGMENT_CODEC_NODE_NUM = (1 << 23) - 1;
 
     /**
      * 构造器方法
@@ -62,7 +70,9 @@ public class FileBaseInfoManager {
      * @param outputParam 文件细节参数
      */
     public static FileBaseInfoManager of(GTBOutputParam outputParam) {
-        return new FileBaseInfoManager(false, outputParam.getCompressor(), outputParam.isPhased(), outputParam.getBlockSizeType(), outputParam.getCompressionLevel());
+        FileBaseInfoManager baseInfoManager = new FileBaseInfoManager(false, outputParam.getCompressor(), outputParam.isPhased(), outputParam.getBlockSizeType(), outputParam.getCompressionLevel());
+        baseInfoManager.setSegmentCodec(outputParam.isSegmentCodec());
+        return baseInfoManager;
     }
 
     /**
@@ -203,6 +213,13 @@ public class FileBaseInfoManager {
         return this.phased;
     }
 
+    /**
+     * 是否为数据段编码扩展格式 (节点表记录每个数据段的编码方式, 文件头记录 allele 字典)
+     */
+    public boolean isSegmentCodec() {
+        return this.segmentCodec;
+    }
+
     /**
      * 是否建议解压为 bgzf格式
      */
@@ -315,6 +332,14 @@ public class FileBaseInfoManager {
         this.compressorIndex = compressorIndex;
     }
 
+    /**
+     * 设置数据段编码扩展格式
+     * @param segmentCodec 是否为数据段编码扩展格式
+     */
+    public void setSegmentCodec(boolean segmentCodec) {
+        this.segmentCodec = segmentCodec;
+    }
+
     /**
      * 设置向型
      * @param phased 向型
@@ -355,6 +380,7 @@ public class FileBaseInfoManager {
                 ", phased=" + phased +
                 ", blockSizeType=" + blockSizeType +
                 ", compressionLevel=" + compressionLevel +
+                ", segmentCodec=" + segmentCodec +
                 ", byteCode=" + Arrays.toString(codes) +
                 ", bitCode=" + bitCode +
                 '}';
@@ -367,4 +393,40 @@ public class FileBaseInfoManager {
         return new byte[]{(byte) ((this.estimateDecompressedBlockSizeFlag) + ((this.orderedGTB ? 1 : 0) << 4) + (this.compressorIndex << 5) + ((this.phased ? 1 : 0) << 7)),
                 (byte) ((this.blockSizeType) + (this.compressionLevel << 3))};
     }
+
+    /**
+     * 组装节点个数字段, 数据段编码扩展格式在最高位写入扩展标志, 此时节点个数不能超过 2^23 - 1
+     * @param nodeNum 节点个数
+     */
+    public byte[] buildNodeNum(int nodeNum) {
+        int maxNodeNum = this.segmentCodec ? MAX_SEGMENT_CODEC_NODE_NUM : MAX_NODE_NUM;
+        if (nodeNum < 0 || nodeNum > maxNodeNum) {
+            throw new GTBComponentException("the number of GTB nodes " + nodeNum + " is out of range [0, " + maxNodeNum + "]");
+        }
+
+        return ValueUtils.value2ByteArray(this.segmentCodec ? nodeNum | (1 << 23) : nodeNum, 3);
+    }
+
+    /**
+     * 解析节点个数字段, 同时加载数据段编码扩展标志.
+     * 最高位为 1 时既可能是扩展格式, 也可能是节点个数不少于 2^23 的旧格式文件, 此处按扩展格式解析;
+     * 调用方需根据节点表与文件大小是否吻合确认格式, 不吻合时使用 loadLegacyNodeNum 按旧格式重新解析
+     * @param nodeNumCode 节点个数字段 (3 byte)
+     * @return 节点个数
+     */
+    public int loadNodeNum(byte[] nodeNumCode) {
+        int value = (int) ValueUtils.byteArray2Value(nodeNumCode);
+        this.segmentCodec = ((value >> 23) & 0x1) == 1;
+        return this.segmentCodec ? value & MAX_SEGMENT_CODEC_NODE_NUM : value;
+    }
+
+    /**
+     * 按旧格式解析节点个数字段 (24 位节点个数), 并清除数据段编码扩展标志
+     * @param nodeNumCode 节点个数字段 (3 byte)
+     * @return 节点个数
+     */
+    public int loadLegacyNodeNum(byte[] nodeNumCode) {
+        this.segmentCodec = false;
+        return (int) ValueUtils.byteArray2Value(nodeNumCode);
+    }
 }
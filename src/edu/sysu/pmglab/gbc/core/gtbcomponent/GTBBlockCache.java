@@ -0,0 +1,244 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.check.Assert;
+import edu.sysu.pmglab.container.File;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @Description :全局单例模式 GTB 解压数据块缓存器, 多个 GTBReader 共享已解压的节点数据, 按 LRU 策略淘汰
+ */
+
+public enum GTBBlockCache {
+    /* 单例模式 GTB 数据块缓存 */
+    INSTANCE;
+
+    /**
+     * 缓存的字节预算, 0 表示不启用缓存
+     */
+    private long capacity = 0;
+    private long size = 0;
+
+    /**
+     * 计数器
+     */
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    private final LinkedHashMap<BlockKey, byte[][]> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 设置缓存的字节预算, 设置为 0 时关闭缓存
+     *
+     * @param capacity 最大缓存字节数
+     */
+    public static void setCapacity(long capacity) {
+        Assert.that(capacity >= 0);
+
+        synchronized (INSTANCE.cache) {
+            INSTANCE.capacity = capacity;
+            INSTANCE.evict();
+        }
+    }
+
+    /**
+     * 获取缓存的字节预算
+     */
+    public static long getCapacity() {
+        synchronized (INSTANCE.cache) {
+            return INSTANCE.capacity;
+        }
+    }
+
+    /**
+     * 是否启用缓存
+     */
+    public static boolean isEnable() {
+        synchronized (INSTANCE.cache) {
+            return INSTANCE.capacity > 0;
+        }
+    }
+
+    /**
+     * 获取缓存的数据块
+     *
+     * @param file       GTB 文件
+     * @param chromosome 染色体编号
+     * @param blockSeek  节点数据块在文件中的偏移量 (节点树被裁剪后节点索引会改变, 偏移量不会)
+     * @param genotype   true 为基因型数据段, false 为位置及等位基因数据段
+     * @return 解压后的数据段, 未命中时返回 null
+     */
+    public static byte[][] get(File file, String chromosome, long blockSeek, boolean genotype) {
+        synchronized (INSTANCE.cache) {
+            if (INSTANCE.capacity == 0) {
+                return null;
+            }
+
+            byte[][] segments = INSTANCE.cache.get(new BlockKey(file, chromosome, blockSeek, genotype));
+            if (segments == null) {
+                INSTANCE.missCount++;
+            } else {
+                INSTANCE.hitCount++;
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * 缓存解压后的数据块, 放入缓存的数组不应再被修改
+     *
+     * @param file       GTB 文件
+     * @param chromosome 染色体编号
+     * @param blockSeek  节点数据块在文件中的偏移量 (节点树被裁剪后节点索引会改变, 偏移量不会)
+     * @param genotype   true 为基因型数据段, false 为位置及等位基因数据段
+     * @param segments   解压后的数据段
+     */
+    public static void put(File file, String chromosome, long blockSeek, boolean genotype, byte[]... segments) {
+        long bytes = sizeOf(segments);
+
+        synchronized (INSTANCE.cache) {
+            if (bytes > INSTANCE.capacity) {
+                // 超过预算的数据块不缓存
+                return;
+            }
+
+            byte[][] old = INSTANCE.cache.put(new BlockKey(file, chromosome, blockSeek, genotype), segments);
+            if (old != null) {
+                INSTANCE.size -= sizeOf(old);
+            }
+            INSTANCE.size += bytes;
+            INSTANCE.evict();
+        }
+    }
+
+    /**
+     * 清除所有缓存的数据块
+     */
+    public static void clear() {
+        synchronized (INSTANCE.cache) {
+            INSTANCE.cache.clear();
+            INSTANCE.size = 0;
+        }
+    }
+
+    /**
+     * 清除指定文件的缓存数据块
+     */
+    public static void clear(File... files) {
+        synchronized (INSTANCE.cache) {
+            for (File file : files) {
+                Iterator<Map.Entry<BlockKey, byte[][]>> iterator = INSTANCE.cache.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<BlockKey, byte[][]> entry = iterator.next();
+                    if (Objects.equals(entry.getKey().file, file)) {
+                        INSTANCE.size -= sizeOf(entry.getValue());
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取当前缓存的字节数
+     */
+    public static long size() {
+        synchronized (INSTANCE.cache) {
+            return INSTANCE.size;
+        }
+    }
+
+    /**
+     * 获取命中次数
+     */
+    public static long getHitCount() {
+        synchronized (INSTANCE.cache) {
+            return INSTANCE.hitCount;
+        }
+    }
+
+    /**
+     * 获取未命中次数
+     */
+    public static long getMissCount() {
+        synchronized (INSTANCE.cache) {
+            return INSTANCE.missCount;
+        }
+    }
+
+    /**
+     * 获取淘汰次数
+     */
+    public static long getEvictionCount() {
+        synchronized (INSTANCE.cache) {
+            return INSTANCE.evictionCount;
+        }
+    }
+
+    /**
+     * 重置计数器
+     */
+    public static void resetCounters() {
+        synchronized (INSTANCE.cache) {
+            INSTANCE.hitCount = 0;
+            INSTANCE.missCount = 0;
+            INSTANCE.evictionCount = 0;
+        }
+    }
+
+    /**
+     * 按照访问顺序淘汰最久未使用的数据块, 直到满足字节预算
+     */
+    private void evict() {
+        Iterator<Map.Entry<BlockKey, byte[][]>> iterator = this.cache.entrySet().iterator();
+        while (this.size > this.capacity && iterator.hasNext()) {
+            this.size -= sizeOf(iterator.next().getValue());
+            iterator.remove();
+            this.evictionCount++;
+        }
+    }
+
+    private static long sizeOf(byte[][] segments) {
+        long bytes = 0;
+        for (byte[] segment : segments) {
+            bytes += segment.length;
+        }
+        return bytes;
+    }
+
+    private static final class BlockKey {
+        final File file;
+        final String chromosome;
+        final long blockSeek;
+        final boolean genotype;
+
+        BlockKey(File file, String chromosome, long blockSeek, boolean genotype) {
+            this.file = file;
+            this.chromosome = chromosome;
+            this.blockSeek = blockSeek;
+            this.genotype = genotype;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+
+            BlockKey key = (BlockKey) o;
+            return blockSeek == key.blockSeek && genotype == key.genotype && Objects.equals(file, key.file) && Objects.equals(chromosome, key.chromosome);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, chromosome, blockSeek, genotype);
+        }
+    }
+}
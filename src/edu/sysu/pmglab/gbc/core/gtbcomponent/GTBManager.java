@@ -16,6 +16,7 @@ import edu.sysu.pmglab.unifyIO.FileStream;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.zip.CRC32;
 
 /**
  * @Data :2020/06/22
@@ -31,6 +32,11 @@ public class GTBManager {
     private final FileBaseInfoManager fileBaseInfo = new FileBaseInfoManager();
     private final GTBSubjectManager subjectManager = new GTBSubjectManager();
     private final GTBTree gtbTree = new GTBTree();
+    private GTBMappedFile mappedFile;
+    private int nodeTableChecksum;
+    private byte[] alleleDictionary;
+    private GTBPositionIndex positionIndex;
+    private boolean positionIndexLoaded = false;
 
     /**
      * 标准构造器，统一调用 load 进行构造
@@ -54,6 +60,8 @@ public class GTBManager {
         this.file = null;
         this.reference.load(manager.getReference());
         this.fileBaseInfo.load(manager.getFileBaseInfo());
+        this.fileBaseInfo.setSegmentCodec(manager.isSegmentCodec());
+        this.alleleDictionary = manager.alleleDictionary;
         this.subjectManager.load(manager.getSubjects());
         this.gtbTree.clear();
         this.gtbTree.add(tree);
@@ -82,6 +90,79 @@ public class GTBManager {
         return new FileStream(this.file, FileStream.CHANNEL_READER);
     }
 
+    /**
+     * 获取文件的内存映射 (首次调用时映射, 之后由所有读取器共享)
+     */
+    public synchronized GTBMappedFile getMappedFile() throws IOException {
+        if (this.mappedFile == null) {
+            this.mappedFile = new GTBMappedFile(this.file);
+        }
+        return this.mappedFile;
+    }
+
+    /**
+     * 是否为数据段编码扩展格式
+     */
+    public boolean isSegmentCodec() {
+        return this.fileBaseInfo.isSegmentCodec();
+    }
+
+    /**
+     * 获取 allele 数据段的 ZSTD 字典, 不存在时返回 null
+     */
+    public byte[] getAlleleDictionary() {
+        return this.alleleDictionary;
+    }
+
+    /**
+     * 设置 allele 数据段的 ZSTD 字典, 设置后文件头按数据段编码扩展格式写出
+     *
+     * @param alleleDictionary 字典, null 代表不使用字典
+     */
+    public void setAlleleDictionary(byte[] alleleDictionary) {
+        this.alleleDictionary = alleleDictionary;
+        if (alleleDictionary != null) {
+            this.fileBaseInfo.setSegmentCodec(true);
+        }
+    }
+
+    /**
+     * 构建节点表
+     */
+    public VolumeByteStream buildNodeTable() {
+        return this.gtbTree.build(isSegmentCodec());
+    }
+
+    /**
+     * 获取磁盘上节点表的校验和
+     */
+    public int getNodeTableChecksum() {
+        return this.nodeTableChecksum;
+    }
+
+    /**
+     * 获取位置索引文件 (*.gtb.idx), 索引文件不存在或与当前节点表不匹配时返回 null
+     */
+    public synchronized GTBPositionIndex getPositionIndex() {
+        if (!this.positionIndexLoaded) {
+            this.positionIndexLoaded = true;
+
+            if (this.file != null) {
+                File indexFile = GTBPositionIndex.getIndexFile(this.file);
+                if (indexFile.isExists()) {
+                    try {
+                        this.positionIndex = GTBPositionIndex.load(indexFile, this.nodeTableChecksum);
+                    } catch (IOException | RuntimeException e) {
+                        // 损坏的索引文件等同于不存在
+                        this.positionIndex = null;
+                    }
+                }
+            }
+        }
+
+        return this.positionIndex;
+    }
+
     /* 节点树操作 */
 
     /**
@@ -245,6 +326,25 @@ public class GTBManager {
         this.fileBaseInfo.setOrderedGTB(orderedGTB);
     }
 
+    /**
+     * 重新检查是否需要数据段编码扩展格式, 并更正到块头部. 所有节点均为原始编码时使用旧版本格式 (不写入 allele 字典), 没有节点使用字典编码时丢弃 allele 字典
+     */
+    public void checkSegmentCodec() {
+        boolean segmentCodec = false;
+        boolean alleleDictionary = false;
+        for (GTBNodes nodes : this.gtbTree) {
+            for (GTBNode node : nodes) {
+                segmentCodec |= node.segmentCodec != SegmentCodec.RAW;
+                alleleDictionary |= node.getAlleleCodec() == SegmentCodec.ALLELE_DICTIONARY;
+            }
+        }
+
+        if (!alleleDictionary) {
+            this.alleleDictionary = null;
+        }
+        this.fileBaseInfo.setSegmentCodec(segmentCodec);
+    }
+
     /**
      * 重新检查是否必须解压为 bgzf 格式
      */
@@ -353,19 +453,20 @@ public class GTBManager {
     }
 
     /**
-     * 重建 GTB 文件头部信息，头部信息为：文件基本信息 + 总块数 + 参考序列网址 + \n + 样本名
+     * 重建 GTB 文件头部信息，头部信息为：文件基本信息 + 总块数 + 参考序列网址 + \n + 样本名 (+ allele 字典)
      *
      * @return 保存在定容字节流中的数据
      */
     public VolumeByteStream buildHeader() throws IOException {
         // 构建头部信息
-        VolumeByteStream fileHeader = new VolumeByteStream(this.reference.size() + ICompressor.getCompressBound(getCompressorIndex(), this.getSubjects().length) + 10);
+        VolumeByteStream fileHeader = new VolumeByteStream(this.reference.size() + ICompressor.getCompressBound(getCompressorIndex(), this.getSubjects().length) + 14
+                + (this.alleleDictionary == null ? 0 : this.alleleDictionary.length));
 
         // 重新检验文件基本信息
         fileHeader.write(getFileBaseInfo());
 
         // 写入块大小
-        fileHeader.write(ValueUtils.value2ByteArray(this.gtbTree.numOfNodes(), 3));
+        fileHeader.write(this.fileBaseInfo.buildNodeNum(this.gtbTree.numOfNodes()));
 
         // 写入参考序列地址
         fileHeader.write(this.reference.getReference());
@@ -378,6 +479,9 @@ public class GTBManager {
         fileHeader.writeIntegerValue(subjects.size());
         fileHeader.write(subjects);
 
+        // 写入 allele 字典
+        writeAlleleDictionary(fileHeader);
+
         return fileHeader;
     }
 
@@ -399,7 +503,8 @@ public class GTBManager {
         }
 
         // 获取 GTB 节点总数
-        int gtbNodeNum = (int) ValueUtils.byteArray2Value(gtbFile.read(3));
+        byte[] nodeNumCode = gtbFile.read(3);
+        int gtbNodeNum = this.fileBaseInfo.loadNodeNum(nodeNumCode);
 
         // 写入参考序列
         gtbFile.readLine(lineCache);
@@ -412,15 +517,45 @@ public class GTBManager {
         // 解压样本序列
         VolumeByteStream subjects = IDecompressor.decompress(getCompressorIndex(), lineCache);
         this.subjectManager.load(subjects);
+
+        // 数据段编码扩展格式: 读取 allele 字典
         long seek = gtbFile.tell();
+        byte[] nodeTable = null;
+        this.alleleDictionary = null;
+        if (this.fileBaseInfo.isSegmentCodec()) {
+            int dictionarySize = gtbFile.readIntegerValue();
+            if (dictionarySize >= 0) {
+                nodeTable = readNodeTable(gtbFile, seek + 4 + dictionarySize, GTBNode.SEGMENT_CODEC_NODE_SIZE, gtbNodeNum, true);
+            }
 
-        // 一次性载入所有的块头数据，并包装为 FileStream
-        gtbFile.seek(gtbFile.size() - 25L * gtbNodeNum);
+            if (nodeTable != null) {
+                if (dictionarySize > 0) {
+                    gtbFile.seek(seek + 4);
+                    this.alleleDictionary = gtbFile.read(dictionarySize);
+                }
+                seek += 4 + dictionarySize;
+            } else {
+                // 节点表与文件大小不吻合, 最高位属于节点个数不少于 2^23 的旧格式文件
+                gtbNodeNum = this.fileBaseInfo.loadLegacyNodeNum(nodeNumCode);
+                nodeTable = readNodeTable(gtbFile, seek, GTBNode.NODE_SIZE, gtbNodeNum, true);
+                if (nodeTable == null) {
+                    throw new GTBComponentException("broken GTB: " + this.file);
+                }
+            }
+        } else {
+            nodeTable = readNodeTable(gtbFile, seek, GTBNode.NODE_SIZE, gtbNodeNum, false);
+        }
+        boolean segmentCodec = this.fileBaseInfo.isSegmentCodec();
 
         // 将字节数组包装
-        VolumeByteInputStream blockHeader = new VolumeByteInputStream(gtbFile.read(gtbNodeNum * 25));
+        VolumeByteInputStream blockHeader = new VolumeByteInputStream(nodeTable);
         gtbFile.close();
 
+        // 节点表校验和, 用于校验位置索引文件是否过期
+        CRC32 crc32 = new CRC32();
+        crc32.update(nodeTable, 0, nodeTable.length);
+        this.nodeTableChecksum = (int) crc32.getValue();
+
         for (int i = 0; i < gtbNodeNum; i++) {
             int chromosomeIndex = blockHeader.read();
             int minPos = ValueUtils.byteArray2IntegerValue(blockHeader.read(4));
@@ -430,8 +565,9 @@ public class GTBManager {
             int posSize = (int) ValueUtils.byteArray2Value(blockHeader.read(3));
             int alleleSize = ValueUtils.byteArray2IntegerValue(blockHeader.read(4));
             byte magicCode = (byte) blockHeader.read();
+            byte segmentCodecCode = segmentCodec ? (byte) blockHeader.read() : 0;
 
-            this.gtbTree.add(new GTBNode(ChromosomeTags.getString(chromosomeIndex), minPos, maxPos, seek, genotypeSize, posSize, alleleSize, magicCode, subBlockVariantNum));
+            this.gtbTree.add(new GTBNode(ChromosomeTags.getString(chromosomeIndex), minPos, maxPos, seek, genotypeSize, posSize, alleleSize, magicCode, subBlockVariantNum, segmentCodecCode));
             seek += posSize + alleleSize + genotypeSize;
         }
 
@@ -440,6 +576,44 @@ public class GTBManager {
         blockHeader.close();
     }
 
+    /**
+     * 一次性载入文件末尾的所有块头数据 (节点表)
+     *
+     * @param gtbFile   GTB 文件
+     * @param dataStart 第一个数据块的起始位置
+     * @param nodeSize  每个节点的长度
+     * @param nodeNum   节点个数
+     * @param check     是否校验节点表记录的数据块总长度与数据区长度一致, 用于区分节点个数字段最高位的含义
+     * @return 节点表, 校验不通过时返回 null
+     */
+    private static byte[] readNodeTable(FileStream gtbFile, long dataStart, int nodeSize, int nodeNum, boolean check) throws IOException {
+        long nodeTableStart = gtbFile.size() - (long) nodeSize * nodeNum;
+        if (check && nodeTableStart < dataStart) {
+            return null;
+        }
+
+        gtbFile.seek(nodeTableStart);
+        byte[] nodeTable = gtbFile.read(nodeNum * nodeSize);
+        if (check) {
+            // 节点结构: chromosome (1) + minPos (4) + maxPos (4) + subBlockVariantNum (4) + genotypeSize (4) + posSize (3) + alleleSize (4) + ...
+            VolumeByteInputStream blockHeader = new VolumeByteInputStream(nodeTable);
+            long dataSize = 0;
+            for (int i = 0; i < nodeNum; i++) {
+                blockHeader.skip(13);
+                dataSize += ValueUtils.byteArray2IntegerValue(blockHeader.read(4));
+                dataSize += ValueUtils.byteArray2Value(blockHeader.read(3));
+                dataSize += ValueUtils.byteArray2IntegerValue(blockHeader.read(4));
+                blockHeader.skip(nodeSize - 24);
+            }
+
+            if (dataSize != nodeTableStart - dataStart) {
+                return null;
+            }
+        }
+
+        return nodeTable;
+    }
+
     /**
      * 打印信息
      */
@@ -472,6 +646,7 @@ public class GTBManager {
     public void toFile(File outputFile) throws IOException {
         // 修改文件标志信息
         checkOrderedGTB();
+        checkSegmentCodec();
         int numOfNodes = getGtbTree().numOfNodes();
 
         FileStream writer = outputFile.open(FileStream.CHANNEL_WRITER);
@@ -481,7 +656,7 @@ public class GTBManager {
 
         // 写入初始头信息
         writer.write(fileBaseInfo.build());
-        writer.write(ValueUtils.value2ByteArray(numOfNodes, 3));
+        writer.write(fileBaseInfo.buildNodeNum(numOfNodes));
 
         // 写入 refer 网址
         writer.write(getReference());
@@ -494,6 +669,13 @@ public class GTBManager {
         writer.writeIntegerValue(subjectsSeq.size());
         writer.write(subjectsSeq);
 
+        // 写入 allele 字典
+        if (isSegmentCodec()) {
+            VolumeByteStream dictionary = new VolumeByteStream(4 + (this.alleleDictionary == null ? 0 : this.alleleDictionary.length));
+            writeAlleleDictionary(dictionary);
+            writer.write(dictionary);
+        }
+
         // 写入块数据段
         FileStream reader = getFileStream();
         for (GTBNodes nodes : this.gtbTree) {
@@ -504,10 +686,10 @@ public class GTBManager {
 
         // 写入块头信息
         int maxEstimateSize = 0;
-        VolumeByteStream headerInfo = new VolumeByteStream(numOfNodes * 25);
+        VolumeByteStream headerInfo = new VolumeByteStream(numOfNodes * (isSegmentCodec() ? GTBNode.SEGMENT_CODEC_NODE_SIZE : GTBNode.NODE_SIZE));
         for (GTBNodes nodes : this.gtbTree) {
             for (GTBNode node : nodes) {
-                node.toTransFormat(headerInfo);
+                node.toTransFormat(headerInfo, isSegmentCodec());
                 int estimateSize = node.getEstimateDecompressedSize(this.getSubjectNum());
                 if (estimateSize > maxEstimateSize) {
                     maxEstimateSize = estimateSize;
@@ -517,4 +699,18 @@ public class GTBManager {
 
         writer.write(headerInfo);
     }
+
+    /**
+     * 数据段编码扩展格式下, 在样本名之后写入 allele 字典 (4 byte 长度 + 字典, 长度为 0 代表无字典)
+     */
+    private void writeAlleleDictionary(VolumeByteStream header) {
+        if (isSegmentCodec()) {
+            if (this.alleleDictionary == null) {
+                header.writeIntegerValue(0);
+            } else {
+                header.writeIntegerValue(this.alleleDictionary.length);
+                header.write(this.alleleDictionary);
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Description :GTB 文件的只读内存映射, 单个 MappedByteBuffer 最多映射 2GB, 因此按区域分块映射
+ */
+
+public class GTBMappedFile {
+    /**
+     * 单个映射区域的最大字节数 (1GB), 跨区域的数据段按区域拼接读取
+     */
+    static final int REGION_SIZE = 1 << 30;
+
+    private final long fileSize;
+    private final MappedByteBuffer[] regions;
+
+    GTBMappedFile(File file) throws IOException {
+        if (file == null) {
+            throw new GTBComponentException("virtual GTB manager (without file) cannot be mapped into memory");
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.getFilePath(), "r");
+             FileChannel channel = raf.getChannel()) {
+            this.fileSize = channel.size();
+            int regionNum = (int) ((this.fileSize + REGION_SIZE - 1) / REGION_SIZE);
+            this.regions = new MappedByteBuffer[regionNum];
+            for (int i = 0; i < regionNum; i++) {
+                long start = (long) i * REGION_SIZE;
+                this.regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, this.fileSize - start));
+            }
+        }
+    }
+
+    /**
+     * 获取映射的文件大小
+     */
+    public long size() {
+        return this.fileSize;
+    }
+
+    /**
+     * 将指定的数据段读入缓冲区的起始位置 (覆盖缓冲区原有数据), 该方法不修改映射区域的状态, 可被多线程并发调用
+     *
+     * @param seek   数据段在文件中的起始位置
+     * @param length 数据段长度
+     * @param dst    目标缓冲区
+     */
+    public void read(long seek, int length, VolumeByteStream dst) {
+        if (seek < 0 || length < 0 || seek + length > this.fileSize) {
+            throw new GTBComponentException("read out of mapped range (seek=" + seek + ", length=" + length + ", size=" + this.fileSize + ")");
+        }
+
+        dst.reset();
+        dst.makeSureCapacity(length);
+        read(seek, dst.getCache(), 0, length);
+        dst.reset(length);
+    }
+
+    /**
+     * 将指定的数据段读入字节数组
+     *
+     * @param seek   数据段在文件中的起始位置
+     * @param dst    目标数组
+     * @param offset 目标数组的起始写入位置
+     * @param length 数据段长度
+     */
+    public void read(long seek, byte[] dst, int offset, int length) {
+        while (length > 0) {
+            int regionIndex = (int) (seek / REGION_SIZE);
+            int regionOffset = (int) (seek % REGION_SIZE);
+            int count = Math.min(length, REGION_SIZE - regionOffset);
+
+            // duplicate 得到独立的 position, 避免并发读取时相互干扰
+            ByteBuffer view = this.regions[regionIndex].duplicate();
+            view.position(regionOffset);
+            view.get(dst, offset, count);
+
+            seek += count;
+            offset += count;
+            length -= count;
+        }
+    }
+}
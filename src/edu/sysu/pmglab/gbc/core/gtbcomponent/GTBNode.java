@@ -37,6 +37,17 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
      */
     public final byte magicCode;
 
+    /**
+     * 数据段编码方式, 低 4 位为位置数据段编码, 高 4 位为 allele 数据段编码 (见 SegmentCodec), 旧版本文件为 0
+     */
+    public final byte segmentCodec;
+
+    /**
+     * 节点表中每个节点的字节数 (数据段编码扩展格式多 1 字节的编码方式)
+     */
+    public static final int NODE_SIZE = 25;
+    public static final int SEGMENT_CODEC_NODE_SIZE = 26;
+
     /**
      * 根结点编号，用于合并不同来源的GTB文件
      */
@@ -57,6 +68,25 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
      */
     public GTBNode(String chromosome, int minPos, int maxPos, long blockSeek, int genotypeSize, int posSize, int alleleSize,
                    byte magicCode, short[] subBlockVariantNum) {
+        this(chromosome, minPos, maxPos, blockSeek, genotypeSize, posSize, alleleSize, magicCode, subBlockVariantNum, (byte) 0);
+    }
+
+    /**
+     * 构造器方法
+     *
+     * @param chromosome         染色体编号 (索引)
+     * @param minPos             最小位置
+     * @param maxPos             最大位置
+     * @param blockSeek          块数据段指针
+     * @param genotypeSize       基因型压缩块大小
+     * @param posSize            位置压缩块大小
+     * @param alleleSize         等位基因压缩块大小
+     * @param magicCode          原始数据大小的魔术码
+     * @param subBlockVariantNum 子块变异位点数量
+     * @param segmentCodec       数据段编码方式
+     */
+    public GTBNode(String chromosome, int minPos, int maxPos, long blockSeek, int genotypeSize, int posSize, int alleleSize,
+                   byte magicCode, short[] subBlockVariantNum, byte segmentCodec) {
         this.chromosome = chromosome;
         this.minPos = minPos;
         this.maxPos = maxPos;
@@ -66,6 +96,7 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
         this.compressedAlleleSize = alleleSize;
         this.subBlockVariantNum = subBlockVariantNum;
         this.magicCode = magicCode;
+        this.segmentCodec = segmentCodec;
         this.blockSize = alleleSize + genotypeSize + posSize;
     }
 
@@ -80,10 +111,11 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
      * @param posSize            位置压缩块大小
      * @param alleleSize         等位基因压缩块大小
      * @param subBlockVariantNum 子块变异位点数量
+     * @param segmentCodec       数据段编码方式
      */
     public GTBNode(String chromosome, int minPos, int maxPos, long blockSeek, int genotypeSize, int posSize, int alleleSize,
-                   int originMBEGsSize, int originAllelesSize, short[] subBlockVariantNum) {
-        this(chromosome, minPos, maxPos, blockSeek, genotypeSize, posSize, alleleSize, calculateMagicCode(originMBEGsSize, originAllelesSize), subBlockVariantNum);
+                   int originMBEGsSize, int originAllelesSize, short[] subBlockVariantNum, byte segmentCodec) {
+        this(chromosome, minPos, maxPos, blockSeek, genotypeSize, posSize, alleleSize, calculateMagicCode(originMBEGsSize, originAllelesSize), subBlockVariantNum, segmentCodec);
     }
 
 
@@ -128,7 +160,7 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
     public GTBNode clone() {
         // 克隆方法
         return new GTBNode(this.chromosome, this.minPos, this.maxPos, this.blockSeek, this.compressedGenotypesSize, this.compressedPosSize, this.compressedAlleleSize, this.magicCode,
-                new short[]{subBlockVariantNum[0], subBlockVariantNum[1]});
+                new short[]{subBlockVariantNum[0], subBlockVariantNum[1]}, this.segmentCodec);
     }
 
     /**
@@ -139,7 +171,7 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
     GTBNode resetChromosome(String newChromosome) {
         // 克隆方法
         return new GTBNode(newChromosome, this.minPos, this.maxPos, this.blockSeek, this.compressedGenotypesSize, this.compressedPosSize, this.compressedAlleleSize, this.magicCode,
-                new short[]{subBlockVariantNum[0], subBlockVariantNum[1]});
+                new short[]{subBlockVariantNum[0], subBlockVariantNum[1]}, this.segmentCodec);
     }
 
     @Override
@@ -159,12 +191,13 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
                 compressedAlleleSize == gtbNode.compressedAlleleSize &&
                 compressedGenotypesSize == gtbNode.compressedGenotypesSize &&
                 magicCode == gtbNode.magicCode &&
+                segmentCodec == gtbNode.segmentCodec &&
                 Arrays.equals(subBlockVariantNum, gtbNode.subBlockVariantNum);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(chromosome, minPos, maxPos, compressedGenotypesSize, compressedPosSize, compressedAlleleSize, magicCode);
+        int result = Objects.hash(chromosome, minPos, maxPos, compressedGenotypesSize, compressedPosSize, compressedAlleleSize, magicCode, segmentCodec);
         result = 31 * result + Arrays.hashCode(subBlockVariantNum);
         return result;
     }
@@ -190,7 +223,36 @@ public class GTBNode implements Comparable<GTBNode>, Cloneable {
         cache.write(ValueUtils.value2ByteArray(this.compressedPosSize, 3));
         cache.writeIntegerValue(this.compressedAlleleSize);
         cache.write(this.magicCode);
-        return 25;
+        return NODE_SIZE;
+    }
+
+    /**
+     * 转换为易于传输、储存的格式
+     *
+     * @param cache        输出容器
+     * @param segmentCodec 是否为数据段编码扩展格式
+     */
+    public int toTransFormat(VolumeByteStream cache, boolean segmentCodec) {
+        toTransFormat(cache);
+        if (segmentCodec) {
+            cache.write(this.segmentCodec);
+            return SEGMENT_CODEC_NODE_SIZE;
+        }
+        return NODE_SIZE;
+    }
+
+    /**
+     * 获取位置数据段的编码方式
+     */
+    public int getPositionCodec() {
+        return this.segmentCodec & 0xf;
+    }
+
+    /**
+     * 获取 allele 数据段的编码方式
+     */
+    public int getAlleleCodec() {
+        return (this.segmentCodec >> 4) & 0xf;
     }
 
     /**
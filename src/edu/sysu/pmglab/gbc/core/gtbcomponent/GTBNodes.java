@@ -262,6 +262,30 @@ public class GTBNodes implements Iterable<GTBNode>, Cloneable {
         return -1;
     }
 
+    /**
+     * 二分查找 [startNodeIndex, endNodeIndex] 范围内第一个 maxPos >= pos 的节点, 仅适用于有序的节点群
+     *
+     * @param pos            位置值
+     * @param startNodeIndex 起始节点索引
+     * @param endNodeIndex   终止节点索引 (包含)
+     * @return 节点索引, 不存在时返回 endNodeIndex + 1
+     */
+    public int lowerBound(int pos, int startNodeIndex, int endNodeIndex) {
+        int low = startNodeIndex;
+        int high = endNodeIndex + 1;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid).maxPos < pos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
     /**
      * 检查该文件是否为有序文件 (可快速随机访问)
      */
@@ -0,0 +1,320 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.compressor.ICompressor;
+import edu.sysu.pmglab.compressor.IDecompressor;
+import edu.sysu.pmglab.container.File;
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.easytools.ValueUtils;
+import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
+import edu.sysu.pmglab.unifyIO.FileStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * @Description :GTB 位置索引 (*.gtb.idx), 记录有序染色体中每个位点的位置及其所在的节点, 检索时无需解压位置数据块
+ */
+
+public class GTBPositionIndex {
+    /**
+     * 文件标志符及版本号
+     */
+    static final byte[] MAGIC_CODE = new byte[]{'G', 'T', 'B', 'I'};
+    static final byte VERSION = 1;
+
+    final int nodeTableChecksum;
+    final HashMap<String, ChromosomeIndex> indexes;
+
+    GTBPositionIndex(int nodeTableChecksum, HashMap<String, ChromosomeIndex> indexes) {
+        this.nodeTableChecksum = nodeTableChecksum;
+        this.indexes = indexes;
+    }
+
+    /**
+     * 获取 GTB 文件对应的索引文件名
+     *
+     * @param gtbFile GTB 文件
+     */
+    public static File getIndexFile(File gtbFile) {
+        return gtbFile.addExtension(".idx");
+    }
+
+    /**
+     * 获取染色体的位置索引, 该染色体不存在索引时返回 null
+     *
+     * @param chromosome 染色体编号
+     */
+    public ChromosomeIndex get(String chromosome) {
+        return this.indexes.get(chromosome);
+    }
+
+    /**
+     * 为 GTB 文件的所有有序染色体构建位置索引
+     *
+     * @param manager GTB 文件管理器
+     */
+    public static GTBPositionIndex build(GTBManager manager) throws IOException {
+        HashMap<String, ChromosomeIndex> indexes = new HashMap<>();
+        VolumeByteStream undecompressedCache = new VolumeByteStream(2 << 20);
+        VolumeByteStream positionCache = new VolumeByteStream(2 << 20);
+
+        try (FileStream fileStream = manager.getFileStream();
+             SegmentDecompressor decompressor = new SegmentDecompressor(manager)) {
+            for (String chromosome : manager.getChromosomeList()) {
+                GTBNodes nodes = manager.getGTBNodes(chromosome);
+                if (!nodes.checkOrdered()) {
+                    // 无序的染色体不支持随机访问, 不建立索引
+                    continue;
+                }
+
+                int numOfNodes = nodes.numOfNodes();
+                long[] blockSeeks = new long[numOfNodes];
+                int[] nodeOffsets = new int[numOfNodes + 1];
+                int[] positions = new int[nodes.numOfVariants()];
+
+                for (int nodeIndex = 0; nodeIndex < numOfNodes; nodeIndex++) {
+                    GTBNode node = nodes.get(nodeIndex);
+                    blockSeeks[nodeIndex] = node.blockSeek;
+
+                    undecompressedCache.reset();
+                    positionCache.reset();
+                    fileStream.seek(node.blockSeek + node.compressedGenotypesSize);
+                    fileStream.read(undecompressedCache, node.compressedPosSize);
+                    decompressor.decompressPositions(node, undecompressedCache, positionCache);
+
+                    // 块内位点按照位置排序, 与 GTBReader 的指针索引保持一致
+                    int offset = nodeOffsets[nodeIndex];
+                    int variantNum = node.numOfVariants();
+                    for (int i = 0; i < variantNum; i++) {
+                        positions[offset + i] = ValueUtils.byteArray2IntegerValue(positionCache.cacheOf(i << 2), positionCache.cacheOf(1 + (i << 2)),
+                                positionCache.cacheOf(2 + (i << 2)), positionCache.cacheOf(3 + (i << 2)));
+                    }
+                    Arrays.sort(positions, offset, offset + variantNum);
+                    nodeOffsets[nodeIndex + 1] = offset + variantNum;
+                }
+
+                indexes.put(chromosome, new ChromosomeIndex(blockSeeks, nodeOffsets, positions));
+            }
+        } finally {
+            undecompressedCache.close();
+            positionCache.close();
+        }
+
+        return new GTBPositionIndex(manager.getNodeTableChecksum(), indexes);
+    }
+
+    /**
+     * 写出索引文件, 每条染色体的索引独立压缩
+     *
+     * @param outputFile      输出文件
+     * @param compressorIndex 压缩器索引
+     */
+    public void write(File outputFile, int compressorIndex) throws IOException {
+        try (FileStream writer = outputFile.open(FileStream.CHANNEL_WRITER)) {
+            writer.write(MAGIC_CODE);
+            writer.write(VERSION);
+            writer.writeIntegerValue(this.nodeTableChecksum);
+            writer.write((byte) compressorIndex);
+            writer.writeIntegerValue(this.indexes.size());
+
+            for (String chromosome : this.indexes.keySet()) {
+                ChromosomeIndex index = this.indexes.get(chromosome);
+                int numOfNodes = index.blockSeeks.length;
+                int numOfVariants = index.positions.length;
+                VolumeByteStream cache = new VolumeByteStream(8 + numOfNodes * 12 + numOfVariants * 4);
+                cache.writeIntegerValue(numOfNodes);
+                cache.writeIntegerValue(numOfVariants);
+                for (int i = 0; i < numOfNodes; i++) {
+                    cache.write(ValueUtils.value2ByteArray(index.blockSeeks[i], 8));
+                    cache.writeIntegerValue(index.nodeOffsets[i + 1]);
+                }
+                // 位置值升序排列, 以差分形式储存以提高压缩比
+                int lastPosition = 0;
+                for (int position : index.positions) {
+                    cache.writeIntegerValue(position - lastPosition);
+                    lastPosition = position;
+                }
+
+                byte[] chromosomeName = chromosome.getBytes(StandardCharsets.UTF_8);
+                VolumeByteStream compressed = ICompressor.compress(compressorIndex, cache.getCache(), 0, cache.size());
+                writer.writeIntegerValue(chromosomeName.length);
+                writer.write(chromosomeName);
+                writer.writeIntegerValue(compressed.size());
+                writer.write(compressed);
+                cache.close();
+            }
+        }
+    }
+
+    /**
+     * 加载索引文件, 节点表校验和不一致 (GTB 文件已被修改) 时返回 null
+     *
+     * @param indexFile         索引文件
+     * @param nodeTableChecksum GTB 文件节点表的校验和
+     */
+    public static GTBPositionIndex load(File indexFile, int nodeTableChecksum) throws IOException {
+        try (FileStream reader = indexFile.open(FileStream.CHANNEL_READER)) {
+            if (!Arrays.equals(reader.read(MAGIC_CODE.length), MAGIC_CODE)) {
+                throw new GTBComponentException(indexFile + " is not a GTB position index");
+            }
+
+            if (reader.read() != VERSION) {
+                throw new GTBComponentException("unsupported version of GTB position index: " + indexFile);
+            }
+
+            if (reader.readIntegerValue() != nodeTableChecksum) {
+                // 索引已过期
+                return null;
+            }
+
+            int compressorIndex = reader.read();
+            int chromosomeNum = reader.readIntegerValue();
+            HashMap<String, ChromosomeIndex> indexes = new HashMap<>(chromosomeNum);
+            for (int i = 0; i < chromosomeNum; i++) {
+                String chromosome = new String(reader.read(reader.readIntegerValue()), StandardCharsets.UTF_8);
+                byte[] compressed = reader.read(reader.readIntegerValue());
+                VolumeByteStream cache = IDecompressor.decompress(compressorIndex, compressed, 0, compressed.length);
+
+                int seek = 0;
+                int numOfNodes = ValueUtils.byteArray2IntegerValue(cache.cacheOf(seek, seek + 4));
+                int numOfVariants = ValueUtils.byteArray2IntegerValue(cache.cacheOf(seek + 4, seek + 8));
+                seek += 8;
+
+                long[] blockSeeks = new long[numOfNodes];
+                int[] nodeOffsets = new int[numOfNodes + 1];
+                int[] positions = new int[numOfVariants];
+                for (int j = 0; j < numOfNodes; j++) {
+                    blockSeeks[j] = ValueUtils.byteArray2Value(cache.cacheOf(seek, seek + 8));
+                    nodeOffsets[j + 1] = ValueUtils.byteArray2IntegerValue(cache.cacheOf(seek + 8, seek + 12));
+                    seek += 12;
+                }
+                int lastPosition = 0;
+                for (int j = 0; j < numOfVariants; j++) {
+                    lastPosition += ValueUtils.byteArray2IntegerValue(cache.cacheOf(seek), cache.cacheOf(seek + 1), cache.cacheOf(seek + 2), cache.cacheOf(seek + 3));
+                    positions[j] = lastPosition;
+                    seek += 4;
+                }
+
+                indexes.put(chromosome, new ChromosomeIndex(blockSeeks, nodeOffsets, positions));
+                cache.close();
+            }
+
+            return new GTBPositionIndex(nodeTableChecksum, indexes);
+        }
+    }
+
+    /**
+     * 单条染色体的位置索引, positions 为各节点 (块内已排序) 位置的顺次拼接
+     */
+    public static class ChromosomeIndex {
+        final long[] blockSeeks;
+        final int[] nodeOffsets;
+        final int[] positions;
+
+        ChromosomeIndex(long[] blockSeeks, int[] nodeOffsets, int[] positions) {
+            this.blockSeeks = blockSeeks;
+            this.nodeOffsets = nodeOffsets;
+            this.positions = positions;
+        }
+
+        /**
+         * 检查索引是否与节点群一致 (节点树被裁剪后索引不可用)
+         *
+         * @param nodes 当前的节点群
+         */
+        public boolean match(GTBNodes nodes) {
+            if (nodes == null || nodes.numOfNodes() != this.blockSeeks.length) {
+                return false;
+            }
+
+            for (int i = 0; i < this.blockSeeks.length; i++) {
+                if (nodes.get(i).blockSeek != this.blockSeeks[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 位点总数
+         */
+        public int numOfVariants() {
+            return this.positions.length;
+        }
+
+        /**
+         * 二分查找第一个位置 >= pos 的位点
+         *
+         * @param pos       位置值
+         * @param fromIndex 起始的全局索引
+         * @return 位点的全局索引, 不存在时返回 numOfVariants()
+         */
+        public int lowerBound(int pos, int fromIndex) {
+            int low = fromIndex;
+            int high = this.positions.length;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.positions[mid] < pos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * 获取节点第一个位点的全局索引
+         *
+         * @param nodeIndex 节点索引, 传入节点总数时返回 numOfVariants()
+         */
+        public int offsetOf(int nodeIndex) {
+            return this.nodeOffsets[nodeIndex];
+        }
+
+        /**
+         * 获取位点的位置值
+         *
+         * @param index 位点的全局索引
+         */
+        public int positionOf(int index) {
+            return this.positions[index];
+        }
+
+        /**
+         * 获取位点所在的节点索引
+         *
+         * @param index 位点的全局索引
+         */
+        public int nodeIndexOf(int index) {
+            int low = 0;
+            int high = this.blockSeeks.length - 1;
+
+            // 查找最后一个 nodeOffsets[node] <= index 的节点
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (this.nodeOffsets[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * 获取位点在节点内的索引
+         *
+         * @param index     位点的全局索引
+         * @param nodeIndex 位点所在的节点索引
+         */
+        public int variantIndexOf(int index, int nodeIndex) {
+            return index - this.nodeOffsets[nodeIndex];
+        }
+    }
+}
@@ -66,6 +66,9 @@ public enum GTBRootCache {
         synchronized (INSTANCE.cache) {
             INSTANCE.cache.clear();
         }
+
+        // 文件可能被改写, 同步清除解压数据块缓存
+        GTBBlockCache.clear();
     }
 
     /**
@@ -77,6 +80,8 @@ public enum GTBRootCache {
                 INSTANCE.cache.remove(file);
             }
         }
+
+        GTBBlockCache.clear(files);
     }
 
     /**
@@ -88,6 +93,8 @@ public enum GTBRootCache {
                 INSTANCE.cache.remove(manager.getFile());
             }
         }
+
+        GTBBlockCache.clear(getNames(managers));
     }
 
     /**
@@ -99,6 +106,8 @@ public enum GTBRootCache {
                 INSTANCE.cache.remove(manager);
             }
         }
+
+        GTBBlockCache.clear(managers.toArray());
     }
 
     /**
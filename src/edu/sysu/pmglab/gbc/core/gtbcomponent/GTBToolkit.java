@@ -2,7 +2,6 @@ package edu.sysu.pmglab.gbc.core.gtbcomponent;
 
 import edu.sysu.pmglab.bgztools.BGZToolkit;
 import edu.sysu.pmglab.check.Value;
-import edu.sysu.pmglab.compressor.IDecompressor;
 import edu.sysu.pmglab.container.File;
 import edu.sysu.pmglab.container.Pair;
 import edu.sysu.pmglab.container.VolumeByteStream;
@@ -13,6 +12,7 @@ import edu.sysu.pmglab.container.array.StringArray;
 import edu.sysu.pmglab.easytools.ArrayUtils;
 import edu.sysu.pmglab.easytools.ByteCode;
 import edu.sysu.pmglab.easytools.ValueUtils;
+import edu.sysu.pmglab.gbc.coder.CoderConfig;
 import edu.sysu.pmglab.gbc.constant.ChromosomeTags;
 import edu.sysu.pmglab.gbc.core.IParallelTask;
 import edu.sysu.pmglab.gbc.core.common.allelechecker.AlleleChecker;
@@ -29,10 +29,12 @@ import edu.sysu.pmglab.gbc.core.common.qualitycontrol.variant.VariantPhredQualit
 import edu.sysu.pmglab.gbc.core.exception.GBCWorkFlowException;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.GTBReader;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.LimitPointer;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.PositionSet;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter.VCFSiteVariantFormatter;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter.VCFVariantFormatter;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter.VariantFormatter;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOrderedWriter;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOutputParam;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBWriter;
 import edu.sysu.pmglab.threadPool.Block;
@@ -50,6 +52,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author suranyi
@@ -351,7 +354,7 @@ public class GTBToolkit {
             this.outputParam = new GTBOutputParam(inputFile);
             this.subjects = inputManager.getAllSubjects();
             this.pruner = null;
-            this.condition = variant -> true;
+            this.condition = null;
             this.positions = null;
             this.ranges = null;
             this.nThreads = IParallelTask.checkParallel(-1);
@@ -404,10 +407,10 @@ public class GTBToolkit {
         /**
          * 设置位点过滤条件
          *
-         * @param condition 位点过滤条件
+         * @param condition 位点过滤条件, 为 null 时不过滤位点
          */
         public Subset setCondition(Function<Variant, Boolean> condition) {
-            this.condition = condition == null ? variant -> true : condition;
+            this.condition = condition;
             return this;
         }
 
@@ -471,151 +474,69 @@ public class GTBToolkit {
                     .setReference(inputManager.getReferenceManager().getReference())
                     .setSubject(subjects);
 
-            // 并行
-            ThreadPool pool = new ThreadPool(nThreads);
-            BaseArray<File> tempFiles = new Array<>(File[].class, nThreads);
+            // 不对样本、基因型、位点进行任何转换时, 被完整覆盖的节点直接拷贝压缩数据, 只有部分覆盖的边缘节点重新编码
+            final boolean passThrough = isPassThrough();
+            if (passThrough && outputParam.isSegmentCodec() && outputParam.getAlleleDictionary() == null) {
+                // 沿用输入文件的 allele 字典, 使用字典编码的节点也可以直接拷贝
+                outputParam.setAlleleDictionary(inputManager.getAlleleDictionary());
+            }
+            final boolean sameDictionary = Arrays.equals(outputParam.getAlleleDictionary(), inputManager.getAlleleDictionary());
 
-            // 创建临时文件夹
-            File tempDir = outputFile.addExtension(".~$temp");
-            tempDir.mkdir();
-            tempDir.deleteOnExit();
+            // 查询计划: 按节点生成任务 (不解压数据), 并按节点压缩数据量切分为与线程数相同的任务组
+            Array<TaskGTBNode> tasks = TaskGTBNode.plan(inputManager, ranges, positions);
+            int[] bounds = TaskGTBNode.partition(tasks, nThreads);
 
-            // 计算所有节点总数
-            int length = (int) Math.ceil((double) inputManager.getGtbTree().numOfNodes() / nThreads);
-            AtomicInteger offset = new AtomicInteger(0);
+            // 并行, 各线程压缩后的数据段按任务组顺序直接写入输出文件
+            ThreadPool pool = new ThreadPool(nThreads);
+            GTBOrderedWriter orderedWriter = builder.setOutputFile(outputFile).buildOrderedWriter();
+            AtomicInteger groupIndex = new AtomicInteger(0);
 
             pool.submit(() -> {
                 try {
-                    GTBReader reader = new GTBReader(inputManager, phased);
-                    reader.selectSubjects(subjects);
-                    GTBWriter writer;
-
-                    synchronized (offset) {
-                        if (!reader.limit(offset.get(), length)) {
-                            reader.close();
-                            return;
-                        }
-                        File tempFile = tempDir.getSubFile("node" + offset.get() + "-" + (offset.get() + length) + ".gtb");
-                        tempFile.deleteOnExit();
-                        tempFiles.add(tempFile);
-                        writer = builder.setOutputFile(tempFile).build();
-                        offset.addAndGet(length);
+                    int group = groupIndex.getAndAdd(1);
+                    if (group >= bounds.length - 1) {
+                        return;
                     }
 
-                    // 获取限定指针
-                    LimitPointer pointer = (LimitPointer) reader.tell();
-                    String[] chromosomeList = reader.getChromosomeList();
-
-                    if (chromosomeList.length > 0) {
-                        String markStartChromosome = chromosomeList[0];
-                        String markEndChromosome = chromosomeList[chromosomeList.length - 1];
-                        int markStartNode = pointer.getStartNodeIndex();
-                        int markEndNode = pointer.getEndNodeIndex();
-
-                        Variant variant = new Variant();
-                        for (String chromosome : chromosomeList) {
-                            reader.limit(chromosome, chromosome.equals(markStartChromosome) ? markStartNode : 0, chromosome.equals(markEndChromosome) ? markEndNode : Integer.MAX_VALUE);
-
-                            GTBNodes nodes = this.inputManager.getGTBNodes(chromosome);
-                            if ((this.ranges != null && !this.ranges.containsKey(chromosome)) || this.positions != null && !this.positions.containsKey(chromosome)) {
-                                continue;
-                            }
-
-                            int minPos = Integer.MAX_VALUE;
-                            int maxPos = Integer.MIN_VALUE;
-
-                            if (reader.searchEnable(chromosome)) {
-                                // 有序文件
-                                minPos = nodes.get(reader.getStartNodeIndex(chromosome)).minPos;
-                                maxPos = nodes.get(reader.getEndNodeIndex(chromosome)).maxPos;
-                            } else {
-                                for (int nodeIndex = reader.getStartNodeIndex(chromosome), l = reader.getEndNodeIndex(chromosome); nodeIndex <= l; nodeIndex++) {
-                                    GTBNode node = nodes.get(nodeIndex);
-                                    if (node.minPos < minPos) {
-                                        minPos = node.minPos;
-                                    }
-
-                                    if (node.maxPos > maxPos) {
-                                        maxPos = node.maxPos;
-                                    }
-                                }
-                            }
-
-                            // 根据范围执行快速过滤
-                            BaseArray<Integer> position = null;
-
-                            if (this.ranges != null && this.ranges.containsKey(chromosome) && this.ranges.get(chromosome) != null) {
-                                minPos = Math.max(this.ranges.get(chromosome)[0], minPos);
-                                maxPos = Math.min(this.ranges.get(chromosome)[1], maxPos);
-                            }
-
-                            if (this.positions != null && this.positions.containsKey(chromosome) && this.positions.get(chromosome) != null) {
-                                int finalMinPos = minPos;
-                                int finalMaxPos = maxPos;
-                                position = new IntArray(this.positions.get(chromosome)).filter(pos -> pos >= finalMinPos && pos <= finalMaxPos);
-                                if (position.size() == 0) {
-                                    continue;
-                                }
-
-                                // 去重排序
-                                position.dropDuplicated();
-                                position.sort();
-
-                                minPos = Math.max(position.get(0), minPos);
-                                maxPos = Math.min(position.get(-1), maxPos);
-                            }
-
-                            if (minPos > maxPos) {
-                                continue;
-                            }
-
-                            // 开始搜索
-                            if (reader.searchEnable(chromosome)) {
-                                if (position != null) {
-                                    // 此时只需要以 position 为准
-                                    while (position.size() > 0) {
-                                        if (reader.search(chromosome, position.popFirst())) {
-                                            for (Variant v : reader.readVariants()) {
-                                                if (condition.apply(v)) {
-                                                    writer.write(v);
-                                                }
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    reader.search(chromosome, minPos);
-                                    while (reader.readVariant(variant)) {
-                                        if (variant.position > maxPos) {
-                                            break;
-                                        }
+                    GTBReader reader = new GTBReader(inputManager, phased);
+                    reader.selectSubjects(subjects);
+                    GTBWriter writer = orderedWriter.newWriter();
+                    Variant variant = new Variant();
+                    FileStream blockReader = passThrough ? inputManager.getFileStream() : null;
+                    VolumeByteStream blockCache = passThrough ? new VolumeByteStream(0) : null;
 
-                                        if (condition.apply(variant)) {
-                                            writer.write(variant);
-                                        }
-                                    }
-                                }
+                    do {
+                        for (int i = bounds[group]; i < bounds[group + 1]; i++) {
+                            TaskGTBNode task = tasks.get(i);
+                            GTBNode node = task.node;
+                            if (passThrough && task.taskType == 0 && node.numOfVariants() <= outputParam.getBlockSize()
+                                    && (outputParam.isSegmentCodec() || node.segmentCodec == SegmentCodec.RAW)
+                                    && (sameDictionary || node.getAlleleCodec() != SegmentCodec.ALLELE_DICTIONARY)) {
+                                // 完整覆盖的节点 (输出文件为旧版本格式时, 使用数据段编码的节点需要重新编码)
+                                blockCache.reset();
+                                blockCache.makeSureCapacity(node.blockSize);
+                                blockReader.seek(node.blockSeek);
+                                blockReader.read(blockCache, node.blockSize);
+                                writer.write(node, blockCache);
                             } else {
-                                if (position != null) {
-                                    // 将 position 转为 set
-                                    Set<Integer> sets = position.toSet();
-                                    while (reader.readVariant(variant, sets)) {
-                                        if (condition.apply(variant)) {
-                                            writer.write(variant);
-                                        }
+                                task.read(reader, variant, v -> {
+                                    if (condition == null || condition.apply(v)) {
+                                        writer.write(v);
                                     }
-                                } else {
-                                    while (reader.readVariant(variant)) {
-                                        if (variant.position >= minPos && variant.position <= maxPos && condition.apply(variant)) {
-                                            writer.write(variant);
-                                        }
-                                    }
-                                }
+                                });
                             }
                         }
-                    }
+
+                        writer.commit(group);
+                        group = groupIndex.getAndAdd(1);
+                    } while (group < bounds.length - 1);
 
                     writer.close();
                     reader.close();
+                    if (passThrough) {
+                        blockReader.close();
+                        blockCache.close();
+                    }
                 } catch (Error | Exception e) {
                     throw new ThreadPoolRuntimeException(e);
                 }
@@ -623,8 +544,8 @@ public class GTBToolkit {
 
             pool.close();
 
-            Concat.instance(tempFiles.toArray(), outputFile).submit();
-            tempDir.delete();
+            // 写入节点表及文件头
+            orderedWriter.close();
 
             if (pruner != null || ranges != null || positions != null) {
                 // 触发了剪枝时清除缓冲数据
@@ -633,6 +554,18 @@ public class GTBToolkit {
             return true;
         }
 
+        /**
+         * 输出文件的块能否直接使用输入文件的压缩数据: 样本序列、向型、压缩器与压缩级别均与输入文件相同, 且不对位点进行过滤或转换
+         */
+        boolean isPassThrough() {
+            return condition == null && Arrays.equals(subjects, inputManager.getAllSubjects())
+                    && outputParam.isPhased() == inputManager.isPhased()
+                    && outputParam.getCompressor() == inputManager.getCompressorIndex()
+                    && outputParam.getCompressionLevel() == inputManager.getCompressionLevel()
+                    && outputParam.getVariantQC().size() == 0 && !outputParam.isSimplyAllele() && !outputParam.isSplitMultiallelics()
+                    && outputParam.getMaxAlleleNums() == CoderConfig.MAX_ALLELE_NUM;
+        }
+
         @Override
         public String toString() {
             StringBuilder builder = new StringBuilder("Retrieve variants from *.gtb file:");
@@ -707,6 +640,26 @@ public class GTBToolkit {
         Map<String, int[]> ranges;
         FileFormatter formatter;
 
+        /**
+         * 过滤条件是否可以作用于延迟解码的位点 (不直接访问 BEGs 字段), 否则关闭延迟解码
+         */
+        boolean lazyCondition;
+        Supplier<BGZFDeflater> deflater;
+        boolean index;
+        boolean forceCSI;
+
+        /**
+         * 读取器的预读深度 (0 表示不预读), 每个读取器的预读缓冲区最多占用 PREFETCH_MAX_BYTES 字节
+         */
+        static final long PREFETCH_MAX_BYTES = 1L << 26;
+        int prefetchDepth;
+
+        /**
+         * 读取器是否使用块内并行解压, 是否以内存映射的方式访问数据块
+         */
+        boolean parallelDecompress;
+        boolean memoryMapped;
+
         int nThreads;
 
         public static class FileFormatter {
@@ -714,10 +667,25 @@ public class GTBToolkit {
             Function<Formatter, byte[]> tailer;
             VariantFormatter<?, VolumeByteStream> variantFormatter;
 
+            /**
+             * 格式化时需要读取的列 (投影)
+             */
+            GTBReader.Projection[] projection;
+
+            /**
+             * 是否以延迟解码读取基因型 (格式化器直接从编码行输出基因型时开启)
+             */
+            boolean lazyDecode = false;
+
             public FileFormatter(Function<Formatter, byte[]> header, Function<Formatter, byte[]> tailer, VariantFormatter<?, VolumeByteStream> formatter) {
+                this(header, tailer, formatter, GTBReader.Projection.values());
+            }
+
+            public FileFormatter(Function<Formatter, byte[]> header, Function<Formatter, byte[]> tailer, VariantFormatter<?, VolumeByteStream> formatter, GTBReader.Projection... projection) {
                 this.header = header;
                 this.tailer = tailer;
                 this.variantFormatter = formatter;
+                this.projection = projection;
             }
 
             public static final FileFormatter VCFFormat = new FileFormatter(formatter -> {
@@ -747,6 +715,11 @@ public class GTBToolkit {
                     return VCFVariantFormatter.INSTANCE.apply(variant, cache);
                 }
             }) {
+                {
+                    // 基因型由 MBEG 编码行直接输出
+                    this.lazyDecode = true;
+                }
+
                 @Override
                 public String toString() {
                     return "VCF";
@@ -775,7 +748,7 @@ public class GTBToolkit {
                     cache.write(ByteCode.NEWLINE);
                     return VCFSiteVariantFormatter.INSTANCE.apply(variant, cache);
                 }
-            }) {
+            }, GTBReader.Projection.POSITION, GTBReader.Projection.ALLELES, GTBReader.Projection.AC) {
                 @Override
                 public String toString() {
                     return "VCF";
@@ -797,6 +770,7 @@ public class GTBToolkit {
             this.phased = this.inputManager.isPhased();
             this.pruner = null;
             this.condition = variant -> true;
+            this.lazyCondition = true;
             this.positions = null;
             this.ranges = null;
             this.nThreads = IParallelTask.checkParallel(-1);
@@ -828,6 +802,16 @@ public class GTBToolkit {
             return this;
         }
 
+        /**
+         * 设置 BGZF 压缩后端, 每个压缩线程获取一个实例; 为 null 时使用 java.util.zip.Deflater 及输出参数的压缩级别
+         *
+         * @param deflater 压缩后端
+         */
+        public Formatter setDeflater(Supplier<BGZFDeflater> deflater) {
+            this.deflater = deflater;
+            return this;
+        }
+
         /**
          * 设置基因型的向型
          *
@@ -859,12 +843,23 @@ public class GTBToolkit {
         }
 
         /**
-         * 设置位点过滤条件
+         * 设置位点过滤条件, 设置条件后基因型不再延迟解码, 条件中可以直接访问 BEGs 字段
          *
          * @param condition 位点过滤条件
          */
         public Formatter setCondition(Function<Variant, Boolean> condition) {
+            return setCondition(condition, false);
+        }
+
+        /**
+         * 设置位点过滤条件
+         *
+         * @param condition     位点过滤条件
+         * @param lazyCondition 条件只通过 getAC()、getAN()、getAF()、getBEGs() 等方法访问基因型时为 true, 此时基因型保持延迟解码
+         */
+        public Formatter setCondition(Function<Variant, Boolean> condition, boolean lazyCondition) {
             this.condition = condition == null ? variant -> true : condition;
+            this.lazyCondition = condition == null || lazyCondition;
             return this;
         }
 
@@ -906,6 +901,39 @@ public class GTBToolkit {
             return this;
         }
 
+        /**
+         * 设置读取器的预读深度, 顺序扫描时由后台线程提前解压后续节点. 只对按节点区间扫描的输出方式 (不使用 CLM 算法) 生效
+         *
+         * @param prefetchDepth 预读的节点个数, 0 表示不预读
+         */
+        public Formatter setPrefetch(int prefetchDepth) {
+            if (prefetchDepth < 0) {
+                throw new GBCWorkFlowException("prefetch depth must be non-negative");
+            }
+            this.prefetchDepth = prefetchDepth;
+            return this;
+        }
+
+        /**
+         * 设置读取器的块内并行解压, 切换数据块时各数据段同时解压, 样本数较多时 MBEG 解码按样本区间并行执行
+         *
+         * @param parallelDecompress 是否开启块内并行解压
+         */
+        public Formatter setParallelDecompression(boolean parallelDecompress) {
+            this.parallelDecompress = parallelDecompress;
+            return this;
+        }
+
+        /**
+         * 设置读取器以内存映射的方式访问数据块 (文件只映射一次, 由所有线程的读取器共享), 适用于按位置随机提取等频繁切换数据块的场景
+         *
+         * @param memoryMapped 是否使用内存映射
+         */
+        public Formatter setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+
         /**
          * 设置位点格式化器 (可能需要包含 \n)
          *
@@ -929,8 +957,39 @@ public class GTBToolkit {
             return this;
         }
 
+        /**
+         * 输出 BGZF 压缩文件时同步构建 tabix 索引 (.tbi, 存在超过 2^29 的位置时为 .csi)
+         *
+         * @param index 构建索引
+         */
+        public Formatter setIndex(boolean index) {
+            return setIndex(index, false);
+        }
+
+        /**
+         * 输出 BGZF 压缩文件时同步构建 tabix 索引
+         *
+         * @param index    构建索引
+         * @param forceCSI 总是构建 .csi 索引
+         */
+        public Formatter setIndex(boolean index, boolean forceCSI) {
+            this.index = index;
+            this.forceCSI = forceCSI;
+            return this;
+        }
+
         @Override
         public boolean submit() throws IOException {
+            if (this.index) {
+                if (this.outputParam == null || !this.clm) {
+                    throw new GBCWorkFlowException("index can only be built for BGZF output with CLM algorithm");
+                }
+
+                if (!this.inputManager.isOrderedGTB()) {
+                    throw new GBCWorkFlowException("index can only be built for ordered GTB file, please sort " + this.inputManager.getFile() + " first");
+                }
+            }
+
             if (pruner != null) {
                 GTBTree tree = pruner.apply(inputManager.getGtbTree().clone());
                 inputManager.getGtbTree().clear();
@@ -959,9 +1018,14 @@ public class GTBToolkit {
         }
 
         private void processUseCLM() throws IOException {
+            if (outputParam != null) {
+                processUseBGZF();
+                return;
+            }
+
             // 并行
             ThreadPool pool = new ThreadPool(nThreads + 1);
-            final MultiThreadsWriter writer = outputParam == null ? new MultiThreadsWriter(outputFile, nThreads) : new MultiThreadsWriter(outputFile, outputParam, nThreads);
+            final MultiThreadsWriter writer = new MultiThreadsWriter(outputFile, nThreads);
 
             // 添加 header 信息
             if (this.formatter.header != null) {
@@ -972,82 +1036,7 @@ public class GTBToolkit {
             }
 
             DynamicPipeline<TaskGTBNode> taskPipLine = new DynamicPipeline<>(nThreads << 2);
-            pool.submit(() -> {
-                // 发送具有特定任务的节点信息
-                for (String chromosome : inputManager.getChromosomeList()) {
-                    if ((this.ranges != null && !this.ranges.containsKey(chromosome)) || (this.positions != null && !this.positions.containsKey(chromosome))) {
-                        continue;
-                    }
-
-                    int minPos = Integer.MAX_VALUE;
-                    int maxPos = Integer.MIN_VALUE;
-
-                    GTBNodes nodes = inputManager.getGTBNodes(chromosome);
-                    for (int nodeIndex = 0, l = nodes.numOfNodes(); nodeIndex < l; nodeIndex++) {
-                        GTBNode node = nodes.get(nodeIndex);
-                        if (node.minPos < minPos) {
-                            minPos = node.minPos;
-                        }
-
-                        if (node.maxPos > maxPos) {
-                            maxPos = node.maxPos;
-                        }
-                    }
-
-                    // 根据范围执行快速过滤
-                    BaseArray<Integer> position = null;
-
-                    if (this.ranges != null && this.ranges.containsKey(chromosome) && this.ranges.get(chromosome) != null) {
-                        minPos = Math.max(this.ranges.get(chromosome)[0], minPos);
-                        maxPos = Math.min(this.ranges.get(chromosome)[1], maxPos);
-                    }
-
-                    if (this.positions != null && this.positions.containsKey(chromosome) && this.positions.get(chromosome) != null) {
-                        int finalMinPos = minPos;
-                        int finalMaxPos = maxPos;
-                        position = new IntArray(this.positions.get(chromosome)).filter(pos -> pos >= finalMinPos && pos <= finalMaxPos);
-                        if (position.size() == 0) {
-                            continue;
-                        }
-
-                        // 去重排序
-                        position.dropDuplicated();
-                        position.sort();
-
-                        minPos = Math.max(position.get(0), minPos);
-                        maxPos = Math.min(position.get(-1), maxPos);
-                    }
-
-                    if (minPos > maxPos) {
-                        continue;
-                    }
-
-                    if (position == null) {
-                        for (int nodeIndex = 0, l = nodes.numOfNodes(); nodeIndex < l; nodeIndex++) {
-                            GTBNode node = nodes.get(nodeIndex);
-                            if ((minPos <= node.minPos) && (maxPos >= node.maxPos)) {
-                                taskPipLine.put(true, TaskGTBNode.of(chromosome, nodeIndex));
-                            } else {
-                                if (ValueUtils.intersect(minPos, maxPos, node.minPos, node.maxPos)) {
-                                    taskPipLine.put(true, TaskGTBNode.of(chromosome, nodeIndex, Value.of(minPos, node.minPos, node.maxPos), Value.of(maxPos, node.minPos, node.maxPos)));
-                                }
-                            }
-                        }
-                    } else {
-                        for (int nodeIndex = 0, l = nodes.numOfNodes(); nodeIndex < l; nodeIndex++) {
-                            GTBNode node = nodes.get(nodeIndex);
-                            int taskMinPos = Value.of(minPos, node.minPos, node.maxPos);
-                            int taskMaxPos = Value.of(maxPos, node.minPos, node.maxPos);
-                            BaseArray<Integer> positions = position.filter(position1 -> position1 >= taskMinPos && position1 <= taskMaxPos);
-                            if (positions.size() > 0) {
-                                taskPipLine.put(true, TaskGTBNode.of(chromosome, nodeIndex, positions));
-                            }
-                        }
-                    }
-                }
-
-                taskPipLine.putStatus(nThreads, false);
-            });
+            pool.submit(() -> sendTasks(taskPipLine));
 
             pool.submit(() -> {
                 try {
@@ -1059,44 +1048,14 @@ public class GTBToolkit {
                         return;
                     }
 
-                    GTBReader reader = new GTBReader(inputManager, phased);
-                    reader.selectSubjects(subjects);
+                    GTBReader reader = openReader();
                     VolumeByteStream lineCache = new VolumeByteStream(1024);
 
                     do {
-                        reader.limit(taskBlock.getData().chromosome, taskBlock.getData().nodeIndex, taskBlock.getData().nodeIndex + 1);
-                        Variant variant = new Variant();
-                        if (taskBlock.getData().taskType == 0) {
-                            while (reader.readVariant(variant)) {
-                                if (condition.apply(variant)) {
-                                    formatter.variantFormatter.apply(variant, lineCache);
-                                    writer.write(localId, lineCache);
-                                    lineCache.reset();
-                                }
-                            }
-                        } else if (taskBlock.getData().taskType == 1) {
-                            int minPos = taskBlock.getData().minPos;
-                            int maxPos = taskBlock.getData().maxPos;
-                            reader.search(taskBlock.getData().chromosome, minPos);
-                            while (reader.readVariant(variant)) {
-                                if (variant.position >= minPos && variant.position <= maxPos && condition.apply(variant)) {
-                                    formatter.variantFormatter.apply(variant, lineCache);
-                                    writer.write(localId, lineCache);
-                                    lineCache.reset();
-                                }
-                            }
-                        } else {
-                            Set<Integer> position = taskBlock.getData().taskPos.toSet();
-                            reader.search(taskBlock.getData().chromosome, taskBlock.getData().taskPos.get(0));
-                            while (reader.readVariant(variant)) {
-                                if (position.contains(variant.position) && condition.apply(variant)) {
-                                    formatter.variantFormatter.apply(variant, lineCache);
-                                    writer.write(localId, lineCache);
-                                    lineCache.reset();
-                                }
-                            }
-                        }
-
+                        formatTask(reader, taskBlock.getData(), lineCache, variant -> {
+                            writer.write(localId, lineCache);
+                            lineCache.reset();
+                        });
                         taskBlock = writer.flush(localId, taskPipLine::get);
                     } while (taskBlock.getStatus());
 
@@ -1119,52 +1078,133 @@ public class GTBToolkit {
             writer.close();
         }
 
-        static class TaskGTBNode {
-            final String chromosome;
-            final int nodeIndex;
+        /**
+         * 输出 BGZF 压缩文件: 每个线程将任务节点的格式化文本按 BGZF 成员并行压缩, 压缩后的数据段按任务顺序写出
+         */
+        private void processUseBGZF() throws IOException {
+            ThreadPool pool = new ThreadPool(nThreads + 1);
+            final int level = outputParam.level;
+            final Supplier<BGZFDeflater> deflaterFactory = this.deflater == null ? () -> BGZFDeflater.getInstance(level) : this.deflater;
+            final BGZFIndexBuilder indexBuilder = this.index ? new BGZFIndexBuilder(this.forceCSI) : null;
+            final BGZFOrderedWriter writer = new BGZFOrderedWriter(outputFile, deflaterFactory, indexBuilder);
+
+            try {
+                // 添加 header 信息
+                if (this.formatter.header != null) {
+                    byte[] data = this.formatter.header.apply(this);
+                    if (data.length > 0) {
+                        writer.write(data);
+                    }
+                }
+
+                DynamicPipeline<TaskGTBNode> taskPipLine = new DynamicPipeline<>(nThreads << 2);
+                AtomicInteger segmentIndex = new AtomicInteger(0);
+                pool.submit(() -> sendTasks(taskPipLine));
+
+                pool.submit(() -> {
+                    try {
+                        GTBReader reader = openReader();
+                        BGZFOrderedWriter.Compressor compressor = writer.newCompressor();
+
+                        while (true) {
+                            // 按任务的发送顺序分配序列号, 结束标记不占用序列号
+                            Block<Boolean, TaskGTBNode> taskBlock;
+                            long sequence;
+                            synchronized (segmentIndex) {
+                                taskBlock = taskPipLine.get();
+                                if (!taskBlock.getStatus()) {
+                                    break;
+                                }
+                                sequence = segmentIndex.getAndAdd(1);
+                            }
+
+                            if (indexBuilder == null) {
+                                formatTask(reader, taskBlock.getData(), compressor.text(), variant -> compressor.flush());
+                            } else {
+                                formatTask(reader, taskBlock.getData(), compressor.text(), variant -> compressor.flush(variant.chromosome, variant.position - 1, variant.position - 1 + variant.REF.length));
+                            }
+                            writer.write(sequence, compressor);
+                        }
+
+                        reader.close();
+                        compressor.close();
+                    } catch (Error | Exception e) {
+                        throw new ThreadPoolRuntimeException(e);
+                    }
+                }, nThreads);
 
-            /**
-             * 任务类型, type = 0 解压全部数据, type = 1 解压指定范围数据，type = 2 解压任务数据
-             */
-            final int taskType;
-            int minPos;
-            int maxPos;
-            final BaseArray<Integer> taskPos;
+                pool.close();
 
-            static TaskGTBNode of(String chromosome, int nodeIndex) {
-                return new TaskGTBNode(chromosome, nodeIndex);
+                // 添加 tailer 信息
+                if (this.formatter.tailer != null) {
+                    byte[] data = this.formatter.tailer.apply(this);
+                    if (data.length > 0) {
+                        writer.write(data);
+                    }
+                }
+            } finally {
+                // 线程异常时仍有数据段未提交, 写出器在关闭时释放资源并抛出异常
+                writer.close();
             }
 
-            static TaskGTBNode of(String chromosome, int nodeIndex, int minPos, int maxPos) {
-                return new TaskGTBNode(chromosome, nodeIndex, minPos, maxPos);
+            // 写出索引
+            if (indexBuilder != null) {
+                indexBuilder.write(outputFile, deflaterFactory);
             }
+        }
 
-            static TaskGTBNode of(String chromosome, int nodeIndex, BaseArray<Integer> taskPos) {
-                return new TaskGTBNode(chromosome, nodeIndex, taskPos);
+        /**
+         * 创建格式化使用的读取器 (选择样本、设置投影及解压方式)
+         */
+        private GTBReader openReader() throws IOException {
+            GTBReader reader = new GTBReader(inputManager, phased, true, memoryMapped);
+            reader.selectSubjects(subjects);
+            reader.setProjection(formatter.projection);
+            reader.setLazyDecode(formatter.lazyDecode && lazyCondition);
+            reader.setParallelDecompression(parallelDecompress);
+            if (prefetchDepth > 0) {
+                reader.enablePrefetch(prefetchDepth, PREFETCH_MAX_BYTES);
             }
+            return reader;
+        }
 
-            TaskGTBNode(String chromosome, int nodeIndex) {
-                this.chromosome = chromosome;
-                this.nodeIndex = nodeIndex;
-                this.taskType = 0;
-                this.taskPos = null;
+        /**
+         * 发送具有特定任务的节点信息, 发送完成后为每个线程发送结束标记
+         *
+         * @param taskPipLine 任务管道
+         */
+        private void sendTasks(DynamicPipeline<TaskGTBNode> taskPipLine) {
+            for (TaskGTBNode task : TaskGTBNode.plan(inputManager, this.ranges, this.positions)) {
+                taskPipLine.put(true, task);
             }
 
-            TaskGTBNode(String chromosome, int nodeIndex, int minPos, int maxPos) {
-                this.chromosome = chromosome;
-                this.nodeIndex = nodeIndex;
-                this.taskPos = null;
-                this.taskType = 1;
-                this.minPos = minPos;
-                this.maxPos = maxPos;
-            }
+            taskPipLine.putStatus(nThreads, false);
+        }
 
-            TaskGTBNode(String chromosome, int nodeIndex, BaseArray<Integer> taskPos) {
-                this.chromosome = chromosome;
-                this.nodeIndex = nodeIndex;
-                this.taskType = 2;
-                this.taskPos = taskPos;
-            }
+        /**
+         * 读取任务节点中的位点并格式化, 每格式化一个位点 (追加至 lineCache 末尾) 调用一次 lineWriter
+         *
+         * @param reader     GTB 读取器
+         * @param task       任务节点
+         * @param lineCache  格式化缓冲区
+         * @param lineWriter 位点写出方法
+         */
+        private void formatTask(GTBReader reader, TaskGTBNode task, VolumeByteStream lineCache, LineWriter lineWriter) throws IOException {
+            task.read(reader, new Variant(), variant -> {
+                if (condition.apply(variant)) {
+                    formatter.variantFormatter.apply(variant, lineCache);
+                    lineWriter.write(variant);
+                }
+            });
+        }
+
+        interface LineWriter {
+            /**
+             * 写出刚格式化的位点
+             *
+             * @param variant 位点
+             */
+            void write(Variant variant) throws IOException;
         }
 
         private void process() throws IOException {
@@ -1196,8 +1236,7 @@ public class GTBToolkit {
 
             pool.submit(() -> {
                 try {
-                    GTBReader reader = new GTBReader(inputManager, phased);
-                    reader.selectSubjects(subjects);
+                    GTBReader reader = openReader();
                     FileStream writer;
 
                     synchronized (offset) {
@@ -1312,8 +1351,8 @@ public class GTBToolkit {
                                 }
                             } else {
                                 if (position != null) {
-                                    // 将 position 转为 set
-                                    Set<Integer> sets = position.toSet();
+                                    // 将 position 转为位置集合
+                                    PositionSet sets = PositionSet.of(position);
                                     while (reader.readVariant(variant, sets)) {
                                         if (condition.apply(variant)) {
                                             formatter.variantFormatter.apply(variant, lineCache);
@@ -1385,6 +1424,22 @@ public class GTBToolkit {
             }
 
             builder.append("\n\tuse CLM algorithm: " + this.clm);
+            if (this.index) {
+                builder.append("\n\tbuild index: " + (this.forceCSI ? "csi" : "tbi (csi for positions over 2^29)"));
+            }
+
+            if (this.prefetchDepth > 0) {
+                builder.append("\n\tprefetch blocks: " + this.prefetchDepth);
+            }
+
+            if (this.parallelDecompress) {
+                builder.append("\n\tparallel decompression: true");
+            }
+
+            if (this.memoryMapped) {
+                builder.append("\n\tmemory-mapped access: true");
+            }
+
             if (this.subjects != null) {
                 builder.append("\n\tselect subjects: " + StringArray.wrap(this.subjects).toString(5));
             }
@@ -1511,7 +1566,7 @@ public class GTBToolkit {
 
             // 位置解压器
             FileStream fileStream = manager.getFileStream();
-            IDecompressor decompressor = IDecompressor.getInstance(manager.getCompressorIndex());
+            SegmentDecompressor decompressor = new SegmentDecompressor(manager);
 
             for (int i = 0; i < nodes.numOfNodes(); i++) {
                 GTBNode node = nodes.get(i);
@@ -1522,7 +1577,7 @@ public class GTBToolkit {
                 // 读取压缩后的位置数据
                 fileStream.seek(node.blockSeek + node.compressedGenotypesSize);
                 fileStream.read(undecompressedCache, node.compressedPosSize);
-                decompressor.decompress(undecompressedCache, decompressedPosCache);
+                decompressor.decompressPositions(node, undecompressedCache, decompressedPosCache);
                 undecompressedCache.reset();
 
                 // 还原位置数据
@@ -1539,6 +1594,7 @@ public class GTBToolkit {
                 }
             }
             fileStream.close();
+            decompressor.close();
 
             undecompressedCache.close();
             decompressedPosCache.close();
@@ -1636,12 +1692,9 @@ public class GTBToolkit {
             } else {
                 // 多线程, 此时根据是单染色体多线程还是多染色体多线程进行分类
                 ThreadPool pool = new ThreadPool(nThreads);
-                BaseArray<File> tempFiles = new Array<>(File[].class, true);
 
-                // 创建临时文件夹
-                File tempDir = outputFile.addExtension(".~$temp");
-                tempDir.deleteOnExit();
-                tempDir.mkdir();
+                // 各线程压缩后的数据段按位点区间 (染色体) 顺序直接写入输出文件
+                GTBOrderedWriter orderedWriter = builder.buildOrderedWriter();
 
                 int blockSize = BlockSizeParameter.getBlockSize(BlockSizeParameter.getSuggestBlockSizeType(outputParam.getBlockSize(), subjects.length));
                 if (chromosomes.size() == 1) {
@@ -1651,18 +1704,17 @@ public class GTBToolkit {
                     int eachThreadProcessNum = (int) Math.ceil((double) numOfVariants / nThreads);
                     AtomicInteger startVariantIndex = new AtomicInteger(0);
                     AtomicInteger endVariantIndex = new AtomicInteger(eachThreadProcessNum);
+                    AtomicInteger segmentIndex = new AtomicInteger(0);
 
                     pool.submit(() -> {
                         try {
                             GTBReader reader = new GTBReader(inputManager, phased);
-                            GTBWriter writer;
+                            GTBWriter writer = orderedWriter.newWriter();
                             BaseArray<VariantMark> currentProcessedVariants;
+                            long sequence;
                             synchronized (startVariantIndex) {
                                 currentProcessedVariants = (BaseArray<VariantMark>) variants.get(startVariantIndex.get(), endVariantIndex.get() - startVariantIndex.get());
-                                File tempFile = tempDir.getSubFile("chr" + chromosome + ".variant" + startVariantIndex + "-" + (endVariantIndex.get() - 1) + ".gtb");
-                                tempFile.deleteOnExit();
-                                tempFiles.add(tempFile);
-                                writer = builder.setOutputFile(tempFile).build();
+                                sequence = segmentIndex.getAndAdd(1);
                                 startVariantIndex.set(endVariantIndex.get());
                                 endVariantIndex.set(Value.of(endVariantIndex.get() + eachThreadProcessNum, 0, numOfVariants));
                             }
@@ -1699,6 +1751,7 @@ public class GTBToolkit {
                                 }
                             }
                             reader.close();
+                            writer.commit(sequence);
                             writer.close();
                         } catch (Error | Exception e) {
                             throw new ThreadPoolRuntimeException(e);
@@ -1709,16 +1762,10 @@ public class GTBToolkit {
                     pool.submit(() -> {
                         try {
                             GTBReader reader = new GTBReader(inputManager, phased);
-                            GTBWriter writer;
-                            String chromosome;
-                            synchronized (chromosomeIndex) {
-                                chromosome = chromosomes.get(chromosomeIndex.getAndAdd(1));
-                                reader.limit(chromosome);
-                                File tempFile = tempDir.getSubFile("chr" + chromosome + ".gtb");
-                                tempFile.deleteOnExit();
-                                tempFiles.add(tempFile);
-                                writer = builder.setOutputFile(tempFile).build();
-                            }
+                            GTBWriter writer = orderedWriter.newWriter();
+                            int sequence = chromosomeIndex.getAndAdd(1);
+                            String chromosome = chromosomes.get(sequence);
+                            reader.limit(chromosome);
 
                             if (inputManager.getGTBNodes(chromosome).checkOrdered()) {
                                 // 该染色体中的所有位点都是有序的, 则无序重建位点树表
@@ -1726,6 +1773,7 @@ public class GTBToolkit {
                                 while (reader.readVariant(variant)) {
                                     writer.write(variant);
                                 }
+                                writer.commit(sequence);
                                 writer.close();
                                 reader.close();
                             } else {
@@ -1764,6 +1812,7 @@ public class GTBToolkit {
                                     }
                                 }
                                 reader.close();
+                                writer.commit(sequence);
                                 writer.close();
                             }
                         } catch (Error | Exception e) {
@@ -1773,8 +1822,7 @@ public class GTBToolkit {
                 }
 
                 pool.close();
-                Concat.instance(tempFiles.toArray(), outputFile).submit();
-                tempDir.delete();
+                orderedWriter.close();
             }
             return true;
         }
@@ -1863,6 +1911,11 @@ public class GTBToolkit {
                     fastMode = false;
                 }
 
+                if (this.inputManagers[i].getAlleleDictionary() != null && !Arrays.equals(mainManager.getAlleleDictionary(), this.inputManagers[i].getAlleleDictionary())) {
+                    // allele 字典不一样，按主文件的字典重新压缩
+                    fastMode = false;
+                }
+
                 if ((mainManager.getSubjectNum() != this.inputManagers[i].getSubjectNum()) || (!ArrayUtils.equal(mainManager.getSubjects(), this.inputManagers[i].getSubjects()))) {
                     // 样本不同, 此时需要 mapping
                     Variant mappingVariant = new Variant(mainManager.getSubjectNum());
@@ -1918,6 +1971,7 @@ public class GTBToolkit {
             // 写入头部信息
             mainManager.checkOrderedGTB();
             mainManager.checkSuggestToBGZF();
+            mainManager.checkSegmentCodec();
             out.write(mainManager.buildHeader());
 
             for (int i = 0; i < fromIns.length; i++) {
@@ -1934,7 +1988,7 @@ public class GTBToolkit {
                 fromIn.close();
             }
 
-            out.write(mainManager.getGtbTree().build());
+            out.write(mainManager.buildNodeTable());
             out.close();
 
             // 清除主管理器
@@ -2044,45 +2098,52 @@ public class GTBToolkit {
                         .setThreads(nThreads).submit();
             }
 
-            // 所有输入文件的管理器
+            // 所有输入文件的管理器, 无序文件先排序
             GTBManager[] inputManagers = GTBRootCache.get(inputFiles);
-
-            // 先按照样本量进行排序
-            final Queue<GTBManager> fileQueue = new PriorityQueue<>(Comparator.comparingInt(GTBManager::getSubjectNum));
-            fileQueue.addAll(Arrays.asList(inputManagers));
-
-            // 创建临时文件夹
             File tempDir = outputFile.addExtension(".~$temp");
             tempDir.mkdir();
             tempDir.deleteOnExit();
 
-            // 合并文件池
-            StringArray loadInChromosomes = recordChromosome(inputManagers);
-
-            // 先对无序文件进行排序, 再合并
-            int index = 0;
-            while (fileQueue.size() >= 2) {
-                GTBManager manager1 = sort(fileQueue.poll(), tempDir);
-                GTBManager manager2 = sort(fileQueue.poll(), tempDir);
-                File tempFile = tempDir.getSubFile("mergeTemp." + (index++) + ".gtb");
-
-                if (fileQueue.size() > 0) {
-                    // 删除临时文件
-                    tempFile.deleteOnExit();
-                }
+            for (int i = 0; i < inputManagers.length; i++) {
+                inputManagers[i] = sort(inputManagers[i], tempDir);
+            }
 
-                // 将文件合并至 tempFile, 并加入队列
-                merge(manager1, manager2, loadInChromosomes, tempFile);
-                fileQueue.add(GTBRootCache.get(tempFile));
+            // 按样本合并顺序排列文件, 预计算各文件样本在输出文件中的偏移量
+            GTBManager[] managers = new GTBManager[inputManagers.length];
+            int[] subjectOffsets = new int[inputManagers.length + 1];
+            int[] mergeOrder = mergeOrder(inputManagers);
+            for (int i = 0; i < mergeOrder.length; i++) {
+                managers[i] = inputManagers[mergeOrder[i]];
+                subjectOffsets[i + 1] = subjectOffsets[i] + managers[i].getSubjectNum();
             }
 
-            // 弹出最后一个文件，重命名
-            GTBManager lastManager = fileQueue.poll();
-            lastManager.getFile().rename(outputFile);
+            // 多路归并, 一次写出
+            merge(managers, subjectOffsets, recordChromosome(inputManagers));
             tempDir.delete();
             return true;
         }
 
+        /**
+         * 计算各文件样本在输出文件中的排列顺序, 与按样本量从小到大两两合并的顺序一致
+         */
+        private static int[] mergeOrder(GTBManager[] inputManagers) {
+            Queue<Pair<Integer, IntArray>> queue = new PriorityQueue<>(Comparator.comparingInt(group -> group.key));
+            for (int i = 0; i < inputManagers.length; i++) {
+                IntArray order = new IntArray(inputManagers.length);
+                order.add(i);
+                queue.add(new Pair<>(inputManagers[i].getSubjectNum(), order));
+            }
+
+            while (queue.size() >= 2) {
+                Pair<Integer, IntArray> group1 = queue.poll();
+                Pair<Integer, IntArray> group2 = queue.poll();
+                group1.value.addAll(group2.value);
+                queue.add(new Pair<>(group1.key + group2.key, group1.value));
+            }
+
+            return queue.poll().value.toBaseArray();
+        }
+
         private StringArray recordChromosome(GTBManager[] inputManagers) {
             // 记录坐标，如果坐标太多，可以考虑分染色体读取 (使用 reader.limit 语句)
             HashSet<String> loadInChromosomes = new HashSet<>();
@@ -2120,329 +2181,228 @@ public class GTBToolkit {
             return manager;
         }
 
-        private HashSet<Integer> recordPosition(GTBManager manager1, GTBManager manager2, String chromosome) throws IOException {
-            if (this.union) {
-                // 并集, 返回 null
-                return null;
-            } else {
-                HashSet<Integer> loadInPosition = new HashSet<>();
-
-                GTBReader reader1 = new GTBReader(manager1, manager1.isPhased(), false);
-                reader1.limit(chromosome);
-
-                // 先加载第一个文件全部的位点
-                for (Variant variant : reader1) {
-                    loadInPosition.add(variant.position);
-                }
-
-                reader1.close();
-
-                if (loadInPosition.size() == 0) {
-                    return loadInPosition;
-                }
-
-                // 再移除第二个文件中没有的位点
-                HashSet<Integer> loadInPosition2 = new HashSet<>();
-                GTBReader reader2 = new GTBReader(manager2, manager2.isPhased(), false);
-                reader2.limit(chromosome);
-
-                for (Variant variant : reader2) {
-                    loadInPosition2.add(variant.position);
-                }
-
-                reader2.close();
-
-                int nums = loadInPosition.size();
-                loadInPosition.retainAll(loadInPosition2);
-
-                loadInPosition2.clear();
-                loadInPosition2 = null;
-
-                if (loadInPosition.size() == nums) {
-                    // 取了交集后元素数量一致，则转为不做约束
-                    loadInPosition.clear();
-                    loadInPosition = null;
-                    return null;
-                }
-
-                return loadInPosition;
-            }
-        }
-
         /**
-         * 合并 manager1 和 manager 2
+         * 多路归并所有文件: 每个染色体为一个任务, 各文件的读取器按当前位置组成最小堆, 每次取出位置最小的一组位点合并后直接写出
          *
-         * @param manager1 管理器1
-         * @param manager2 管理器2
+         * @param managers          按样本合并顺序排列的文件管理器
+         * @param subjectOffsets    各文件样本在输出文件中的偏移量
+         * @param loadInChromosomes 需要合并的染色体
          */
-        private void merge(GTBManager manager1, GTBManager manager2, StringArray loadInChromosomes, File outputFile) throws IOException {
+        private void merge(GTBManager[] managers, int[] subjectOffsets, StringArray loadInChromosomes) throws IOException {
+            String[] subjects = managers[0].getAllSubjects();
+            for (int i = 1; i < managers.length; i++) {
+                subjects = ArrayUtils.merge(subjects, managers[i].getAllSubjects());
+            }
+
             GTBWriter.Builder builder = new GTBWriter.Builder(outputParam)
-                    .setReference(manager1.getReference())
-                    .setSubject(ArrayUtils.merge(manager1.getAllSubjects(), manager2.getAllSubjects()));
+                    .setReference(managers[0].getReference())
+                    .setSubject(subjects);
 
             ThreadPool pool = new ThreadPool(nThreads);
             AtomicInteger chromosomeIndex = new AtomicInteger(0);
 
             if (loadInChromosomes.size() > 0) {
-                // 有染色体任务，会产生中间文件
-                BaseArray<File> tempFiles = new Array<>(File[].class, loadInChromosomes.size());
-                File outputDir = outputFile.addExtension(".~$temp");
-                outputDir.deleteOnExit();
-                outputDir.mkdir();
+                // 有染色体任务，各染色体压缩后的数据段按染色体顺序直接写入输出文件
+                GTBOrderedWriter orderedWriter = builder.setOutputFile(outputFile).buildOrderedWriter();
                 pool.submit(() -> {
                     try {
-                        GTBReader reader1 = new GTBReader(manager1, outputParam.isPhased());
-                        GTBReader reader2 = new GTBReader(manager2, outputParam.isPhased());
-                        GTBWriter writer;
-                        String chromosome;
-
-                        synchronized (chromosomeIndex) {
-                            chromosome = loadInChromosomes.get(chromosomeIndex.getAndAdd(1));
-                            File tempFile = outputDir.getSubFile("chr" + chromosome + ".gtb");
-                            tempFile.deleteOnExit();
-                            writer = builder.setOutputFile(tempFile).build();
-                            tempFiles.add(tempFile);
+                        GTBWriter writer = orderedWriter.newWriter();
+                        int sequence = chromosomeIndex.getAndAdd(1);
+                        String chromosome = loadInChromosomes.get(sequence);
+
+                        // 各文件的读取器, 按当前位点组的位置组成最小堆
+                        MergeSource[] sources = new MergeSource[managers.length];
+                        Queue<MergeSource> heap = new PriorityQueue<>(Comparator.comparingInt(MergeSource::position).thenComparingInt(source -> source.index));
+                        for (int i = 0; i < managers.length; i++) {
+                            sources[i] = new MergeSource(i, new GTBReader(managers[i], outputParam.isPhased()));
+                            if (managers[i].contain(chromosome)) {
+                                sources[i].reader.limit(chromosome);
+                                if (sources[i].next()) {
+                                    heap.add(sources[i]);
+                                }
+                            }
                         }
 
-                        // 元信息
-                        Array<Variant> variants1 = null;
-                        Array<Variant> variants1Cache = new Array<>();
-                        Array<Variant> variants2 = null;
-                        Array<Variant> variants2Cache = new Array<>();
-                        Variant mergeVariant = new Variant(manager1.getSubjectNum() + manager2.getSubjectNum());
-                        Variant mergeVariant1 = new Variant(manager1.getSubjectNum() + manager2.getSubjectNum());
-                        Variant mergeVariant2 = new Variant(manager1.getSubjectNum() + manager2.getSubjectNum());
-
-                        variants1Cache.add(new Variant());
-                        variants2Cache.add(new Variant());
+                        Variant target = new Variant(subjectOffsets[managers.length]);
+                        Array<Variant>[] groups = new Array[managers.length];
+                        while (heap.size() > 0 && (this.union || heap.size() == managers.length)) {
+                            // 取出所有位于最小位置的位点组
+                            int position = heap.peek().position();
+                            int groupNum = 0;
+                            Arrays.fill(groups, null);
+                            while (heap.size() > 0 && heap.peek().position() == position) {
+                                MergeSource source = heap.poll();
+                                groups[source.index] = source.variants;
+                                groupNum++;
+                            }
 
-                        boolean condition1 = false;
-                        boolean condition2 = false;
-                        HashSet<Integer> position = recordPosition(manager1, manager2, chromosome);
+                            // 交集模式下只合并所有文件共有的位置
+                            if (this.union || groupNum == managers.length) {
+                                for (Variant variant : mergeGroups(groups, subjectOffsets, target)) {
+                                    if (condition.apply(variant)) {
+                                        writer.write(variant);
+                                    }
+                                }
+                            }
 
-                        if (manager1.contain(chromosome)) {
-                            reader1.limit(chromosome);
-                            variants1 = reader1.readVariants(variants1Cache, position);
-                            condition1 = variants1 != null;
+                            for (int i = 0; i < managers.length; i++) {
+                                if (groups[i] != null && sources[i].next()) {
+                                    heap.add(sources[i]);
+                                }
+                            }
                         }
 
-                        if (manager2.contain(chromosome)) {
-                            reader2.limit(chromosome);
-                            variants2 = reader2.readVariants(variants2Cache, position);
-                            condition2 = variants2 != null;
+                        for (MergeSource source : sources) {
+                            source.reader.close();
                         }
+                        writer.commit(sequence);
+                        writer.close();
+                    } catch (Exception | Error e) {
+                        throw new ThreadPoolRuntimeException(e);
+                    }
+                }, loadInChromosomes.size());
+                pool.close();
 
-                        while (condition1 || condition2) {
-                            if (condition1 && !condition2) {
-                                // v1 有效位点, v2 无效位点
-                                do {
-                                    for (Variant variant1 : variants1) {
-                                        mergeVariant1.chromosome = variant1.chromosome;
-                                        mergeVariant1.position = variant1.position;
-                                        mergeVariant1.phased = variant1.phased;
-                                        mergeVariant1.ALT = variant1.ALT;
-                                        mergeVariant1.REF = variant1.REF;
-                                        System.arraycopy(variant1.BEGs, 0, mergeVariant1.BEGs, 0, variant1.BEGs.length);
-                                        if (condition.apply(mergeVariant1)) {
-                                            writer.write(mergeVariant1);
-                                        }
-                                    }
-                                    variants1Cache.addAll(variants1);
-                                    variants1.clear();
-                                    variants1 = reader1.readVariants(variants1Cache, position);
-                                    condition1 = variants1 != null;
-                                } while (condition1);
-                            } else if (!condition1) {
-                                // v2 有效位点, v1 无效位点
-                                do {
-                                    for (Variant variant2 : variants2) {
-                                        mergeVariant2.chromosome = variant2.chromosome;
-                                        mergeVariant2.position = variant2.position;
-                                        mergeVariant2.phased = variant2.phased;
-                                        mergeVariant2.ALT = variant2.ALT;
-                                        mergeVariant2.REF = variant2.REF;
-                                        System.arraycopy(variant2.BEGs, 0, mergeVariant2.BEGs, manager1.getSubjectNum(), variant2.BEGs.length);
-                                        if (condition.apply(mergeVariant2)) {
-                                            writer.write(mergeVariant2);
-                                        }
-                                    }
-                                    variants2Cache.addAll(variants2);
-                                    variants2.clear();
-                                    variants2 = reader2.readVariants(variants2Cache, position);
-                                    condition2 = variants2 != null;
-                                } while (condition2);
-                            } else {
-                                // 都有有效位点, 此时先进行位置大小的比较
-                                int position1 = variants1.get(0).position;
-                                int position2 = variants2.get(0).position;
-                                int compareStatue = position1 - position2;
-                                if (compareStatue < 0) {
-                                    // 写入所有的 1 位点，并移动 1 的指针
-                                    do {
-                                        for (Variant variant1 : variants1) {
-                                            mergeVariant1.chromosome = variant1.chromosome;
-                                            mergeVariant1.position = variant1.position;
-                                            mergeVariant1.phased = variant1.phased;
-                                            mergeVariant1.ALT = variant1.ALT;
-                                            mergeVariant1.REF = variant1.REF;
-                                            System.arraycopy(variant1.BEGs, 0, mergeVariant1.BEGs, 0, variant1.BEGs.length);
-                                            if (condition.apply(mergeVariant1)) {
-                                                writer.write(mergeVariant1);
-                                            }
-                                        }
-                                        variants1Cache.addAll(variants1);
-                                        variants1.clear();
-                                        variants1 = reader1.readVariants(variants1Cache, position);
-                                        condition1 = variants1 != null;
-                                        position1 = variants1 != null ? variants1.get(0).position : -1;
-                                    } while (condition1 && position1 < position2);
+                // 写入节点表及文件头
+                orderedWriter.close();
+            } else {
+                builder.setOutputFile(outputFile).build().close();
+            }
+        }
 
-                                } else if (compareStatue > 0) {
-                                    // 写入所有的 2 位点，并移动 2 的指针
-                                    do {
-                                        for (Variant variant2 : variants2) {
-                                            mergeVariant2.chromosome = variant2.chromosome;
-                                            mergeVariant2.position = variant2.position;
-                                            mergeVariant2.phased = variant2.phased;
-                                            mergeVariant2.ALT = variant2.ALT;
-                                            mergeVariant2.REF = variant2.REF;
-                                            System.arraycopy(variant2.BEGs, 0, mergeVariant2.BEGs, manager1.getSubjectNum(), variant2.BEGs.length);
-                                            if (condition.apply(mergeVariant2)) {
-                                                writer.write(mergeVariant2);
-                                            }
-                                        }
-                                        variants2Cache.addAll(variants2);
-                                        variants2.clear();
-                                        variants2 = reader2.readVariants(variants2Cache, position);
-                                        condition2 = variants2 != null;
-                                        position2 = variants2 != null ? variants2.get(0).position : -1;
-                                    } while (condition2 && position1 > position2);
-                                } else {
-                                    int sizeVariants1 = variants1.size();
-                                    int sizeVariants2 = variants2.size();
-
-                                    // 逐一配对
-                                    if (sizeVariants1 == sizeVariants2 && sizeVariants1 == 1) {
-                                        // 只有一个位点，直接合并
-                                        variants1.get(0).merge(variants2.get(0), mergeVariant);
-                                        if (condition.apply(mergeVariant)) {
-                                            writer.write(mergeVariant);
-                                        }
-                                    } else {
-                                        // 多对多 (先找一致项，不一致的再进行匹配)
-                                        Array<Variant> variants1new = new Array<>();
+        /**
+         * 合并同一位置的位点组. 所有文件都只有一个位点且碱基序列一致时, 直接按样本偏移量拷贝基因型;
+         * 否则按文件顺序逐个合并 (碱基序列一致的位点优先配对, 剩余位点按顺序配对, 无法配对的位点其他文件的样本基因型为缺失)
+         *
+         * @param groups         各文件在该位置的位点组, 不包含该位置的文件为 null
+         * @param subjectOffsets 各文件样本在输出文件中的偏移量
+         * @param target         快速路径使用的输出位点
+         */
+        private static Array<Variant> mergeGroups(Array<Variant>[] groups, int[] subjectOffsets, Variant target) {
+            Array<Variant> merged = new Array<>();
+            Variant first = null;
+            boolean identical = true;
+            for (int i = 0; i < groups.length && identical; i++) {
+                if (groups[i] != null) {
+                    Variant variant = groups[i].get(0);
+                    identical = groups[i].size() == 1 && (first == null || (Arrays.equals(first.REF, variant.REF) && Arrays.equals(first.ALT, variant.ALT)));
+                    first = first == null ? variant : first;
+                }
+            }
 
-                                        out:
-                                        for (int i = 0; i < variants1.size(); i++) {
-                                            Variant variant1 = variants1.get(i);
-                                            for (int j = 0; j < variants2.size(); j++) {
-                                                Variant variant2 = variants2.get(j);
-                                                if ((Arrays.equals(variant1.REF, variant2.REF) && Arrays.equals(variant1.ALT, variant2.ALT)) ||
-                                                        (Arrays.equals(variant1.REF, variant2.ALT) && Arrays.equals(variant1.ALT, variant2.REF))) {
-                                                    // 基本逻辑: 完全一致的碱基序列的位点直接合并，并且只合并一次
-                                                    variant1.merge(variant2, mergeVariant);
-
-                                                    if (condition.apply(mergeVariant)) {
-                                                        writer.write(mergeVariant);
-                                                    }
+            if (identical) {
+                target.chromosome = first.chromosome;
+                target.position = first.position;
+                target.phased = first.phased;
+                target.REF = first.REF;
+                target.ALT = first.ALT;
+                for (int i = 0; i < groups.length; i++) {
+                    if (groups[i] == null) {
+                        Arrays.fill(target.BEGs, subjectOffsets[i], subjectOffsets[i + 1], (byte) 0);
+                    } else {
+                        System.arraycopy(groups[i].get(0).BEGs, 0, target.BEGs, subjectOffsets[i], subjectOffsets[i + 1] - subjectOffsets[i]);
+                    }
+                }
+                merged.add(target);
+                return merged;
+            }
 
-                                                    variants2.remove(variant2);
-                                                    variants2Cache.add(variant2);
-                                                    continue out;
-                                                }
-                                            }
+            for (int i = 0; i < groups.length; i++) {
+                int subjectNum = subjectOffsets[i + 1] - subjectOffsets[i];
+                if (groups[i] == null || groups[i].size() == 0) {
+                    // 该文件不包含此位置, 已合并位点的样本补充缺失基因型
+                    for (int j = 0; j < merged.size(); j++) {
+                        merged.set(j, pad(merged.get(j), 0, subjectNum));
+                    }
+                    continue;
+                }
 
-                                            // 没有遇到匹配的，此时记录下该位点
-                                            variants1new.add(variant1);
-                                        }
+                Array<Variant> variants = new Array<>();
+                variants.addAll(groups[i]);
+                if (merged.size() == 0) {
+                    // 之前的文件都不包含此位置
+                    for (Variant variant : variants) {
+                        merged.add(pad(variant, subjectOffsets[i], 0));
+                    }
+                    continue;
+                }
 
-                                        while (true) {
-                                            if (variants1new.size() == 0 && variants2.size() == 0) {
-                                                // 所有来自文件 1 和 文件 2 的位点都被匹配完成
-
-                                                break;
-                                            } else if (variants1new.size() == 0) {
-                                                // 所有来自文件 1 的位点都被匹配完成，此时文件 2 直接写入
-                                                for (Variant variant2 : variants2) {
-                                                    mergeVariant2.chromosome = variant2.chromosome;
-                                                    mergeVariant2.position = variant2.position;
-                                                    mergeVariant2.phased = variant2.phased;
-                                                    mergeVariant2.ALT = variant2.ALT;
-                                                    mergeVariant2.REF = variant2.REF;
-                                                    System.arraycopy(variant2.BEGs, 0, mergeVariant2.BEGs, manager1.getSubjectNum(), variant2.BEGs.length);
-
-                                                    if (condition.apply(mergeVariant2)) {
-                                                        writer.write(mergeVariant2);
-                                                    }
-                                                }
+                Array<Variant> newMerged = new Array<>();
+                if (merged.size() == 1 && variants.size() == 1) {
+                    // 只有一个位点，直接合并
+                    newMerged.add(merged.get(0).merge(variants.get(0), new Variant()));
+                } else {
+                    // 多对多 (先找一致项，不一致的再按顺序配对)
+                    Array<Variant> unmatched = new Array<>();
+                    out:
+                    for (Variant variant1 : merged) {
+                        for (int j = 0; j < variants.size(); j++) {
+                            Variant variant2 = variants.get(j);
+                            if ((Arrays.equals(variant1.REF, variant2.REF) && Arrays.equals(variant1.ALT, variant2.ALT)) ||
+                                    (Arrays.equals(variant1.REF, variant2.ALT) && Arrays.equals(variant1.ALT, variant2.REF))) {
+                                newMerged.add(variant1.merge(variant2, new Variant()));
+                                variants.removeByIndex(j);
+                                continue out;
+                            }
+                        }
+                        unmatched.add(variant1);
+                    }
 
-                                                break;
-                                            } else if (variants2.size() == 0) {
-                                                // 所有来自文件 2 的位点都被匹配完成，此时文件 1 直接写入
-                                                for (Variant variant1 : variants1new) {
-                                                    mergeVariant1.chromosome = variant1.chromosome;
-                                                    mergeVariant1.position = variant1.position;
-                                                    mergeVariant1.phased = variant1.phased;
-                                                    mergeVariant1.ALT = variant1.ALT;
-                                                    mergeVariant1.REF = variant1.REF;
-                                                    System.arraycopy(variant1.BEGs, 0, mergeVariant1.BEGs, 0, variant1.BEGs.length);
-
-                                                    if (condition.apply(mergeVariant1)) {
-                                                        writer.write(mergeVariant1);
-                                                    }
-                                                }
+                    for (Variant variant1 : unmatched) {
+                        newMerged.add(variants.size() > 0 ? variant1.merge(variants.popFirst(), new Variant()) : pad(variant1, 0, subjectNum));
+                    }
 
-                                                break;
-                                            } else {
-                                                // 文件 1 和文件 2 都有位点，此时按照顺序匹配
-                                                Array<Variant> variants1NewTemp = new Array<>();
-                                                for (int i = 0; i < variants1new.size(); i++) {
-                                                    Variant variant1 = variants1new.get(i);
-                                                    if (variants2.size() > 0) {
-                                                        Variant variant2 = variants2.popFirst();
-                                                        variant1.merge(variant2, mergeVariant);
-
-                                                        if (condition.apply(mergeVariant)) {
-                                                            writer.write(mergeVariant);
-                                                        }
-
-                                                        variants2Cache.add(variant2);
-                                                        continue;
-                                                    }
+                    for (Variant variant2 : variants) {
+                        newMerged.add(pad(variant2, subjectOffsets[i], 0));
+                    }
+                }
+                merged = newMerged;
+            }
+            return merged;
+        }
 
-                                                    // 没有遇到匹配的，此时记录下该位点
-                                                    variants1NewTemp.add(variant1);
-                                                }
-                                                variants1new = variants1NewTemp;
-                                            }
-                                        }
-                                    }
+        /**
+         * 在位点的样本前后补充缺失基因型
+         */
+        private static Variant pad(Variant variant, int before, int after) {
+            Variant padded = new Variant(before + variant.BEGs.length + after);
+            padded.chromosome = variant.chromosome;
+            padded.position = variant.position;
+            padded.phased = variant.phased;
+            padded.REF = variant.REF;
+            padded.ALT = variant.ALT;
+            System.arraycopy(variant.BEGs, 0, padded.BEGs, before, variant.BEGs.length);
+            return padded;
+        }
 
-                                    variants1Cache.addAll(variants1);
-                                    variants1.clear();
-                                    variants1 = reader1.readVariants(variants1Cache, position);
-                                    condition1 = variants1 != null;
-                                    variants2Cache.addAll(variants2);
-                                    variants2.clear();
-                                    variants2 = reader2.readVariants(variants2Cache, position);
-                                    condition2 = variants2 != null;
-                                }
-                            }
-                        }
-                        reader1.close();
-                        reader2.close();
-                        writer.close();
-                    } catch (Exception | Error e) {
-                        throw new ThreadPoolRuntimeException(e);
-                    }
-                }, loadInChromosomes.size());
-                pool.close();
+        /**
+         * 多路归并的输入源, 记录读取器及当前位置的位点组
+         */
+        private static class MergeSource {
+            final int index;
+            final GTBReader reader;
+            final Array<Variant> cache = new Array<>();
+            Array<Variant> variants;
 
-                // 合并至输出文件
-                Concat.instance(tempFiles.toArray(), outputFile).submit();
-                outputDir.delete();
-            } else {
-                builder.setOutputFile(outputFile).build().close();
+            MergeSource(int index, GTBReader reader) {
+                this.index = index;
+                this.reader = reader;
+            }
+
+            /**
+             * 读取下一个位置的位点组
+             */
+            boolean next() throws IOException {
+                if (this.variants != null) {
+                    this.cache.addAll(this.variants);
+                    this.variants.clear();
+                }
+                this.variants = this.reader.readVariants(this.cache);
+                return this.variants != null;
+            }
+
+            int position() {
+                return this.variants.get(0).position;
             }
         }
 
@@ -2535,7 +2495,7 @@ public class GTBToolkit {
             }
 
             in.close();
-            out.write(inputManager.getGtbTree().build());
+            out.write(inputManager.buildNodeTable());
             out.close();
 
             // 清除主管理器
@@ -2715,6 +2675,7 @@ public class GTBToolkit {
             FileStream out = outputFile.open(FileStream.CHANNEL_WRITER);
 
             GTBManager newManager = new GTBManager(inputManager, pruner.apply(inputManager.getGtbTree().clone()));
+            newManager.checkSegmentCodec();
             out.write(newManager.buildHeader());
 
             // 连接块数据
@@ -2724,7 +2685,7 @@ public class GTBToolkit {
                 }
             }
 
-            out.write(newManager.getGtbTree().build());
+            out.write(newManager.buildNodeTable());
             in.close();
             out.close();
             return true;
@@ -2874,12 +2835,10 @@ public class GTBToolkit {
             StringArray loadInChromosomes = recordChromosome(inputManager, templateManager);
 
             if (loadInChromosomes.size() > 0) {
-                // 有染色体任务，会产生中间文件
+                // 有染色体任务，各染色体压缩后的数据段按染色体顺序直接写入输出文件
                 ThreadPool pool = new ThreadPool(this.nThreads);
-                BaseArray<File> tempFiles = new Array<>(File[].class, loadInChromosomes.size());
-                File outputDir = outputFile.addExtension(".~$temp");
-                outputDir.deleteOnExit();
-                outputDir.mkdir();
+                GTBOrderedWriter orderedWriter = builder.setOutputFile(outputFile).buildOrderedWriter();
+                AtomicInteger chromosomeIndex = new AtomicInteger(0);
                 GTBManager finalTemplateManager = templateManager;
                 GTBManager finalInputManager = inputManager;
                 pool.submit(() -> {
@@ -2887,16 +2846,9 @@ public class GTBToolkit {
                         GTBReader reader1 = new GTBReader(finalTemplateManager, outputParam.isPhased());
                         GTBReader reader2 = new GTBReader(finalInputManager, outputParam.isPhased());
                         AlleleChecker checker = this.alleleChecker.clone();
-                        GTBWriter writer;
-                        String chromosome;
-
-                        synchronized (loadInChromosomes) {
-                            chromosome = loadInChromosomes.popFirst();
-                            File tempFile = outputDir.getSubFile("chr" + chromosome + ".gtb");
-                            writer = builder.setOutputFile(tempFile).build();
-                            tempFile.deleteOnExit();
-                            tempFiles.add(tempFile);
-                        }
+                        GTBWriter writer = orderedWriter.newWriter();
+                        int sequence = chromosomeIndex.getAndAdd(1);
+                        String chromosome = loadInChromosomes.get(sequence);
 
                         // 元信息
                         BaseArray<Variant> variants1 = null;
@@ -2912,7 +2864,7 @@ public class GTBToolkit {
                         boolean condition2 = false;
 
                         // 取并集时，条件位点集不起作用
-                        HashSet<Integer> position = recordPosition(finalTemplateManager, finalInputManager, chromosome);
+                        PositionSet position = recordPosition(finalTemplateManager, finalInputManager, chromosome);
                         checker.setPosition(position);
 
                         if (finalTemplateManager.contain(chromosome)) {
@@ -3008,11 +2960,9 @@ public class GTBToolkit {
                             }
                         }
 
-                        if (position != null) {
-                            position.clear();
-                        }
                         reader1.close();
                         reader2.close();
+                        writer.commit(sequence);
                         writer.close();
                     } catch (Exception | Error e) {
                         throw new ThreadPoolRuntimeException(e);
@@ -3020,9 +2970,8 @@ public class GTBToolkit {
                 }, loadInChromosomes.size());
                 pool.close();
 
-                // 合并至输出文件
-                Concat.instance(tempFiles.toArray(), outputFile).submit();
-                outputDir.delete();
+                // 写入节点表及文件头
+                orderedWriter.close();
             } else {
                 builder.setOutputFile(outputFile).build().close();
             }
@@ -3047,48 +2996,24 @@ public class GTBToolkit {
             return StringArray.wrap(loadInChromosomes.toArray(new String[0]));
         }
 
-        private HashSet<Integer> recordPosition(GTBManager manager1, GTBManager manager2, String chromosome) throws IOException {
+        private PositionSet recordPosition(GTBManager manager1, GTBManager manager2, String chromosome) throws IOException {
             if (this.union) {
                 // 并集, 返回 null
                 return null;
             } else {
-                HashSet<Integer> loadInPosition = new HashSet<>();
-
-                GTBReader reader1 = new GTBReader(manager1, manager1.isPhased(), false);
-                reader1.limit(chromosome);
-
                 // 先加载第一个文件全部的位点
-                for (Variant variant : reader1) {
-                    loadInPosition.add(variant.position);
-                }
-
-                reader1.close();
+                PositionSet loadInPosition = loadPosition(manager1, chromosome);
 
                 if (loadInPosition.size() == 0) {
                     return loadInPosition;
                 }
 
                 // 再移除第二个文件中没有的位点
-                HashSet<Integer> loadInPosition2 = new HashSet<>();
-                GTBReader reader2 = new GTBReader(manager2, manager2.isPhased(), false);
-                reader2.limit(chromosome);
-
-                for (Variant variant : reader2) {
-                    loadInPosition2.add(variant.position);
-                }
-
-                reader2.close();
-
                 int nums = loadInPosition.size();
-                loadInPosition.retainAll(loadInPosition2);
-
-                loadInPosition2.clear();
-                loadInPosition2 = null;
+                loadInPosition = loadInPosition.intersect(loadPosition(manager2, chromosome));
 
                 if (loadInPosition.size() == nums) {
                     // 取了交集后元素数量一致，则转为不做约束
-                    loadInPosition.clear();
-                    loadInPosition = null;
                     return null;
                 }
 
@@ -3096,6 +3021,23 @@ public class GTBToolkit {
             }
         }
 
+        /**
+         * 读取文件在指定染色体上的所有位置
+         */
+        private PositionSet loadPosition(GTBManager manager, String chromosome) throws IOException {
+            IntArray positions = new IntArray(manager.getBlockSize(), true);
+            GTBReader reader = new GTBReader(manager, manager.isPhased(), false);
+            reader.setProjection(GTBReader.Projection.POSITION);
+            reader.limit(chromosome);
+
+            for (Variant variant : reader) {
+                positions.add(variant.position);
+            }
+
+            reader.close();
+            return PositionSet.of(positions);
+        }
+
         private boolean alignVariantWithAlleleCheck(Variant variant1, Variant variant2, AlleleChecker checker) throws IOException {
             int AC12 = variant1.getAC();
             int AN1 = variant1.getAN();
@@ -3317,6 +3259,7 @@ public class GTBToolkit {
                 // 写入头部信息
                 tempManager.checkOrderedGTB();
                 tempManager.checkSuggestToBGZF();
+                tempManager.checkSegmentCodec();
                 out.write(tempManager.buildHeader());
                 // 连接块数据
                 for (GTBNodes nodes : trees.get(subFileName)) {
@@ -3325,7 +3268,7 @@ public class GTBToolkit {
                     }
                 }
 
-                out.write(trees.get(subFileName).build());
+                out.write(trees.get(subFileName).build(tempManager.isSegmentCodec()));
                 out.close();
             }
 
@@ -3420,7 +3363,7 @@ public class GTBToolkit {
                         in.writeTo(node.blockSeek, node.blockSize, out.getChannel());
                     }
                 }
-                out.write(inputManager.getGtbTree().build());
+                out.write(inputManager.buildNodeTable());
                 in.close();
                 out.close();
                 GTBRootCache.clear(inputManager);
@@ -6,7 +6,6 @@ import edu.sysu.pmglab.container.array.Array;
 import edu.sysu.pmglab.container.array.BaseArray;
 import edu.sysu.pmglab.easytools.ArrayUtils;
 import edu.sysu.pmglab.easytools.ByteCode;
-import edu.sysu.pmglab.easytools.ValueUtils;
 import edu.sysu.pmglab.gbc.constant.ChromosomeTags;
 import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
 import edu.sysu.pmglab.unifyIO.FileStream;
@@ -438,24 +437,25 @@ public class GTBTree implements Iterable<GTBNodes>, Cloneable {
      * 构建块头部信息
      */
     public VolumeByteStream build() {
+        return build(false);
+    }
+
+    /**
+     * 构建块头部信息
+     *
+     * @param segmentCodec 是否为数据段编码扩展格式 (每个节点额外记录 1 字节的数据段编码方式)
+     */
+    public VolumeByteStream build(boolean segmentCodec) {
         // 获取总块数
         int nodeNum = numOfNodes();
 
         // 创建头部信息容器
-        VolumeByteStream header = new VolumeByteStream(nodeNum * 25);
+        VolumeByteStream header = new VolumeByteStream(nodeNum * (segmentCodec ? GTBNode.SEGMENT_CODEC_NODE_SIZE : GTBNode.NODE_SIZE));
 
-        // 写入块头部信息 25 byte
+        // 写入块头部信息 25 byte (+ 1 byte)
         for (GTBNodes nodes : this) {
             for (GTBNode node : nodes) {
-                header.write(ChromosomeTags.getIndex(node.chromosome));
-                header.writeIntegerValue(node.minPos);
-                header.writeIntegerValue(node.maxPos);
-                header.writeShortValue(node.subBlockVariantNum[0]);
-                header.writeShortValue(node.subBlockVariantNum[1]);
-                header.writeIntegerValue(node.compressedGenotypesSize);
-                header.write(ValueUtils.value2ByteArray(node.compressedPosSize, 3));
-                header.writeIntegerValue(node.compressedAlleleSize);
-                header.write(node.magicCode);
+                node.toTransFormat(header, segmentCodec);
             }
         }
 
@@ -0,0 +1,232 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.gbc.coder.encoder.BEGEncoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @Description :VCF 基因型分词器, 以 long (8 字节) 为单位查找分隔符 (SWAR), 常见的 a|b, a/b, ./. 基因型直接查表编码;
+ * 无法处理的行返回 false, 由 BuildKernel 的逐字节路径处理
+ */
+
+class GenotypeTokenizer {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long TABS = ONES * ByteCode.TAB;
+    private static final long COLONS = ONES * ByteCode.COLON;
+
+    /**
+     * 两个连续的 3 字节基因型 "a|b\tc|d\t": 第 3, 7 字节 (小端序) 为制表符
+     */
+    private static final long PAIR_TAB_MASK = 0xFF000000FF000000L;
+    private static final long PAIR_TAB = ((long) ByteCode.TAB << 56) | ((long) ByteCode.TAB << 24);
+
+    final BEGEncoder encoder;
+
+    /**
+     * 单字符等位基因组合的编码表, codes[i * 10 + j] 为基因型 i|j 的编码值
+     */
+    final byte[] codes = new byte[100];
+    final byte missCode;
+
+    GenotypeTokenizer(BEGEncoder encoder) {
+        this.encoder = encoder;
+        this.missCode = encoder.encodeMiss();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                this.codes[i * 10 + j] = encoder.encode(i, j);
+            }
+        }
+    }
+
+    /**
+     * 查表编码 3 字节基因型, 无法查表时返回 -1
+     *
+     * @param allele1   第一个等位基因字符
+     * @param separator 分隔符
+     * @param allele2   第二个等位基因字符
+     */
+    private int lookup(int allele1, int separator, int allele2) {
+        if (separator != ByteCode.VERTICAL_BAR && separator != ByteCode.SLASH) {
+            return -1;
+        }
+
+        if (allele1 == ByteCode.PERIOD) {
+            return this.missCode & 0xFF;
+        }
+
+        int value1 = allele1 - 48;
+        int value2 = allele2 - 48;
+        if (value1 < 0 || value1 > 9 || value2 < 0 || value2 > 9) {
+            return -1;
+        }
+        return this.codes[value1 * 10 + value2] & 0xFF;
+    }
+
+    /**
+     * 编码仅含 GT 字段的基因型数据
+     *
+     * @param lineCache     VCF 行
+     * @param genotypeStart 第一个基因型前的制表符位置
+     * @param BEGs          编码输出
+     * @param indexes       样本在 BEGs 中的索引, null 代表按顺序填充
+     * @param subjectNum    样本个数
+     * @return 是否完成编码, 返回 false 时需要使用逐字节路径重新编码
+     */
+    boolean tokenizeGT(VolumeByteStream lineCache, int genotypeStart, byte[] BEGs, int[] indexes, int subjectNum) {
+        byte[] line = lineCache.getCache();
+        int validLength = lineCache.size();
+        ByteBuffer buffer = ByteBuffer.wrap(line).order(ByteOrder.LITTLE_ENDIAN);
+        int last = subjectNum - 1;
+        int seek = genotypeStart + 1;
+        int i = 0;
+
+        while (i < last) {
+            if (i + 1 < last && seek + 8 <= validLength) {
+                // 一次检查两个基因型
+                long word = buffer.getLong(seek);
+                if ((word & PAIR_TAB_MASK) == PAIR_TAB) {
+                    int code1 = lookup((int) word & 0xFF, (int) (word >>> 8) & 0xFF, (int) (word >>> 16) & 0xFF);
+                    int code2 = lookup((int) (word >>> 32) & 0xFF, (int) (word >>> 40) & 0xFF, (int) (word >>> 48) & 0xFF);
+                    if ((code1 | code2) >= 0) {
+                        BEGs[indexes == null ? i : indexes[i]] = (byte) code1;
+                        BEGs[indexes == null ? i + 1 : indexes[i + 1]] = (byte) code2;
+                        i += 2;
+                        seek += 8;
+                        continue;
+                    }
+                }
+            }
+
+            int code;
+            if (seek + 3 < validLength && line[seek + 3] == ByteCode.TAB && (code = lookup(line[seek], line[seek + 1], line[seek + 2])) >= 0) {
+                BEGs[indexes == null ? i : indexes[i]] = (byte) code;
+                seek += 4;
+            } else {
+                // 其他倍型或多位数等位基因
+                int end = indexOf(buffer, line, TABS, ByteCode.TAB, seek + 1, validLength);
+                if (end == -1) {
+                    return false;
+                }
+
+                BEGs[indexes == null ? i : indexes[i]] = this.encoder.encode(line, end, end - seek);
+                seek = end + 1;
+            }
+            i++;
+        }
+
+        // 最后一个基因型以行尾结束
+        BEGs[indexes == null ? last : indexes[last]] = this.encoder.encode(line, validLength, validLength - seek);
+        return true;
+    }
+
+    /**
+     * 编码以 GT 字段开头、含有其他 FORMAT 字段的基因型数据 (不进行基因型质控)
+     *
+     * @param lineCache     VCF 行
+     * @param genotypeStart 第一个基因型前的制表符位置
+     * @param BEGs          编码输出
+     * @param indexes       样本在 BEGs 中的索引, null 代表按顺序填充
+     * @param subjectNum    样本个数
+     * @return 是否完成编码, 返回 false 时需要使用逐字节路径重新编码
+     */
+    boolean tokenizeFormattedGT(VolumeByteStream lineCache, int genotypeStart, byte[] BEGs, int[] indexes, int subjectNum) {
+        byte[] line = lineCache.getCache();
+        int validLength = lineCache.size();
+        ByteBuffer buffer = ByteBuffer.wrap(line).order(ByteOrder.LITTLE_ENDIAN);
+        int last = subjectNum - 1;
+        int seek = genotypeStart + 1;
+
+        for (int i = 0; i < last; i++) {
+            int code;
+            int end;
+            if (seek + 3 < validLength && line[seek + 3] == ByteCode.COLON && (code = lookup(line[seek], line[seek + 1], line[seek + 2])) >= 0) {
+                end = indexOf(buffer, line, TABS, ByteCode.TAB, seek + 4, validLength);
+            } else if (seek < validLength && line[seek] == ByteCode.PERIOD) {
+                code = this.missCode;
+                end = indexOf(buffer, line, TABS, ByteCode.TAB, seek + 1, validLength);
+            } else {
+                // GT 字段在当前样本内结束时才能编码
+                int colon = indexOfColon(buffer, line, seek + 1, validLength);
+                if (colon == -1 || line[colon] != ByteCode.COLON) {
+                    return false;
+                }
+                code = this.encoder.encode(line, colon, colon - seek);
+                end = indexOf(buffer, line, TABS, ByteCode.TAB, colon + 1, validLength);
+            }
+
+            if (end == -1) {
+                return false;
+            }
+
+            BEGs[indexes == null ? i : indexes[i]] = (byte) code;
+            seek = end + 1;
+        }
+
+        // 最后一个基因型
+        int code;
+        if (seek < validLength && line[seek] == ByteCode.PERIOD) {
+            code = this.missCode;
+        } else {
+            int colon = indexOf(buffer, line, COLONS, ByteCode.COLON, seek + 1, validLength);
+            if (colon == -1) {
+                return false;
+            }
+            code = this.encoder.encode(line, colon, colon - seek);
+        }
+        BEGs[indexes == null ? last : indexes[last]] = (byte) code;
+        return true;
+    }
+
+    /**
+     * 以 8 字节为单位查找 target 第一次出现的位置
+     *
+     * @param pattern 由 target 重复 8 次组成的 long 值
+     * @return 位置索引, 不存在时返回 -1
+     */
+    private static int indexOf(ByteBuffer buffer, byte[] line, long pattern, byte target, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buffer.getLong(i) ^ pattern;
+            long zeros = (word - ONES) & ~word & HIGHS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+
+        for (; i < to; i++) {
+            if (line[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 以 8 字节为单位查找第一个冒号或制表符的位置
+     *
+     * @return 位置索引, 不存在时返回 -1
+     */
+    private static int indexOfColon(ByteBuffer buffer, byte[] line, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buffer.getLong(i);
+            long colons = word ^ COLONS;
+            long tabs = word ^ TABS;
+            long zeros = ((colons - ONES) & ~colons | (tabs - ONES) & ~tabs) & HIGHS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+
+        for (; i < to; i++) {
+            if (line[i] == ByteCode.COLON || line[i] == ByteCode.TAB) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,221 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.easytools.ValueUtils;
+import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
+
+/**
+ * @Description :位置列, 节点内位置数据的只读视图. 分帧位压缩编码的数据段直接在编码数据上进行 O(1) 随机访问,
+ * 其他编码方式的数据段使用原始格式 (每个位点 4 字节); 各子块的位置升序排列时使用二分查找, 否则按帧跳过后线性扫描.
+ * 位点索引为数据块中的储存顺序, 非线程安全
+ */
+
+public class PositionColumn implements AutoCloseable {
+    /**
+     * 每帧的位点个数, 帧头大小 (4 bytes 帧基准值 + 1 byte 位宽)
+     */
+    static final int FRAME_SIZE = 128;
+    static final int FRAME_HEADER_SIZE = 5;
+
+    final VolumeByteStream data = new VolumeByteStream(0);
+    int variantNum;
+    int subBlockLength;
+    boolean packed;
+    boolean sorted;
+
+    /**
+     * 分帧位压缩编码的帧信息: 帧基准值 (绝对位置), 位宽, 帧数据在 data 中的起始位置
+     */
+    int[] frameBases = new int[0];
+    int[] frameWidths = new int[0];
+    int[] frameOffsets = new int[0];
+
+    /**
+     * 以分帧位压缩编码解析 data 中的数据
+     *
+     * @param node 数据段所属节点
+     */
+    void wrapPacked(GTBNode node) {
+        this.packed = true;
+        this.variantNum = node.numOfVariants();
+        this.subBlockLength = Math.min(node.subBlockVariantNum[0], this.variantNum);
+
+        int frameNum = (this.variantNum + FRAME_SIZE - 1) / FRAME_SIZE;
+        if (this.frameBases.length < frameNum) {
+            this.frameBases = new int[frameNum];
+            this.frameWidths = new int[frameNum];
+            this.frameOffsets = new int[frameNum];
+        }
+
+        if (this.data.size() < 1 + frameNum * FRAME_HEADER_SIZE) {
+            throw new GTBComponentException("broken position segment (packed encoding)");
+        }
+
+        this.sorted = (this.data.cacheOf(0) & 1) != 0;
+        int offset = 1 + frameNum * FRAME_HEADER_SIZE;
+        for (int frame = 0; frame < frameNum; frame++) {
+            int seek = 1 + frame * FRAME_HEADER_SIZE;
+            int width = this.data.cacheOf(seek + 4) & 0xFF;
+            if (width > 32) {
+                throw new GTBComponentException("broken position segment (packed encoding)");
+            }
+
+            this.frameBases[frame] = node.minPos + ValueUtils.byteArray2IntegerValue(this.data.cacheOf(seek), this.data.cacheOf(seek + 1),
+                    this.data.cacheOf(seek + 2), this.data.cacheOf(seek + 3));
+            this.frameWidths[frame] = width;
+            this.frameOffsets[frame] = offset;
+            offset += (Math.min(FRAME_SIZE, this.variantNum - frame * FRAME_SIZE) * width + 7) >>> 3;
+        }
+
+        if (offset != this.data.size()) {
+            throw new GTBComponentException("broken position segment (packed encoding)");
+        }
+    }
+
+    /**
+     * 以原始格式 (每个位点 4 字节) 解析 data 中的数据
+     *
+     * @param node 数据段所属节点
+     */
+    void wrapRaw(GTBNode node) {
+        this.packed = false;
+        this.variantNum = node.numOfVariants();
+        this.subBlockLength = Math.min(node.subBlockVariantNum[0], this.variantNum);
+
+        if (this.data.size() != this.variantNum << 2) {
+            throw new GTBComponentException("broken position segment");
+        }
+
+        this.sorted = true;
+        for (int i = 1; i < this.variantNum && this.sorted; i++) {
+            this.sorted = i == this.subBlockLength || get(i - 1) <= get(i);
+        }
+    }
+
+    /**
+     * 获取位点个数
+     */
+    public int numOfVariants() {
+        return this.variantNum;
+    }
+
+    /**
+     * 各子块内的位置是否升序排列 (此时使用二分查找)
+     */
+    public boolean isSorted() {
+        return this.sorted;
+    }
+
+    /**
+     * 获取第 index 个位点 (储存顺序) 的位置
+     *
+     * @param index 位点索引
+     */
+    public int get(int index) {
+        byte[] cache = this.data.getCache();
+        if (!this.packed) {
+            int seek = index << 2;
+            return ValueUtils.byteArray2IntegerValue(cache[seek], cache[seek + 1], cache[seek + 2], cache[seek + 3]);
+        }
+
+        int frame = index / FRAME_SIZE;
+        int width = this.frameWidths[frame];
+        if (width == 0) {
+            return this.frameBases[frame];
+        }
+
+        int bitOffset = (index % FRAME_SIZE) * width;
+        int seek = this.frameOffsets[frame] + (bitOffset >>> 3);
+        int shift = bitOffset & 7;
+        int byteNum = (shift + width + 7) >>> 3;
+        long value = 0;
+        for (int i = 0; i < byteNum; i++) {
+            value |= (long) (cache[seek + i] & 0xFF) << (i << 3);
+        }
+        return this.frameBases[frame] + (int) ((value >>> shift) & ((1L << width) - 1));
+    }
+
+    /**
+     * 位置值小于 position 的位点个数, 即位点按位置排序后第一个 position >= 目标值的位点的索引
+     *
+     * @param position 位置值
+     */
+    public int rank(int position) {
+        if (this.sorted) {
+            return lowerBound(0, this.subBlockLength, position) + lowerBound(this.subBlockLength, this.variantNum, position);
+        }
+
+        int count = 0;
+        if (this.packed) {
+            for (int frame = 0, start = 0; start < this.variantNum; frame++, start += FRAME_SIZE) {
+                int end = Math.min(this.variantNum, start + FRAME_SIZE);
+                if (position <= this.frameBases[frame]) {
+                    // 帧内所有位点均不小于 position
+                    continue;
+                }
+
+                if ((long) position - this.frameBases[frame] > (1L << this.frameWidths[frame]) - 1) {
+                    // 帧内所有位点均小于 position
+                    count += end - start;
+                    continue;
+                }
+
+                for (int i = start; i < end; i++) {
+                    if (get(i) < position) {
+                        count++;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < this.variantNum; i++) {
+                if (get(i) < position) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 位置值等于 position 的位点个数
+     *
+     * @param position 位置值
+     */
+    public int count(int position) {
+        return (position == Integer.MAX_VALUE ? this.variantNum : rank(position + 1)) - rank(position);
+    }
+
+    /**
+     * 将位置数据以原始格式 (每个位点 4 字节) 写入容器
+     *
+     * @param dst 输出容器
+     */
+    public void writeTo(VolumeByteStream dst) {
+        dst.makeSureCapacity(dst.size() + (this.variantNum << 2));
+        for (int i = 0; i < this.variantNum; i++) {
+            dst.writeIntegerValue(get(i));
+        }
+    }
+
+    /**
+     * 在 [fromIndex, toIndex) 中二分查找第一个 position >= 目标值的位点, 返回其相对于 fromIndex 的偏移
+     */
+    private int lowerBound(int fromIndex, int toIndex, int position) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - fromIndex;
+    }
+
+    @Override
+    public void close() {
+        this.data.close();
+    }
+}
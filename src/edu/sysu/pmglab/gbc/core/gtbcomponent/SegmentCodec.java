@@ -0,0 +1,165 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
+
+/**
+ * @Description :数据段编码方式. 编码方式按数据段记录在节点的 segmentCodec 中 (低 4 位为位置, 高 4 位为 allele), 0 代表旧版本格式,
+ * 即直接使用文件的压缩器压缩原始数据; 位置数据段可使用以 minPos 为起点的差分 + zigzag 变长整数编码或分帧位压缩编码 (支持随机访问),
+ * allele 数据段可使用文件级 ZSTD 字典压缩
+ */
+
+public enum SegmentCodec {
+    /**
+     * 单例模式
+     */
+    INSTANCE;
+
+    /**
+     * 通用压缩器直接压缩原始数据 (旧版本格式)
+     */
+    public static final int RAW = 0;
+
+    /**
+     * 位置数据段: 相邻位点的差分值 (第一个位点相对于 minPos) 经 zigzag 变换后写为变长整数, 再由通用压缩器压缩
+     */
+    public static final int POSITION_DELTA = 1;
+
+    /**
+     * 位置数据段: 每 128 个位点为一帧, 帧内位置相对于帧基准值 (帧内最小位置与 minPos 的差值) 按固定位宽压缩, 再由通用压缩器压缩.
+     * 解压后可在 O(1) 时间内访问任意位点的位置, 且无需还原为原始格式即可进行二分查找 (见 {@link PositionColumn})
+     * <p>
+     * 格式: [1 byte 标记, 最低位为 1 代表各子块的位置均升序排列] [每帧 5 bytes: 4 bytes 帧基准值 + 1 byte 位宽] [每帧的位压缩数据, 低位在前]
+     */
+    public static final int POSITION_PACKED = 2;
+
+    /**
+     * allele 数据段: 使用文件头中的字典进行 ZSTD 压缩
+     */
+    public static final int ALLELE_DICTIONARY = 1;
+
+    /**
+     * 组装节点的数据段编码方式
+     *
+     * @param positionCodec 位置数据段编码方式
+     * @param alleleCodec   allele 数据段编码方式
+     */
+    public static byte of(int positionCodec, int alleleCodec) {
+        return (byte) ((positionCodec & 0xf) | ((alleleCodec & 0xf) << 4));
+    }
+
+    /**
+     * 差分编码位置数据
+     *
+     * @param positions 位置数据
+     * @param length    位点个数
+     * @param minPos    块的最小位置
+     * @param dst       输出容器
+     */
+    public static void encodeDelta(int[] positions, int length, int minPos, VolumeByteStream dst) {
+        dst.makeSureCapacity(dst.size() + length * 5);
+        int last = minPos;
+        for (int i = 0; i < length; i++) {
+            int delta = positions[i] - last;
+            int value = (delta << 1) ^ (delta >> 31);
+            while ((value & ~0x7F) != 0) {
+                dst.write((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            dst.write((byte) value);
+            last = positions[i];
+        }
+    }
+
+    /**
+     * 分帧位压缩编码位置数据
+     *
+     * @param positions      位置数据
+     * @param length         位点个数
+     * @param minPos         块的最小位置
+     * @param subBlockLength 第一个子块 (二等位基因位点) 的位点个数
+     * @param dst            输出容器
+     */
+    public static void encodePacked(int[] positions, int length, int minPos, int subBlockLength, VolumeByteStream dst) {
+        int frameNum = (length + PositionColumn.FRAME_SIZE - 1) / PositionColumn.FRAME_SIZE;
+        dst.makeSureCapacity(dst.size() + 1 + frameNum * PositionColumn.FRAME_HEADER_SIZE + (length << 2));
+
+        // 各子块内位置是否升序排列
+        boolean sorted = true;
+        for (int i = 1; i < length && sorted; i++) {
+            sorted = i == subBlockLength || positions[i - 1] <= positions[i];
+        }
+        dst.write((byte) (sorted ? 1 : 0));
+
+        // 帧头: 帧基准值, 位宽
+        int[] bases = new int[frameNum];
+        int[] widths = new int[frameNum];
+        for (int frame = 0; frame < frameNum; frame++) {
+            int start = frame * PositionColumn.FRAME_SIZE;
+            int end = Math.min(length, start + PositionColumn.FRAME_SIZE);
+            int base = positions[start];
+            int max = positions[start];
+            for (int i = start + 1; i < end; i++) {
+                base = Math.min(base, positions[i]);
+                max = Math.max(max, positions[i]);
+            }
+            bases[frame] = base;
+            widths[frame] = 32 - Integer.numberOfLeadingZeros(max - base);
+            dst.writeIntegerValue(base - minPos);
+            dst.write((byte) widths[frame]);
+        }
+
+        // 帧数据
+        for (int frame = 0; frame < frameNum; frame++) {
+            int start = frame * PositionColumn.FRAME_SIZE;
+            int end = Math.min(length, start + PositionColumn.FRAME_SIZE);
+            int base = bases[frame];
+            int width = widths[frame];
+            long buffer = 0;
+            int bits = 0;
+            for (int i = start; i < end; i++) {
+                buffer |= (long) (positions[i] - base) << bits;
+                bits += width;
+                while (bits >= 8) {
+                    dst.write((byte) buffer);
+                    buffer >>>= 8;
+                    bits -= 8;
+                }
+            }
+            if (bits > 0) {
+                dst.write((byte) buffer);
+            }
+        }
+    }
+
+    /**
+     * 解码差分编码的位置数据, 还原为每个位点 4 字节的原始格式
+     *
+     * @param src        差分编码数据
+     * @param variantNum 位点个数
+     * @param minPos     块的最小位置
+     * @param dst        输出容器
+     */
+    public static void decodeDelta(VolumeByteStream src, int variantNum, int minPos, VolumeByteStream dst) {
+        byte[] cache = src.getCache();
+        int seek = 0;
+        int last = minPos;
+        dst.makeSureCapacity(dst.size() + (variantNum << 2));
+        for (int i = 0; i < variantNum; i++) {
+            int value = 0;
+            int shift = 0;
+            byte code;
+            do {
+                if (seek >= src.size() || shift > 28) {
+                    throw new GTBComponentException("broken position segment (delta encoding)");
+                }
+                code = cache[seek++];
+                value |= (code & 0x7F) << shift;
+                shift += 7;
+            } while (code < 0);
+
+            last += (value >>> 1) ^ -(value & 1);
+            dst.writeIntegerValue(last);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import edu.sysu.pmglab.compressor.IDecompressor;
+import edu.sysu.pmglab.container.VolumeByteStream;
+
+import java.io.IOException;
+
+/**
+ * @Description :位置、allele 数据段解压器, 按节点记录的数据段编码方式解压, 输出与旧版本格式相同的原始数据
+ * (位置为每个位点 4 字节, allele 为 REF\tALT/ 序列). 非线程安全, 每个线程使用一个实例
+ */
+
+public class SegmentDecompressor implements AutoCloseable {
+    final IDecompressor decompressor;
+    final byte[] alleleDictionary;
+    final VolumeByteStream deltaCache = new VolumeByteStream(0);
+    final PositionColumn packedCache = new PositionColumn();
+    ZstdDecompressCtx dictionaryContext;
+
+    /**
+     * @param manager GTB 文件管理器
+     */
+    public SegmentDecompressor(GTBManager manager) {
+        this.decompressor = IDecompressor.getInstance(manager.getCompressorIndex());
+        this.alleleDictionary = manager.getAlleleDictionary();
+    }
+
+    /**
+     * 解压位置数据段
+     *
+     * @param node   数据段所属节点
+     * @param src    压缩数据
+     * @param offset 压缩数据起始位置
+     * @param length 压缩数据长度
+     * @param dst    输出容器
+     */
+    public void decompressPositions(GTBNode node, byte[] src, int offset, int length, VolumeByteStream dst) throws IOException {
+        switch (node.getPositionCodec()) {
+            case SegmentCodec.RAW:
+                this.decompressor.decompress(src, offset, length, dst);
+                return;
+            case SegmentCodec.POSITION_DELTA:
+                this.deltaCache.reset();
+                this.decompressor.decompress(src, offset, length, this.deltaCache);
+                SegmentCodec.decodeDelta(this.deltaCache, node.numOfVariants(), node.minPos, dst);
+                return;
+            case SegmentCodec.POSITION_PACKED:
+                this.packedCache.data.reset();
+                this.decompressor.decompress(src, offset, length, this.packedCache.data);
+                this.packedCache.wrapPacked(node);
+                this.packedCache.writeTo(dst);
+                return;
+            default:
+                throw new IOException("unsupported position segment codec: " + node.getPositionCodec());
+        }
+    }
+
+    /**
+     * 解压位置数据段为位置列. 分帧位压缩编码的数据段只进行通用解压, 不还原为原始格式
+     *
+     * @param node   数据段所属节点
+     * @param src    压缩数据
+     * @param offset 压缩数据起始位置
+     * @param length 压缩数据长度
+     * @param dst    输出的位置列
+     */
+    public void decompressPositions(GTBNode node, byte[] src, int offset, int length, PositionColumn dst) throws IOException {
+        dst.data.reset();
+        if (node.getPositionCodec() == SegmentCodec.POSITION_PACKED) {
+            this.decompressor.decompress(src, offset, length, dst.data);
+            dst.wrapPacked(node);
+        } else {
+            decompressPositions(node, src, offset, length, dst.data);
+            dst.wrapRaw(node);
+        }
+    }
+
+    /**
+     * 解压位置数据段
+     *
+     * @param node 数据段所属节点
+     * @param src  压缩数据
+     * @param dst  输出容器
+     */
+    public void decompressPositions(GTBNode node, VolumeByteStream src, VolumeByteStream dst) throws IOException {
+        decompressPositions(node, src.getCache(), 0, src.size(), dst);
+    }
+
+    /**
+     * 解压 allele 数据段
+     *
+     * @param node   数据段所属节点
+     * @param src    压缩数据
+     * @param offset 压缩数据起始位置
+     * @param length 压缩数据长度
+     * @param dst    输出容器
+     */
+    public void decompressAlleles(GTBNode node, byte[] src, int offset, int length, VolumeByteStream dst) throws IOException {
+        switch (node.getAlleleCodec()) {
+            case SegmentCodec.RAW:
+                this.decompressor.decompress(src, offset, length, dst);
+                return;
+            case SegmentCodec.ALLELE_DICTIONARY:
+                if (this.alleleDictionary == null) {
+                    throw new IOException("allele segment is compressed with a dictionary, but the file has no allele dictionary");
+                }
+
+                if (this.dictionaryContext == null) {
+                    this.dictionaryContext = new ZstdDecompressCtx();
+                    this.dictionaryContext.loadDict(this.alleleDictionary);
+                }
+
+                long originSize = Zstd.decompressedSize(src, offset, length);
+                if (originSize < 0 || originSize > Integer.MAX_VALUE - 2) {
+                    throw new IOException("broken allele segment (dictionary encoding)");
+                }
+                dst.makeSureCapacity(dst.size() + (int) originSize);
+                try {
+                    int size = this.dictionaryContext.decompressByteArray(dst.getCache(), dst.size(), (int) originSize, src, offset, length);
+                    dst.reset(dst.size() + size);
+                } catch (ZstdException e) {
+                    throw new IOException(e.getMessage());
+                }
+                return;
+            default:
+                throw new IOException("unsupported allele segment codec: " + node.getAlleleCodec());
+        }
+    }
+
+    /**
+     * 解压 allele 数据段
+     *
+     * @param node 数据段所属节点
+     * @param src  压缩数据
+     * @param dst  输出容器
+     */
+    public void decompressAlleles(GTBNode node, VolumeByteStream src, VolumeByteStream dst) throws IOException {
+        decompressAlleles(node, src.getCache(), 0, src.size(), dst);
+    }
+
+    @Override
+    public void close() {
+        this.decompressor.close();
+        this.deltaCache.close();
+        this.packedCache.close();
+        if (this.dictionaryContext != null) {
+            this.dictionaryContext.close();
+            this.dictionaryContext = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.container.File;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @Description :有序写出器的数据段溢出文件. 乱序到达的数据段优先暂存在内存中, 内存中的暂存量超出 MAX_PENDING_SIZE 时写入溢出文件,
+ * 轮到该数据段写出时再从溢出文件直接传输到输出文件. 非线程安全, 由有序写出器在同步方法中调用
+ */
+
+public class SegmentSpillFile implements AutoCloseable, Closeable {
+    /**
+     * 内存中暂存的数据段总大小上限
+     */
+    public static final long MAX_PENDING_SIZE = 1L << 28;
+
+    final File file;
+    FileChannel channel;
+    long pendingSize = 0;
+
+    /**
+     * @param file 溢出文件, 首次溢出时创建, 关闭时删除
+     */
+    public SegmentSpillFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 申请在内存中暂存数据段
+     *
+     * @param size 数据段大小
+     * @return 暂存量不超出上限时返回 true 并计入暂存量, 否则数据段应当写入溢出文件
+     */
+    public boolean acquire(int size) {
+        if (this.pendingSize + size <= MAX_PENDING_SIZE) {
+            this.pendingSize += size;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 释放内存中的数据段占用的暂存量
+     *
+     * @param size 数据段大小
+     */
+    public void release(int size) {
+        this.pendingSize -= size;
+    }
+
+    /**
+     * 将数据段写入溢出文件
+     *
+     * @param data   数据
+     * @param offset 起始位置
+     * @param length 数据长度
+     * @return 数据段在溢出文件中的偏移量
+     */
+    public long spill(byte[] data, int offset, int length) throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(Paths.get(this.file.getAbsoluteFilePath()), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        long position = this.channel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer, position + buffer.position() - offset);
+        }
+        return position;
+    }
+
+    /**
+     * 将溢出文件中的数据段传输到输出文件
+     *
+     * @param position 数据段在溢出文件中的偏移量
+     * @param length   数据段长度
+     * @param target   输出文件
+     */
+    public void transferTo(long position, long length, FileChannel target) throws IOException {
+        long count = 0;
+        while (count < length) {
+            count += this.channel.transferTo(position + count, length - count, target);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+}
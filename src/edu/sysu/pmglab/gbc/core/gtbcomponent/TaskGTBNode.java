@@ -0,0 +1,201 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent;
+
+import edu.sysu.pmglab.check.Value;
+import edu.sysu.pmglab.container.array.Array;
+import edu.sysu.pmglab.easytools.ValueUtils;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.GTBReader;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.PositionSet;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * @Description :节点任务及查询计划. 查询计划只根据节点的位置范围将位点范围、位点子集约束转为按节点的任务列表,
+ * 不解压任何数据; 与约束不相交的节点不生成任务, 被范围完全覆盖的节点生成完整读取任务
+ */
+
+class TaskGTBNode {
+    final String chromosome;
+    final int nodeIndex;
+    final GTBNode node;
+
+    /**
+     * 任务类型, type = 0 解压全部数据, type = 1 解压指定范围数据，type = 2 解压任务数据
+     */
+    final int taskType;
+    int minPos;
+    int maxPos;
+    final PositionSet taskPos;
+
+    TaskGTBNode(String chromosome, int nodeIndex, GTBNode node) {
+        this.chromosome = chromosome;
+        this.nodeIndex = nodeIndex;
+        this.node = node;
+        this.taskType = 0;
+        this.taskPos = null;
+    }
+
+    TaskGTBNode(String chromosome, int nodeIndex, GTBNode node, int minPos, int maxPos) {
+        this.chromosome = chromosome;
+        this.nodeIndex = nodeIndex;
+        this.node = node;
+        this.taskPos = null;
+        this.taskType = 1;
+        this.minPos = minPos;
+        this.maxPos = maxPos;
+    }
+
+    TaskGTBNode(String chromosome, int nodeIndex, GTBNode node, PositionSet taskPos) {
+        this.chromosome = chromosome;
+        this.nodeIndex = nodeIndex;
+        this.node = node;
+        this.taskType = 2;
+        this.taskPos = taskPos;
+    }
+
+    /**
+     * 生成查询计划
+     *
+     * @param manager   GTB 文件管理器
+     * @param ranges    位点范围, 为 null 时不限制; value = null 时表示选中对应染色体的所有位点, 否则为 start-end
+     * @param positions 位点子集, 为 null 时不限制; value = null 时表示选中对应染色体的所有位点
+     * @return 按染色体、节点顺序排列的任务列表
+     */
+    static Array<TaskGTBNode> plan(GTBManager manager, Map<String, int[]> ranges, Map<String, int[]> positions) {
+        Array<TaskGTBNode> tasks = new Array<>(1024, true);
+        for (String chromosome : manager.getChromosomeList()) {
+            if ((ranges != null && !ranges.containsKey(chromosome)) || (positions != null && !positions.containsKey(chromosome))) {
+                continue;
+            }
+
+            int minPos = Integer.MAX_VALUE;
+            int maxPos = Integer.MIN_VALUE;
+
+            GTBNodes nodes = manager.getGTBNodes(chromosome);
+            for (int nodeIndex = 0, l = nodes.numOfNodes(); nodeIndex < l; nodeIndex++) {
+                GTBNode node = nodes.get(nodeIndex);
+                if (node.minPos < minPos) {
+                    minPos = node.minPos;
+                }
+
+                if (node.maxPos > maxPos) {
+                    maxPos = node.maxPos;
+                }
+            }
+
+            // 根据范围执行快速过滤
+            PositionSet position = null;
+
+            if (ranges != null && ranges.get(chromosome) != null) {
+                minPos = Math.max(ranges.get(chromosome)[0], minPos);
+                maxPos = Math.min(ranges.get(chromosome)[1], maxPos);
+            }
+
+            if (minPos > maxPos) {
+                continue;
+            }
+
+            if (positions != null && positions.get(chromosome) != null) {
+                position = new PositionSet(positions.get(chromosome)).subSet(minPos, maxPos);
+                if (position.size() == 0) {
+                    continue;
+                }
+
+                minPos = position.get(0);
+                maxPos = position.get(position.size() - 1);
+            }
+
+            for (int nodeIndex = 0, l = nodes.numOfNodes(); nodeIndex < l; nodeIndex++) {
+                GTBNode node = nodes.get(nodeIndex);
+                if (position == null) {
+                    if ((minPos <= node.minPos) && (maxPos >= node.maxPos)) {
+                        tasks.add(new TaskGTBNode(chromosome, nodeIndex, node));
+                    } else if (ValueUtils.intersect(minPos, maxPos, node.minPos, node.maxPos)) {
+                        tasks.add(new TaskGTBNode(chromosome, nodeIndex, node, Value.of(minPos, node.minPos, node.maxPos), Value.of(maxPos, node.minPos, node.maxPos)));
+                    }
+                } else {
+                    PositionSet nodePositions = position.subSet(node.minPos, node.maxPos);
+                    if (nodePositions.size() > 0) {
+                        tasks.add(new TaskGTBNode(chromosome, nodeIndex, node, nodePositions));
+                    }
+                }
+            }
+        }
+
+        return tasks;
+    }
+
+    /**
+     * 将任务列表按顺序切分为 groupNum 组, 各组的节点压缩数据量 (解压开销) 尽量相同
+     *
+     * @param tasks    任务列表
+     * @param groupNum 组数
+     * @return 每组的起始任务索引, 最后一个元素为任务总数
+     */
+    static int[] partition(Array<TaskGTBNode> tasks, int groupNum) {
+        long totalSize = 0;
+        for (TaskGTBNode task : tasks) {
+            totalSize += task.node.blockSize;
+        }
+
+        groupNum = Math.max(1, Math.min(groupNum, tasks.size()));
+        int[] bounds = new int[groupNum + 1];
+        long accumulate = 0;
+        int group = 1;
+        for (int i = 0; i < tasks.size() && group < groupNum; i++) {
+            accumulate += tasks.get(i).node.blockSize;
+            // 剩余任务数不少于剩余组数
+            while (group < groupNum && (accumulate * groupNum >= totalSize * group || tasks.size() - (i + 1) <= groupNum - group - 1)) {
+                bounds[group++] = i + 1;
+            }
+        }
+        bounds[groupNum] = tasks.size();
+        return bounds;
+    }
+
+    /**
+     * 读取任务中的位点, 读取器被限定在任务节点上
+     *
+     * @param reader  GTB 读取器
+     * @param variant 位点缓冲
+     * @param action  对每个位点执行的操作
+     */
+    void read(GTBReader reader, Variant variant, VariantAction action) throws IOException {
+        reader.limit(this.chromosome, this.nodeIndex, this.nodeIndex + 1);
+        if (this.taskType == 0) {
+            while (reader.readVariant(variant)) {
+                action.apply(variant);
+            }
+        } else if (this.taskType == 1) {
+            if (reader.searchEnable(this.chromosome)) {
+                // 有序节点: 定位到第一个不小于 minPos 的位点, 超出 maxPos 后结束
+                reader.search(this.chromosome, this.minPos);
+                while (reader.readVariant(variant) && variant.position <= this.maxPos) {
+                    if (variant.position >= this.minPos) {
+                        action.apply(variant);
+                    }
+                }
+            } else {
+                while (reader.readVariant(variant)) {
+                    if (variant.position >= this.minPos && variant.position <= this.maxPos) {
+                        action.apply(variant);
+                    }
+                }
+            }
+        } else {
+            while (reader.readVariant(variant, this.taskPos)) {
+                action.apply(variant);
+            }
+        }
+    }
+
+    interface VariantAction {
+        /**
+         * 处理读取的位点
+         *
+         * @param variant 位点
+         */
+        void apply(Variant variant) throws IOException;
+    }
+}
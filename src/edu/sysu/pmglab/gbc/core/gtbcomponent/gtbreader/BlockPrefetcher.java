@@ -0,0 +1,156 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader;
+
+import edu.sysu.pmglab.check.Assert;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBManager;
+import edu.sysu.pmglab.threadPool.ThreadPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * @Description :数据块预读器, 在后台线程中按指针顺序提前解压后续节点, 读取线程只需换入已解压完成的缓冲区
+ */
+
+class BlockPrefetcher implements Closeable {
+    final GTBManager manager;
+
+    /**
+     * 预读缓冲区是否可以容纳基因型数据, 实际解压的数据段由读取器的投影决定
+     */
+    final boolean decompressGT;
+    final boolean memoryMapped;
+
+    /**
+     * 预读深度, 以及预读缓冲区最多占用的字节数
+     */
+    final int depth;
+    final long maxBytes;
+    final long bytesOfEachCache;
+    long heldBytes = 0;
+
+    final ThreadPool pool;
+    final ArrayDeque<PrefetchTask> tasks;
+    final ArrayDeque<DecompressionCache> freeCaches;
+
+    BlockPrefetcher(GTBManager manager, boolean decompressGT, boolean memoryMapped, int depth, long maxBytes) {
+        Assert.that(depth > 0);
+        Assert.that(maxBytes > 0);
+
+        this.manager = manager;
+        this.decompressGT = decompressGT;
+        this.memoryMapped = memoryMapped;
+        this.depth = depth;
+        this.maxBytes = maxBytes;
+        this.bytesOfEachCache = (decompressGT ? (long) manager.getMaxDecompressedMBEGsSize() : 0L) + manager.getMaxDecompressedAllelesSize();
+        this.pool = new ThreadPool(Math.min(depth, Runtime.getRuntime().availableProcessors()));
+        this.tasks = new ArrayDeque<>(depth);
+        this.freeCaches = new ArrayDeque<>(depth + 1);
+    }
+
+    /**
+     * 获取指针所在节点的解压数据, 若该节点已被预读则换入预读缓冲区, 并继续安排后续节点的预读
+     *
+     * @param current           当前使用的缓冲区
+     * @param pointer           读取指针
+     * @param decompressGT      后续节点是否需要解压基因型数据
+     * @param decompressAlleles 后续节点是否需要解压 allele 数据
+     * @return 应当使用的缓冲区
+     */
+    DecompressionCache swap(DecompressionCache current, Pointer pointer, boolean decompressGT, boolean decompressAlleles) throws IOException {
+        if (!pointer.hasNext() || isFilled(current, pointer)) {
+            return current;
+        }
+
+        // 丢弃指针之前的预读块, 直到找到指针所在的节点
+        DecompressionCache ready = null;
+        while (!this.tasks.isEmpty()) {
+            PrefetchTask task = this.tasks.pollFirst();
+            DecompressionCache.await(task.future);
+            this.heldBytes -= this.bytesOfEachCache;
+
+            if (isFilled(task.cache, pointer)) {
+                ready = task.cache;
+                break;
+            }
+
+            this.freeCaches.addLast(task.cache);
+        }
+
+        if (ready != null) {
+            this.freeCaches.addLast(current);
+            current = ready;
+        }
+
+        schedule(pointer, decompressGT && this.decompressGT, decompressAlleles);
+        return current;
+    }
+
+    /**
+     * 从指针 (或最后一个预读节点) 的下一个节点开始安排预读任务
+     */
+    private void schedule(Pointer pointer, boolean decompressGT, boolean decompressAlleles) throws IOException {
+        Pointer last = this.tasks.isEmpty() ? pointer : this.tasks.peekLast().pointer;
+
+        while (this.tasks.size() < this.depth) {
+            if (!this.tasks.isEmpty() && this.heldBytes + this.bytesOfEachCache > this.maxBytes) {
+                // 背压: 预读缓冲区占用的字节数达到上限
+                break;
+            }
+
+            Pointer next = last.clone();
+            if (!next.nextNode()) {
+                break;
+            }
+
+            DecompressionCache cache = this.freeCaches.isEmpty() ? new DecompressionCache(this.manager, this.decompressGT, this.memoryMapped) : this.freeCaches.pollFirst();
+            Future<Boolean> future = this.pool.submit(() -> {
+                cache.fill(next, decompressGT, decompressAlleles);
+                return true;
+            });
+
+            this.tasks.addLast(new PrefetchTask(next, cache, future));
+            this.heldBytes += this.bytesOfEachCache;
+            last = next;
+        }
+    }
+
+    private static boolean isFilled(DecompressionCache cache, Pointer pointer) {
+        return cache.nodeIndex == pointer.nodeIndex && Objects.equals(cache.chromosome, pointer.node.chromosome);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (PrefetchTask task : this.tasks) {
+            try {
+                task.future.get();
+            } catch (InterruptedException | ExecutionException ignored) {
+                // 关闭时不再关心预读结果
+            }
+            task.cache.close();
+        }
+        this.tasks.clear();
+        this.heldBytes = 0;
+
+        for (DecompressionCache cache : this.freeCaches) {
+            cache.close();
+        }
+        this.freeCaches.clear();
+        this.pool.close();
+    }
+
+    static class PrefetchTask {
+        final Pointer pointer;
+        final DecompressionCache cache;
+        final Future<Boolean> future;
+
+        PrefetchTask(Pointer pointer, DecompressionCache cache, Future<Boolean> future) {
+            this.pointer = pointer;
+            this.cache = cache;
+            this.future = future;
+        }
+    }
+}
@@ -9,16 +9,31 @@ package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader;
 
 import edu.sysu.pmglab.compressor.IDecompressor;
 import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.container.File;
 import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBBlockCache;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBManager;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBMappedFile;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNode;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.PositionColumn;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.SegmentDecompressor;
 import edu.sysu.pmglab.unifyIO.FileStream;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 class DecompressionCache {
+    /**
+     * 并行解压使用的共享线程池
+     */
+    static final ExecutorService EXECUTOR = ForkJoinPool.commonPool();
+
     String chromosome = null;
     int nodeIndex = -2;
 
@@ -26,15 +41,43 @@ class DecompressionCache {
     final VolumeByteStream genotypesCache;
     final VolumeByteStream allelesPosCache;
     final FileStream fileStream;
+    final GTBMappedFile mappedFile;
+    final File file;
     final IDecompressor decompressor;
+    final SegmentDecompressor segmentDecompressor;
     final TaskVariant[] taskVariants;
+    final GTBManager manager;
     boolean isGTDecompress;
+    boolean isAlleleDecompress;
+
+    /**
+     * 位置列, 查找位点时只解压位置数据段 (不解压 allele、基因型数据, 不构建位点任务)
+     */
+    final PositionColumn positionColumn = new PositionColumn();
+    String columnChromosome = null;
+    int columnNodeIndex = -2;
+    int[] positionBuffer = new int[0];
+
+    /**
+     * 块内并行解压, 基因型与 allele 数据段使用独立的解压器及缓冲区
+     */
+    boolean parallel = false;
+    IDecompressor genotypeDecompressor;
+    SegmentDecompressor alleleDecompressor;
+    VolumeByteStream allelesCache;
 
     public DecompressionCache(GTBManager manager) throws IOException {
         this(manager, true);
     }
 
     public DecompressionCache(GTBManager manager, boolean decompressGT) throws IOException {
+        this(manager, decompressGT, false);
+    }
+
+    /**
+     * @param memoryMapped 是否使用内存映射的方式读取数据块 (省去每个数据段的 seek/read 系统调用)
+     */
+    public DecompressionCache(GTBManager manager, boolean decompressGT, boolean memoryMapped) throws IOException {
         if (decompressGT) {
             this.genotypesCache = new VolumeByteStream(manager.getMaxDecompressedMBEGsSize());
             this.allelesPosCache = new VolumeByteStream(manager.getMaxDecompressedAllelesSize());
@@ -58,7 +101,30 @@ class DecompressionCache {
             }
 
         }
-        this.fileStream = manager.getFileStream();
+        this.segmentDecompressor = new SegmentDecompressor(manager);
+        this.manager = manager;
+        this.file = manager.getFile();
+        if (memoryMapped) {
+            this.fileStream = null;
+            this.mappedFile = manager.getMappedFile();
+        } else {
+            this.fileStream = manager.getFileStream();
+            this.mappedFile = null;
+        }
+    }
+
+    /**
+     * 设置块内并行解压模式, 切换数据块时基因型、位置、allele 三个数据段同时解压
+     *
+     * @param parallel 是否开启并行解压
+     */
+    void setParallel(boolean parallel) {
+        if (parallel && this.allelesCache == null) {
+            this.genotypeDecompressor = IDecompressor.getInstance(this.manager.getCompressorIndex());
+            this.alleleDecompressor = new SegmentDecompressor(this.manager);
+            this.allelesCache = new VolumeByteStream(this.manager.getMaxDecompressedAllelesSize());
+        }
+        this.parallel = parallel;
     }
 
     public void fill(Pointer pointer) throws IOException {
@@ -66,55 +132,74 @@ class DecompressionCache {
     }
 
     public void fill(Pointer pointer, boolean decompressGT) throws IOException {
-        if ((pointer.nodeIndex != this.nodeIndex || !Objects.equals(pointer.node.chromosome, this.chromosome))) {
-            // 位置不在同一个 block 中，此时切换块数据
+        fill(pointer, decompressGT, true);
+    }
+
+    /**
+     * @param decompressAlleles 是否解压 allele 数据. 不解压时位点的 REF、ALT 为空; 块中存在位置相同的位点时仍解压 allele 数据, 以保证位点顺序不变
+     */
+    public void fill(Pointer pointer, boolean decompressGT, boolean decompressAlleles) throws IOException {
+        if ((pointer.nodeIndex != this.nodeIndex || !Objects.equals(pointer.node.chromosome, this.chromosome)) || (decompressAlleles && !isAlleleDecompress)) {
+            // 位置不在同一个 block 中 (或需要补充解压 allele 数据)，此时切换块数据
             this.nodeIndex = pointer.nodeIndex;
             this.chromosome = pointer.node.chromosome;
             GTBNode node = pointer.getNode();
 
             undecompressedCache.makeSureCapacity(node.compressedAlleleSize, node.compressedGenotypesSize, node.compressedPosSize);
 
-            /* 读取位置数据并解压 */
-            undecompressedCache.reset();
-            allelesPosCache.reset();
-            this.fileStream.seek(node.blockSeek + node.compressedGenotypesSize);
-            this.fileStream.read(undecompressedCache, node.compressedPosSize);
-            decompressor.decompress(undecompressedCache, allelesPosCache);
+            /* 优先从全局数据块缓存中获取位置、allele 数据 */
+            boolean blockCacheEnable = blockCacheEnable();
+            byte[][] siteSegments = blockCacheEnable ? GTBBlockCache.get(this.file, this.chromosome, node.blockSeek, false) : null;
 
-            /* 设置位置数据、当前索引 */
-            int taskNums = node.numOfVariants();
-            for (int i = 0; i < taskNums; i++) {
-                this.taskVariants[i].setPosition(allelesPosCache.cacheOf(i << 2), allelesPosCache.cacheOf(1 + (i << 2)),
-                                allelesPosCache.cacheOf(2 + (i << 2)), allelesPosCache.cacheOf(3 + (i << 2)))
-                        .setIndex(i)
-                        .setDecoderIndex(i < node.subBlockVariantNum[0] ? 0 : 1);
+            if (siteSegments == null && this.parallel && decompressAlleles) {
+                /* 并行解压三个数据段 */
+                fillParallel(node, decompressGT, blockCacheEnable);
+                return;
             }
 
-            /* 读取 allele 数据并解压 */
-            undecompressedCache.reset();
-            allelesPosCache.reset();
-            this.fileStream.read(undecompressedCache, node.compressedAlleleSize);
-            decompressor.decompress(undecompressedCache, allelesPosCache);
+            byte[] positions = null;
 
-            /* 捕获 allele 数据 */
-            int lastIndex = 0;
-            int startPos;
-            int tabPos;
-            int endPos = this.taskVariants[0].index == 0 ? -1 : 0;
+            /* 读取位置数据并解压 */
+            allelesPosCache.reset();
+            if (siteSegments == null) {
+                readSegment(node.blockSeek + node.compressedGenotypesSize, node.compressedPosSize);
+                segmentDecompressor.decompressPositions(node, undecompressedCache, allelesPosCache);
+            } else {
+                allelesPosCache.writeSafety(siteSegments[0]);
+            }
 
-            for (int i = 0; i < taskNums; i++) {
-                this.taskVariants[i].REF.reset();
-                this.taskVariants[i].ALT.reset();
+            /* 设置位置数据、当前索引 */
+            int taskNums = node.numOfVariants();
+            setPositions(node, allelesPosCache);
 
-                startPos = allelesPosCache.indexOfN(ByteCode.SLASH, endPos, this.taskVariants[i].index - lastIndex);
-                tabPos = allelesPosCache.indexOf(ByteCode.TAB, startPos + 2);
-                endPos = allelesPosCache.indexOf(ByteCode.SLASH, tabPos + 1);
+            // 同一位置的多个位点按 allele 排序, 块中存在相同位置时也解压 allele 数据, 使位点顺序与解压 allele 时一致 (已取得的指针不会失效)
+            boolean loadAlleles = siteSegments != null || decompressAlleles || hasSamePositions(taskNums);
+            if (siteSegments == null && blockCacheEnable && loadAlleles) {
+                positions = allelesPosCache.values();
+            }
 
-                this.taskVariants[i].REF.writeSafety(allelesPosCache.cacheOf(startPos + 1, tabPos));
-                this.taskVariants[i].ALT.writeSafety(allelesPosCache.cacheOf(tabPos + 1, endPos));
+            if (loadAlleles) {
+                /* 读取 allele 数据并解压 */
+                allelesPosCache.reset();
+                if (siteSegments == null) {
+                    readSegment(node.blockSeek + node.compressedGenotypesSize + node.compressedPosSize, node.compressedAlleleSize);
+                    segmentDecompressor.decompressAlleles(node, undecompressedCache, allelesPosCache);
+                    if (blockCacheEnable) {
+                        GTBBlockCache.put(this.file, this.chromosome, node.blockSeek, false, positions, allelesPosCache.values());
+                    }
+                } else {
+                    allelesPosCache.writeSafety(siteSegments[1]);
+                }
 
-                // 更新 lastIndex 信息
-                lastIndex = this.taskVariants[i].index + 1;
+                /* 捕获 allele 数据 */
+                setAlleles(taskNums, allelesPosCache);
+                isAlleleDecompress = true;
+            } else {
+                for (int i = 0; i < taskNums; i++) {
+                    this.taskVariants[i].REF.reset();
+                    this.taskVariants[i].ALT.reset();
+                }
+                isAlleleDecompress = false;
             }
 
             /* 按照 position 进行局部重排序 */
@@ -129,25 +214,250 @@ class DecompressionCache {
         }
     }
 
+    /**
+     * 指针所在的节点是否已载入 (位点任务已按位置排序)
+     */
+    boolean isLoaded(Pointer pointer) {
+        return pointer.nodeIndex == this.nodeIndex && Objects.equals(pointer.node.chromosome, this.chromosome);
+    }
+
+    /**
+     * 获取指针所在节点的位置列, 只读取并解压位置数据段
+     *
+     * @param pointer 指针
+     */
+    PositionColumn getPositionColumn(Pointer pointer) throws IOException {
+        if (pointer.nodeIndex != this.columnNodeIndex || !Objects.equals(pointer.node.chromosome, this.columnChromosome)) {
+            GTBNode node = pointer.getNode();
+            undecompressedCache.makeSureCapacity(node.compressedPosSize);
+            readSegment(node.blockSeek + node.compressedGenotypesSize, node.compressedPosSize);
+            segmentDecompressor.decompressPositions(node, undecompressedCache.getCache(), 0, node.compressedPosSize, this.positionColumn);
+            this.columnNodeIndex = pointer.nodeIndex;
+            this.columnChromosome = node.chromosome;
+        }
+        return this.positionColumn;
+    }
+
+    /**
+     * 并行模式: 一次读取整个数据块, 基因型、allele 数据段交由共享线程池解压, 位置数据段在当前线程解压并解析
+     *
+     * @param node             当前节点
+     * @param decompressGT     是否解压基因型数据
+     * @param blockCacheEnable 是否使用全局数据块缓存
+     */
+    private void fillParallel(GTBNode node, boolean decompressGT, boolean blockCacheEnable) throws IOException {
+        byte[][] genotypeSegments = decompressGT && blockCacheEnable ? GTBBlockCache.get(this.file, node.chromosome, node.blockSeek, true) : null;
+        boolean withGT = decompressGT && genotypeSegments == null;
+
+        // 三个数据段在文件中连续储存, 不需要基因型数据时跳过基因型数据段
+        int posOffset = withGT ? node.compressedGenotypesSize : 0;
+        undecompressedCache.makeSureCapacity(posOffset + node.compressedPosSize + node.compressedAlleleSize);
+        readSegment(node.blockSeek + node.compressedGenotypesSize - posOffset, posOffset + node.compressedPosSize + node.compressedAlleleSize);
+
+        byte[] src = undecompressedCache.getCache();
+        allelesPosCache.reset();
+        allelesCache.reset();
+        Future<?> alleleTask = EXECUTOR.submit(() -> {
+            this.alleleDecompressor.decompressAlleles(node, src, posOffset + node.compressedPosSize, node.compressedAlleleSize, allelesCache);
+            return null;
+        });
+        Future<?> genotypeTask = null;
+        if (withGT) {
+            genotypesCache.reset();
+            genotypeTask = submit(this.genotypeDecompressor, src, 0, node.compressedGenotypesSize, genotypesCache);
+        }
+
+        int taskNums = node.numOfVariants();
+        try {
+            /* 解压位置数据 (当前线程) */
+            segmentDecompressor.decompressPositions(node, src, posOffset, node.compressedPosSize, allelesPosCache);
+            setPositions(node, allelesPosCache);
+
+            /* 等待 allele 数据 */
+            await(alleleTask);
+            alleleTask = null;
+            setAlleles(taskNums, allelesCache);
+
+            if (blockCacheEnable) {
+                GTBBlockCache.put(this.file, this.chromosome, node.blockSeek, false, allelesPosCache.values(), allelesCache.values());
+            }
+
+            /* 按照 position 进行局部重排序 */
+            Arrays.sort(this.taskVariants, 0, taskNums, TaskVariant::compareVariant);
+
+            /* 等待 genotype 数据 */
+            if (withGT) {
+                await(genotypeTask);
+                genotypeTask = null;
+                if (blockCacheEnable) {
+                    GTBBlockCache.put(this.file, node.chromosome, node.blockSeek, true, genotypesCache.values());
+                }
+            } else if (decompressGT) {
+                genotypesCache.reset();
+                genotypesCache.writeSafety(genotypeSegments[0]);
+            }
+            isGTDecompress = decompressGT;
+            isAlleleDecompress = true;
+        } finally {
+            // 出现异常时, 确保后台任务不再写入缓冲区
+            awaitQuietly(alleleTask);
+            awaitQuietly(genotypeTask);
+        }
+    }
+
+    /**
+     * 块中是否存在位置相同的位点
+     */
+    private boolean hasSamePositions(int taskNums) {
+        if (this.positionBuffer.length < taskNums) {
+            this.positionBuffer = new int[taskNums];
+        }
+
+        for (int i = 0; i < taskNums; i++) {
+            this.positionBuffer[i] = this.taskVariants[i].position;
+        }
+        Arrays.sort(this.positionBuffer, 0, taskNums);
+
+        for (int i = 1; i < taskNums; i++) {
+            if (this.positionBuffer[i] == this.positionBuffer[i - 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 设置位置数据、当前索引
+     */
+    private void setPositions(GTBNode node, VolumeByteStream positionCache) {
+        int taskNums = node.numOfVariants();
+        for (int i = 0; i < taskNums; i++) {
+            this.taskVariants[i].setPosition(positionCache.cacheOf(i << 2), positionCache.cacheOf(1 + (i << 2)),
+                            positionCache.cacheOf(2 + (i << 2)), positionCache.cacheOf(3 + (i << 2)))
+                    .setIndex(i)
+                    .setDecoderIndex(i < node.subBlockVariantNum[0] ? 0 : 1);
+        }
+    }
+
+    /**
+     * 捕获 allele 数据
+     */
+    private void setAlleles(int taskNums, VolumeByteStream alleleCache) {
+        int lastIndex = 0;
+        int startPos;
+        int tabPos;
+        int endPos = this.taskVariants[0].index == 0 ? -1 : 0;
+
+        for (int i = 0; i < taskNums; i++) {
+            this.taskVariants[i].REF.reset();
+            this.taskVariants[i].ALT.reset();
+
+            startPos = alleleCache.indexOfN(ByteCode.SLASH, endPos, this.taskVariants[i].index - lastIndex);
+            tabPos = alleleCache.indexOf(ByteCode.TAB, startPos + 2);
+            endPos = alleleCache.indexOf(ByteCode.SLASH, tabPos + 1);
+
+            this.taskVariants[i].REF.writeSafety(alleleCache.cacheOf(startPos + 1, tabPos));
+            this.taskVariants[i].ALT.writeSafety(alleleCache.cacheOf(tabPos + 1, endPos));
+
+            // 更新 lastIndex 信息
+            lastIndex = this.taskVariants[i].index + 1;
+        }
+    }
+
     private void decompressGT(GTBNode node, Pointer pointer, boolean decompressGT) throws IOException {
         /* 读取 genotype 数据并解压 */
         if (decompressGT) {
-            undecompressedCache.reset();
             genotypesCache.reset();
-            this.fileStream.seek(node.blockSeek);
-            this.fileStream.read(undecompressedCache, node.compressedGenotypesSize);
-            decompressor.decompress(undecompressedCache, genotypesCache);
+            boolean blockCacheEnable = blockCacheEnable();
+            byte[][] genotypeSegments = blockCacheEnable ? GTBBlockCache.get(this.file, node.chromosome, node.blockSeek, true) : null;
+            if (genotypeSegments == null) {
+                readSegment(node.blockSeek, node.compressedGenotypesSize);
+                decompressor.decompress(undecompressedCache, genotypesCache);
+                if (blockCacheEnable) {
+                    GTBBlockCache.put(this.file, node.chromosome, node.blockSeek, true, genotypesCache.values());
+                }
+            } else {
+                genotypesCache.writeSafety(genotypeSegments[0]);
+            }
             isGTDecompress = true;
         } else {
             isGTDecompress = false;
         }
     }
 
+    /**
+     * 是否使用全局数据块缓存 (无对应文件的虚拟管理器不使用缓存)
+     */
+    private boolean blockCacheEnable() {
+        return this.file != null && GTBBlockCache.isEnable();
+    }
+
+    /**
+     * 将文件中的压缩数据段读入 undecompressedCache
+     *
+     * @param seek   数据段的起始位置
+     * @param length 数据段的长度
+     */
+    private void readSegment(long seek, int length) throws IOException {
+        if (this.mappedFile != null) {
+            this.mappedFile.read(seek, length, undecompressedCache);
+        } else {
+            undecompressedCache.reset();
+            this.fileStream.seek(seek);
+            this.fileStream.read(undecompressedCache, length);
+        }
+    }
+
+    private static Future<?> submit(IDecompressor decompressor, byte[] src, int offset, int length, VolumeByteStream dst) {
+        return EXECUTOR.submit(() -> {
+            decompressor.decompress(src, offset, length, dst);
+            return null;
+        });
+    }
+
+    /**
+     * 等待后台任务完成, 任务中的 IOException 原样抛出
+     */
+    static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GTBComponentException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new GTBComponentException(String.valueOf(e.getCause()));
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        if (future != null) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+                // 异常已由主流程抛出
+            }
+        }
+    }
+
     public void close() throws IOException {
         undecompressedCache.close();
         genotypesCache.close();
         allelesPosCache.close();
-        fileStream.close();
+        if (fileStream != null) {
+            fileStream.close();
+        }
         decompressor.close();
+        segmentDecompressor.close();
+        positionColumn.close();
+        if (allelesCache != null) {
+            allelesCache.close();
+            genotypeDecompressor.close();
+            alleleDecompressor.close();
+        }
     }
 }
\ No newline at end of file
@@ -13,11 +13,13 @@ import edu.sysu.pmglab.gbc.core.exception.GTBComponentException;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBManager;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNode;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNodes;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBPositionIndex;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBRootCache;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * @Data :2021/08/14
@@ -31,16 +33,36 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
     private final MBEGDecoder groupDecoder;
     private final boolean phased;
     private IndexPair[] pairs;
+    private boolean allSubjects;
     private int[] subjectIndexes;
     private final boolean phasedTransfer;
 
+    /**
+     * 并行解码的样本数阈值及每个任务负责的样本数
+     */
+    static final int PARALLEL_DECODE_THRESHOLD = 1 << 16;
+    static final int PARALLEL_DECODE_CHUNK_SIZE = 1 << 14;
+
     /**
      * 当前解压信息
      */
     Pointer pointer;
-    final DecompressionCache cache;
+    DecompressionCache cache;
+    BlockPrefetcher prefetcher;
+    boolean parallelDecompress = false;
+    boolean lazyDecode = false;
+
+    /**
+     * 读取的列 (投影), 默认读取所有列
+     */
+    boolean projectAlleles = true;
+    boolean projectGenotypes = true;
+    boolean projectCountsOnly = false;
+    final boolean decompressGT;
+    final boolean memoryMapped;
     final int eachLineSize;
     final Map<String, Boolean> searchEnable;
+    final Map<String, GTBPositionIndex.ChromosomeIndex> positionIndexes;
 
     /**
      * 缓冲数据
@@ -85,6 +107,24 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
     }
 
     public GTBReader(Pointer pointer, boolean phased, boolean decompressGT) throws IOException {
+        this(pointer, phased, decompressGT, false);
+    }
+
+    public GTBReader(GTBManager manager, boolean phased, boolean decompressGT, boolean memoryMapped) throws IOException {
+        this(new Pointer(manager), phased, decompressGT, memoryMapped);
+    }
+
+    public GTBReader(File fileName, boolean phased, boolean decompressGT, boolean memoryMapped) throws IOException {
+        this(new Pointer(GTBRootCache.get(fileName)), phased, decompressGT, memoryMapped);
+    }
+
+    /**
+     * @param pointer      初始指针
+     * @param phased       输出的基因型是否为有向
+     * @param decompressGT 是否解压基因型数据
+     * @param memoryMapped 是否以内存映射的方式访问数据块 (文件只映射一次, 由同一文件的所有读取器共享), 适用于大文件的随机访问
+     */
+    public GTBReader(Pointer pointer, boolean phased, boolean decompressGT, boolean memoryMapped) throws IOException {
         // 获取文件管理器
         this.manager = pointer.manager;
 
@@ -93,7 +133,9 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
 
         // 初始化指针
         this.pointer = pointer;
-        this.cache = new DecompressionCache(this.manager, decompressGT);
+        this.cache = new DecompressionCache(this.manager, decompressGT, memoryMapped);
+        this.decompressGT = decompressGT;
+        this.memoryMapped = memoryMapped;
         HashMap<String, Boolean> searchEnable = new HashMap<>();
         if (this.manager.isOrderedGTB()) {
             for (String chromosome : this.manager.getChromosomeList()) {
@@ -106,6 +148,19 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         }
         this.searchEnable = Collections.unmodifiableMap(searchEnable);
 
+        // 加载位置索引 (仅保留与当前节点树一致的染色体索引)
+        HashMap<String, GTBPositionIndex.ChromosomeIndex> positionIndexes = new HashMap<>();
+        GTBPositionIndex positionIndex = this.manager.getPositionIndex();
+        if (positionIndex != null) {
+            for (String chromosome : this.manager.getChromosomeList()) {
+                GTBPositionIndex.ChromosomeIndex index = positionIndex.get(chromosome);
+                if (index != null && searchEnable.get(chromosome) && index.match(this.manager.getGTBNodes(chromosome))) {
+                    positionIndexes.put(chromosome, index);
+                }
+            }
+        }
+        this.positionIndexes = Collections.unmodifiableMap(positionIndexes);
+
         int eachCodeGenotypeNum = this.manager.isPhased() ? 3 : 4;
         int resBlockCodeGenotypeNum = this.manager.getSubjectNum() % eachCodeGenotypeNum;
         this.eachLineSize = (this.manager.getSubjectNum() / eachCodeGenotypeNum) + (resBlockCodeGenotypeNum == 0 ? 0 : 1);
@@ -120,6 +175,103 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         return this.phased;
     }
 
+    /**
+     * 开启数据块预读, 顺序扫描时由后台线程提前解压指针之后的节点
+     *
+     * @param depth    预读的节点个数
+     * @param maxBytes 预读缓冲区最多占用的字节数, 达到该值时暂停预读 (至少保留一个预读节点)
+     */
+    public void enablePrefetch(int depth, long maxBytes) throws IOException {
+        disablePrefetch();
+        this.prefetcher = new BlockPrefetcher(this.manager, this.decompressGT, this.memoryMapped, depth, maxBytes);
+    }
+
+    /**
+     * 关闭数据块预读
+     */
+    public void disablePrefetch() throws IOException {
+        if (this.prefetcher != null) {
+            this.prefetcher.close();
+            this.prefetcher = null;
+        }
+    }
+
+    /**
+     * 设置块内并行解压: 切换数据块时基因型、位置、allele 数据段同时解压, 样本数较多时 MBEG 解码按样本区间拆分并行执行.
+     * 适用于样本数较多 (单个数据块较大) 的文件, 小文件的调度开销可能超过收益
+     *
+     * @param parallel 是否开启并行解压
+     */
+    public void setParallelDecompression(boolean parallel) {
+        this.parallelDecompress = parallel;
+        this.cache.setParallel(parallel);
+    }
+
+    /**
+     * 设置延迟解码: 读取位点时只保存其编码行, 访问 BEGs (Variant.getBEGs()) 时才展开, AC、AN、AF 等统计量直接从编码行计算.
+     * 适用于大部分位点只需统计量即被过滤的场景. 开启后, 直接访问 Variant.BEGs 字段前需要调用 Variant.getBEGs()
+     *
+     * @param lazyDecode 是否开启延迟解码
+     */
+    public void setLazyDecode(boolean lazyDecode) {
+        this.lazyDecode = lazyDecode;
+    }
+
+    public boolean isLazyDecode() {
+        return this.lazyDecode;
+    }
+
+    /**
+     * 设置读取的列 (投影), 只解压所需的数据段. 未读取 allele 时位点的 REF、ALT 可能为空 (存在相同位置的数据块仍会解压 allele 数据, 以保证位点顺序与读取 allele 时相同);
+     * 未读取基因型时位点不包含样本的基因型; 只读取 AC 时基因型数据保留为编码行, AC、AN、AF 等统计量直接从编码行计算 (同延迟解码)
+     *
+     * @param projections 读取的列, 位置总是读取
+     */
+    public void setProjection(Projection... projections) {
+        EnumSet<Projection> projection = EnumSet.of(Projection.POSITION, projections);
+        this.projectAlleles = projection.contains(Projection.ALLELES);
+        this.projectGenotypes = projection.contains(Projection.GENOTYPES) || projection.contains(Projection.AC);
+        this.projectCountsOnly = !projection.contains(Projection.GENOTYPES) && projection.contains(Projection.AC);
+    }
+
+    /**
+     * 获取读取的列 (投影)
+     */
+    public Projection[] getProjection() {
+        EnumSet<Projection> projection = EnumSet.of(Projection.POSITION);
+        if (this.projectAlleles) {
+            projection.add(Projection.ALLELES);
+        }
+
+        if (this.projectGenotypes) {
+            projection.add(this.projectCountsOnly ? Projection.AC : Projection.GENOTYPES);
+        }
+        return projection.toArray(new Projection[0]);
+    }
+
+    /**
+     * 将指针所在节点的数据填充到解压缓冲区
+     *
+     * @param decompressGT 是否需要解压基因型数据
+     */
+    private void fill(boolean decompressGT) throws IOException {
+        if (this.prefetcher != null) {
+            this.cache = this.prefetcher.swap(this.cache, this.pointer, decompressGT, this.projectAlleles);
+            if (this.cache.parallel != this.parallelDecompress) {
+                this.cache.setParallel(this.parallelDecompress);
+            }
+        }
+
+        this.cache.fill(this.pointer, decompressGT, this.projectAlleles);
+    }
+
+    /**
+     * 读取位点时是否需要解压基因型数据
+     */
+    private boolean decompressGT() {
+        return this.projectGenotypes && this.pairs.length > 0;
+    }
+
     /**
      * 限定访问的染色体
      *
@@ -244,6 +396,17 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             this.subjectIndexes = new int[]{};
             pairs = new IndexPair[0];
         }
+        updateAllSubjects();
+    }
+
+    /**
+     * 检查是否按原顺序选择了所有样本, 此时统计量可以直接在 MBEG 编码域中计算
+     */
+    private void updateAllSubjects() {
+        this.allSubjects = this.pairs.length == this.manager.getSubjectNum();
+        for (int i = 0; i < this.pairs.length && this.allSubjects; i++) {
+            this.allSubjects = this.pairs[i].index == i;
+        }
     }
 
     /**
@@ -251,15 +414,15 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
      */
     public Variant readVariant() throws IOException {
         if (pointer.chromosomeIndex != -1) {
-            this.cache.fill(pointer, this.pairs.length > 0);
+            fill(decompressGT());
             TaskVariant taskVariant = this.cache.taskVariants[pointer.variantIndex];
             GTBNode node = pointer.getNode();
 
-            byte[] BEGs = new byte[this.pairs.length];
-            fillBEGs(taskVariant, node, BEGs, this.phasedTransfer);
+            Variant variant = new Variant();
+            fillVariant(variant, taskVariant, node);
 
             pointer.next();
-            return new Variant(node.chromosome, taskVariant.position, taskVariant.REF.values(), taskVariant.ALT.values(), BEGs, this.phased);
+            return variant;
         } else {
             // 不存在下一个位点，此时 返回 null
             return null;
@@ -275,10 +438,15 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         }
 
         while (pointer.chromosomeIndex != -1) {
-            this.cache.fill(pointer, false);
+            if (!mayContain(condition)) {
+                // 节点的位置范围内没有任务位点, 跳过该节点 (无需解压)
+                pointer.nextNode();
+                continue;
+            }
+            fill(false);
             for (int i = pointer.variantIndex; i < pointer.variantLength; i++) {
                 TaskVariant taskVariant = this.cache.taskVariants[i];
-                if (condition.contains(taskVariant.position)) {
+                if (contains(condition, taskVariant.position)) {
                     pointer.variantIndex = i;
                     return readVariant();
                 }
@@ -315,11 +483,17 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             int chromosomeIndex = pointer.chromosomeIndex;
             int pointerChromosomeIndex = pointer.chromosomeIndex;
             while (chromosomeIndex == pointerChromosomeIndex) {
-                this.cache.fill(pointer, false);
+                if (!mayContain(condition)) {
+                    // 节点的位置范围内没有任务位点, 跳过该节点 (无需解压)
+                    pointer.nextNode();
+                    pointerChromosomeIndex = pointer.chromosomeIndex;
+                    continue;
+                }
+                fill(false);
 
                 for (int i = pointer.variantIndex; i < pointer.variantLength; i++) {
                     taskVariant = this.cache.taskVariants[i];
-                    if (condition.contains(taskVariant.position)) {
+                    if (contains(condition, taskVariant.position)) {
                         pointer.variantIndex = i;
                         return readVariant();
                     }
@@ -345,16 +519,16 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             variants.add(variant);
 
             while (pointer.chromosomeIndex != -1) {
-                this.cache.fill(pointer, this.pairs.length > 0);
+                fill(decompressGT());
                 taskVariant = this.cache.taskVariants[pointer.variantIndex];
                 GTBNode node = pointer.getNode();
 
                 if (Objects.equals(variant.chromosome, node.chromosome) && taskVariant.position == variant.position) {
-                    byte[] BEGs = new byte[this.pairs.length];
-                    fillBEGs(taskVariant, node, BEGs, this.phasedTransfer);
+                    Variant nextVariant = new Variant();
+                    fillVariant(nextVariant, taskVariant, node);
 
                     // 标记位置值
-                    variants.add(new Variant(node.chromosome, taskVariant.position, taskVariant.REF.values(), taskVariant.ALT.values(), BEGs, this.phased));
+                    variants.add(nextVariant);
                     pointer.next();
                 } else {
                     break;
@@ -384,17 +558,17 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             variants.add(variant);
 
             while (pointer.chromosomeIndex != -1) {
-                this.cache.fill(pointer, false);
+                fill(false);
                 taskVariant = this.cache.taskVariants[pointer.variantIndex];
                 GTBNode node = pointer.getNode();
 
                 if (Objects.equals(variant.chromosome, node.chromosome) && taskVariant.position == variant.position) {
-                    this.cache.fill(pointer, this.pairs.length > 0);
-                    byte[] BEGs = new byte[this.pairs.length];
-                    fillBEGs(taskVariant, node, BEGs, this.phasedTransfer);
+                    fill(decompressGT());
+                    Variant nextVariant = new Variant();
+                    fillVariant(nextVariant, taskVariant, node);
 
                     // 标记位置值
-                    variants.add(new Variant(node.chromosome, taskVariant.position, taskVariant.REF.values(), taskVariant.ALT.values(), BEGs, this.phased));
+                    variants.add(nextVariant);
                     pointer.next();
                 } else {
                     break;
@@ -412,23 +586,11 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
      */
     public boolean readVariant(Variant variant) throws IOException {
         if (pointer.chromosomeIndex != -1) {
-            this.cache.fill(pointer, this.pairs.length > 0);
+            fill(decompressGT());
             TaskVariant taskVariant = this.cache.taskVariants[pointer.variantIndex];
             GTBNode node = pointer.getNode();
 
-            if (this.pairs.length != variant.BEGs.length) {
-                variant.BEGs = new byte[this.pairs.length];
-            }
-
-            byte[] BEGs = variant.BEGs;
-
-            fillBEGs(taskVariant, node, BEGs, this.phasedTransfer);
-
-            variant.chromosome = node.chromosome;
-            variant.position = taskVariant.position;
-            variant.REF = taskVariant.REF.values();
-            variant.ALT = taskVariant.ALT.values();
-            variant.phased = this.phased;
+            fillVariant(variant, taskVariant, node);
 
             pointer.next();
             return true;
@@ -454,10 +616,15 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
 
         TaskVariant taskVariant;
         while (pointer.chromosomeIndex != -1) {
-            this.cache.fill(pointer, false);
+            if (!mayContain(condition)) {
+                // 节点的位置范围内没有任务位点, 跳过该节点 (无需解压)
+                pointer.nextNode();
+                continue;
+            }
+            fill(false);
             for (int i = pointer.variantIndex; i < pointer.variantLength; i++) {
                 taskVariant = this.cache.taskVariants[i];
-                if (condition.contains(taskVariant.position)) {
+                if (contains(condition, taskVariant.position)) {
                     pointer.variantIndex = i;
                     return readVariant(variant);
                 }
@@ -500,11 +667,17 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             int chromosomeIndex = pointer.chromosomeIndex;
             int pointerChromosomeIndex = pointer.chromosomeIndex;
             while (chromosomeIndex == pointerChromosomeIndex) {
-                this.cache.fill(pointer, false);
+                if (!mayContain(condition)) {
+                    // 节点的位置范围内没有任务位点, 跳过该节点 (无需解压)
+                    pointer.nextNode();
+                    pointerChromosomeIndex = pointer.chromosomeIndex;
+                    continue;
+                }
+                fill(false);
 
                 for (int i = pointer.variantIndex; i < pointer.variantLength; i++) {
                     taskVariant = this.cache.taskVariants[i];
-                    if (condition.contains(taskVariant.position)) {
+                    if (contains(condition, taskVariant.position)) {
                         pointer.variantIndex = i;
                         return readVariant(variant);
                     }
@@ -525,6 +698,25 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         return false;
     }
 
+    /**
+     * 位置约束是否可能包含当前节点中的位点. 约束为 PositionSet 时按节点的位置范围判断, 无需解压节点
+     */
+    private boolean mayContain(Set<Integer> condition) {
+        if (condition instanceof PositionSet) {
+            GTBNode node = pointer.getNode();
+            return ((PositionSet) condition).containsRange(node.minPos, node.maxPos);
+        }
+
+        return true;
+    }
+
+    /**
+     * 位置约束是否包含 position, 约束为 PositionSet 时不产生装箱对象
+     */
+    private static boolean contains(Set<Integer> condition, int position) {
+        return condition instanceof PositionSet ? ((PositionSet) condition).contains(position) : condition.contains(position);
+    }
+
     /**
      * 读取下一个位点 (公共坐标构成)
      * 从 variantCache 中获取位点，并将结果放入另一区域
@@ -544,6 +736,7 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         } else {
             // 记录当前 位点
             int position = variant.position;
+            String chromosome = variant.chromosome;
             Array<Variant> variants = new Array<>(Variant[].class);
             variants.add(variant);
 
@@ -555,24 +748,12 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
                     variant = variantCache.popFirst();
                 }
 
-                this.cache.fill(pointer, this.pairs.length > 0);
+                fill(decompressGT());
                 taskVariant = this.cache.taskVariants[pointer.variantIndex];
                 GTBNode node = pointer.getNode();
 
-                if (Objects.equals(variant.chromosome, node.chromosome) && taskVariant.position == position) {
-                    if (this.pairs.length != variant.BEGs.length) {
-                        variant.BEGs = new byte[this.pairs.length];
-                    }
-
-                    byte[] BEGs = variant.BEGs;
-
-                    fillBEGs(taskVariant, node, BEGs, this.phasedTransfer);
-
-                    variant.chromosome = node.chromosome;
-                    variant.position = taskVariant.position;
-                    variant.REF = taskVariant.REF.values();
-                    variant.ALT = taskVariant.ALT.values();
-                    variant.phased = this.phased;
+                if (Objects.equals(chromosome, node.chromosome) && taskVariant.position == position) {
+                    fillVariant(variant, taskVariant, node);
                     variants.add(variant);
                     pointer.next();
                 } else {
@@ -607,6 +788,7 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         } else {
             // 记录当前 位点
             int position = variant.position;
+            String chromosome = variant.chromosome;
             Array<Variant> variants = new Array<>(Variant[].class);
             variants.add(variant);
 
@@ -618,25 +800,12 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
                     variant = variantCache.popFirst();
                 }
 
-                this.cache.fill(pointer, this.pairs.length > 0);
+                fill(decompressGT());
                 taskVariant = this.cache.taskVariants[pointer.variantIndex];
                 GTBNode node = pointer.getNode();
 
-                if (Objects.equals(variant.chromosome, node.chromosome) && taskVariant.position == position) {
-                    if (this.pairs.length != variant.BEGs.length) {
-                        variant.BEGs = new byte[this.pairs.length];
-                    }
-
-                    byte[] BEGs = variant.BEGs;
-
-                    fillBEGs(taskVariant, node, BEGs, this.phasedTransfer);
-
-                    variant.chromosome = node.chromosome;
-                    variant.position = taskVariant.position;
-                    variant.REF = taskVariant.REF.values();
-                    variant.ALT = taskVariant.ALT.values();
-                    variant.phased = this.phased;
-
+                if (Objects.equals(chromosome, node.chromosome) && taskVariant.position == position) {
+                    fillVariant(variant, taskVariant, node);
                     variants.add(variant);
                     pointer.next();
                 } else {
@@ -648,17 +817,72 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
         }
     }
 
+    /**
+     * 将当前位点的信息填充到 variant 中, 开启延迟解码时只记录编码行
+     */
+    private void fillVariant(Variant variant, TaskVariant taskVariant, GTBNode node) {
+        variant.chromosome = node.chromosome;
+        variant.position = taskVariant.position;
+        variant.REF = taskVariant.REF.values();
+        variant.ALT = taskVariant.ALT.values();
+        variant.phased = this.phased;
+
+        if (!this.projectGenotypes) {
+            // 不读取基因型数据
+            variant.dropLazyGenotypes();
+            if (variant.BEGs.length != 0) {
+                variant.BEGs = new byte[0];
+            }
+        } else if (this.lazyDecode || this.projectCountsOnly) {
+            if (variant.lazyGenotypes == null) {
+                variant.lazyGenotypes = new LazyGenotypes();
+            }
+
+            if (taskVariant.decoderIndex == 0) {
+                // 二等位基因位点, 保存 MBEG 编码行
+                variant.lazyGenotypes.set(this.cache.genotypesCache.getCache(), this.eachLineSize * taskVariant.index, this.pairs.length == 0 ? 0 : this.eachLineSize,
+                        true, this.allSubjects, this.pairs, this.groupDecoder, this.phasedTransfer);
+            } else {
+                // 多等位基因位点, 保存 BEG 编码行
+                int subjectNum = this.pairs.length == 0 ? 0 : this.manager.getSubjectNum();
+                variant.lazyGenotypes.set(this.cache.genotypesCache.getCache(), this.eachLineSize * node.subBlockVariantNum[0] + (taskVariant.index - node.subBlockVariantNum[0]) * subjectNum,
+                        subjectNum, false, this.allSubjects, this.pairs, this.groupDecoder, this.phasedTransfer);
+            }
+        } else {
+            variant.dropLazyGenotypes();
+            if (this.pairs.length != variant.BEGs.length) {
+                variant.BEGs = new byte[this.pairs.length];
+            }
+
+            fillBEGs(taskVariant, node, variant.BEGs, this.phasedTransfer);
+        }
+    }
+
     private void fillBEGs(TaskVariant taskVariant, GTBNode node, byte[] BEGs, boolean phasedTransfer) {
+        if (this.parallelDecompress && this.pairs.length >= PARALLEL_DECODE_THRESHOLD) {
+            // 按样本区间拆分, 各区间写入 BEGs 的不同位置, 互不干扰
+            int chunkNum = (this.pairs.length + PARALLEL_DECODE_CHUNK_SIZE - 1) / PARALLEL_DECODE_CHUNK_SIZE;
+            IntStream.range(0, chunkNum).parallel().forEach(chunk -> fillBEGs(taskVariant, node, BEGs, phasedTransfer,
+                    chunk * PARALLEL_DECODE_CHUNK_SIZE, Math.min(this.pairs.length, (chunk + 1) * PARALLEL_DECODE_CHUNK_SIZE)));
+        } else {
+            fillBEGs(taskVariant, node, BEGs, phasedTransfer, 0, this.pairs.length);
+        }
+    }
+
+    /**
+     * 解码样本区间 [from, to) 的基因型
+     */
+    private void fillBEGs(TaskVariant taskVariant, GTBNode node, byte[] BEGs, boolean phasedTransfer, int from, int to) {
         if (taskVariant.decoderIndex == 0) {
             // 二等位基因位点
             int start = this.eachLineSize * taskVariant.index;
             if (phasedTransfer) {
-                for (int j = 0; j < pairs.length; j++) {
+                for (int j = from; j < to; j++) {
                     BEGs[j] = BEGTransfer.toUnphased(this.groupDecoder.decode(this.cache.genotypesCache.cacheOf(start + this.pairs[j].groupIndex) & 0xFF, this.pairs[j].codeIndex));
                 }
 
             } else {
-                for (int j = 0; j < pairs.length; j++) {
+                for (int j = from; j < to; j++) {
                     BEGs[j] = this.groupDecoder.decode(this.cache.genotypesCache.cacheOf(start + this.pairs[j].groupIndex) & 0xFF, this.pairs[j].codeIndex);
                 }
             }
@@ -667,11 +891,11 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             int start = this.eachLineSize * node.subBlockVariantNum[0] + (taskVariant.index - node.subBlockVariantNum[0]) * this.manager.getSubjectNum();
 
             if (phasedTransfer) {
-                for (int j = 0; j < pairs.length; j++) {
+                for (int j = from; j < to; j++) {
                     BEGs[j] = BEGTransfer.toUnphased(this.cache.genotypesCache.cacheOf(start + this.pairs[j].index));
                 }
             } else {
-                for (int j = 0; j < pairs.length; j++) {
+                for (int j = from; j < to; j++) {
                     BEGs[j] = this.cache.genotypesCache.cacheOf(start + this.pairs[j].index);
                 }
             }
@@ -774,65 +998,155 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             }
         }
 
-        if (!pointer.node.chromosome.equals(chromosome)) {
-            pointer.seek(chromosomeIndex);
+        GTBPositionIndex.ChromosomeIndex positionIndex = this.positionIndexes.get(chromosome);
+        if (positionIndex != null) {
+            // 通过位置索引直接定位, 无需解压位置数据块
+            int index = positionIndex.lowerBound(position, positionIndex.offsetOf(startNodeIndex));
+            int nodeIndex = positionIndex.nodeIndexOf(index);
+            pointer.seek(chromosomeIndex, nodeIndex, positionIndex.variantIndexOf(index, nodeIndex));
+            return positionIndex.positionOf(index) == position;
         }
 
-        // 使用类似二分搜索的方法
-        if (pointer.node.minPos > position) {
-            for (int i = startNodeIndex; i < pointer.nodeIndex; i++) {
-                if (nodes.get(i).contain(position)) {
-                    pointer.setNode(i);
-                    this.cache.fill(pointer, false);
+        // 二分查找第一个 maxPos >= position 的节点, 再在节点内查找第一个 position >= 目标值的位点
+        int nodeIndex = nodes.lowerBound(position, startNodeIndex, endNodeIndex);
+        pointer.seek(chromosomeIndex, nodeIndex, 0);
 
-                    if (this.cache.taskVariants[0].position == position) {
-                        pointer.setVariant(0);
-                        return true;
-                    }
+        int variantIndex = lowerBoundOfVariant(position, 0);
+        pointer.setVariant(variantIndex);
+        return containsPosition(position, variantIndex);
+    }
 
-                    for (int j = 0; j < pointer.variantLength - 1; j++) {
-                        if ((this.cache.taskVariants[j].position < position) && (position <= this.cache.taskVariants[j + 1].position)) {
-                            pointer.setVariant(j + 1);
-                            return position == this.cache.taskVariants[j + 1].position;
-                        }
-                    }
-                }
+    /**
+     * 批量搜索, 在一次前向扫描中定位所有位点, 每个数据块至多解压一次 (不改变当前读取指针)
+     *
+     * @param chromosome      染色体编号
+     * @param sortedPositions 升序排列的位置值
+     * @return 与位置值一一对应的指针, 不存在的位置对应 null
+     */
+    public Pointer[] search(String chromosome, int[] sortedPositions) throws IOException {
+        int chromosomeIndex = pointer.chromosomeList.indexOf(chromosome);
+        if (chromosomeIndex == -1) {
+            throw new IOException("pointer exception: chromosome=" + chromosome + " not found");
+        }
 
-                // 在两个块的间隔区
-                if (nodes.get(i).maxPos < position && nodes.get(i + 1).minPos > position) {
-                    System.out.println("我在边界哦！");
-                    pointer.setNode(i + 1);
-                    return false;
+        if (!this.searchEnable.get(chromosome)) {
+            throw new IOException("unordered GTB files do not support random access");
+        }
+
+        // 位置索引与前向扫描均只向后查找, 先校验位置的顺序
+        for (int i = 1; i < sortedPositions.length; i++) {
+            if (sortedPositions[i] < sortedPositions[i - 1]) {
+                throw new IOException("positions are not sorted in ascending order");
+            }
+        }
+
+        Pointer[] pointers = new Pointer[sortedPositions.length];
+        GTBNodes nodes = this.manager.getGTBNodes(chromosome);
+        if (nodes.numOfNodes() == 0) {
+            return pointers;
+        }
+
+        int startNodeIndex = getStartNodeIndex(chromosome);
+        int endNodeIndex = getEndNodeIndex(chromosome);
+
+        GTBPositionIndex.ChromosomeIndex positionIndex = this.positionIndexes.get(chromosome);
+        if (positionIndex != null) {
+            // 通过位置索引直接定位, 无需解压任何数据块
+            int fromIndex = positionIndex.offsetOf(startNodeIndex);
+            int endIndex = positionIndex.offsetOf(endNodeIndex + 1);
+            for (int i = 0; i < sortedPositions.length; i++) {
+                int index = positionIndex.lowerBound(sortedPositions[i], fromIndex);
+                if (index < endIndex && positionIndex.positionOf(index) == sortedPositions[i]) {
+                    int nodeIndex = positionIndex.nodeIndexOf(index);
+                    pointers[i] = this.pointer.clone();
+                    pointers[i].seek(chromosomeIndex, nodeIndex, positionIndex.variantIndexOf(index, nodeIndex));
+                    fromIndex = index;
                 }
             }
-        } else {
-            for (int i = pointer.nodeIndex; i <= endNodeIndex; i++) {
-                if (nodes.get(i).contain(position)) {
-                    pointer.setNode(i);
-                    this.cache.fill(pointer, false);
-
-                    if (this.cache.taskVariants[0].position == position) {
-                        pointer.setVariant(0);
-                        return true;
-                    }
+            return pointers;
+        }
 
-                    for (int j = 0; j < pointer.variantLength - 1; j++) {
-                        if ((this.cache.taskVariants[j].position < position) && (position <= this.cache.taskVariants[j + 1].position)) {
-                            pointer.setVariant(j + 1);
-                            return position == this.cache.taskVariants[j + 1].position;
-                        }
+        Pointer origin = this.pointer;
+        this.pointer = origin.clone();
+
+        try {
+            int nodeIndex = startNodeIndex;
+            int variantIndex = 0;
+
+            for (int i = 0; i < sortedPositions.length; i++) {
+                int position = sortedPositions[i];
+                if (nodes.get(nodeIndex).maxPos < position) {
+                    // 当前节点已扫描完毕, 前向二分查找下一个候选节点
+                    nodeIndex = nodes.lowerBound(position, nodeIndex + 1, endNodeIndex);
+                    variantIndex = 0;
+
+                    if (nodeIndex > endNodeIndex) {
+                        // 剩余的位置均超出范围
+                        break;
                     }
                 }
 
-                // 在两个块的间隔区
-                if ((i < endNodeIndex) && (nodes.get(i).maxPos < position) && (nodes.get(i + 1).minPos > position)) {
-                    pointer.setNode(i + 1);
-                    return false;
+                if (nodes.get(nodeIndex).minPos > position) {
+                    continue;
+                }
+
+                if (this.pointer.chromosomeIndex != chromosomeIndex || this.pointer.nodeIndex != nodeIndex) {
+                    this.pointer.seek(chromosomeIndex, nodeIndex, 0);
+                }
+
+                variantIndex = lowerBoundOfVariant(position, variantIndex);
+                if (containsPosition(position, variantIndex)) {
+                    this.pointer.setVariant(variantIndex);
+                    pointers[i] = this.pointer.clone();
                 }
             }
+        } finally {
+            this.pointer = origin;
         }
 
-        throw new NullPointerException();
+        return pointers;
+    }
+
+    /**
+     * 在当前节点中查找第一个 position >= 目标值的位点 (位点按位置排序后的索引). 节点已载入时在 taskVariants 上二分查找,
+     * 否则只解压位置数据段, 在位置列上查找
+     *
+     * @param position  位置值
+     * @param fromIndex 起始位点索引
+     * @return 位点索引, 不存在时返回 variantLength - 1
+     */
+    private int lowerBoundOfVariant(int position, int fromIndex) throws IOException {
+        if (!this.cache.isLoaded(this.pointer)) {
+            return Math.min(this.cache.getPositionColumn(this.pointer).rank(position), pointer.variantLength - 1);
+        }
+
+        int low = fromIndex;
+        int high = pointer.variantLength - 1;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.cache.taskVariants[mid].position < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * 当前节点中排序后的第 variantIndex 个位点的位置是否为目标值
+     *
+     * @param position     位置值
+     * @param variantIndex 由 lowerBoundOfVariant 得到的位点索引
+     */
+    private boolean containsPosition(int position, int variantIndex) throws IOException {
+        if (!this.cache.isLoaded(this.pointer)) {
+            return this.cache.getPositionColumn(this.pointer).count(position) > 0;
+        }
+
+        return this.cache.taskVariants[variantIndex].position == position;
     }
 
     /**
@@ -900,6 +1214,7 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             for (int i = 0; i < pairs.length; i++) {
                 pairs[i] = new IndexPair(this.subjectIndexes[i], this.subjectIndexes[i] / eachGroupNum, this.subjectIndexes[i] % eachGroupNum);
             }
+            updateAllSubjects();
         }
     }
 
@@ -914,6 +1229,7 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
     public void removeAllSubjects() {
         this.pairs = new IndexPair[0];
         this.subjectIndexes = new int[0];
+        updateAllSubjects();
     }
 
     public void selectAllSubjects() {
@@ -969,6 +1285,7 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
 
     @Override
     public void close() throws IOException {
+        disablePrefetch();
         this.cache.close();
         this.pointer = null;
     }
@@ -991,5 +1308,29 @@ public class GTBReader implements Closeable, AutoCloseable, Iterable<Variant> {
             }
         };
     }
-}
 
+    /**
+     * 读取的列 (投影)
+     */
+    public enum Projection {
+        /**
+         * 染色体、位置
+         */
+        POSITION,
+
+        /**
+         * 参考序列及替代序列 (REF, ALT)
+         */
+        ALLELES,
+
+        /**
+         * 样本的基因型
+         */
+        GENOTYPES,
+
+        /**
+         * 只读取等位基因计数 (AC、AN、AF 等统计量), 不展开样本的基因型
+         */
+        AC
+    }
+}
@@ -0,0 +1,145 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader;
+
+import edu.sysu.pmglab.gbc.coder.BEGTransfer;
+import edu.sysu.pmglab.gbc.coder.decoder.MBEGDecoder;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter.BEGCounter;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter.GenotypeStringTable;
+
+import java.util.Arrays;
+
+/**
+ * @Description :延迟解码的基因型数据, 保存位点的 MBEG 编码行 (多等位基因位点为 BEG 编码行) 及样本索引对, 访问 BEGs 时才展开
+ */
+
+class LazyGenotypes {
+    /**
+     * 编码行的拷贝 (数据块缓冲区在切换节点后会被覆盖)
+     */
+    byte[] codes = new byte[0];
+    boolean biallelic;
+    boolean allSubjects;
+    IndexPair[] pairs;
+    MBEGDecoder groupDecoder;
+    boolean phasedTransfer;
+
+    /**
+     * 是否还未展开为 BEGs
+     */
+    boolean pending = false;
+
+    /**
+     * BEG 编码计数值 (按需计算)
+     */
+    final int[] counts = new int[256];
+    boolean countsReady = false;
+
+    /**
+     * 记录编码行
+     *
+     * @param src       数据块缓冲区
+     * @param offset    编码行的起始位置
+     * @param length    编码行的长度
+     * @param biallelic   是否为二等位基因位点 (MBEG 编码)
+     * @param allSubjects 是否按原顺序选择了所有样本 (此时可以在编码域直接计数)
+     */
+    void set(byte[] src, int offset, int length, boolean biallelic, boolean allSubjects, IndexPair[] pairs, MBEGDecoder groupDecoder, boolean phasedTransfer) {
+        if (this.codes.length < length) {
+            this.codes = new byte[length];
+        }
+        System.arraycopy(src, offset, this.codes, 0, length);
+
+        this.biallelic = biallelic;
+        this.allSubjects = allSubjects;
+        this.pairs = pairs;
+        this.groupDecoder = groupDecoder;
+        this.phasedTransfer = phasedTransfer;
+        this.pending = true;
+        this.countsReady = false;
+    }
+
+    /**
+     * 样本个数
+     */
+    int subjectNum() {
+        return this.pairs.length;
+    }
+
+    /**
+     * 展开为 BEG 编码
+     *
+     * @param BEGs 输出数组, 长度为样本个数
+     */
+    void decode(byte[] BEGs) {
+        if (this.biallelic) {
+            for (int j = 0; j < this.pairs.length; j++) {
+                BEGs[j] = this.groupDecoder.decode(this.codes[this.pairs[j].groupIndex] & 0xFF, this.pairs[j].codeIndex);
+            }
+        } else {
+            for (int j = 0; j < this.pairs.length; j++) {
+                BEGs[j] = this.codes[this.pairs[j].index];
+            }
+        }
+
+        if (this.phasedTransfer) {
+            for (int j = 0; j < this.pairs.length; j++) {
+                BEGs[j] = BEGTransfer.toUnphased(BEGs[j]);
+            }
+        }
+    }
+
+    /**
+     * 直接从编码行输出 VCF 基因型字符串, 不展开 BEGs. 调用者需保证 dst 的剩余容量不小于 subjectNum() * table.maxLength()
+     *
+     * @param table 基因型字符串表
+     * @param dst   输出数组
+     * @param seek  写入位置
+     * @return 写入后的位置
+     */
+    int format(GenotypeStringTable table, byte[] dst, int seek) {
+        for (IndexPair pair : this.pairs) {
+            byte code = this.biallelic ? this.groupDecoder.decode(this.codes[pair.groupIndex] & 0xFF, pair.codeIndex) : this.codes[pair.index];
+            seek = table.write(this.phasedTransfer ? BEGTransfer.toUnphased(code) : code, dst, seek);
+        }
+        return seek;
+    }
+
+    /**
+     * 直接从编码行统计每种 BEG 编码的样本个数, 不展开 BEGs
+     */
+    int[] counts() {
+        if (!this.countsReady) {
+            int[] counts = this.counts;
+            int[] rawCounts = this.phasedTransfer ? new int[256] : counts;
+            Arrays.fill(counts, 0);
+
+            if (this.allSubjects) {
+                // 编码域计数
+                if (this.biallelic) {
+                    BEGCounter.countMBEGs(this.groupDecoder, this.codes, 0, this.pairs.length, rawCounts);
+                } else {
+                    BEGCounter.countBEGs(this.codes, 0, this.pairs.length, rawCounts);
+                }
+            } else if (this.biallelic) {
+                for (IndexPair pair : this.pairs) {
+                    rawCounts[this.groupDecoder.decode(this.codes[pair.groupIndex] & 0xFF, pair.codeIndex) & 0xFF]++;
+                }
+            } else {
+                for (IndexPair pair : this.pairs) {
+                    rawCounts[this.codes[pair.index] & 0xFF]++;
+                }
+            }
+
+            if (this.phasedTransfer) {
+                // 向型转换只需在编码计数上进行
+                for (int code = 0; code < rawCounts.length; code++) {
+                    if (rawCounts[code] != 0) {
+                        counts[BEGTransfer.toUnphased((byte) code) & 0xFF] += rawCounts[code];
+                    }
+                }
+            }
+            this.countsReady = true;
+        }
+
+        return this.counts;
+    }
+}
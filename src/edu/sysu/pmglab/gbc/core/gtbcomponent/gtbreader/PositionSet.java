@@ -0,0 +1,208 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader;
+
+import edu.sysu.pmglab.container.array.BaseArray;
+import edu.sysu.pmglab.container.array.IntArray;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * @Description :位置集合, 使用升序排列、去重的 int 数组储存位置值 (每个位置 4 字节), 查找时使用二分查找, 不产生装箱对象.
+ * 集合创建后不可修改, 可以在多个线程间共享; 作为 GTBReader 的位点位置约束时, 不包含任何任务位置的节点不会被解压
+ */
+
+public class PositionSet extends AbstractSet<Integer> {
+    final int[] positions;
+    final int size;
+
+    /**
+     * @param positions 位置值, 无需有序, 可以重复
+     */
+    public PositionSet(int... positions) {
+        this(positions, 0, positions.length);
+    }
+
+    /**
+     * @param positions 位置值, 无需有序, 可以重复
+     * @param offset    起始索引
+     * @param length    位置个数
+     */
+    public PositionSet(int[] positions, int offset, int length) {
+        int[] sorted = Arrays.copyOfRange(positions, offset, offset + length);
+        Arrays.sort(sorted);
+
+        // 去除重复的位置
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[size - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+
+        this.positions = sorted;
+        this.size = size;
+    }
+
+    /**
+     * @param sorted 升序排列、去重的位置值
+     * @param size   位置个数
+     */
+    private PositionSet(int[] sorted, int size) {
+        this.positions = sorted;
+        this.size = size;
+    }
+
+    /**
+     * 从数组中创建位置集合
+     *
+     * @param positions 位置值, 无需有序, 可以重复
+     */
+    public static PositionSet of(BaseArray<Integer> positions) {
+        if (positions instanceof IntArray) {
+            return new PositionSet(((IntArray) positions).toBaseArray());
+        }
+
+        int[] values = new int[positions.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = positions.get(i);
+        }
+        return new PositionSet(values);
+    }
+
+    /**
+     * 是否包含位置 position
+     *
+     * @param position 位置值
+     */
+    public boolean contains(int position) {
+        return Arrays.binarySearch(this.positions, 0, this.size, position) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    /**
+     * 是否包含 [start, end] 范围内的位置
+     *
+     * @param start 起始位置 (包含)
+     * @param end   终止位置 (包含)
+     */
+    public boolean containsRange(int start, int end) {
+        int index = lowerBound(start);
+        return index < this.size && this.positions[index] <= end;
+    }
+
+    /**
+     * 第一个不小于 position 的位置的索引, 不存在时返回 size()
+     *
+     * @param position 位置值
+     */
+    public int lowerBound(int position) {
+        int index = Arrays.binarySearch(this.positions, 0, this.size, position);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * 获取 [start, end] 范围内的位置组成的子集
+     *
+     * @param start 起始位置 (包含)
+     * @param end   终止位置 (包含)
+     */
+    public PositionSet subSet(int start, int end) {
+        int fromIndex = lowerBound(start);
+        int toIndex = end == Integer.MAX_VALUE ? this.size : lowerBound(end + 1);
+        if (fromIndex == 0 && toIndex == this.size) {
+            return this;
+        }
+
+        if (fromIndex >= toIndex) {
+            return new PositionSet(new int[0], 0);
+        }
+        return new PositionSet(Arrays.copyOfRange(this.positions, fromIndex, toIndex), toIndex - fromIndex);
+    }
+
+    /**
+     * 获取第 index 个位置 (升序)
+     *
+     * @param index 位置索引
+     */
+    public int get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + this.size);
+        }
+
+        return this.positions[index];
+    }
+
+    /**
+     * 与另一个位置集合取交集, 两个集合的位置按升序归并, 位置个数相差较大时以倍增步长跳过较大集合中的位置
+     *
+     * @param other 另一个位置集合
+     */
+    public PositionSet intersect(PositionSet other) {
+        PositionSet small = this.size <= other.size ? this : other;
+        PositionSet large = small == this ? other : this;
+        int[] common = new int[small.size];
+        int count = 0;
+        int index = 0;
+
+        for (int i = 0; i < small.size && index < large.size; i++) {
+            int position = small.positions[i];
+            if (large.positions[index] < position) {
+                // 倍增定位包含 position 的区间, 再二分查找
+                int step = 1;
+                int low = index;
+                while (index + step < large.size && large.positions[index + step] < position) {
+                    low = index + step;
+                    step <<= 1;
+                }
+                int found = Arrays.binarySearch(large.positions, low, Math.min(index + step + 1, large.size), position);
+                index = found >= 0 ? found : -found - 1;
+            }
+
+            if (index < large.size && large.positions[index] == position) {
+                common[count++] = position;
+                index++;
+            }
+        }
+
+        return new PositionSet(common, count);
+    }
+
+    /**
+     * 转为 int 数组 (升序)
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(this.positions, this.size);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (this.index >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return positions[this.index++];
+            }
+        };
+    }
+}
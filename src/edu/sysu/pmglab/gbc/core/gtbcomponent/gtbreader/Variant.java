@@ -35,6 +35,11 @@ public class Variant<T> implements Comparable<Variant<T>> {
     public boolean phased;
     public T property;
 
+    /**
+     * 延迟解码的基因型数据 (由开启延迟解码的 GTBReader 设置), 展开前 BEGs 字段无效
+     */
+    LazyGenotypes lazyGenotypes;
+
     public Variant() {
         BEGs = new byte[0];
     }
@@ -48,7 +53,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
         this.position = variant.position;
         this.REF = ArrayUtils.copyOfRange(variant.REF, 0, variant.REF.length);
         this.ALT = ArrayUtils.copyOfRange(variant.ALT, 0, variant.ALT.length);
-        this.BEGs = ArrayUtils.copyOfRange(variant.BEGs, 0, variant.BEGs.length);
+        this.BEGs = ArrayUtils.copyOfRange(variant.getBEGs(), 0, variant.BEGs.length);
         this.phased = variant.phased;
 
         if (variant.property == null) {
@@ -70,6 +75,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
             return new Variant(variants.get(0));
         }
 
+        for (Variant variant : variants) {
+            variant.decodeBEGs();
+        }
+
         Variant targetVariant = new Variant();
         Variant firstVariant = variants.get(0);
 
@@ -248,6 +257,63 @@ public class Variant<T> implements Comparable<Variant<T>> {
         return property;
     }
 
+    /**
+     * 获取基因型编码, 延迟解码的位点在此时展开. 对于延迟解码的位点, 直接访问 BEGs 字段前应当调用此方法
+     */
+    public byte[] getBEGs() {
+        decodeBEGs();
+        return this.BEGs;
+    }
+
+    /**
+     * 基因型是否尚未展开 (此时 AC、AN、AF 等统计量在编码域中计算)
+     */
+    public boolean isLazy() {
+        return this.lazyGenotypes != null && this.lazyGenotypes.pending;
+    }
+
+    /**
+     * 展开延迟解码的基因型
+     */
+    void decodeBEGs() {
+        if (isLazy()) {
+            if (this.BEGs == null || this.BEGs.length != this.lazyGenotypes.subjectNum()) {
+                this.BEGs = new byte[this.lazyGenotypes.subjectNum()];
+            }
+            this.lazyGenotypes.decode(this.BEGs);
+            this.lazyGenotypes.pending = false;
+        }
+    }
+
+    /**
+     * 输出 VCF 格式的基因型 (每个样本为 "\t" + 基因型字符串), 按样本个数预分配空间后查表拷贝.
+     * 延迟解码的位点直接从编码行输出, 不展开 BEGs
+     *
+     * @param cache 输出容器
+     * @return 写入的字节数
+     */
+    public int formatGenotypes(VolumeByteStream cache) {
+        GenotypeStringTable table = GenotypeStringTable.of(this.phased, ChromosomeTags.getPloidy(this.chromosome));
+        int originLength = cache.size();
+        if (isLazy()) {
+            cache.makeSureCapacity(originLength + this.lazyGenotypes.subjectNum() * table.maxLength());
+            cache.reset(this.lazyGenotypes.format(table, cache.getCache(), originLength));
+        } else {
+            cache.makeSureCapacity(originLength + this.BEGs.length * table.maxLength());
+            cache.reset(table.write(this.BEGs, 0, this.BEGs.length, cache.getCache(), originLength));
+        }
+        return cache.size() - originLength;
+    }
+
+    /**
+     * 丢弃延迟解码的基因型 (BEGs 字段被直接赋值时使用)
+     */
+    void dropLazyGenotypes() {
+        if (this.lazyGenotypes != null) {
+            this.lazyGenotypes.pending = false;
+        }
+    }
+
     /**
      * 获取可替代等位基因的个数
      *
@@ -263,6 +329,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return 获取 AC 值
      */
     public int getAC() {
+        if (isLazy()) {
+            return ACValueFormatter.fromCounts(this.lazyGenotypes.counts(), ChromosomeTags.getPloidy(this.chromosome));
+        }
+
         return apply(ACValueFormatter.INSTANCE);
     }
 
@@ -272,6 +342,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return 获取 AC 值
      */
     public int[] getACs() {
+        if (isLazy()) {
+            return ACsValueFormatter.fromCounts(this.lazyGenotypes.counts(), getAlternativeAlleleNum(), ChromosomeTags.getPloidy(this.chromosome));
+        }
+
         return apply(ACsValueFormatter.INSTANCE);
     }
 
@@ -281,6 +355,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return 获取 AN 值
      */
     public int getAN() {
+        if (isLazy()) {
+            return ANValueFormatter.fromCounts(this.lazyGenotypes.counts(), ChromosomeTags.getPloidy(this.chromosome));
+        }
+
         return apply(ANValueFormatter.INSTANCE);
     }
 
@@ -288,6 +366,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * 获取 基因型计数值
      */
     public int[] getGenotypeCounts() {
+        if (isLazy()) {
+            return GenotypeCountsFormatter.fromCounts(this.lazyGenotypes.counts(), getAlternativeAlleleNum());
+        }
+
         return apply(GenotypeCountsFormatter.INSTANCE);
     }
 
@@ -297,6 +379,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return 缺失样本个数
      */
     public int getMissSubjectNum() {
+        if (isLazy()) {
+            return MissSubjectNumValueFormatter.fromCounts(this.lazyGenotypes.counts());
+        }
+
         return apply(MissSubjectNumValueFormatter.INSTANCE);
     }
 
@@ -306,6 +392,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return AF 值，等位基因频率
      */
     public double getAF() {
+        if (isLazy()) {
+            return AFValueFormatter.fromCounts(this.lazyGenotypes.counts(), ChromosomeTags.getPloidy(this.chromosome));
+        }
+
         return apply(AFValueFormatter.INSTANCE);
     }
 
@@ -315,6 +405,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return AFs 值，等位基因频率
      */
     public double[] getAFs() {
+        if (isLazy()) {
+            return AFsValueFormatter.fromCounts(this.lazyGenotypes.counts(), getAlternativeAlleleNum(), ChromosomeTags.getPloidy(this.chromosome));
+        }
+
         return apply(AFsValueFormatter.INSTANCE);
     }
 
@@ -324,6 +418,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return MAF 值，次等位基因频率
      */
     public double getMAF() {
+        if (isLazy()) {
+            return MAFValueFormatter.fromCounts(this.lazyGenotypes.counts(), getAlternativeAlleleNum(), ChromosomeTags.getPloidy(this.chromosome));
+        }
+
         return apply(MAFValueFormatter.INSTANCE);
     }
 
@@ -331,6 +429,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * 是否有缺失基因型
      */
     public boolean hasMissGenotype() {
+        if (isLazy()) {
+            return HasMissGTFormatter.fromCounts(this.lazyGenotypes.counts());
+        }
+
         return apply(HasMissGTFormatter.INSTANCE);
     }
 
@@ -338,6 +440,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * 获取位点的 BEG 编码
      */
     public int getBEGCode(int index) {
+        decodeBEGs();
         return BEGs[index] & 0xFF;
     }
 
@@ -355,6 +458,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @param haplotypeIndex 单倍型索引 (1 / 2)
      */
     public int getGenotypeCode(int index, int haplotypeIndex) {
+        decodeBEGs();
         return BEGDecoder.decodeHaplotype(haplotypeIndex, BEGs[index]);
     }
 
@@ -376,6 +480,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * 按照新的等位基因信息转换编码
      */
     public void resetAlleles(byte[] newREF, byte[] newALT) {
+        decodeBEGs();
         if ((ArrayUtils.equal(REF, newREF) && ArrayUtils.startWiths(newALT, ALT) && ((newALT.length == ALT.length) || (newALT[ALT.length] == ByteCode.COMMA)))) {
             ALT = newALT;
         } else {
@@ -521,6 +626,10 @@ public class Variant<T> implements Comparable<Variant<T>> {
             throw new UnsupportedOperationException("merge variant with different coordinates are not allowed");
         }
 
+        decodeBEGs();
+        otherVariant.decodeBEGs();
+        target.dropLazyGenotypes();
+
         target.chromosome = this.chromosome;
         target.position = this.position;
         target.phased = this.phased;
@@ -702,6 +811,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @param inplace 原位改变基因型的向型
      */
     public byte[] toUnphased(boolean inplace) {
+        decodeBEGs();
         if (this.phased) {
             if (inplace) {
                 for (int i = 0; i < this.BEGs.length; i++) {
@@ -721,6 +831,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * 将一个多等位基因位点转为多个二等位基因位点
      */
     public Array<Variant> split() {
+        decodeBEGs();
         int alternativeAlleleNum = getAlternativeAlleleNum();
         Array<Variant> out = new Array<>(Variant[].class, true);
 
@@ -792,6 +903,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * 简化 alleles, 将 AC = 0 的碱基删除
      */
     public void simplifyAlleles() {
+        decodeBEGs();
         int[] ACs = getACs();
         int[] transCode = new int[ACs.length];
         int index = 0;
@@ -930,6 +1042,8 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return LD 系数计算结果
      */
     public double calculateLDR2(ILDModel model, Variant variant) {
+        decodeBEGs();
+        variant.decodeBEGs();
         return model.calculateLDR2(this, variant);
     }
 
@@ -941,6 +1055,8 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @return LD 系数计算结果
      */
     public double calculateLDR(ILDModel model, Variant variant) {
+        decodeBEGs();
+        variant.decodeBEGs();
         if (getAlternativeAlleleNum() == 2) {
             if (variant.getAlternativeAlleleNum() == 2) {
                 return model.calculateLD(this, variant);
@@ -1008,6 +1124,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @param variantFormatter 序列格式转换器
      */
     public <Out> Out apply(VariantFormatter<Void, Out> variantFormatter) {
+        decodeBEGs();
         return variantFormatter.apply(this);
     }
 
@@ -1017,6 +1134,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @param variantFormatter 序列格式转换器
      */
     public <In, Out> Out apply(VariantFormatter<In, Out> variantFormatter, In params) {
+        decodeBEGs();
         return variantFormatter.apply(this, params);
     }
 
@@ -1027,6 +1145,7 @@ public class Variant<T> implements Comparable<Variant<T>> {
      * @param cache            输出缓冲区
      */
     public <Out> int apply(VariantFormatter<Void, Out> variantFormatter, VolumeByteStream cache) {
+        decodeBEGs();
         return variantFormatter.apply(this, cache);
     }
 
@@ -1045,11 +1164,14 @@ public class Variant<T> implements Comparable<Variant<T>> {
         }
 
         Variant variant = (Variant) o;
+        decodeBEGs();
+        variant.decodeBEGs();
         return position == variant.position && chromosome.equals(variant.chromosome) && Arrays.equals(REF, variant.REF) && Arrays.equals(ALT, variant.ALT) && Arrays.equals(BEGs, variant.BEGs);
     }
 
     @Override
     public int hashCode() {
+        decodeBEGs();
         int result = Objects.hash(chromosome, position);
         result = 31 * result + Arrays.hashCode(REF);
         result = 31 * result + Arrays.hashCode(ALT);
@@ -26,4 +26,20 @@ public enum ACValueFormatter implements VariantFormatter<Void, Integer> {
         }
         return alleleCounts;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算 AC 值
+     *
+     * @param counts BEG 编码计数值 (见 BEGCounter)
+     * @param ploidy 倍型
+     */
+    public static int fromCounts(int[] counts, int ploidy) {
+        int alleleCounts = 0;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] != 0) {
+                alleleCounts += counts[code] * BEGDecoder.alternativeAlleleNumOf(ploidy, code);
+            }
+        }
+        return alleleCounts;
+    }
+}
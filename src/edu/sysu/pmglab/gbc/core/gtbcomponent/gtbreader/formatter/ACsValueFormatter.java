@@ -40,4 +40,24 @@ public enum ACsValueFormatter implements VariantFormatter<Void, int[]> {
 
         return alleleCounts;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算每种等位基因的计数值
+     *
+     * @param counts    BEG 编码计数值 (见 BEGCounter)
+     * @param alleleNum 等位基因个数
+     * @param ploidy    倍型
+     */
+    public static int[] fromCounts(int[] counts, int alleleNum, int ploidy) {
+        int[] alleleCounts = new int[alleleNum];
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] != 0 && !BEGDecoder.isMiss(code)) {
+                alleleCounts[BEGDecoder.decodeHaplotype(0, code)] += counts[code];
+                if (ploidy != 1) {
+                    alleleCounts[BEGDecoder.decodeHaplotype(1, code)] += counts[code];
+                }
+            }
+        }
+        return alleleCounts;
+    }
+}
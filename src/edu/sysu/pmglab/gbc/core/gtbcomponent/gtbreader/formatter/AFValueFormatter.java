@@ -24,4 +24,19 @@ public enum AFValueFormatter implements VariantFormatter<Void, Double> {
             return (double) variant.getAC() / AN;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算 AF 值
+     *
+     * @param counts BEG 编码计数值 (见 BEGCounter)
+     * @param ploidy 倍型
+     */
+    public static double fromCounts(int[] counts, int ploidy) {
+        int AN = ANValueFormatter.fromCounts(counts, ploidy);
+        if (AN == 0) {
+            return 0d;
+        } else {
+            return (double) ACValueFormatter.fromCounts(counts, ploidy) / AN;
+        }
+    }
+}
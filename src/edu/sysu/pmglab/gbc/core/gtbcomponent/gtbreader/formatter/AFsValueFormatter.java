@@ -51,4 +51,23 @@ public enum AFsValueFormatter implements VariantFormatter<Void, double[]> {
 
         return fqs;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算所有等位基因形式的频率值
+     *
+     * @param counts    BEG 编码计数值 (见 BEGCounter)
+     * @param alleleNum 等位基因个数
+     * @param ploidy    倍型
+     */
+    public static double[] fromCounts(int[] counts, int alleleNum, int ploidy) {
+        int[] alleleCounts = ACsValueFormatter.fromCounts(counts, alleleNum, ploidy);
+        int AN = ANValueFormatter.fromCounts(counts, ploidy);
+
+        double[] fqs = new double[alleleCounts.length];
+        for (int i = 0; i < alleleCounts.length; i++) {
+            fqs[i] = (double) alleleCounts[i] / AN;
+        }
+
+        return fqs;
+    }
+}
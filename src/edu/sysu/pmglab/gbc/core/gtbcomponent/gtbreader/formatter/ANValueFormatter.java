@@ -20,4 +20,14 @@ public enum ANValueFormatter implements VariantFormatter<Void, Integer>{
     public Integer apply(Variant variant) {
         return (variant.BEGs.length - variant.getMissSubjectNum()) * ChromosomeTags.getPloidy(variant.chromosome);
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算 AN 值
+     *
+     * @param counts BEG 编码计数值 (见 BEGCounter)
+     * @param ploidy 倍型
+     */
+    public static int fromCounts(int[] counts, int ploidy) {
+        return (BEGCounter.subjectNumOf(counts) - MissSubjectNumValueFormatter.fromCounts(counts)) * ploidy;
+    }
+}
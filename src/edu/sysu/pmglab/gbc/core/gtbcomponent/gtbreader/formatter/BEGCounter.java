@@ -0,0 +1,117 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter;
+
+import edu.sysu.pmglab.gbc.coder.decoder.MBEGDecoder;
+
+/**
+ * @Description :编码域计数器, 直接从 MBEG 编码行统计每种 BEG 编码的样本个数 (BEG 编码直方图), 统计量由直方图计算, 无需展开 BEGs
+ */
+
+public enum BEGCounter {
+    /* 单例模式计数器 */
+    INSTANCE;
+
+    /**
+     * 每个 MBEG 字节包含的 BEG 编码 (有向 3 个, 无向 4 个), 非法编码值对应空数组
+     */
+    private final byte[][][] groupMembers = new byte[][][]{initGroupMembers(MBEGDecoder.getDecoder(false), 4, 4), initGroupMembers(MBEGDecoder.getDecoder(true), 3, 5)};
+
+    /**
+     * 展开组合编码表
+     *
+     * @param decoder   组合解码器
+     * @param groupSize 每个 MBEG 字节包含的 BEG 编码个数
+     * @param codeBase  组合编码中每个 BEG 编码的取值个数, 组合编码表的大小为 codeBase^groupSize (有向 5^3, 无向 4^4)
+     */
+    private static byte[][] initGroupMembers(MBEGDecoder decoder, int groupSize, int codeBase) {
+        int codeNum = 1;
+        for (int i = 0; i < groupSize; i++) {
+            codeNum *= codeBase;
+        }
+
+        byte[][] members = new byte[256][];
+        for (int code = 0; code < members.length; code++) {
+            if (code >= codeNum) {
+                members[code] = new byte[0];
+                continue;
+            }
+
+            byte[] member = new byte[groupSize];
+            for (int i = 0; i < groupSize; i++) {
+                member[i] = decoder.decode(code, i);
+            }
+            members[code] = member;
+        }
+        return members;
+    }
+
+    /**
+     * 统计 MBEG 编码行 (所有样本) 的 BEG 编码直方图. 先统计每个 MBEG 字节值出现的次数, 再通过查找表展开为 BEG 编码计数
+     *
+     * @param decoder    组合解码器
+     * @param codes      编码行所在的数组
+     * @param offset     编码行的起始位置
+     * @param subjectNum 样本个数
+     * @param counts     BEG 编码计数值, 长度为 256, 结果累加到该数组中
+     */
+    public static void countMBEGs(MBEGDecoder decoder, byte[] codes, int offset, int subjectNum, int[] counts) {
+        int groupSize = decoder.isPhased() ? 3 : 4;
+        int groupNum = subjectNum / groupSize;
+        int[] codeCounts = new int[256];
+
+        for (int i = offset, end = offset + groupNum; i < end; i++) {
+            codeCounts[codes[i] & 0xFF]++;
+        }
+
+        byte[][] members = INSTANCE.groupMembers[decoder.isPhased() ? 1 : 0];
+        for (int code = 0; code < codeCounts.length; code++) {
+            if (codeCounts[code] != 0) {
+                for (byte member : members[code]) {
+                    counts[member & 0xFF] += codeCounts[code];
+                }
+            }
+        }
+
+        // 最后一组不完整时逐个解码
+        for (int i = 0, remain = subjectNum - groupNum * groupSize; i < remain; i++) {
+            counts[decoder.decode(codes[offset + groupNum] & 0xFF, i) & 0xFF]++;
+        }
+    }
+
+    /**
+     * 统计 BEG 编码直方图
+     *
+     * @param codes  BEG 编码所在的数组
+     * @param offset 起始位置
+     * @param length 样本个数
+     * @param counts BEG 编码计数值, 长度为 256, 结果累加到该数组中
+     */
+    public static void countBEGs(byte[] codes, int offset, int length, int[] counts) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            counts[codes[i] & 0xFF]++;
+        }
+    }
+
+    /**
+     * 统计 BEG 编码直方图
+     *
+     * @param BEGs BEG 编码
+     */
+    public static int[] countBEGs(byte[] BEGs) {
+        int[] counts = new int[256];
+        countBEGs(BEGs, 0, BEGs.length, counts);
+        return counts;
+    }
+
+    /**
+     * 直方图中的样本总数
+     *
+     * @param counts BEG 编码计数值
+     */
+    public static int subjectNumOf(int[] counts) {
+        int subjectNum = 0;
+        for (int count : counts) {
+            subjectNum += count;
+        }
+        return subjectNum;
+    }
+}
@@ -3,7 +3,6 @@ package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter;
 import edu.sysu.pmglab.container.VolumeByteStream;
 import edu.sysu.pmglab.easytools.ByteCode;
 import edu.sysu.pmglab.easytools.ValueUtils;
-import edu.sysu.pmglab.gbc.coder.decoder.BEGDecoder;
 import edu.sysu.pmglab.gbc.constant.ChromosomeTags;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 
@@ -60,12 +59,7 @@ public enum EasyVCFVariantFormatter implements VariantFormatter<Void, byte[]> {
         cache.write(ByteCode.GT_STRING);
 
         // genotype 信息
-        int ploidy = ChromosomeTags.getPloidy(variant.chromosome);
-        BEGDecoder decoder = BEGDecoder.getDecoder(variant.phased);
-        for (byte code : variant.BEGs) {
-            cache.write(ByteCode.TAB);
-            cache.write(decoder.decode(ploidy, code));
-        }
+        variant.formatGenotypes(cache);
 
         return cache.size() - originLength;
     }
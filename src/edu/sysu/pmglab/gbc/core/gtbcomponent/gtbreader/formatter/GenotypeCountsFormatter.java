@@ -24,4 +24,16 @@ public enum GenotypeCountsFormatter implements VariantFormatter<Void, int[]> {
         }
         return counts;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算基因型计数值
+     *
+     * @param counts    BEG 编码计数值 (见 BEGCounter)
+     * @param alleleNum 等位基因个数
+     */
+    public static int[] fromCounts(int[] counts, int alleleNum) {
+        int[] genotypeCounts = new int[alleleNum * alleleNum + 1];
+        System.arraycopy(counts, 0, genotypeCounts, 0, Math.min(genotypeCounts.length, counts.length));
+        return genotypeCounts;
+    }
+}
@@ -0,0 +1,108 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter;
+
+import edu.sysu.pmglab.easytools.ByteCode;
+import edu.sysu.pmglab.gbc.coder.MBEGCoderException;
+import edu.sysu.pmglab.gbc.coder.decoder.BEGDecoder;
+
+/**
+ * @Description :VCF 基因型字符串表, 按向型、倍型预先计算每个 BEG 编码对应的 "\t0|1" 形式的字节序列 (包含前导制表符),
+ * 输出基因型时按编码查表并直接拷贝到输出缓冲区, 不再逐个样本检查容量
+ */
+
+public class GenotypeStringTable {
+    /**
+     * 所有的基因型字符串表, 按 [向型][倍型] 索引
+     */
+    private static final GenotypeStringTable[][] TABLES = {
+            {null, new GenotypeStringTable(false, 1), new GenotypeStringTable(false, 2)},
+            {null, new GenotypeStringTable(true, 1), new GenotypeStringTable(true, 2)}
+    };
+
+    final BEGDecoder decoder;
+    final int ploidy;
+    final byte[][] entries = new byte[256][];
+    final int maxLength;
+
+    GenotypeStringTable(boolean phased, int ploidy) {
+        this.decoder = BEGDecoder.getDecoder(phased);
+        this.ploidy = ploidy;
+
+        int maxLength = 0;
+        for (int code = 0; code < this.entries.length; code++) {
+            byte[] genotype;
+            try {
+                genotype = this.decoder.decode(ploidy, code);
+            } catch (MBEGCoderException e) {
+                // 超出编码范围
+                continue;
+            }
+
+            if (genotype != null) {
+                byte[] entry = new byte[genotype.length + 1];
+                entry[0] = ByteCode.TAB;
+                System.arraycopy(genotype, 0, entry, 1, genotype.length);
+                this.entries[code] = entry;
+                maxLength = Math.max(maxLength, entry.length);
+            }
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * 获取基因型字符串表
+     *
+     * @param phased 向型
+     * @param ploidy 倍型 (1 或 2)
+     */
+    public static GenotypeStringTable of(boolean phased, int ploidy) {
+        if (ploidy != 1 && ploidy != 2) {
+            throw new MBEGCoderException("BEG decode error: BEG only supported decode genotype from haploid(ploidy=1) or diploid(ploidy=2) species");
+        }
+
+        return TABLES[phased ? 1 : 0][ploidy];
+    }
+
+    /**
+     * 单个基因型的最大输出长度 (包含前导制表符), 用于预分配输出缓冲区
+     */
+    public int maxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * 写入单个基因型, 调用者需保证 dst 的剩余容量不小于 maxLength()
+     *
+     * @param code 基因型编码值
+     * @param dst  输出数组
+     * @param seek 写入位置
+     * @return 写入后的位置
+     */
+    public int write(byte code, byte[] dst, int seek) {
+        byte[] entry = this.entries[code & 0xFF];
+        if (entry == null) {
+            throw new MBEGCoderException("BEG decode error: BEG code(" + (code & 0xFF) + ") is not a valid genotype code (ploidy=" + this.ploidy + ")");
+        }
+
+        for (byte value : entry) {
+            dst[seek++] = value;
+        }
+        return seek;
+    }
+
+    /**
+     * 写入一组基因型, 调用者需保证 dst 的剩余容量不小于 length * maxLength()
+     *
+     * @param BEGs   基因型编码
+     * @param offset 起始索引
+     * @param length 基因型个数
+     * @param dst    输出数组
+     * @param seek   写入位置
+     * @return 写入后的位置
+     */
+    public int write(byte[] BEGs, int offset, int length, byte[] dst, int seek) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            seek = write(BEGs[i], dst, seek);
+        }
+        return seek;
+    }
+}
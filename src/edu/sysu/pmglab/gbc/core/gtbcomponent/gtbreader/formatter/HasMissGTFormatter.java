@@ -22,4 +22,13 @@ public enum HasMissGTFormatter implements VariantFormatter<Void, Boolean> {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域判断是否有缺失基因型
+     *
+     * @param counts BEG 编码计数值 (见 BEGCounter)
+     */
+    public static boolean fromCounts(int[] counts) {
+        return MissSubjectNumValueFormatter.fromCounts(counts) > 0;
+    }
+}
@@ -58,4 +58,24 @@ public enum MAFValueFormatter implements VariantFormatter<Void, Double> {
             return (double) (alleleCounts[alleleCounts.length - 2]) / ((variant.BEGs.length - missSubjectNum) * ploidy);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算 MAF 值
+     *
+     * @param counts    BEG 编码计数值 (见 BEGCounter)
+     * @param alleleNum 等位基因个数
+     * @param ploidy    倍型
+     */
+    public static double fromCounts(int[] counts, int alleleNum, int ploidy) {
+        if (alleleNum == 2) {
+            // 二等位基因位点
+            double refFreq = AFValueFormatter.fromCounts(counts, ploidy);
+            return refFreq > 0.5 ? 1 - refFreq : refFreq;
+        } else {
+            int[] alleleCounts = ACsValueFormatter.fromCounts(counts, alleleNum, ploidy);
+            Arrays.sort(alleleCounts);
+            // 倒数第二个
+            return (double) (alleleCounts[alleleCounts.length - 2]) / ANValueFormatter.fromCounts(counts, ploidy);
+        }
+    }
+}
@@ -24,4 +24,19 @@ public enum MissSubjectNumValueFormatter implements VariantFormatter<Void, Integ
         }
         return missSubjectNum;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码域计算缺失样本个数
+     *
+     * @param counts BEG 编码计数值 (见 BEGCounter)
+     */
+    public static int fromCounts(int[] counts) {
+        int missSubjectNum = 0;
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] != 0 && BEGDecoder.isMiss(code)) {
+                missSubjectNum += counts[code];
+            }
+        }
+        return missSubjectNum;
+    }
+}
@@ -3,8 +3,6 @@ package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.formatter;
 import edu.sysu.pmglab.container.VolumeByteStream;
 import edu.sysu.pmglab.easytools.ByteCode;
 import edu.sysu.pmglab.easytools.ValueUtils;
-import edu.sysu.pmglab.gbc.coder.decoder.BEGDecoder;
-import edu.sysu.pmglab.gbc.constant.ChromosomeTags;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 
 /**
@@ -72,12 +70,7 @@ public enum VCFVariantFormatter implements VariantFormatter<Void, byte[]> {
         cache.writeSafety(ByteCode.GT_STRING);
 
         // genotype 信息
-        BEGDecoder decoder = BEGDecoder.getDecoder(variant.phased);
-        int ploidy = ChromosomeTags.getPloidy(variant.chromosome);
-        for (byte code : variant.BEGs) {
-            cache.writeSafety(ByteCode.TAB);
-            cache.writeSafety(decoder.decode(ploidy, code));
-        }
+        variant.formatGenotypes(cache);
         return cache.size() - originLength;
     }
 }
@@ -1,5 +1,7 @@
 package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter;
 
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
 import edu.sysu.pmglab.compressor.ICompressor;
 import edu.sysu.pmglab.container.File;
 import edu.sysu.pmglab.container.VolumeByteStream;
@@ -40,9 +42,19 @@ class GTBCompressionContext {
     private final VolumeByteStream cache;
 
     /**
-     * 输出文件
+     * 数据段编码: 位置数据缓冲区, 候选编码的压缩结果, allele 字典压缩器 (无字典时为 null)
+     */
+    private int[] positions = new int[0];
+    private final VolumeByteStream candidate = new VolumeByteStream(0);
+    private final VolumeByteStream packedCandidate = new VolumeByteStream(0);
+    private final ZstdCompressCtx dictionaryCompressor;
+
+    /**
+     * 输出文件, 有序写出模式下为 null, 压缩数据暂存在 segment 中, 提交时交给 orderedWriter
      */
     private final FileStream outputFile;
+    private final GTBOrderedWriter orderedWriter;
+    private final VolumeByteStream segment;
     private final GTBOutputParam outputParam;
     private final int validSubjectNum;
     /**
@@ -55,32 +67,118 @@ class GTBCompressionContext {
      */
     public GTBCompressionContext(GTBOutputParam outputParam, File outputFile, GTBReferenceManager referenceManager, GTBSubjectManager subjectManager) throws IOException {
         this.compressor = ICompressor.getInstance(outputParam.getCompressor(), outputParam.getCompressionLevel(), Math.max(subjectManager.getSubjectNum() * outputParam.getBlockSize(), outputParam.getBlockSize() * 10));
-        this.switcher = ISwitcher.getInstance(outputParam.isReordering());
+        this.switcher = ISwitcher.getInstance(outputParam.isReordering(), outputParam.isAdaptiveReordering(), subjectManager.getSubjectNum(), outputParam.getAMDOStatistics());
+        this.codeCombiner = ICodeCombiner.getInstance(outputParam.isPhased(), subjectManager.getSubjectNum());
+        this.encoder = BEGEncoder.getEncoder(outputParam.isPhased());
+        this.validSubjectNum = subjectManager.getSubjectNum();
+
+        // 合并数据缓冲区
+        this.cache = new VolumeByteStream(subjectManager.getSubjectNum() * outputParam.getBlockSize());
+        this.dictionaryCompressor = initDictionaryCompressor(outputParam);
+        this.outputFile = openOutputFile(outputParam, outputFile, referenceManager, subjectManager);
+        this.orderedWriter = null;
+        this.segment = null;
+        this.outputParam = outputParam;
+    }
+
+    /**
+     * 有序写出模式, 压缩后的数据段在 commit 时按序列号写入 orderedWriter 的输出文件
+     *
+     * @param outputParam   压缩任务
+     * @param orderedWriter 有序块写出器
+     */
+    GTBCompressionContext(GTBOutputParam outputParam, GTBOrderedWriter orderedWriter, GTBSubjectManager subjectManager) {
+        this.compressor = ICompressor.getInstance(outputParam.getCompressor(), outputParam.getCompressionLevel(), Math.max(subjectManager.getSubjectNum() * outputParam.getBlockSize(), outputParam.getBlockSize() * 10));
+        this.switcher = ISwitcher.getInstance(outputParam.isReordering(), outputParam.isAdaptiveReordering(), subjectManager.getSubjectNum(), outputParam.getAMDOStatistics());
         this.codeCombiner = ICodeCombiner.getInstance(outputParam.isPhased(), subjectManager.getSubjectNum());
         this.encoder = BEGEncoder.getEncoder(outputParam.isPhased());
         this.validSubjectNum = subjectManager.getSubjectNum();
 
         // 合并数据缓冲区
         this.cache = new VolumeByteStream(subjectManager.getSubjectNum() * outputParam.getBlockSize());
-        this.outputFile = outputFile.open(FileStream.CHANNEL_WRITER);
+        this.dictionaryCompressor = initDictionaryCompressor(outputParam);
+        this.outputFile = null;
+        this.orderedWriter = orderedWriter;
+        this.segment = new VolumeByteStream(2 << 20);
         this.outputParam = outputParam;
+    }
+
+    /**
+     * 创建 allele 字典压缩器 (仅数据段编码扩展格式), 文件压缩器为 ZSTD 时使用相同的压缩级别
+     */
+    private static ZstdCompressCtx initDictionaryCompressor(GTBOutputParam outputParam) {
+        if (!outputParam.isSegmentCodec() || outputParam.getAlleleDictionary() == null) {
+            return null;
+        }
+
+        int zstdIndex = ICompressor.getCompressorIndex("ZSTD");
+        ZstdCompressCtx compressCtx = new ZstdCompressCtx();
+        compressCtx.setLevel(outputParam.getCompressor() == zstdIndex ? outputParam.getCompressionLevel() : ICompressor.getDefaultCompressionLevel(zstdIndex));
+        compressCtx.loadDict(outputParam.getAlleleDictionary());
+        return compressCtx;
+    }
+
+    /**
+     * 打开输出文件并写入初始头信息 (节点个数及文件标志在关闭时写入)
+     */
+    static FileStream openOutputFile(GTBOutputParam outputParam, File outputFile, GTBReferenceManager referenceManager, GTBSubjectManager subjectManager) throws IOException {
+        FileStream outputStream = outputFile.open(FileStream.CHANNEL_WRITER);
 
         // 样本名信息
         byte[] subjects = subjectManager.getSubjects();
 
         // 写入初始头信息
-        this.outputFile.write(ValueUtils.value2ByteArray(0, 5));
+        outputStream.write(ValueUtils.value2ByteArray(0, 5));
 
         // 写入 refer 网址
-        this.outputFile.write(referenceManager.getReference());
+        outputStream.write(referenceManager.getReference());
 
         // 写入换行符
-        this.outputFile.write(ByteCode.NEWLINE);
+        outputStream.write(ByteCode.NEWLINE);
 
         // 写入样本名
         VolumeByteStream subjectsSeq = ICompressor.compress(outputParam.getCompressor(), outputParam.getCompressionLevel(), subjects, 0, subjects.length);
-        this.outputFile.writeIntegerValue(subjectsSeq.size());
-        this.outputFile.write(subjectsSeq);
+        outputStream.writeIntegerValue(subjectsSeq.size());
+        outputStream.write(subjectsSeq);
+
+        // 写入 allele 字典 (仅数据段编码扩展格式)
+        if (outputParam.isSegmentCodec()) {
+            byte[] alleleDictionary = outputParam.getAlleleDictionary();
+            outputStream.writeIntegerValue(alleleDictionary == null ? 0 : alleleDictionary.length);
+            if (alleleDictionary != null) {
+                outputStream.write(alleleDictionary);
+            }
+        }
+        return outputStream;
+    }
+
+    /**
+     * 写入块头信息, 修改文件标志信息并关闭输出文件
+     */
+    static void closeOutputFile(FileStream outputStream, Array<GTBNode> GTBNodeCache, GTBOutputParam outputParam, int validSubjectNum) throws IOException {
+        // 写入块头信息
+        int maxEstimateSize = 0;
+        boolean segmentCodec = outputParam.isSegmentCodec();
+        VolumeByteStream headerInfo = new VolumeByteStream(GTBNodeCache.size() * (segmentCodec ? GTBNode.SEGMENT_CODEC_NODE_SIZE : GTBNode.NODE_SIZE));
+        for (GTBNode node : GTBNodeCache) {
+            node.toTransFormat(headerInfo, segmentCodec);
+            int estimateSize = node.getEstimateDecompressedSize(validSubjectNum);
+            if (estimateSize > maxEstimateSize) {
+                maxEstimateSize = estimateSize;
+            }
+        }
+
+        outputStream.write(headerInfo);
+
+        // 修改文件标志信息
+        GTBTree tree = new GTBTree(GTBNodeCache);
+        FileBaseInfoManager baseInfoManager = FileBaseInfoManager.of(outputParam);
+        baseInfoManager.setOrderedGTB(tree.isOrder());
+        baseInfoManager.setEstimateDecompressedBlockSize(maxEstimateSize);
+        outputStream.seek(0);
+        outputStream.write(baseInfoManager.build());
+        outputStream.write(baseInfoManager.buildNodeNum(GTBNodeCache.size()));
+        outputStream.close();
     }
 
     /**
@@ -119,17 +217,46 @@ class GTBCompressionContext {
 
         // 压缩基因型数据
         int compressedGenotypeSize = this.compressor.compress(this.cache);
-        this.outputFile.write(this.compressor.getCache());
+        output(this.compressor.getCache());
         this.compressor.reset();
         this.cache.reset();
 
-        // 压缩 position 数据
+        // 压缩 position 数据, 数据段编码扩展格式下差分编码、分帧位压缩编码与原始格式各试压缩一次, 选择压缩后最小者 (大小相同时优先原始格式)
+        boolean segmentCodec = this.outputParam.isSegmentCodec();
+        if (this.positions.length < variantsNum) {
+            this.positions = new int[variantsNum];
+        }
+        for (int i = 0; i < variantsNum; i++) {
+            this.positions[i] = block.variants[i].position;
+        }
+        if (segmentCodec) {
+            SegmentCodec.encodeDelta(this.positions, variantsNum, minPos, this.cache);
+            saveCandidate(this.candidate, this.compressor.compress(this.cache));
+            this.cache.reset();
+
+            SegmentCodec.encodePacked(this.positions, variantsNum, minPos, subBlockVariantNum[0], this.cache);
+            saveCandidate(this.packedCandidate, this.compressor.compress(this.cache));
+            this.cache.reset();
+        }
+
+        this.cache.makeSureCapacity(variantsNum << 2);
         for (int i = 0; i < variantsNum; i++) {
-            this.cache.writeIntegerValue(block.variants[i].position);
+            this.cache.writeIntegerValue(this.positions[i]);
         }
         int originPosSize = this.cache.size();
         int compressedPosSize = this.compressor.compress(this.cache);
-        this.outputFile.write(this.compressor.getCache());
+        int positionCodec = SegmentCodec.RAW;
+        if (segmentCodec) {
+            if (this.candidate.size() < compressedPosSize) {
+                positionCodec = SegmentCodec.POSITION_DELTA;
+                compressedPosSize = this.candidate.size();
+            }
+            if (this.packedCandidate.size() < compressedPosSize) {
+                positionCodec = SegmentCodec.POSITION_PACKED;
+                compressedPosSize = this.packedCandidate.size();
+            }
+        }
+        output(positionCodec == SegmentCodec.RAW ? this.compressor.getCache() : positionCodec == SegmentCodec.POSITION_DELTA ? this.candidate : this.packedCandidate);
         this.compressor.reset();
         this.cache.reset();
 
@@ -143,19 +270,51 @@ class GTBCompressionContext {
             this.cache.write(ByteCode.SLASH);
         }
 
+        // 有 allele 字典时, 字典压缩与通用压缩中选择压缩后较小者
+        int alleleCodec = SegmentCodec.RAW;
         int compressedAlleleSize = this.compressor.compress(this.cache);
-        this.outputFile.write(this.compressor.getCache());
+        if (this.dictionaryCompressor != null) {
+            this.candidate.reset();
+            this.candidate.makeSureCapacity((int) Zstd.compressBound(this.cache.size()));
+            int size = this.dictionaryCompressor.compressByteArray(this.candidate.getCache(), 0, this.candidate.getCache().length, this.cache.getCache(), 0, this.cache.size());
+            if (size < compressedAlleleSize) {
+                this.candidate.reset(size);
+                alleleCodec = SegmentCodec.ALLELE_DICTIONARY;
+                compressedAlleleSize = size;
+            }
+        }
+        output(alleleCodec == SegmentCodec.RAW ? this.compressor.getCache() : this.candidate);
         this.compressor.reset();
         this.cache.reset();
 
         // 送出压缩完成的数据
         GTBNode node = new GTBNode(block.chromosome, minPos, maxPos, 0, compressedGenotypeSize, compressedPosSize, compressedAlleleSize,
-                originMBEGsSize, Math.max(originAllelesSize, originPosSize), subBlockVariantNum);
+                originMBEGsSize, Math.max(originAllelesSize, originPosSize), subBlockVariantNum, SegmentCodec.of(positionCodec, alleleCodec));
 
         // 写入数据和节点信息
         this.GTBNodeCache.add(node);
     }
 
+    /**
+     * 写入已压缩的块, 压缩数据直接拷贝, 不重新编码
+     *
+     * @param node 块节点, 块数据需由相同的样本序列、向型、压缩器及 allele 字典生成
+     * @param data 块的压缩数据 (基因型、位置、allele 数据段)
+     */
+    void process(GTBNode node, VolumeByteStream data) throws IOException {
+        if (data.size() != node.blockSize) {
+            throw new IOException("the size of compressed block (" + data.size() + " bytes) does not match its node (" + node.blockSize + " bytes)");
+        }
+
+        if (node.segmentCodec != SegmentCodec.RAW && !this.outputParam.isSegmentCodec()) {
+            throw new IOException("the compressed block uses segment codecs, which cannot be written to a GTB file in the legacy layout");
+        }
+
+        output(data);
+        this.GTBNodeCache.add(new GTBNode(node.chromosome, node.minPos, node.maxPos, 0, node.compressedGenotypesSize, node.compressedPosSize, node.compressedAlleleSize,
+                node.magicCode, new short[]{node.subBlockVariantNum[0], node.subBlockVariantNum[1]}, node.segmentCodec));
+    }
+
     int check(int variantsNum, GTBUncompressedBlock block) {
         int requestSize = 0;
         for (int i = 0; i < variantsNum; i++) {
@@ -169,33 +328,57 @@ class GTBCompressionContext {
         return requestSize;
     }
 
+    /**
+     * 保存候选编码的压缩结果
+     */
+    private void saveCandidate(VolumeByteStream candidate, int compressedSize) {
+        candidate.reset();
+        candidate.makeSureCapacity(compressedSize);
+        candidate.write(this.compressor.getCache().getCache(), 0, compressedSize);
+        this.compressor.reset();
+    }
+
+    /**
+     * 写出压缩数据, 有序写出模式下暂存至数据段
+     */
+    private void output(VolumeByteStream data) throws IOException {
+        if (this.outputFile != null) {
+            this.outputFile.write(data);
+        } else {
+            this.segment.writeSafety(data);
+        }
+    }
+
+    /**
+     * 提交暂存的数据段 (仅有序写出模式)
+     *
+     * @param sequence 数据段序列号
+     */
+    void commit(long sequence) throws IOException {
+        this.orderedWriter.write(sequence, this.segment, this.GTBNodeCache);
+        this.segment.reset();
+        this.GTBNodeCache.clear();
+    }
+
     /**
      * 关闭压缩机，清除资源
      */
     public void close() throws IOException {
         this.compressor.close();
+        this.candidate.close();
+        this.packedCandidate.close();
+        if (this.dictionaryCompressor != null) {
+            this.dictionaryCompressor.close();
+        }
 
-        // 写入块头信息
-        int maxEstimateSize = 0;
-        VolumeByteStream headerInfo = new VolumeByteStream(this.GTBNodeCache.size() * 25);
-        for (GTBNode node : this.GTBNodeCache) {
-            node.toTransFormat(headerInfo);
-            int estimateSize = node.getEstimateDecompressedSize(this.validSubjectNum);
-            if (estimateSize > maxEstimateSize) {
-                maxEstimateSize = estimateSize;
+        if (this.outputFile == null) {
+            this.segment.close();
+            if (this.GTBNodeCache.size() > 0) {
+                throw new IOException("GTBWriter closed with " + this.GTBNodeCache.size() + " uncommitted blocks");
             }
+            return;
         }
 
-        this.outputFile.write(headerInfo);
-
-        // 修改文件标志信息
-        GTBTree tree = new GTBTree(this.GTBNodeCache);
-        FileBaseInfoManager baseInfoManager = FileBaseInfoManager.of(this.outputParam);
-        baseInfoManager.setOrderedGTB(tree.isOrder());
-        baseInfoManager.setEstimateDecompressedBlockSize(maxEstimateSize);
-        this.outputFile.seek(0);
-        this.outputFile.write(baseInfoManager.build());
-        this.outputFile.write(ValueUtils.value2ByteArray(this.GTBNodeCache.size(), 3));
-        this.outputFile.close();
+        closeOutputFile(this.outputFile, this.GTBNodeCache, this.outputParam, this.validSubjectNum);
     }
 }
@@ -0,0 +1,138 @@
+package edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter;
+
+import edu.sysu.pmglab.container.VolumeByteStream;
+import edu.sysu.pmglab.container.array.Array;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNode;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.SegmentSpillFile;
+import edu.sysu.pmglab.unifyIO.FileStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * @Description :有序块写出器. 多个线程各自持有 GTBWriter 并行压缩, 压缩后的数据段带序列号提交, 按序列号顺序直接追加到最终文件;
+ * 节点表与文件头在关闭时一次性写入. 乱序到达的数据段暂存在内存中, 超出 SegmentSpillFile.MAX_PENDING_SIZE 时暂存至溢出文件
+ */
+
+public class GTBOrderedWriter implements AutoCloseable, Closeable {
+    final GTBWriter.Builder builder;
+    final GTBOutputParam outputParam;
+    final int validSubjectNum;
+
+    /**
+     * 输出文件及已写出的块节点
+     */
+    final FileStream outputFile;
+    final SegmentSpillFile spillFile;
+    final Array<GTBNode> GTBNodeCache = new Array<>(1024, true);
+
+    /**
+     * 等待写出的数据段 (序列号不连续时暂存)
+     */
+    final HashMap<Long, Segment> pendingSegments = new HashMap<>();
+    long nextSequence = 0;
+
+    GTBOrderedWriter(GTBWriter.Builder builder) throws IOException {
+        this.builder = builder;
+        this.outputParam = builder.outputParam;
+        this.validSubjectNum = builder.subjectManager.getSubjectNum();
+        this.outputFile = GTBCompressionContext.openOutputFile(builder.outputParam, builder.outputFile, builder.referenceManager, builder.subjectManager);
+        this.spillFile = new SegmentSpillFile(builder.outputFile.addExtension(".~$spill"));
+    }
+
+    /**
+     * 创建绑定到该写出器的 GTBWriter, 每个线程使用一个
+     */
+    public GTBWriter newWriter() {
+        return new GTBWriter(this.builder, this);
+    }
+
+    /**
+     * 写入一个数据段, 序列号从 0 开始且不可重复
+     *
+     * @param sequence 序列号
+     * @param data     压缩后的数据段
+     * @param nodes    数据段包含的块节点
+     */
+    synchronized void write(long sequence, VolumeByteStream data, Array<GTBNode> nodes) throws IOException {
+        if (sequence < this.nextSequence || this.pendingSegments.containsKey(sequence)) {
+            throw new IOException("duplicate segment sequence " + sequence);
+        }
+
+        if (sequence != this.nextSequence) {
+            // 前面的数据段尚未到达, 暂存
+            Array<GTBNode> nodesCopy = new Array<>(nodes.size() + 1, true);
+            nodesCopy.addAll(nodes);
+
+            if (this.spillFile.acquire(data.size())) {
+                this.pendingSegments.put(sequence, new Segment(new VolumeByteStream(data.cacheOf(0, data.size())), -1, data.size(), nodesCopy));
+            } else {
+                this.pendingSegments.put(sequence, new Segment(null, this.spillFile.spill(data.getCache(), 0, data.size()), data.size(), nodesCopy));
+            }
+            return;
+        }
+
+        this.outputFile.write(data);
+        this.GTBNodeCache.addAll(nodes);
+        this.nextSequence++;
+
+        // 写出已到达的后续数据段
+        Segment segment;
+        while ((segment = this.pendingSegments.remove(this.nextSequence)) != null) {
+            if (segment.data != null) {
+                this.outputFile.write(segment.data);
+                this.spillFile.release(segment.length);
+                segment.data.close();
+            } else {
+                this.spillFile.transferTo(segment.offset, segment.length, this.outputFile.getChannel());
+            }
+            this.GTBNodeCache.addAll(segment.nodes);
+            this.nextSequence++;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (this.pendingSegments.size() > 0) {
+                throw new IOException("segment " + this.nextSequence + " was never committed");
+            }
+
+            GTBCompressionContext.closeOutputFile(this.outputFile, this.GTBNodeCache, this.outputParam, this.validSubjectNum);
+        } finally {
+            // 无论是否写出成功, 释放暂存的数据段, 关闭 (并删除) 溢出文件与输出文件
+            for (Segment segment : this.pendingSegments.values()) {
+                if (segment.data != null) {
+                    segment.data.close();
+                }
+            }
+            this.pendingSegments.clear();
+
+            try {
+                this.spillFile.close();
+            } finally {
+                if (!this.outputFile.isClosed()) {
+                    this.outputFile.close();
+                }
+            }
+        }
+    }
+
+    static class Segment {
+        /**
+         * 内存中的数据, 为 null 时数据位于溢出文件的 [offset, offset + length) 处
+         */
+        final VolumeByteStream data;
+        final long offset;
+        final int length;
+        final Array<GTBNode> nodes;
+
+        Segment(VolumeByteStream data, long offset, int length, Array<GTBNode> nodes) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.nodes = nodes;
+        }
+    }
+}
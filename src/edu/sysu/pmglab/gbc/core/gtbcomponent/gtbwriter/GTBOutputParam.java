@@ -6,6 +6,7 @@ import edu.sysu.pmglab.container.File;
 import edu.sysu.pmglab.easytools.ValueUtils;
 import edu.sysu.pmglab.gbc.coder.CoderConfig;
 import edu.sysu.pmglab.gbc.core.common.qualitycontrol.variant.*;
+import edu.sysu.pmglab.gbc.core.common.switcher.AMDOStatistics;
 import edu.sysu.pmglab.gbc.core.common.switcher.ISwitcher;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.BlockSizeParameter;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.FileBaseInfoManager;
@@ -24,6 +25,8 @@ public class GTBOutputParam {
      */
     private boolean phased = CoderConfig.DEFAULT_PHASED_STATUS;
     private boolean reordering = ISwitcher.DEFAULT_ENABLE;
+    private boolean adaptiveReordering = false;
+    private boolean segmentCodec = false;
     private boolean splitMultiallelics = false;
     private boolean simplyAllele = false;
     private int windowSize = ISwitcher.DEFAULT_SIZE;
@@ -38,6 +41,16 @@ public class GTBOutputParam {
      */
     private final VariantQC variantQC = new VariantQC();
 
+    /**
+     * 自适应重排列的统计信息
+     */
+    private final AMDOStatistics reorderingStatistics = new AMDOStatistics();
+
+    /**
+     * allele 数据段的 ZSTD 字典, 仅在数据段编码扩展格式下写入输出文件的文件头
+     */
+    private byte[] alleleDictionary = null;
+
     public GTBOutputParam() {
     }
 
@@ -63,6 +76,34 @@ public class GTBOutputParam {
         return this.reordering;
     }
 
+    /**
+     * 获取当前任务是否使用自适应重排列
+     */
+    public boolean isAdaptiveReordering() {
+        return this.adaptiveReordering;
+    }
+
+    /**
+     * 获取自适应重排列的统计信息
+     */
+    public AMDOStatistics getAMDOStatistics() {
+        return this.reorderingStatistics;
+    }
+
+    /**
+     * 获取当前任务是否使用数据段编码扩展格式
+     */
+    public boolean isSegmentCodec() {
+        return this.segmentCodec;
+    }
+
+    /**
+     * 获取 allele 数据段的 ZSTD 字典
+     */
+    public byte[] getAlleleDictionary() {
+        return this.alleleDictionary;
+    }
+
     /**
      * 获取排列窗口大小
      */
@@ -127,6 +168,41 @@ public class GTBOutputParam {
         return this;
     }
 
+    /**
+     * 设置是否使用自适应重排列 (仅在使用重排列算法时生效). 自适应重排列在采样样本上计算特征向量, 并在估计收益不足时跳过该块的重排列,
+     * 适用于样本量很大、完整 AMDO 耗时与压缩相当的情形
+     *
+     * @param adaptiveReordering 使用自适应重排列
+     */
+    public GTBOutputParam setAdaptiveReordering(boolean adaptiveReordering) {
+        this.adaptiveReordering = adaptiveReordering;
+
+        return this;
+    }
+
+    /**
+     * 设置是否使用数据段编码扩展格式. 扩展格式下位置数据段可使用差分编码或分帧位压缩编码, allele 数据段可使用 ZSTD 字典压缩,
+     * 节点表每个节点额外记录 1 字节的编码方式. 扩展格式的文件无法被旧版本的 GBC 读取, 因此默认不使用
+     *
+     * @param segmentCodec 使用数据段编码扩展格式
+     */
+    public GTBOutputParam setSegmentCodec(boolean segmentCodec) {
+        this.segmentCodec = segmentCodec;
+
+        return this;
+    }
+
+    /**
+     * 设置 allele 数据段的 ZSTD 字典 (仅在数据段编码扩展格式下生效)
+     *
+     * @param alleleDictionary 字典, null 代表不使用字典
+     */
+    public GTBOutputParam setAlleleDictionary(byte[] alleleDictionary) {
+        this.alleleDictionary = alleleDictionary;
+
+        return this;
+    }
+
     /**
      * 设置排列窗口大小
      *
@@ -354,6 +430,7 @@ public class GTBOutputParam {
                 this.blockSize = baseInfo.getBlockSize();
                 this.compressionLevel = baseInfo.getCompressionLevel();
             }
+            this.alleleDictionary = manager.getAlleleDictionary();
         }
 
         return this;
@@ -397,7 +474,11 @@ public class GTBOutputParam {
         builder.append("\nblock size: " + this.blockSize);
         builder.append("\nbasic compressor: " + ICompressor.getCompressorName(this.compressor) + " (level: " + this.compressionLevel + ")");
 
-        builder.append("\nAMDO: " + this.reordering + (this.reordering ? " (window size: " + this.windowSize + ")" : ""));
+        builder.append("\nAMDO: " + this.reordering + (this.reordering ? (this.adaptiveReordering ? " (adaptive)" : " (window size: " + this.windowSize + ")") : ""));
+
+        if (this.segmentCodec) {
+            builder.append("\nsegment codec: true");
+        }
 
         if (variantQC.size() > 0) {
             builder.append("\nvariant QC: " + this.variantQC);
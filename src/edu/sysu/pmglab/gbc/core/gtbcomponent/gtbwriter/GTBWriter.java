@@ -6,6 +6,7 @@ import edu.sysu.pmglab.container.array.BaseArray;
 import edu.sysu.pmglab.gbc.core.common.qualitycontrol.variant.VariantQC;
 import edu.sysu.pmglab.gbc.core.common.switcher.AMDOFeature;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.BlockSizeParameter;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBNode;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBReferenceManager;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBSubjectManager;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
@@ -51,6 +52,20 @@ public class GTBWriter implements AutoCloseable, Closeable {
         this.activeBlock = new GTBUncompressedBlock(buildTask.subjectManager.getSubjectNum(), buildTask.outputParam);
     }
 
+    GTBWriter(Builder buildTask, GTBOrderedWriter orderedWriter) {
+        // 位点控制器
+        this.variantQC = buildTask.outputParam.getVariantQC();
+        this.maxAlleleNums = buildTask.outputParam.getMaxAlleleNums();
+        this.splitMultiallelics = buildTask.outputParam.isSplitMultiallelics();
+        this.simplyAllele = buildTask.outputParam.isSimplyAllele();
+
+        // 创建压缩上下文, 压缩后的数据在提交时交给有序写出器
+        this.context = new GTBCompressionContext(buildTask.outputParam, orderedWriter, buildTask.subjectManager);
+
+        // 创建缓冲区
+        this.activeBlock = new GTBUncompressedBlock(buildTask.subjectManager.getSubjectNum(), buildTask.outputParam);
+    }
+
     /**
      * 写入一个位点
      */
@@ -143,6 +158,17 @@ public class GTBWriter implements AutoCloseable, Closeable {
         return count;
     }
 
+    /**
+     * 直接写入一个已压缩的块, 写入前先压缩缓冲区中的位点以保持位点顺序
+     *
+     * @param node 块节点, 块数据需由相同的样本序列、向型、压缩器及 allele 字典生成
+     * @param data 块的压缩数据
+     */
+    public void write(GTBNode node, VolumeByteStream data) throws IOException {
+        flush();
+        this.context.process(node, data);
+    }
+
     public GTBUncompressedBlock getActiveBlock() {
         return activeBlock;
     }
@@ -154,6 +180,16 @@ public class GTBWriter implements AutoCloseable, Closeable {
         }
     }
 
+    /**
+     * 提交已写入的位点, 仅适用于由 GTBOrderedWriter 创建的写出器
+     *
+     * @param sequence 数据段序列号, 有序写出器按该序号顺序写出数据段
+     */
+    public void commit(long sequence) throws IOException {
+        flush();
+        this.context.commit(sequence);
+    }
+
     @Override
     public void close() throws IOException {
         flush();
@@ -186,6 +222,19 @@ public class GTBWriter implements AutoCloseable, Closeable {
             return new GTBWriter(this);
         }
 
+        /**
+         * 构建有序块写出器, 多个线程通过 GTBOrderedWriter.newWriter() 获得各自的写出器并并行压缩
+         */
+        public GTBOrderedWriter buildOrderedWriter() throws IOException {
+            // 检查
+            this.outputParam.setBlockSizeType(BlockSizeParameter.getSuggestBlockSizeType(outputParam.getBlockSizeType(), subjectManager.getSubjectNum()));
+
+            if (outputFile == null) {
+                throw new IOException("no output file set");
+            }
+            return new GTBOrderedWriter(this);
+        }
+
         public Builder setSubject(String... subjects) {
             subjectManager = new GTBSubjectManager();
             subjectManager.load(String.join("\t", subjects).getBytes());
@@ -36,9 +36,11 @@ class BuildParser {
     public final CommandOption<?> simply;
     public final CommandOption<Integer> blocksizetype;
     public final CommandOption<?> noReordering;
+    public final CommandOption<?> adaptiveReordering;
     public final CommandOption<Integer> windowsize;
     public final CommandOption<String> compressor;
     public final CommandOption<Integer> level;
+    public final CommandOption<?> segmentCodec;
     public final CommandOption<File> readyparas;
     public final CommandOption<int[]> seqAc;
     public final CommandOption<double[]> seqAf;
@@ -64,9 +66,11 @@ class BuildParser {
         this.simply = new CommandOption<>("--simply", this.options);
         this.blocksizetype = new CommandOption<>("--blockSizeType", this.options);
         this.noReordering = new CommandOption<>("--no-reordering", this.options);
+        this.adaptiveReordering = new CommandOption<>("--adaptive-reordering", this.options);
         this.windowsize = new CommandOption<>("--windowSize", this.options);
         this.compressor = new CommandOption<>("--compressor", this.options);
         this.level = new CommandOption<>("--level", this.options);
+        this.segmentCodec = new CommandOption<>("--segment-codec", this.options);
         this.readyparas = new CommandOption<>("--readyParas", this.options);
         this.seqAc = new CommandOption<>("--seq-ac", this.options);
         this.seqAf = new CommandOption<>("--seq-af", this.options);
@@ -154,6 +158,8 @@ class BuildParser {
                 .setDescription("Set the maximum size=2^(7+x) of each block. (-1 means auto-adjustment)");
         group002.register(IType.NONE, "--no-reordering", "-nr")
                 .setDescription("Disable the Approximate Minimum Discrepancy Ordering (AMDO) algorithm.");
+        group002.register(IType.NONE, "--adaptive-reordering", "-ar")
+                .setDescription("Compute AMDO features on a subject sample and skip reordering blocks where it is estimated not to pay off.");
         group002.register(INTEGER.VALUE, "--windowSize", "-ws")
                 .defaultTo(24)
                 .validateWith(INTEGER.validateWith(1, 131072))
@@ -166,6 +172,8 @@ class BuildParser {
                 .defaultTo(-1)
                 .validateWith(INTEGER.validateWith(-1, 31))
                 .setDescription("Compression level to use when basic compressor works. (ZSTD: 0~22, 3 as default; LZMA: 0~9, 3 as default; GZIP: 0~9, 5 as default)");
+        group002.register(IType.NONE, "--segment-codec")
+                .setDescription("Encode positions by delta/frame-packed codecs and alleles by a trained dictionary where it pays off. (The output cannot be read by GBC versions without segment codec support)");
         group002.register(FILE.VALUE, "--readyParas", "-rp")
                 .validateWith(FILE.validateWith(true, true))
                 .setDescription("Import the template parameters (-p, -bs, -c, -l) from an external GTB file.");
@@ -211,6 +219,7 @@ class BuildParser {
 
         PARSER.addRule(AT_MOST, 1, "--max-allele", "--biallelic");
         PARSER.addRule(AT_MOST, 1, "--no-reordering", "--windowSize");
+        PARSER.addRule(AT_MOST, 1, "--no-reordering", "--adaptive-reordering");
         PARSER.addRule(MUTUAL_EXCLUSION, 1, "--readyParas", "--phased", "--blockSizeType", "--compressor", "--level");
         PARSER.addRule(MUTUAL_EXCLUSION, 1, "--no-qc", "--gty-gq", "--gty-dp", "--seq-qual", "--seq-dp", "--seq-mq");
     }
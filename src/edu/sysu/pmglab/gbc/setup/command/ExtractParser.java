@@ -35,7 +35,13 @@ class ExtractParser {
     public final CommandOption<?> oGtb;
     public final CommandOption<Integer> level;
     public final CommandOption<?> noClm;
+    public final CommandOption<?> index;
+    public final CommandOption<?> csi;
     public final CommandOption<Integer> threads;
+    public final CommandOption<Integer> blockCache;
+    public final CommandOption<Integer> prefetch;
+    public final CommandOption<?> parallelDecompress;
+    public final CommandOption<?> mmap;
     public final CommandOption<Boolean> phased;
     public final CommandOption<?> hidegt;
     public final CommandOption<?> yes;
@@ -66,7 +72,13 @@ class ExtractParser {
         this.oGtb = new CommandOption<>("--o-gtb", this.options);
         this.level = new CommandOption<>("--level", this.options);
         this.noClm = new CommandOption<>("--no-clm", this.options);
+        this.index = new CommandOption<>("--index", this.options);
+        this.csi = new CommandOption<>("--csi", this.options);
         this.threads = new CommandOption<>("--threads", this.options);
+        this.blockCache = new CommandOption<>("--block-cache", this.options);
+        this.prefetch = new CommandOption<>("--prefetch", this.options);
+        this.parallelDecompress = new CommandOption<>("--parallel-decompress", this.options);
+        this.mmap = new CommandOption<>("--mmap", this.options);
         this.phased = new CommandOption<>("--phased", this.options);
         this.hidegt = new CommandOption<>("--hideGT", this.options);
         this.yes = new CommandOption<>("--yes", this.options);
@@ -160,10 +172,28 @@ class ExtractParser {
         group002.register(IType.NONE, "--no-clm")
                 .setFormat("")
                 .setDescription("Parallel output is not controlled using the cyclic locking mechanism (CLM). With this parameter, parallel output means output to multiple temporary files and finally concatenating them together.");
+        group002.register(IType.NONE, "--index")
+                .setDescription("Build a tabix index (.tbi, or .csi when positions exceed 2^29) for the bgz output while writing it. (the GTB file must be ordered)");
+        group002.register(IType.NONE, "--csi")
+                .setDescription("Build a CSI index (.csi) instead of the tabix index (.tbi), implies '--index'.");
         group002.register(INTEGER.VALUE, "--threads", "-t")
                 .defaultTo(IParallelTask.INIT_THREADS)
                 .validateWith(INTEGER.validateWith(1))
                 .setDescription("Set the number of threads.");
+        group002.register(INTEGER.VALUE, "--block-cache")
+                .defaultTo(0)
+                .validateWith(INTEGER.validateWith(0))
+                .setFormat("--block-cache <int>")
+                .setDescription("Set the memory budget (MB) of the decompressed block cache shared by all threads, so that blocks hit by several positions of '--random' are not decompressed again. (0 means disabled)");
+        group002.register(INTEGER.VALUE, "--prefetch")
+                .defaultTo(0)
+                .validateWith(INTEGER.validateWith(0, 64))
+                .setFormat("--prefetch <int>")
+                .setDescription("Decompress the next <int> blocks in background threads while each thread scans its range of nodes. (only takes effect with '--no-clm'; 0 means disabled)");
+        group002.register(IType.NONE, "--parallel-decompress")
+                .setDescription("Decompress the genotype, position and allele segments of each block in parallel, and decode genotypes of large blocks by subject ranges. (recommended for GTB files with a large number of subjects)");
+        group002.register(IType.NONE, "--mmap")
+                .setDescription("Access the blocks of the GTB file by memory mapping, shared by all threads. (recommended for '--random' on large GTB files)");
         group002.register(BOOLEAN.VALUE, "--phased", "-p")
                 .setDescription("Force-set the status of the genotype. (same as the GTB basic information by default)");
         group002.register(IType.NONE, "--hideGT", "-hg")
@@ -231,5 +261,10 @@ class ExtractParser {
         PARSER.addRule(MUTUAL_EXCLUSION, 1, "--o-bgz", "--biallelic", "--simply", "--blockSizeType", "--no-reordering", "--windowSize", "--compressor", "--readyParas");
         PARSER.addRule(AT_MOST, 1, "--o-gtb", "--no-clm");
         PARSER.addRule(AT_MOST, 1, "--o-text", "--o-bgz", "--o-gtb");
+        PARSER.addRule(MUTUAL_EXCLUSION, 1, "--index", "--o-text", "--o-gtb", "--no-clm");
+        PARSER.addRule(AT_MOST, 1, "--o-gtb", "--prefetch");
+        PARSER.addRule(AT_MOST, 1, "--o-gtb", "--parallel-decompress");
+        PARSER.addRule(AT_MOST, 1, "--o-gtb", "--mmap");
+        PARSER.addRule(MUTUAL_EXCLUSION, 1, "--csi", "--o-text", "--o-gtb", "--no-clm");
     }
 }
\ No newline at end of file
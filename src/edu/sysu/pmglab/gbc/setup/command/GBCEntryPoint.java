@@ -18,11 +18,15 @@ import edu.sysu.pmglab.gbc.core.common.allelechecker.Chi2TestChecker;
 import edu.sysu.pmglab.gbc.core.common.allelechecker.LDTestChecker;
 import edu.sysu.pmglab.gbc.core.common.allelechecker.MixChecker;
 import edu.sysu.pmglab.gbc.core.common.qualitycontrol.variant.*;
+import edu.sysu.pmglab.gbc.core.common.switcher.AMDOStatistics;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBBlockCache;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBManager;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBPositionIndex;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBRootCache;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.GTBToolkit;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.ManagerStringBuilder;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.GTBReader;
+import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.PositionSet;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbreader.Variant;
 import edu.sysu.pmglab.gbc.core.gtbcomponent.gtbwriter.GTBOutputParam;
 import edu.sysu.pmglab.unifyIO.FileStream;
@@ -309,6 +313,8 @@ public enum GBCEntryPoint {
                 .setPhased(options.phased.isPassedIn)
                 .simplyAllele(options.simply.isPassedIn)
                 .setReordering(!options.noReordering.isPassedIn)
+                .setAdaptiveReordering(options.adaptiveReordering.isPassedIn)
+                .setSegmentCodec(options.segmentCodec.isPassedIn)
                 .setWindowSize(options.windowsize.value)
                 .setBlockSizeType(options.blocksizetype.value)
                 .setCompressor(options.compressor.value, options.level.value)
@@ -343,6 +349,14 @@ public enum GBCEntryPoint {
 
         // 结束任务，输出日志信息
         logger.info("Total Processing time: {} s; GTB size: {}", String.format("%.3f", (float) (jobEnd - jobStart) / 1000), options.output.value.formatSize(3));
+        if (outputParam.isReordering() && outputParam.isAdaptiveReordering()) {
+            logger.info("{}", outputParam.getAMDOStatistics());
+            if (logger.isDebugEnabled()) {
+                for (AMDOStatistics.BlockRecord record : outputParam.getAMDOStatistics().getRecords()) {
+                    logger.debug("{}", record);
+                }
+            }
+        }
         logger.info("You can use command `show {}` to view all the information.", options.output.value);
 
         return 0;
@@ -357,6 +371,9 @@ public enum GBCEntryPoint {
             return -1;
         }
 
+        // 设置数据块缓存的内存预算
+        GTBBlockCache.setCapacity((long) options.blockCache.value << 20);
+
         // 加载染色体资源文件
         if (options.contig.isPassedIn) {
             ChromosomeTags.load(options.contig.value);
@@ -408,6 +425,14 @@ public enum GBCEntryPoint {
                 throw new ParameterException("'--hideGT' are not allowed to be used in '--o-gtb' format");
             }
 
+            if (options.index.isPassedIn || options.csi.isPassedIn) {
+                throw new ParameterException("'--index' and '--csi' are not allowed to be used in '--o-gtb' format");
+            }
+
+            if (options.prefetch.isPassedIn || options.parallelDecompress.isPassedIn || options.mmap.isPassedIn) {
+                throw new ParameterException("'--prefetch', '--parallel-decompress' and '--mmap' are not allowed to be used in '--o-gtb' format");
+            }
+
             // 提交任
             logger.info("\n" + task);
             long jobStart = System.currentTimeMillis();
@@ -421,6 +446,9 @@ public enum GBCEntryPoint {
             // vcf 格式
             GTBToolkit.Formatter task = GTBToolkit.Formatter.instance(options.extract.value, options.output.value)
                     .setCLM(!options.noClm.isPassedIn)
+                    .setPrefetch(options.prefetch.value)
+                    .setParallelDecompression(options.parallelDecompress.isPassedIn)
+                    .setMemoryMapped(options.mmap.isPassedIn)
                     .setThreads(options.threads.value);
 
             // 设置是否压缩输出文件
@@ -463,6 +491,10 @@ public enum GBCEntryPoint {
                 task.setFileFormat(GTBToolkit.Formatter.FileFormatter.VCFFormat_WithoutGenotype);
             }
 
+            if (options.index.isPassedIn || options.csi.isPassedIn) {
+                task.setIndex(true, options.csi.isPassedIn);
+            }
+
             BaseArray<IVariantQC> filter = new Array<>();
             if (options.seqAn.isPassedIn) {
                 filter.add(new AlleleNumberController(options.seqAn.value[0], options.seqAn.value[1]));
@@ -476,6 +508,7 @@ public enum GBCEntryPoint {
                 filter.add(new AlleleFrequencyController(options.seqAf.value[0], options.seqAf.value[1]));
             }
 
+            // 位点质控只使用编码域中计算的 AC、AN、AF, 基因型可保持延迟解码
             task.setCondition(variant -> {
                 if (variant.getAlternativeAlleleNum() <= options.maxAllele.value) {
                     for (IVariantQC qc : filter) {
@@ -487,7 +520,7 @@ public enum GBCEntryPoint {
                 } else {
                     return false;
                 }
-            });
+            }, true);
 
             // 提交任务
             logger.info("\n" + task);
@@ -527,7 +560,7 @@ public enum GBCEntryPoint {
             GTBManager manager = GTBRootCache.get(options.show.value);
             VariantQC variantQC = new VariantQC();
             HashSet<String> chromosomes = StringArray.wrap(manager.getChromosomeList()).toHashSet();
-            Map<String, Set<Integer>> randomPositions = null;
+            Map<String, PositionSet> randomPositions = null;
 
             if (options.maxAllele.isPassedIn) {
                 variantQC.add(new IVariantQC() {
@@ -559,9 +592,9 @@ public enum GBCEntryPoint {
                         if (options.range.isPassedIn) {
                             int minPos = options.range.value.get(chromosome)[0];
                             int maxPos = options.range.value.get(chromosome)[1];
-                            randomPositions.put(chromosome, IntArray.wrap(parsedPositions.get(chromosome)).filter(position -> position >= minPos && position <= maxPos).toSet());
+                            randomPositions.put(chromosome, PositionSet.of(IntArray.wrap(parsedPositions.get(chromosome)).filter(position -> position >= minPos && position <= maxPos)));
                         } else {
-                            randomPositions.put(chromosome, IntArray.wrap(parsedPositions.get(chromosome)).toSet());
+                            randomPositions.put(chromosome, new PositionSet(parsedPositions.get(chromosome)));
                         }
                     }
                 }
@@ -600,6 +633,16 @@ public enum GBCEntryPoint {
                 reader.selectSubjects(options.subject.value);
             }
 
+            // 只读取输出及过滤所需的列
+            EnumSet<GTBReader.Projection> projection = EnumSet.of(GTBReader.Projection.POSITION);
+            if (options.maxAllele.isPassedIn || !options.listPositionOnly.isPassedIn) {
+                projection.add(GTBReader.Projection.ALLELES);
+            }
+            if (basedOnAllele || !options.listPositionOnly.isPassedIn) {
+                projection.add(GTBReader.Projection.AC);
+            }
+            reader.setProjection(projection.toArray(new GTBReader.Projection[0]));
+
             if (options.listPositionOnly.isPassedIn) {
                 for (String chromosome : manager.getChromosomeList()) {
                     if (!chromosomes.contains(chromosome)) {
@@ -613,7 +656,7 @@ public enum GBCEntryPoint {
                     }
 
                     if (randomPositions != null) {
-                        Set<Integer> positions = randomPositions.get(chromosome);
+                        PositionSet positions = randomPositions.get(chromosome);
                         if (positions == null || positions.size() == 0) {
                             continue;
                         }
@@ -654,7 +697,7 @@ public enum GBCEntryPoint {
                     }
 
                     if (randomPositions != null) {
-                        Set<Integer> positions = randomPositions.get(chromosome);
+                        PositionSet positions = randomPositions.get(chromosome);
                         if (positions == null || positions.size() == 0) {
                             continue;
                         }
@@ -800,6 +843,9 @@ public enum GBCEntryPoint {
             return -1;
         }
 
+        // 设置数据块缓存的内存预算
+        GTBBlockCache.setCapacity((long) options.blockCache.value << 20);
+
         // 加载染色体资源文件
         if (options.contig.isPassedIn) {
             ChromosomeTags.load(options.contig.value);
@@ -932,6 +978,9 @@ public enum GBCEntryPoint {
             return -1;
         }
 
+        // 设置数据块缓存的内存预算
+        GTBBlockCache.setCapacity((long) options.blockCache.value << 20);
+
         // 加载染色体资源文件
         if (options.contig.isPassedIn) {
             ChromosomeTags.load(options.contig.value);
@@ -1033,6 +1082,9 @@ public enum GBCEntryPoint {
             return -1;
         }
 
+        // 设置数据块缓存的内存预算
+        GTBBlockCache.setCapacity((long) options.blockCache.value << 20);
+
         // 加载染色体资源文件
         if (options.contig.isPassedIn) {
             ChromosomeTags.load(options.contig.value);
@@ -1132,6 +1184,13 @@ public enum GBCEntryPoint {
 
             // 输出文件
             manager.toFile(options.output.value);
+
+            // 构建位置索引
+            if (options.positionIndex.isPassedIn) {
+                GTBRootCache.clear(options.output.value);
+                GTBManager outputManager = GTBRootCache.get(options.output.value);
+                GTBPositionIndex.build(outputManager).write(GTBPositionIndex.getIndexFile(options.output.value), outputManager.getCompressorIndex());
+            }
         } else {
             ChromosomeTags.build(options.index.value, options.output.value, options.deepScan.isPassedIn);
         }
@@ -30,6 +30,7 @@ class IndexParser {
     public final CommandOption<File> output;
     public final CommandOption<File> fromContig;
     public final CommandOption<File> toContig;
+    public final CommandOption<?> positionIndex;
     public final CommandOption<?> yes;
 
     IndexParser(String... args) {
@@ -40,6 +41,7 @@ class IndexParser {
         this.output = new CommandOption<>("--output", this.options);
         this.fromContig = new CommandOption<>("--from-contig", this.options);
         this.toContig = new CommandOption<>("--to-contig", this.options);
+        this.positionIndex = new CommandOption<>("--position-index", this.options);
         this.yes = new CommandOption<>("--yes", this.options);
     }
 
@@ -102,10 +104,13 @@ class IndexParser {
                 .validateWith(FILE.validateWith(true, true, false, true))
                 .setFormat("'-to <file>'")
                 .setDescription("Reset contig (chromosome marker in each gtb block header) for gtb file directly.");
+        group001.register(IType.NONE, "--position-index", "-pi")
+                .setDescription("Build the sidecar position index (<output>.idx) for the output gtb file, which enables random access without decompressing position blocks.");
         group001.register(IType.NONE, "--yes", "-y")
                 .setDescription("Overwrite output file without asking.");
 
 
         PARSER.addRule(MUTUAL_EXCLUSION, 1, "--deep-scan", "--from-contig", "--to-contig");
+        PARSER.addRule(MUTUAL_EXCLUSION, "--deep-scan", "--position-index");
     }
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ class LDParser {
     public final CommandOption<?> oBgz;
     public final CommandOption<Integer> level;
     public final CommandOption<Integer> threads;
+    public final CommandOption<Integer> blockCache;
     public final CommandOption<?> yes;
     public final CommandOption<File> contig;
     public final CommandOption<?> hapLd;
@@ -52,6 +53,7 @@ class LDParser {
         this.oBgz = new CommandOption<>("--o-bgz", this.options);
         this.level = new CommandOption<>("--level", this.options);
         this.threads = new CommandOption<>("--threads", this.options);
+        this.blockCache = new CommandOption<>("--block-cache", this.options);
         this.yes = new CommandOption<>("--yes", this.options);
         this.contig = new CommandOption<>("--contig", this.options);
         this.hapLd = new CommandOption<>("--hap-ld", this.options);
@@ -130,6 +132,11 @@ class LDParser {
                 .defaultTo(IParallelTask.INIT_THREADS)
                 .validateWith(INTEGER.validateWith(1))
                 .setDescription("Set the number of threads.");
+        group002.register(INTEGER.VALUE, "--block-cache")
+                .defaultTo(0)
+                .validateWith(INTEGER.validateWith(0))
+                .setFormat("--block-cache <int>")
+                .setDescription("Set the memory budget (MB) of the decompressed block cache shared by all threads, so that blocks revisited by overlapping LD windows are not decompressed again. (0 means disabled)");
         group002.register(IType.NONE, "--yes", "-y")
                 .setDescription("Overwrite output file without asking.");
 
@@ -30,6 +30,7 @@ class MergeParser {
     public final CommandOption<File> contig;
     public final CommandOption<File> output;
     public final CommandOption<Integer> threads;
+    public final CommandOption<Integer> blockCache;
     public final CommandOption<?> union;
     public final CommandOption<?> yes;
     public final CommandOption<Boolean> phased;
@@ -53,6 +54,7 @@ class MergeParser {
         this.contig = new CommandOption<>("--contig", this.options);
         this.output = new CommandOption<>("--output", this.options);
         this.threads = new CommandOption<>("--threads", this.options);
+        this.blockCache = new CommandOption<>("--block-cache", this.options);
         this.union = new CommandOption<>("--union", this.options);
         this.yes = new CommandOption<>("--yes", this.options);
         this.phased = new CommandOption<>("--phased", this.options);
@@ -127,6 +129,11 @@ class MergeParser {
                 .defaultTo(IParallelTask.INIT_THREADS)
                 .validateWith(INTEGER.validateWith(1))
                 .setDescription("Set the number of threads.");
+        group001.register(INTEGER.VALUE, "--block-cache")
+                .defaultTo(0)
+                .validateWith(INTEGER.validateWith(0))
+                .setFormat("--block-cache <int>")
+                .setDescription("Set the memory budget (MB) of the decompressed block cache shared by all threads, so that blocks revisited while aligning coordinates are not decompressed again. (0 means disabled)");
         group001.register(IType.NONE, "--union")
                 .setDescription("Method for handing coordinates in different files (union or intersection, and intersection is the default), the missing genotype is replaced by '.'.");
         group001.register(IType.NONE, "--yes", "-y")